@@ -0,0 +1,88 @@
+package com.raccoon.easyjchart.benchmarks;
+
+import java.awt.Graphics2D;
+import java.awt.Rectangle;
+import java.awt.image.BufferedImage;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import org.jfree.chart.annotations.XYAnnotation;
+
+import com.raccoon.easyjchart.Grafica;
+
+/**
+ * Adding and removing an annotation on a chart that already has some, with and
+ * without metrics, and painting the annotations with the X axis zoomed to a
+ * hundredth of the function (and of the annotations, spread along it).
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(value = 1, jvmArgsAppend = "-Djava.awt.headless=true")
+public class AnnotationBenchmark {
+
+	@Param({"0", "100", "10000"})
+	public int annotations;
+
+	@Param({"false", "true"})
+	public boolean metrics;
+
+	private Grafica chart;
+	private BufferedImage image;
+	private Graphics2D g2;
+	private Rectangle area;
+
+	@Setup
+	public void setUp() {
+		chart = Data.chart(Data.points(1000));
+		chart.setMetricsEnabled(metrics);
+		for(int i = 0; i < annotations; i++) {
+			double x = i * 1000.0 / annotations;
+			chart.drawBox(x, -0.05, x + 0.05, 0.05);
+		}
+		chart.setXRange(495, 505, 0);
+		image = new BufferedImage(1280, 720, BufferedImage.TYPE_INT_ARGB_PRE);
+		g2 = image.createGraphics();
+		area = new Rectangle(0, 0, 1280, 720);
+		chart.pintarDatos(g2, area);
+	}
+
+	@TearDown
+	public void tearDown() {
+		g2.dispose();
+	}
+
+	@Benchmark
+	public Grafica addRemoveBox() {
+		XYAnnotation box = chart.drawBox(100, -0.5, 200, 0.5);
+		chart.deleteAnnotation(box);
+		return chart;
+	}
+
+	@Benchmark
+	public Grafica addRemoveLine() {
+		XYAnnotation line = chart.drawLine(100, -0.5, 200, 0.5);
+		chart.deleteAnnotation(line);
+		return chart;
+	}
+
+	@Benchmark
+	public BufferedImage paintZoomed() {
+		chart.pintarAnotaciones(g2, area);
+		return image;
+	}
+}
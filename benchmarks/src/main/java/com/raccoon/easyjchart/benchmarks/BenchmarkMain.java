@@ -0,0 +1,23 @@
+package com.raccoon.easyjchart.benchmarks;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * Entry point of benchmarks.jar. It takes the same options as the JMH runner,
+ * and adds the allocation profiler (-prof gc) unless another profiler is given,
+ * so every result is reported in throughput and in bytes allocated per
+ * operation (gc.alloc.rate.norm).
+ */
+public class BenchmarkMain {
+
+	public static void main(String[] args) throws Exception {
+		List<String> options = new ArrayList<String>(Arrays.asList(args));
+		if(!options.contains("-prof") && !options.contains("-h") && !options.contains("-l")) {
+			options.add(0, "-prof");
+			options.add(1, "gc");
+		}
+		org.openjdk.jmh.Main.main(options.toArray(new String[options.size()]));
+	}
+}
@@ -0,0 +1,101 @@
+package com.raccoon.easyjchart.benchmarks;
+
+import java.awt.Color;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import com.raccoon.easyjchart.Grafica;
+
+/**
+ * Small updates of a large function with the auto range of the axes on: every
+ * update makes the chart find the bounds of the function again. The points are
+ * appended to a plot (addAll) or to a streaming plot that evicts its oldest
+ * points (appendBatch and publishPendingData). With zoomed, the X axis shows a
+ * fixed part of the function, so the Y axis only fits the points in that part.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(value = 1, jvmArgsAppend = "-Djava.awt.headless=true")
+public class BoundsBenchmark {
+
+	/**
+	 * Points appended by each update.
+	 */
+	private static final int BATCH = 1000;
+
+	@Param({"100000", "1000000"})
+	public int points;
+
+	@Param({"false", "true"})
+	public boolean zoomed;
+
+	private double[] x;
+	private double[] y;
+	private double[] batchX;
+	private double[] batchY;
+	private double next;
+
+	private Grafica chart;
+	private int stream;
+
+	@Setup(Level.Trial)
+	public void setUpData() {
+		x = Data.x(points);
+		y = Data.y(points);
+		batchX = new double[BATCH];
+		batchY = Data.y(BATCH);
+	}
+
+	/**
+	 * A chart with the function and a streaming plot full of its points. The
+	 * plot keeps growing during the iteration, so it is created again for each one.
+	 */
+	@Setup(Level.Iteration)
+	public void setUpChart() {
+		chart = Data.chart(Data.points(10));
+		chart.replacePlot(0, x, y, "f", Color.RED, 1f, true);
+		stream = chart.addStreamingPlot("s", points, Color.BLUE, 1f);
+		chart.appendBatch(stream, x, y);
+		chart.publishPendingData();
+		next = points;
+		if(zoomed) {
+			chart.setXRange(points * 0.25, points * 0.5, 0);
+		}
+	}
+
+	private void nextBatch() {
+		for(int i = 0; i < BATCH; i++) {
+			batchX[i] = next++;
+		}
+	}
+
+	@Benchmark
+	public Grafica append() {
+		nextBatch();
+		chart.addAll(0, batchX, batchY);
+		return chart;
+	}
+
+	@Benchmark
+	public Grafica stream() {
+		nextBatch();
+		chart.appendBatch(stream, batchX, batchY);
+		chart.publishPendingData();
+		return chart;
+	}
+}
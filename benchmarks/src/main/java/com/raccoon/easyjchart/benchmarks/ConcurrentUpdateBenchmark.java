@@ -0,0 +1,175 @@
+package com.raccoon.easyjchart.benchmarks;
+
+import java.awt.Color;
+import java.awt.Graphics2D;
+import java.awt.Rectangle;
+import java.awt.image.BufferedImage;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.jfree.data.xy.XYDataset;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Group;
+import org.openjdk.jmh.annotations.GroupThreads;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import com.raccoon.easyjchart.ArrayXYDataset;
+import com.raccoon.easyjchart.Grafica;
+
+/**
+ * Three threads replacing the points of their own function while another one
+ * paints the chart, as acquisition threads and the Swing event thread do. In
+ * the snapshot group the writers use plots created with addConcurrentPlot and
+ * the painter publishes and paints without waiting for them; in the locked group
+ * the functions are plain plots and every update and paint holds the lock of
+ * the chart, as if the updates were run on the thread that paints.
+ * <p>
+ * Every update adds the same offset to all the points of a function, and the
+ * painter checks that the first and last points of every function have the same
+ * offset, so a paint that sees half an update fails the benchmark.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(value = 1, jvmArgsAppend = "-Djava.awt.headless=true")
+public class ConcurrentUpdateBenchmark {
+
+	private static final int WRITERS = 3;
+
+	/**
+	 * The chart shared by the threads of a group, with a concurrent plot and a
+	 * plain plot per writer.
+	 */
+	@State(Scope.Group)
+	public static class Charts {
+
+		@Param({"10000", "100000"})
+		public int points;
+
+		Grafica chart;
+		int[] concurrentPlots = new int[WRITERS];
+		int[] plainPlots = new int[WRITERS];
+		double[] x;
+		double[] base;
+		final AtomicInteger writers = new AtomicInteger();
+
+		private BufferedImage image;
+		private Graphics2D g2;
+		private Rectangle area;
+
+		@Setup(Level.Trial)
+		public void setUp() {
+			x = Data.x(points);
+			base = Data.y(points);
+			chart = Data.chart(Data.points(10));
+			for(int i = 0; i < WRITERS; i++) {
+				concurrentPlots[i] = chart.addConcurrentPlot("c" + i, Color.BLUE, 1f, true);
+				chart.setData(concurrentPlots[i], x, base);
+				chart.agregarGrafica(x, base, "p" + i, Color.GREEN, 1f, true);
+				plainPlots[i] = chart.obtenerNumeroGraficas() - 1;
+			}
+			chart.publishPendingData();
+			image = new BufferedImage(1280, 720, BufferedImage.TYPE_INT_ARGB_PRE);
+			g2 = image.createGraphics();
+			area = new Rectangle(0, 0, 1280, 720);
+		}
+
+		@TearDown(Level.Trial)
+		public void tearDown() {
+			g2.dispose();
+		}
+
+		void paint() {
+			chart.pintarDatos(g2, area);
+			for(int i = 0; i < WRITERS; i++) {
+				check(concurrentPlots[i]);
+				check(plainPlots[i]);
+			}
+		}
+
+		private void check(int nPlot) {
+			XYDataset dataset = chart.getGrafica().getXYPlot().getDataset(nPlot);
+			int last = dataset.getItemCount(0) - 1;
+			if(Math.abs((dataset.getYValue(0, 0) - base[0]) - (dataset.getYValue(0, last) - base[last])) > 0.5) {
+				throw new IllegalStateException("Plot " + nPlot + " painted while it was being updated");
+			}
+		}
+	}
+
+	/**
+	 * The function of a writer thread.
+	 */
+	@State(Scope.Thread)
+	public static class Writer {
+
+		int index;
+		double[] y;
+		int update;
+
+		@Setup(Level.Trial)
+		public void setUp(Charts charts) {
+			index = charts.writers.getAndIncrement() % WRITERS;
+			y = new double[charts.points];
+		}
+
+		double[] next(Charts charts) {
+			update++;
+			for(int i = 0; i < y.length; i++) {
+				y[i] = charts.base[i] + update;
+			}
+			return y;
+		}
+	}
+
+	@Benchmark
+	@Group("snapshot")
+	@GroupThreads(WRITERS)
+	public void snapshotWrite(Charts charts, Writer writer) {
+		charts.chart.setData(charts.concurrentPlots[writer.index], charts.x, writer.next(charts));
+	}
+
+	@Benchmark
+	@Group("snapshot")
+	@GroupThreads(1)
+	public BufferedImage snapshotPaint(Charts charts) {
+		charts.chart.publishPendingData();
+		charts.paint();
+		return charts.image;
+	}
+
+	@Benchmark
+	@Group("locked")
+	@GroupThreads(WRITERS)
+	public void lockedWrite(Charts charts, Writer writer) {
+		double[] y = writer.next(charts);
+		synchronized(charts.chart) {
+			ArrayXYDataset dataset = (ArrayXYDataset) charts.chart.getGrafica().getXYPlot().getDataset(charts.plainPlots[writer.index]);
+			dataset.setNotify(false);
+			dataset.clear();
+			dataset.addAll(charts.x, y);
+			dataset.setNotify(true);
+		}
+	}
+
+	@Benchmark
+	@Group("locked")
+	@GroupThreads(1)
+	public BufferedImage lockedPaint(Charts charts) {
+		synchronized(charts.chart) {
+			charts.paint();
+		}
+		return charts.image;
+	}
+}
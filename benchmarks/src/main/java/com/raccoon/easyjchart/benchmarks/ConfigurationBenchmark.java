@@ -0,0 +1,92 @@
+package com.raccoon.easyjchart.benchmarks;
+
+import java.awt.Color;
+import java.awt.Graphics2D;
+import java.awt.Rectangle;
+import java.awt.image.BufferedImage;
+import java.util.concurrent.TimeUnit;
+
+import org.jfree.chart.event.ChartChangeEvent;
+import org.jfree.chart.event.ChartChangeListener;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import com.raccoon.easyjchart.Grafica;
+
+/**
+ * Styling every function of a chart (color, stroke, samples) and setting the
+ * ranges and the background, one call after another or inside Grafica.batch.
+ * The chart has a listener that paints it after every change event, as a panel
+ * that doesn't coalesce its repaints would.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(value = 1, jvmArgsAppend = "-Djava.awt.headless=true")
+public class ConfigurationBenchmark {
+
+	@Param({"1", "8"})
+	public int plots;
+
+	private Grafica chart;
+	private BufferedImage image;
+	private Graphics2D g2;
+	private int change;
+
+	@Setup
+	public void setUp() {
+		chart = Data.chart(Data.points(1000));
+		for(int i = 1; i < plots; i++) {
+			chart.agregarGrafica(Data.x(1000), Data.y(1000), "f" + i, Color.BLUE, 1f, true);
+		}
+		image = new BufferedImage(640, 480, BufferedImage.TYPE_INT_ARGB_PRE);
+		g2 = image.createGraphics();
+		final Rectangle area = new Rectangle(0, 0, 640, 480);
+		chart.addChangeListener(new ChartChangeListener() {
+			public void chartChanged(ChartChangeEvent event) {
+				chart.pintar(g2, area);
+			}
+		});
+	}
+
+	@TearDown
+	public void tearDown() {
+		g2.dispose();
+	}
+
+	private void configure(Grafica g) {
+		change++;
+		Color color = (change & 1) == 0 ? Color.RED : Color.BLUE;
+		for(int i = 0; i < plots; i++) {
+			g.fijaColor(i, color);
+			g.fijaGrosor(i, 1f + (change & 1));
+			g.visualizaMuestras(i, (change & 1) == 0, 2);
+		}
+		g.setRangeAxis(0.0, 1000.0 + (change & 1), -2.0, 2.0);
+		g.fijaFondo(color);
+	}
+
+	@Benchmark
+	public Grafica separate() {
+		configure(chart);
+		return chart;
+	}
+
+	@Benchmark
+	public Grafica batch() {
+		chart.batch(this::configure);
+		return chart;
+	}
+}
@@ -0,0 +1,64 @@
+package com.raccoon.easyjchart.benchmarks;
+
+import java.awt.geom.Point2D;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import com.raccoon.easyjchart.ChartPool;
+import com.raccoon.easyjchart.ChartTemplate;
+import com.raccoon.easyjchart.Grafica;
+
+/**
+ * Construction of a chart with its first function (Grafica.generaGrafica), from
+ * a ChartTemplate, and from a ChartPool (acquiring and releasing the chart).
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(value = 1, jvmArgsAppend = "-Djava.awt.headless=true")
+public class ConstructionBenchmark {
+
+	@Param({"1000", "100000", "1000000"})
+	public int points;
+
+	private Point2D[] function;
+	private ChartTemplate template;
+	private ChartPool pool;
+
+	@Setup
+	public void setUp() {
+		function = Data.points(points);
+		template = new ChartTemplate(Data.chart(Data.points(10)));
+		pool = new ChartPool(template, 1);
+	}
+
+	@Benchmark
+	public Grafica construct() {
+		return Data.chart(function);
+	}
+
+	@Benchmark
+	public Grafica fromTemplate() {
+		return template.create(function, "f");
+	}
+
+	@Benchmark
+	public Grafica fromPool() {
+		Grafica chart = pool.acquire(function, "f");
+		pool.release(chart);
+		return chart;
+	}
+}
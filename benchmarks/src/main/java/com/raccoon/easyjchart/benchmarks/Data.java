@@ -0,0 +1,51 @@
+package com.raccoon.easyjchart.benchmarks;
+
+import java.awt.Color;
+import java.awt.geom.Point2D;
+import java.util.Random;
+
+import com.raccoon.easyjchart.Grafica;
+
+/**
+ * Functions shared by the benchmarks. They are generated with a fixed seed, so
+ * every run draws the same data.
+ */
+final class Data {
+
+	private Data() {
+	}
+
+	/**
+	 * A noisy sine sampled at n sorted points.
+	 */
+	static Point2D[] points(int n) {
+		double[] x = x(n);
+		double[] y = y(n);
+		Point2D[] points = new Point2D[n];
+		for(int i = 0; i < n; i++) {
+			points[i] = new Point2D.Double(x[i], y[i]);
+		}
+		return points;
+	}
+
+	static double[] x(int n) {
+		double[] x = new double[n];
+		for(int i = 0; i < n; i++) {
+			x[i] = i;
+		}
+		return x;
+	}
+
+	static double[] y(int n) {
+		Random random = new Random(42);
+		double[] y = new double[n];
+		for(int i = 0; i < n; i++) {
+			y[i] = Math.sin(i * 2 * Math.PI / Math.max(1, n / 8)) + 0.1 * random.nextGaussian();
+		}
+		return y;
+	}
+
+	static Grafica chart(Point2D[] points) {
+		return new Grafica(points, "Benchmark", "f", "x", "y", true, Color.RED, 1f, true);
+	}
+}
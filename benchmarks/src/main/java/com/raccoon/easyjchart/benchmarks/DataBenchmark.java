@@ -0,0 +1,97 @@
+package com.raccoon.easyjchart.benchmarks;
+
+import java.awt.Color;
+import java.awt.geom.Point2D;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import com.raccoon.easyjchart.Grafica;
+
+/**
+ * Adding and replacing functions of a chart (agregarGrafica and replacePlot),
+ * from Point2D arrays and from primitive arrays. Every replacement recomputes
+ * the ranges of the axes, as the chart does after each change.
+ * <p>
+ * A replacement leaves the chart as it was, so the chart is created once per
+ * iteration. Every addition adds a function, so they are measured in batches
+ * of ADDS on a new chart per iteration; their score is the time of the whole
+ * batch.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(value = 1, jvmArgsAppend = "-Djava.awt.headless=true")
+public class DataBenchmark {
+
+	/**
+	 * Functions added in a batch of the add benchmarks.
+	 */
+	private static final int ADDS = 10;
+
+	@Param({"1000", "100000", "1000000"})
+	public int points;
+
+	private Point2D[] function;
+	private double[] x;
+	private double[] y;
+	private Grafica chart;
+
+	@Setup(Level.Trial)
+	public void setUpData() {
+		function = Data.points(points);
+		x = Data.x(points);
+		y = Data.y(points);
+	}
+
+	/**
+	 * A chart with a single small function, so every iteration starts from the same state.
+	 */
+	@Setup(Level.Iteration)
+	public void setUpChart() {
+		chart = Data.chart(Data.points(10));
+	}
+
+	@Benchmark
+	@BenchmarkMode(Mode.SingleShotTime)
+	@Warmup(iterations = 50, batchSize = ADDS)
+	@Measurement(iterations = 20, batchSize = ADDS)
+	public Grafica addPoints() {
+		chart.agregarGrafica(function, "g", Color.BLUE, 1f, true);
+		return chart;
+	}
+
+	@Benchmark
+	@BenchmarkMode(Mode.SingleShotTime)
+	@Warmup(iterations = 50, batchSize = ADDS)
+	@Measurement(iterations = 20, batchSize = ADDS)
+	public Grafica addArrays() {
+		chart.agregarGrafica(x, y, "g", Color.BLUE, 1f, true);
+		return chart;
+	}
+
+	@Benchmark
+	public Grafica replacePoints() {
+		chart.replacePlot(0, function, "g", Color.BLUE, 1f, true);
+		return chart;
+	}
+
+	@Benchmark
+	public Grafica replaceArrays() {
+		chart.replacePlot(0, x, y, "g", Color.BLUE, 1f, true);
+		return chart;
+	}
+}
@@ -0,0 +1,88 @@
+package com.raccoon.easyjchart.benchmarks;
+
+import java.awt.Color;
+import java.awt.Graphics2D;
+import java.awt.Rectangle;
+import java.awt.image.BufferedImage;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import com.raccoon.easyjchart.Grafica;
+
+/**
+ * Painting a week of a metric sampled every second (604800 points with two
+ * decimals) held in an array dataset or in a compressed one, with the whole
+ * week visible or zoomed in to an hour with setXRange.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(value = 1, jvmArgsAppend = "-Djava.awt.headless=true")
+public class HistoryBenchmark {
+
+	private static final int POINTS = 7 * 24 * 3600;
+	private static final double START = 1.7e9;
+
+	@Param({"false", "true"})
+	public boolean compressed;
+
+	/**
+	 * Seconds visible.
+	 */
+	@Param({"3600", "604800"})
+	public int visible;
+
+	private Grafica chart;
+	private BufferedImage image;
+	private Graphics2D g2;
+	private Rectangle area;
+
+	@Setup
+	public void setUp() {
+		Random random = new Random(42);
+		double[] x = new double[POINTS];
+		double[] y = new double[POINTS];
+		for(int i = 0; i < POINTS; i++) {
+			x[i] = START + i;
+			y[i] = Math.round((50 + 20 * Math.sin(i / 3600.0) + random.nextGaussian()) * 100) / 100.0;
+		}
+		chart = Data.chart(Data.points(10));
+		if(compressed) {
+			chart.addCompressedPlot(x, y, "history", Color.BLUE, 1f);
+		}
+		else {
+			chart.agregarGrafica(x, y, "history", Color.BLUE, 1f, true);
+		}
+		double from = START + (POINTS - visible) / 2;
+		chart.setXRange(from, from + visible);
+		image = new BufferedImage(1280, 720, BufferedImage.TYPE_INT_ARGB_PRE);
+		g2 = image.createGraphics();
+		area = new Rectangle(0, 0, 1280, 720);
+	}
+
+	@TearDown
+	public void tearDown() {
+		g2.dispose();
+	}
+
+	@Benchmark
+	public BufferedImage paint() {
+		chart.pintar(g2, area);
+		return image;
+	}
+}
@@ -0,0 +1,81 @@
+package com.raccoon.easyjchart.benchmarks;
+
+import java.awt.Graphics2D;
+import java.awt.Rectangle;
+import java.awt.image.BufferedImage;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import com.raccoon.easyjchart.Grafica;
+
+/**
+ * Painting a whole chart (Grafica.pintar) into an off-screen image of the size
+ * of a panel.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(value = 1, jvmArgsAppend = "-Djava.awt.headless=true")
+public class PaintBenchmark {
+
+	@Param({"1000", "100000", "1000000"})
+	public int points;
+
+	@Param({"640x480", "1280x720", "1920x1080"})
+	public String size;
+
+	/**
+	 * Measure with -p metrics=true to see the cost of the metrics.
+	 */
+	@Param({"false"})
+	public boolean metrics;
+
+	/**
+	 * Measure with -p fast=true to paint the function with FastLineRenderer.
+	 */
+	@Param({"false"})
+	public boolean fast;
+
+	private Grafica chart;
+	private BufferedImage image;
+	private Graphics2D g2;
+	private Rectangle area;
+
+	@Setup
+	public void setUp() {
+		int separator = size.indexOf('x');
+		int width = Integer.parseInt(size.substring(0, separator));
+		int height = Integer.parseInt(size.substring(separator + 1));
+		chart = Data.chart(Data.points(points));
+		chart.setMetricsEnabled(metrics);
+		chart.setFastRendering(0, fast);
+		image = new BufferedImage(width, height, BufferedImage.TYPE_INT_ARGB_PRE);
+		g2 = image.createGraphics();
+		area = new Rectangle(0, 0, width, height);
+	}
+
+	@TearDown
+	public void tearDown() {
+		g2.dispose();
+	}
+
+	@Benchmark
+	public BufferedImage paint() {
+		chart.pintar(g2, area);
+		return image;
+	}
+}
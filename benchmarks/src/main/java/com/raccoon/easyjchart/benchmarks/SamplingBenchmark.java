@@ -0,0 +1,83 @@
+package com.raccoon.easyjchart.benchmarks;
+
+import java.awt.Color;
+import java.util.concurrent.TimeUnit;
+import java.util.function.DoubleUnaryOperator;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import com.raccoon.easyjchart.Grafica;
+
+/**
+ * Adding sin(1/x) on [0.001, 1], which oscillates faster and faster near 0:
+ * sampled on a uniform grid of the indicated number of points, as callers do
+ * without agregarFuncion, or sampled adaptively for a plot of 1280x720 pixels.
+ * Every benchmark adds a function, so they are measured in batches of ADDS on a
+ * new chart per iteration; the score is the time of the whole batch.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.SingleShotTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 50, batchSize = SamplingBenchmark.ADDS)
+@Measurement(iterations = 20, batchSize = SamplingBenchmark.ADDS)
+@Fork(value = 1, jvmArgsAppend = "-Djava.awt.headless=true")
+public class SamplingBenchmark {
+
+	/**
+	 * Functions added in a batch.
+	 */
+	static final int ADDS = 10;
+
+	private static final double FROM = 0.001;
+	private static final double TO = 1;
+	private static final DoubleUnaryOperator FUNCTION = new DoubleUnaryOperator() {
+		public double applyAsDouble(double x) {
+			return Math.sin(1 / x);
+		}
+	};
+
+	/**
+	 * Points of the uniform grid.
+	 */
+	@Param({"100000", "1000000"})
+	public int points;
+
+	private Grafica chart;
+
+	/**
+	 * A chart with a single small function, so every iteration starts from the same state.
+	 */
+	@Setup(Level.Iteration)
+	public void setUpChart() {
+		chart = Data.chart(Data.points(10));
+	}
+
+	@Benchmark
+	public Grafica uniform() {
+		double[] x = new double[points];
+		double[] y = new double[points];
+		for(int i = 0; i < points; i++) {
+			x[i] = FROM + (TO - FROM) * i / (points - 1);
+			y[i] = FUNCTION.applyAsDouble(x[i]);
+		}
+		chart.agregarGrafica(x, y, "f", Color.BLUE, 1f, true);
+		return chart;
+	}
+
+	@Benchmark
+	public Grafica adaptive() {
+		chart.agregarFuncion(FUNCTION, FROM, TO, 1280, 720, "f", Color.BLUE, 1f);
+		return chart;
+	}
+}
@@ -0,0 +1,138 @@
+package com.raccoon.easyjchart.benchmarks;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.HttpURLConnection;
+import java.net.InetSocketAddress;
+import java.net.URL;
+import java.nio.charset.StandardCharsets;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.openjdk.jmh.annotations.AuxCounters;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Threads;
+import org.openjdk.jmh.annotations.Warmup;
+
+import com.raccoon.easyjchart.ChartServer;
+
+/**
+ * Load test of ChartServer on localhost: eight client threads request charts
+ * of 1000 points over HTTP. In cached every request is the same chart, so all
+ * but the first are answered from the cache; in rendered every request has
+ * different data. The ok and busy counters are the requests answered with the
+ * image and with 503 (server busy) per second.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Threads(8)
+@Fork(value = 1, jvmArgsAppend = "-Djava.awt.headless=true")
+public class ServerBenchmark {
+
+	/**
+	 * Requests that may wait for a worker of the server.
+	 */
+	@Param({"4", "64"})
+	public int queue;
+
+	private ChartServer server;
+	private URL url;
+	private byte[] data;
+	private final AtomicLong unique = new AtomicLong();
+
+	/**
+	 * Responses received by a client thread.
+	 */
+	@State(Scope.Thread)
+	@AuxCounters(AuxCounters.Type.OPERATIONS)
+	public static class Responses {
+
+		public long ok;
+		public long busy;
+
+		@Setup(Level.Iteration)
+		public void reset() {
+			ok = 0;
+			busy = 0;
+		}
+	}
+
+	@Setup(Level.Trial)
+	public void setUp() throws IOException {
+		server = new ChartServer(new InetSocketAddress("127.0.0.1", 0), Runtime.getRuntime().availableProcessors(),
+				queue, 64L << 20);
+		server.start();
+		url = new URL("http://127.0.0.1:" + server.getAddress().getPort() + "/chart?width=640&height=480&title=Load");
+		double[] x = Data.x(1000);
+		double[] y = Data.y(1000);
+		StringBuilder csv = new StringBuilder("x,y\n");
+		for(int i = 0; i < x.length; i++) {
+			csv.append(x[i]).append(',').append(y[i]).append('\n');
+		}
+		data = csv.toString().getBytes(StandardCharsets.UTF_8);
+	}
+
+	@TearDown(Level.Trial)
+	public void tearDown() {
+		server.stop(0);
+	}
+
+	@Benchmark
+	public int cached(Responses responses) throws IOException {
+		return request(data, responses);
+	}
+
+	@Benchmark
+	public int rendered(Responses responses) throws IOException {
+		byte[] last = (unique.incrementAndGet() + ",0\n").getBytes(StandardCharsets.UTF_8);
+		byte[] body = new byte[data.length + last.length];
+		System.arraycopy(data, 0, body, 0, data.length);
+		System.arraycopy(last, 0, body, data.length, last.length);
+		return request(body, responses);
+	}
+
+	private int request(byte[] body, Responses responses) throws IOException {
+		HttpURLConnection connection = (HttpURLConnection) url.openConnection();
+		connection.setRequestMethod("POST");
+		connection.setDoOutput(true);
+		connection.setFixedLengthStreamingMode(body.length);
+		OutputStream out = connection.getOutputStream();
+		out.write(body);
+		out.close();
+		int status = connection.getResponseCode();
+		InputStream in = status < 400 ? connection.getInputStream() : connection.getErrorStream();
+		ByteArrayOutputStream response = new ByteArrayOutputStream();
+		byte[] block = new byte[8192];
+		int n;
+		while((n = in.read(block)) != -1) {
+			response.write(block, 0, n);
+		}
+		in.close();
+		if(status == 200) {
+			responses.ok++;
+		}
+		else if(status == 503) {
+			responses.busy++;
+		}
+		else {
+			throw new IOException("Unexpected response " + status);
+		}
+		return response.size();
+	}
+}
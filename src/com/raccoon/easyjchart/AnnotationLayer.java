@@ -0,0 +1,597 @@
+package com.raccoon.easyjchart;
+
+import java.awt.Graphics2D;
+import java.awt.Image;
+import java.awt.Shape;
+import java.awt.geom.Rectangle2D;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.HashSet;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeMap;
+
+import javax.swing.event.EventListenerList;
+
+import org.jfree.chart.annotations.AbstractXYAnnotation;
+import org.jfree.chart.annotations.XYAnnotation;
+import org.jfree.chart.annotations.XYImageAnnotation;
+import org.jfree.chart.annotations.XYPolygonAnnotation;
+import org.jfree.chart.axis.ValueAxis;
+import org.jfree.chart.event.ChartChangeEvent;
+import org.jfree.chart.event.ChartChangeListener;
+import org.jfree.chart.plot.PlotRenderingInfo;
+import org.jfree.chart.plot.XYPlot;
+import org.jfree.ui.RectangleEdge;
+
+/**
+ * Annotations (images, boxes, lines...) drawn over the functions of a chart.
+ * They are kept out of the XYPlot, so adding or removing an annotation does not
+ * change the chart: the listeners receive a ChartChangeEvent whose source is
+ * the layer, and only the annotations have to be drawn again over the functions
+ * already painted.
+ * <p>
+ * When the layer has many annotations they are indexed in a grid in data
+ * coordinates, so only the annotations that may be visible in the ranges of the
+ * axes are drawn. The bounds of an annotation are given when it is added or
+ * taken from the annotation (images and polygons); annotations without bounds
+ * are always drawn. Annotations are identified by the object added, so removing
+ * one takes O(log n) time.
+ * <p>
+ * The plot of a Grafica holds a single annotation that draws the layer (see
+ * getPlotAnnotation), so the annotations are also drawn when the JFreeChart is
+ * drawn on its own, for example in a ChartPanel. The changes of the layer are
+ * not notified to the plot.
+ */
+public class AnnotationLayer {
+
+	/**
+	 * Annotations below this number are all drawn without the grid.
+	 */
+	private static final int MIN_INDEXED = 64;
+
+	/**
+	 * Annotations per cell the grid is built for, and maximum number of cells.
+	 */
+	private static final int PER_CELL = 4;
+	private static final int MAX_CELLS = 1 << 16;
+
+	/**
+	 * Annotations that cover more cells are not put in the cells.
+	 */
+	private static final int MAX_SPAN = 64;
+
+	/**
+	 * Pixels around the bounds of an annotation that its stroke may cover.
+	 */
+	private static final double STROKE_MARGIN = 8;
+
+	/**
+	 * Annotation of the layer.
+	 */
+	private static final class Entry {
+
+		final XYAnnotation annotation;
+		final long order;
+
+		/**
+		 * Bounds in data coordinates; bounded is false if they are unknown.
+		 */
+		final boolean bounded;
+		final double minX, minY, maxX, maxY;
+
+		/**
+		 * True if it is in the cells of the grid, false if it is in unindexed.
+		 */
+		boolean inCells;
+
+		/**
+		 * Number of the last query that found the annotation.
+		 */
+		int query;
+
+		Entry(XYAnnotation annotation, long order, double x0, double y0, double x1, double y1) {
+			this.annotation = annotation;
+			this.order = order;
+			this.minX = Math.min(x0, x1);
+			this.minY = Math.min(y0, y1);
+			this.maxX = Math.max(x0, x1);
+			this.maxY = Math.max(y0, y1);
+			this.bounded = !Double.isInfinite(maxX - minX) && !Double.isInfinite(maxY - minY)
+					&& !Double.isNaN(maxX - minX) && !Double.isNaN(maxY - minY);
+		}
+
+		boolean intersects(double x0, double y0, double x1, double y1) {
+			return !bounded || (minX <= x1 && maxX >= x0 && minY <= y1 && maxY >= y0);
+		}
+	}
+
+	private static final Comparator<Entry> DRAWING_ORDER = new Comparator<Entry>() {
+		public int compare(Entry a, Entry b) {
+			return a.order < b.order ? -1 : (a.order == b.order ? 0 : 1);
+		}
+	};
+
+	/**
+	 * Annotations by object and in drawing order.
+	 */
+	private final Map<XYAnnotation, Entry> entries = new IdentityHashMap<XYAnnotation, Entry>();
+	private final TreeMap<Long, Entry> drawingOrder = new TreeMap<Long, Entry>();
+	private long nextOrder = 0;
+
+	/**
+	 * Pixels around the bounds of the annotations that they may cover (strokes and images).
+	 */
+	private double margin = STROKE_MARGIN;
+
+	/**
+	 * Grid of the annotations, or null if it hasn't been built. Cell (c, r)
+	 * covers [gridX + c * cellWidth, gridX + (c + 1) * cellWidth) in X and the
+	 * same in Y.
+	 */
+	private List<Entry>[] cells;
+	private int columns, rows;
+	private double gridX, gridY, cellWidth, cellHeight;
+
+	/**
+	 * Number of annotations when the grid was built.
+	 */
+	private int indexed;
+
+	/**
+	 * Annotations that are not in the cells (without bounds, too large or out of
+	 * the grid), and how many of them are out of the grid.
+	 */
+	private final Set<Entry> unindexed = new HashSet<Entry>();
+	private int outside;
+
+	private int query = 0;
+
+	/**
+	 * Listeners of the changes of the layer.
+	 */
+	private final EventListenerList listeners = new EventListenerList();
+
+	/**
+	 * True if the listeners are notified of every change, and true if there are
+	 * changes not notified yet.
+	 */
+	private boolean notify = true;
+	private boolean pendingChange = false;
+
+	/**
+	 * Annotation of the plot that draws the layer.
+	 */
+	private final PlotAnnotation plotAnnotation = new PlotAnnotation(this);
+
+	/**
+	 * Set while a chart is drawn without its annotation layers (see drawWithoutLayers).
+	 */
+	private static final ThreadLocal<Boolean> SKIPPED = new ThreadLocal<Boolean>();
+
+	/**
+	 * Adds an annotation over the previous ones. The bounds of images and
+	 * polygons are known; other annotations are drawn whatever the ranges of
+	 * the axes are, unless they are added with their bounds. Adding an annotation
+	 * that is already in the layer moves it over the others.
+	 * @param annotation The annotation
+	 */
+	public void add(XYAnnotation annotation) {
+		if(annotation instanceof XYImageAnnotation) {
+			XYImageAnnotation image = (XYImageAnnotation) annotation;
+			Image img = image.getImage();
+			int size = img == null ? -1 : Math.max(img.getWidth(null), img.getHeight(null));
+			if(size >= 0) {
+				margin = Math.max(margin, size + STROKE_MARGIN);
+				add(annotation, image.getX(), image.getY(), image.getX(), image.getY());
+				return;
+			}
+		}
+		else if(annotation instanceof XYPolygonAnnotation) {
+			double[] coordinates = ((XYPolygonAnnotation) annotation).getPolygonCoordinates();
+			double minX = Double.POSITIVE_INFINITY, minY = Double.POSITIVE_INFINITY;
+			double maxX = Double.NEGATIVE_INFINITY, maxY = Double.NEGATIVE_INFINITY;
+			for(int i = 0; i + 1 < coordinates.length; i += 2) {
+				minX = Math.min(minX, coordinates[i]);
+				maxX = Math.max(maxX, coordinates[i]);
+				minY = Math.min(minY, coordinates[i + 1]);
+				maxY = Math.max(maxY, coordinates[i + 1]);
+			}
+			add(annotation, minX, minY, maxX, maxY);
+			return;
+		}
+		add(annotation, Double.NaN, Double.NaN, Double.NaN, Double.NaN);
+	}
+
+	/**
+	 * Adds an annotation over the previous ones, indicating the rectangle it
+	 * covers in data coordinates (apart from its stroke). Adding an annotation
+	 * that is already in the layer moves it over the others.
+	 * @param annotation The annotation
+	 * @param x0 X coordinate of a corner of the rectangle
+	 * @param y0 Y coordinate of a corner of the rectangle
+	 * @param x1 X coordinate of the opposite corner
+	 * @param y1 Y coordinate of the opposite corner
+	 */
+	public void add(XYAnnotation annotation, double x0, double y0, double x1, double y1) {
+		Entry previous = entries.get(annotation);
+		if(previous != null) {
+			detach(previous);
+		}
+		Entry entry = new Entry(annotation, nextOrder++, x0, y0, x1, y1);
+		entries.put(annotation, entry);
+		drawingOrder.put(entry.order, entry);
+		if(cells != null) {
+			index(entry);
+		}
+		fireLayerChanged();
+	}
+
+	/**
+	 * Removes an annotation.
+	 * @param annotation The annotation (the same object that was added)
+	 * @return True if the annotation was in the layer
+	 */
+	public boolean remove(XYAnnotation annotation) {
+		Entry entry = entries.get(annotation);
+		if(entry == null) {
+			return false;
+		}
+		detach(entry);
+		fireLayerChanged();
+		return true;
+	}
+
+	private void detach(Entry entry) {
+		entries.remove(entry.annotation);
+		drawingOrder.remove(entry.order);
+		if(cells == null) {
+			return;
+		}
+		if(entry.inCells) {
+			int c0 = column(entry.minX), c1 = column(entry.maxX);
+			int r0 = row(entry.minY), r1 = row(entry.maxY);
+			for(int r = r0; r <= r1; r++) {
+				for(int c = c0; c <= c1; c++) {
+					removeFromCell(cells[r * columns + c], entry);
+				}
+			}
+		}
+		else if(unindexed.remove(entry) && entry.bounded && !insideGrid(entry)) {
+			outside--;
+		}
+	}
+
+	private static void removeFromCell(List<Entry> cell, Entry entry) {
+		int last = cell.size() - 1;
+		for(int i = last; i >= 0; i--) {
+			if(cell.get(i) == entry) {
+				cell.set(i, cell.get(last));
+				cell.remove(last);
+				return;
+			}
+		}
+	}
+
+	/**
+	 * Removes all the annotations.
+	 */
+	public void clear() {
+		if(!entries.isEmpty()) {
+			entries.clear();
+			drawingOrder.clear();
+			cells = null;
+			unindexed.clear();
+			outside = 0;
+			margin = STROKE_MARGIN;
+			fireLayerChanged();
+		}
+	}
+
+	/**
+	 * Returns the number of annotations of the layer.
+	 * @return The number of annotations
+	 */
+	public int size() {
+		return entries.size();
+	}
+
+	/**
+	 * Draws the annotations inside the data area of a plot that has already
+	 * been drawn. Only the annotations that may be visible in the ranges of the
+	 * axes are drawn.
+	 * @param g2 Graphics where the plot was drawn
+	 * @param plot The plot
+	 * @param dataArea Data area of the plot when it was drawn
+	 */
+	public void draw(Graphics2D g2, XYPlot plot, Rectangle2D dataArea) {
+		if(entries.isEmpty() || dataArea.isEmpty()) {
+			return;
+		}
+		ValueAxis domainAxis = plot.getDomainAxis();
+		ValueAxis rangeAxis = plot.getRangeAxis();
+		Shape clip = g2.getClip();
+		g2.clip(dataArea);
+		for(Entry entry : visible(plot, dataArea)) {
+			entry.annotation.draw(g2, plot, dataArea, domainAxis, rangeAxis, 0, null);
+		}
+		g2.setClip(clip);
+	}
+
+	/**
+	 * Finds the annotations that may be visible, in drawing order.
+	 */
+	private Iterable<Entry> visible(XYPlot plot, Rectangle2D dataArea) {
+		updateGrid();
+		if(cells == null) {
+			return drawingOrder.values();
+		}
+		double[] xs = visibleRange(plot.getDomainAxis(), plot.getDomainAxisEdge(), dataArea);
+		double[] ys = visibleRange(plot.getRangeAxis(), plot.getRangeAxisEdge(), dataArea);
+		double x0 = xs[0], x1 = xs[1], y0 = ys[0], y1 = ys[1];
+		if(x0 <= gridX && x1 >= gridX + columns * cellWidth && y0 <= gridY && y1 >= gridY + rows * cellHeight) {
+			return drawingOrder.values();
+		}
+		List<Entry> found = new ArrayList<Entry>();
+		query++;
+		if(x1 >= gridX && x0 <= gridX + columns * cellWidth && y1 >= gridY && y0 <= gridY + rows * cellHeight) {
+			int c0 = column(x0), c1 = column(x1);
+			int r0 = row(y0), r1 = row(y1);
+			for(int r = r0; r <= r1; r++) {
+				for(int c = c0; c <= c1; c++) {
+					for(Entry entry : cells[r * columns + c]) {
+						if(entry.query != query && entry.intersects(x0, y0, x1, y1)) {
+							entry.query = query;
+							found.add(entry);
+						}
+					}
+				}
+			}
+		}
+		for(Entry entry : unindexed) {
+			if(entry.intersects(x0, y0, x1, y1)) {
+				found.add(entry);
+			}
+		}
+		Collections.sort(found, DRAWING_ORDER);
+		return found;
+	}
+
+	/**
+	 * Returns the range of data values of an axis that covers the data area
+	 * extended by the margin, in ascending order.
+	 */
+	private double[] visibleRange(ValueAxis axis, RectangleEdge edge, Rectangle2D dataArea) {
+		double low, high;
+		if(RectangleEdge.isTopOrBottom(edge)) {
+			low = dataArea.getMinX() - margin;
+			high = dataArea.getMaxX() + margin;
+		}
+		else {
+			low = dataArea.getMinY() - margin;
+			high = dataArea.getMaxY() + margin;
+		}
+		double a = axis.java2DToValue(low, dataArea, edge);
+		double b = axis.java2DToValue(high, dataArea, edge);
+		if(Double.isNaN(a) || Double.isNaN(b)) {
+			return new double[] {Double.NEGATIVE_INFINITY, Double.POSITIVE_INFINITY};
+		}
+		return new double[] {Math.min(a, b), Math.max(a, b)};
+	}
+
+	/**
+	 * Builds the grid again when the number of annotations has changed a lot
+	 * since it was built, or when many are out of it.
+	 */
+	private void updateGrid() {
+		int n = entries.size();
+		if(n < MIN_INDEXED) {
+			if(cells != null) {
+				cells = null;
+				unindexed.clear();
+				outside = 0;
+			}
+			return;
+		}
+		if(cells != null && n <= 2 * indexed && n >= indexed / 4 && outside <= n / 4) {
+			return;
+		}
+		double minX = Double.POSITIVE_INFINITY, minY = Double.POSITIVE_INFINITY;
+		double maxX = Double.NEGATIVE_INFINITY, maxY = Double.NEGATIVE_INFINITY;
+		for(Entry entry : drawingOrder.values()) {
+			if(entry.bounded) {
+				minX = Math.min(minX, entry.minX);
+				minY = Math.min(minY, entry.minY);
+				maxX = Math.max(maxX, entry.maxX);
+				maxY = Math.max(maxY, entry.maxY);
+			}
+		}
+		int side = (int) Math.ceil(Math.sqrt(Math.min(Math.max(n / PER_CELL, 1), MAX_CELLS)));
+		columns = side;
+		rows = side;
+		gridX = minX <= maxX ? minX : 0;
+		gridY = minY <= maxY ? minY : 0;
+		cellWidth = cellSize(minX, maxX, columns);
+		cellHeight = cellSize(minY, maxY, rows);
+		@SuppressWarnings("unchecked")
+		List<Entry>[] grid = new List[columns * rows];
+		for(int i = 0; i < grid.length; i++) {
+			grid[i] = new ArrayList<Entry>(PER_CELL);
+		}
+		cells = grid;
+		unindexed.clear();
+		outside = 0;
+		indexed = n;
+		for(Entry entry : drawingOrder.values()) {
+			index(entry);
+		}
+	}
+
+	private static double cellSize(double min, double max, int cells) {
+		double size = (max - min) / cells;
+		if(!(size > 0) || Double.isInfinite(size)) {
+			return 1;
+		}
+		// Slightly larger, so the maximum falls in the last cell
+		return size * (1 + 1e-9);
+	}
+
+	/**
+	 * Puts an annotation in the cells it covers, or in unindexed.
+	 */
+	private void index(Entry entry) {
+		if(!entry.bounded || !insideGrid(entry)) {
+			entry.inCells = false;
+			unindexed.add(entry);
+			if(entry.bounded) {
+				outside++;
+			}
+			return;
+		}
+		int c0 = column(entry.minX), c1 = column(entry.maxX);
+		int r0 = row(entry.minY), r1 = row(entry.maxY);
+		if((long) (c1 - c0 + 1) * (r1 - r0 + 1) > MAX_SPAN) {
+			entry.inCells = false;
+			unindexed.add(entry);
+			return;
+		}
+		entry.inCells = true;
+		for(int r = r0; r <= r1; r++) {
+			for(int c = c0; c <= c1; c++) {
+				cells[r * columns + c].add(entry);
+			}
+		}
+	}
+
+	private boolean insideGrid(Entry entry) {
+		return entry.minX >= gridX && entry.maxX < gridX + columns * cellWidth
+				&& entry.minY >= gridY && entry.maxY < gridY + rows * cellHeight;
+	}
+
+	private int column(double x) {
+		return Math.max(0, Math.min(columns - 1, (int) Math.floor((x - gridX) / cellWidth)));
+	}
+
+	private int row(double y) {
+		return Math.max(0, Math.min(rows - 1, (int) Math.floor((y - gridY) / cellHeight)));
+	}
+
+	/**
+	 * Registers a listener of the changes of the layer.
+	 * @param listener The listener
+	 */
+	public void addChangeListener(ChartChangeListener listener) {
+		listeners.add(ChartChangeListener.class, listener);
+	}
+
+	/**
+	 * Deregisters a listener of the changes of the layer.
+	 * @param listener The listener
+	 */
+	public void removeChangeListener(ChartChangeListener listener) {
+		listeners.remove(ChartChangeListener.class, listener);
+	}
+
+	/**
+	 * Enables or disables the notification of changes to the listeners. When it is
+	 * enabled again a single change event is sent if something changed meanwhile.
+	 * @param notify True to notify every change
+	 */
+	public void setNotify(boolean notify) {
+		this.notify = notify;
+		if(notify && pendingChange) {
+			fireLayerChanged();
+		}
+	}
+
+	/**
+	 * Indicates if the listeners are notified of every change.
+	 * @return True if the changes are notified
+	 */
+	public boolean isNotify() {
+		return notify;
+	}
+
+	/**
+	 * Forgets the changes not notified yet, when another event already tells the
+	 * listeners that the whole chart changed.
+	 */
+	void discardPendingChange() {
+		pendingChange = false;
+	}
+
+	private void fireLayerChanged() {
+		if(!notify) {
+			pendingChange = true;
+			return;
+		}
+		pendingChange = false;
+		ChartChangeListener[] targets = listeners.getListeners(ChartChangeListener.class);
+		if(targets.length == 0) {
+			return;
+		}
+		ChartChangeEvent event = new ChartChangeEvent(this);
+		for(ChartChangeListener listener : targets) {
+			listener.chartChanged(event);
+		}
+	}
+
+	/**
+	 * Returns the annotation that draws the layer when it is added to a plot.
+	 * @return The annotation
+	 */
+	XYAnnotation getPlotAnnotation() {
+		return plotAnnotation;
+	}
+
+	/**
+	 * Runs a drawing of a chart on the calling thread without the annotation
+	 * layers of its plot, which are drawn later over the chart.
+	 * @param drawing The drawing
+	 */
+	static void drawWithoutLayers(Runnable drawing) {
+		Boolean previous = SKIPPED.get();
+		SKIPPED.set(Boolean.TRUE);
+		try {
+			drawing.run();
+		} finally {
+			SKIPPED.set(previous);
+		}
+	}
+
+	/**
+	 * Annotation of a plot that draws a layer. A copy of the plot draws the same
+	 * layer; the layer is not serialized.
+	 */
+	static final class PlotAnnotation extends AbstractXYAnnotation {
+
+		private static final long serialVersionUID = 1L;
+
+		private final transient AnnotationLayer layer;
+
+		PlotAnnotation(AnnotationLayer layer) {
+			this.layer = layer;
+		}
+
+		@Override
+		public void draw(Graphics2D g2, XYPlot plot, Rectangle2D dataArea, ValueAxis domainAxis, ValueAxis rangeAxis,
+				int rendererIndex, PlotRenderingInfo info) {
+			if(layer != null && SKIPPED.get() == null) {
+				layer.draw(g2, plot, dataArea);
+			}
+		}
+
+		@Override
+		public boolean equals(Object obj) {
+			return obj instanceof PlotAnnotation && ((PlotAnnotation) obj).layer == layer;
+		}
+
+		@Override
+		public int hashCode() {
+			return System.identityHashCode(layer);
+		}
+	}
+}
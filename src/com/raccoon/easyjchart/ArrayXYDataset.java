@@ -0,0 +1,549 @@
+package com.raccoon.easyjchart;
+
+import java.nio.DoubleBuffer;
+import java.util.Arrays;
+import java.util.List;
+
+import org.jfree.data.DomainInfo;
+import org.jfree.data.DomainOrder;
+import org.jfree.data.Range;
+import org.jfree.data.RangeInfo;
+import org.jfree.data.general.DatasetUtilities;
+import org.jfree.data.xy.AbstractXYDataset;
+import org.jfree.data.xy.XYDomainInfo;
+import org.jfree.data.xy.XYRangeInfo;
+
+/**
+ * Dataset that holds a single function in two primitive arrays (one for the X
+ * coordinates and one for the Y coordinates). A point costs 16 bytes and no
+ * object is created per point, unlike XYSeries.
+ * <p>
+ * The bounds of the coordinates are kept up to date as points are appended, so
+ * the auto range of the axes doesn't go through all the points after every
+ * change. The bounds of the Y coordinates in a part of a sorted function (when
+ * the X axis is zoomed) are found in O(log n) with a MinMaxTree.
+ */
+public class ArrayXYDataset extends AbstractXYDataset implements DomainInfo, RangeInfo, XYDomainInfo, XYRangeInfo {
+
+	private static final long serialVersionUID = -3325407935185569720L;
+
+	/**
+	 * Name of the function (key of the only series of the dataset).
+	 */
+	private final Comparable key;
+
+	/**
+	 * True if the points are kept sorted by the X coordinate.
+	 */
+	private final boolean autoSort;
+
+	/**
+	 * True while the points are in ascending order of the X coordinate (always if
+	 * autoSort). The renderers then look for the visible points with a binary
+	 * search instead of going through all of them.
+	 */
+	private boolean ascending;
+
+	/**
+	 * X coordinates of the points.
+	 */
+	private double[] x;
+
+	/**
+	 * Y coordinates of the points.
+	 */
+	private double[] y;
+
+	/**
+	 * Number of points stored in the arrays.
+	 */
+	private int count;
+
+	/**
+	 * Bounds of the coordinates of the points, NaN excluded (+Infinity and
+	 * -Infinity when there are no values).
+	 */
+	private double minX, maxX, minY, maxY;
+
+	/**
+	 * Bounds of the Y coordinates by blocks of points. It is built the first time
+	 * they are needed and extended with the appended points; it is discarded
+	 * when points are inserted before the last one.
+	 */
+	private transient MinMaxTree tree;
+
+	/**
+	 * True if the listeners are notified of every change.
+	 */
+	private boolean notify = true;
+
+	/**
+	 * True if there are changes not notified yet to the listeners.
+	 */
+	private boolean pendingChange = false;
+
+	/**
+	 * Creates a dataset copying the coordinates of the arrays.
+	 * @param key Name of the function
+	 * @param x X coordinates
+	 * @param y Y coordinates
+	 * @param autoSort True to sort the points by the X coordinate (continuous functions)
+	 */
+	public ArrayXYDataset(Comparable key, double[] x, double[] y, boolean autoSort) {
+		this(key, x.clone(), y.clone(), checkLength(x, y), autoSort);
+	}
+
+	/**
+	 * Creates a dataset copying the remaining coordinates of the buffers.
+	 * The position of the buffers is not modified.
+	 * @param key Name of the function
+	 * @param x X coordinates
+	 * @param y Y coordinates
+	 * @param autoSort True to sort the points by the X coordinate (continuous functions)
+	 */
+	public ArrayXYDataset(Comparable key, DoubleBuffer x, DoubleBuffer y, boolean autoSort) {
+		this(key, toArray(x), toArray(y), checkLength(x.remaining(), y.remaining()), autoSort);
+	}
+
+	/**
+	 * Creates a dataset that takes ownership of the arrays (they are not copied).
+	 * @param key Name of the function
+	 * @param x X coordinates
+	 * @param y Y coordinates
+	 * @param count Number of valid points in the arrays
+	 * @param autoSort True to sort the points by the X coordinate (continuous functions)
+	 */
+	ArrayXYDataset(Comparable key, double[] x, double[] y, int count, boolean autoSort) {
+		this.key = key;
+		this.x = x;
+		this.y = y;
+		this.count = count;
+		this.autoSort = autoSort;
+		if(autoSort) {
+			sortByX(this.x, this.y, count);
+		}
+		this.ascending = autoSort || isAscending(this.x, 0, count);
+		resetBounds();
+		extendBounds(0, count);
+	}
+
+	@Override
+	public int getSeriesCount() {
+		return 1;
+	}
+
+	@Override
+	public Comparable getSeriesKey(int series) {
+		return key;
+	}
+
+	@Override
+	public int getItemCount(int series) {
+		return count;
+	}
+
+	@Override
+	public Number getX(int series, int item) {
+		return Double.valueOf(getXValue(series, item));
+	}
+
+	@Override
+	public Number getY(int series, int item) {
+		return Double.valueOf(getYValue(series, item));
+	}
+
+	@Override
+	public double getXValue(int series, int item) {
+		return x[item];
+	}
+
+	@Override
+	public double getYValue(int series, int item) {
+		return y[item];
+	}
+
+	/**
+	 * Returns ASCENDING if the points are sorted by the X coordinate, either
+	 * because the dataset sorts them or because they were given in that order.
+	 * @return The order of the X coordinates
+	 */
+	@Override
+	public DomainOrder getDomainOrder() {
+		return ascending ? DomainOrder.ASCENDING : DomainOrder.NONE;
+	}
+
+	/**
+	 * Appends a point to the function. If the points are sorted, it is inserted
+	 * after the points with the same or a lower X coordinate.
+	 * @param px X coordinate
+	 * @param py Y coordinate
+	 */
+	public void add(double px, double py) {
+		ensureCapacity(count + 1);
+		int pos = count;
+		if(autoSort) {
+			while(pos > 0 && px < x[pos - 1]) {
+				pos--;
+			}
+			System.arraycopy(x, pos, x, pos + 1, count - pos);
+			System.arraycopy(y, pos, y, pos + 1, count - pos);
+			if(pos < count) {
+				tree = null;
+			}
+		}
+		else if(ascending && count > 0 && !(px >= x[count - 1])) {
+			ascending = false;
+		}
+		x[pos] = px;
+		y[pos] = py;
+		count++;
+		extendBounds(pos, pos + 1);
+		changed();
+	}
+
+	/**
+	 * Appends all the points of the arrays to the function sending a single
+	 * change event to the listeners.
+	 * @param px X coordinates
+	 * @param py Y coordinates
+	 */
+	public void addAll(double[] px, double[] py) {
+		addAll(px, py, 0, checkLength(px, py));
+	}
+
+	/**
+	 * Appends a range of points of the arrays to the function sending a single
+	 * change event to the listeners.
+	 * @param px X coordinates
+	 * @param py Y coordinates
+	 * @param offset Index of the first point to append
+	 * @param length Number of points to append
+	 */
+	public void addAll(double[] px, double[] py, int offset, int length) {
+		if(offset < 0 || length < 0 || offset + length > px.length || offset + length > py.length) {
+			throw new IndexOutOfBoundsException("offset " + offset + ", length " + length);
+		}
+		if(length == 0) {
+			return;
+		}
+		ensureCapacity(count + length);
+		System.arraycopy(px, offset, x, count, length);
+		System.arraycopy(py, offset, y, count, length);
+		int old = count;
+		count += length;
+		extendBounds(old, count);
+		if(autoSort && sortAppended(x, y, old, count)) {
+			tree = null;
+		}
+		else if(ascending) {
+			ascending = isAscending(x, Math.max(old - 1, 0), count);
+		}
+		changed();
+	}
+
+	/**
+	 * Removes all the points of the function. The storage is kept for reuse.
+	 */
+	public void clear() {
+		if(count > 0) {
+			count = 0;
+			ascending = true;
+			tree = null;
+			resetBounds();
+			changed();
+		}
+	}
+
+	private void resetBounds() {
+		minX = minY = Double.POSITIVE_INFINITY;
+		maxX = maxY = Double.NEGATIVE_INFINITY;
+	}
+
+	/**
+	 * Includes the points in [from, to) in the bounds.
+	 */
+	private void extendBounds(int from, int to) {
+		for(int i = from; i < to; i++) {
+			double px = x[i];
+			double py = y[i];
+			if(px < minX) {
+				minX = px;
+			}
+			if(px > maxX) {
+				maxX = px;
+			}
+			if(py < minY) {
+				minY = py;
+			}
+			if(py > maxY) {
+				maxY = py;
+			}
+		}
+	}
+
+	@Override
+	public Range getDomainBounds(boolean includeInterval) {
+		return minX <= maxX ? new Range(minX, maxX) : null;
+	}
+
+	@Override
+	public Range getDomainBounds(List visibleSeriesKeys, boolean includeInterval) {
+		return visibleSeriesKeys.contains(key) ? getDomainBounds(includeInterval) : null;
+	}
+
+	@Override
+	public double getDomainLowerBound(boolean includeInterval) {
+		return minX <= maxX ? minX : Double.NaN;
+	}
+
+	@Override
+	public double getDomainUpperBound(boolean includeInterval) {
+		return minX <= maxX ? maxX : Double.NaN;
+	}
+
+	@Override
+	public Range getRangeBounds(boolean includeInterval) {
+		return minY <= maxY ? new Range(minY, maxY) : null;
+	}
+
+	/**
+	 * Returns the bounds of the Y coordinates of the points whose X coordinate is
+	 * in the indicated range. If the range includes the whole function they are
+	 * already known; otherwise, if the points are sorted, they are found in the
+	 * MinMaxTree, and if they aren't, going through the points.
+	 * @param visibleSeriesKeys Keys of the visible series
+	 * @param xRange Range of the X coordinates
+	 * @param includeInterval Ignored (the points have no intervals)
+	 * @return The bounds, or null if there are no points in the range
+	 */
+	@Override
+	public Range getRangeBounds(List visibleSeriesKeys, Range xRange, boolean includeInterval) {
+		if(!visibleSeriesKeys.contains(key) || !(minX <= maxX)) {
+			return null;
+		}
+		if(xRange.getLowerBound() <= minX && xRange.getUpperBound() >= maxX) {
+			return getRangeBounds(includeInterval);
+		}
+		if(!ascending) {
+			return DatasetUtilities.iterateToFindRangeBounds(this, visibleSeriesKeys, xRange, includeInterval);
+		}
+		int first = search(xRange.getLowerBound(), false);
+		int last = search(xRange.getUpperBound(), true) - 1;
+		if(first > last) {
+			return null;
+		}
+		if(tree == null) {
+			tree = new MinMaxTree(this);
+		}
+		else {
+			tree.append(count);
+		}
+		return tree.getBounds(first, last);
+	}
+
+	@Override
+	public double getRangeLowerBound(boolean includeInterval) {
+		return minY <= maxY ? minY : Double.NaN;
+	}
+
+	@Override
+	public double getRangeUpperBound(boolean includeInterval) {
+		return minY <= maxY ? maxY : Double.NaN;
+	}
+
+	/**
+	 * Finds the first point with an X coordinate greater than or equal to the
+	 * value (only greater if after is true). The points must be sorted.
+	 */
+	private int search(double value, boolean after) {
+		int low = 0, high = count;
+		while(low < high) {
+			int mid = (low + high) >>> 1;
+			if(x[mid] < value || (after && x[mid] == value)) {
+				low = mid + 1;
+			}
+			else {
+				high = mid;
+			}
+		}
+		return low;
+	}
+
+	/**
+	 * Makes room for the indicated number of points, so that following appends
+	 * don't need to grow the arrays.
+	 * @param capacity Number of points
+	 */
+	public void ensureCapacity(int capacity) {
+		if(capacity > x.length) {
+			int newCapacity = Math.max(capacity, x.length + (x.length >> 1));
+			x = Arrays.copyOf(x, newCapacity);
+			y = Arrays.copyOf(y, newCapacity);
+		}
+	}
+
+	/**
+	 * Enables or disables the notification of changes to the listeners. When it is
+	 * enabled again a single change event is sent if something changed meanwhile.
+	 * @param notify True to notify every change
+	 */
+	public void setNotify(boolean notify) {
+		this.notify = notify;
+		if(notify && pendingChange) {
+			changed();
+		}
+	}
+
+	/**
+	 * Indicates if the listeners are notified of every change.
+	 * @return True if the changes are notified
+	 */
+	public boolean isNotify() {
+		return notify;
+	}
+
+	/**
+	 * Notifies a change to the listeners, or delays it if the notification is disabled.
+	 */
+	private void changed() {
+		if(notify) {
+			pendingChange = false;
+			fireDatasetChanged();
+		}
+		else {
+			pendingChange = true;
+		}
+	}
+
+	/**
+	 * Indicates if the points are kept sorted by the X coordinate.
+	 * @return True if the points are sorted
+	 */
+	public boolean isAutoSort() {
+		return autoSort;
+	}
+
+	private static int checkLength(double[] x, double[] y) {
+		return checkLength(x.length, y.length);
+	}
+
+	private static int checkLength(int nx, int ny) {
+		if(nx != ny) {
+			throw new IllegalArgumentException("X and Y must have the same number of points (" + nx + " != " + ny + ")");
+		}
+		return nx;
+	}
+
+	private static double[] toArray(DoubleBuffer buffer) {
+		double[] array = new double[buffer.remaining()];
+		buffer.duplicate().get(array);
+		return array;
+	}
+
+	/**
+	 * Checks if the X coordinates in [from, to) are in ascending order. NaN is
+	 * considered out of order.
+	 */
+	private static boolean isAscending(double[] x, int from, int to) {
+		for(int i = from + 1; i < to; i++) {
+			if(!(x[i] >= x[i - 1])) {
+				return false;
+			}
+		}
+		return true;
+	}
+
+	/**
+	 * Sorts the points by the X coordinate keeping the relative order of equal
+	 * coordinates (as XYSeries does). Already sorted data is detected in linear time.
+	 */
+	static void sortByX(double[] x, double[] y, int count) {
+		int i = 1;
+		while(i < count && !(x[i] < x[i - 1])) {
+			i++;
+		}
+		if(i >= count) {
+			return;
+		}
+		double[] tx = new double[count];
+		double[] ty = new double[count];
+		mergeSort(x, y, tx, ty, 0, count);
+	}
+
+	/**
+	 * Sorts the points appended in [from, to) and merges them with the already
+	 * sorted points in [0, from).
+	 * @return True if points were inserted between the points in [0, from)
+	 */
+	private static boolean sortAppended(double[] x, double[] y, int from, int to) {
+		int i = from + 1;
+		while(i < to && !(x[i] < x[i - 1])) {
+			i++;
+		}
+		boolean appendedSorted = i >= to;
+		if(appendedSorted && (from == 0 || !(x[from] < x[from - 1]))) {
+			return false;
+		}
+		double[] tx = new double[to];
+		double[] ty = new double[to];
+		if(!appendedSorted) {
+			mergeSort(x, y, tx, ty, from, to);
+		}
+		if(from > 0 && x[from] < x[from - 1]) {
+			merge(x, y, tx, ty, 0, from, to);
+			return true;
+		}
+		return false;
+	}
+
+	private static void mergeSort(double[] x, double[] y, double[] tx, double[] ty, int from, int to) {
+		if(to - from <= 16) {
+			for(int i = from + 1; i < to; i++) {
+				double kx = x[i];
+				double ky = y[i];
+				int j = i - 1;
+				while(j >= from && x[j] > kx) {
+					x[j + 1] = x[j];
+					y[j + 1] = y[j];
+					j--;
+				}
+				x[j + 1] = kx;
+				y[j + 1] = ky;
+			}
+			return;
+		}
+		int mid = (from + to) >>> 1;
+		mergeSort(x, y, tx, ty, from, mid);
+		mergeSort(x, y, tx, ty, mid, to);
+		if(x[mid] < x[mid - 1]) {
+			merge(x, y, tx, ty, from, mid, to);
+		}
+	}
+
+	/**
+	 * Merges the sorted runs [from, mid) and [mid, to) using tx/ty as scratch space.
+	 */
+	private static void merge(double[] x, double[] y, double[] tx, double[] ty, int from, int mid, int to) {
+		System.arraycopy(x, from, tx, from, to - from);
+		System.arraycopy(y, from, ty, from, to - from);
+		int a = from, b = mid, k = from;
+		while(a < mid && b < to) {
+			if(tx[b] < tx[a]) {
+				x[k] = tx[b];
+				y[k++] = ty[b++];
+			}
+			else {
+				x[k] = tx[a];
+				y[k++] = ty[a++];
+			}
+		}
+		while(a < mid) {
+			x[k] = tx[a];
+			y[k++] = ty[a++];
+		}
+		while(b < to) {
+			x[k] = tx[b];
+			y[k++] = ty[b++];
+		}
+	}
+}
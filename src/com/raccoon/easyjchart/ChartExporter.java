@@ -0,0 +1,267 @@
+package com.raccoon.easyjchart;
+
+import java.awt.AlphaComposite;
+import java.awt.Color;
+import java.awt.Graphics2D;
+import java.awt.Rectangle;
+import java.awt.image.BufferedImage;
+import java.io.BufferedWriter;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+import javax.imageio.ImageIO;
+import javax.imageio.stream.ImageOutputStream;
+import javax.imageio.stream.MemoryCacheImageOutputStream;
+
+/**
+ * Renders charts to image files without a screen (it works with
+ * java.awt.headless=true). A single chart can be written with write, and many
+ * charts can be written in parallel with an exporter instance, which renders
+ * them on a fixed pool of worker threads. Every thread reuses its own image
+ * buffer while the size doesn't change, and the images are encoded directly to
+ * the output streams.
+ */
+public class ChartExporter {
+
+	/**
+	 * Image formats supported.
+	 */
+	public enum Format {
+		PNG,
+		JPEG,
+		/**
+		 * SVG document with the chart drawn as vectors (images in the chart are
+		 * embedded as PNG).
+		 */
+		SVG
+	}
+
+	/**
+	 * Gives the stream where each chart of a batch is written.
+	 */
+	public interface OutputFactory {
+
+		/**
+		 * Opens the stream for a chart. It is closed by the exporter.
+		 * @param index Position of the chart in the batch
+		 * @return The stream where the chart is written
+		 * @throws IOException If the stream can't be opened
+		 */
+		OutputStream open(int index) throws IOException;
+	}
+
+	/**
+	 * Summary of a batch export.
+	 */
+	public static class Result {
+
+		private final int exported;
+		private final List<Exception> failures;
+		private final long elapsedNanos;
+
+		Result(int exported, List<Exception> failures, long elapsedNanos) {
+			this.exported = exported;
+			this.failures = failures;
+			this.elapsedNanos = elapsedNanos;
+		}
+
+		/**
+		 * @return Number of charts written
+		 */
+		public int getExported() {
+			return exported;
+		}
+
+		/**
+		 * @return Errors of the charts that couldn't be written
+		 */
+		public List<Exception> getFailures() {
+			return failures;
+		}
+
+		/**
+		 * @return Time taken by the whole batch in nanoseconds
+		 */
+		public long getElapsedNanos() {
+			return elapsedNanos;
+		}
+
+		/**
+		 * @return Charts written per second
+		 */
+		public double getChartsPerSecond() {
+			return elapsedNanos == 0 ? 0 : exported * 1e9 / elapsedNanos;
+		}
+
+		@Override
+		public String toString() {
+			return String.format("%d charts in %.1f ms (%.1f charts/s, %d failed)",
+					exported, elapsedNanos / 1e6, getChartsPerSecond(), failures.size());
+		}
+	}
+
+	/**
+	 * Image buffers of the current thread: one with alpha and one without it.
+	 */
+	private static final ThreadLocal<BufferedImage[]> BUFFERS = new ThreadLocal<BufferedImage[]>() {
+		@Override
+		protected BufferedImage[] initialValue() {
+			return new BufferedImage[2];
+		}
+	};
+
+	/**
+	 * Worker threads of the batch exports.
+	 */
+	private final ExecutorService workers;
+
+	/**
+	 * Creates an exporter with a worker per available processor.
+	 */
+	public ChartExporter() {
+		this(Runtime.getRuntime().availableProcessors());
+	}
+
+	/**
+	 * Creates an exporter.
+	 * @param threads Number of worker threads
+	 */
+	public ChartExporter(int threads) {
+		workers = Executors.newFixedThreadPool(threads);
+	}
+
+	/**
+	 * Writes many charts in parallel. The charts must not be modified while they
+	 * are exported, and each chart must appear only once in the list.
+	 * @param charts Charts to write
+	 * @param format Format of the images
+	 * @param width Width of the images
+	 * @param height Height of the images
+	 * @param outputs Gives the stream of each chart
+	 * @return The summary of the export
+	 * @throws InterruptedException If the thread is interrupted while waiting
+	 */
+	public Result exportAll(List<Grafica> charts, final Format format, final int width, final int height,
+			final OutputFactory outputs) throws InterruptedException {
+		long start = System.nanoTime();
+		List<Callable<Void>> tasks = new ArrayList<Callable<Void>>(charts.size());
+		for(int i = 0; i < charts.size(); i++) {
+			final int index = i;
+			final Grafica chart = charts.get(i);
+			tasks.add(new Callable<Void>() {
+				public Void call() throws IOException {
+					OutputStream out = outputs.open(index);
+					try {
+						write(chart, format, out, width, height);
+					} finally {
+						out.close();
+					}
+					return null;
+				}
+			});
+		}
+
+		List<Exception> failures = new ArrayList<Exception>();
+		int exported = 0;
+		for(Future<Void> result : workers.invokeAll(tasks)) {
+			try {
+				result.get();
+				exported++;
+			} catch (ExecutionException e) {
+				failures.add(e.getCause() instanceof Exception ? (Exception) e.getCause() : e);
+			}
+		}
+		return new Result(exported, failures, System.nanoTime() - start);
+	}
+
+	/**
+	 * Stops the worker threads once the pending exports finish.
+	 */
+	public void shutdown() {
+		workers.shutdown();
+	}
+
+	/**
+	 * Writes a chart to a stream. The stream is not closed.
+	 * @param chart Chart to write
+	 * @param format Format of the image
+	 * @param out Stream where the image is written
+	 * @param width Width of the image
+	 * @param height Height of the image
+	 * @throws IOException If the image can't be written
+	 */
+	public static void write(Grafica chart, Format format, OutputStream out, int width, int height) throws IOException {
+		if(width <= 0 || height <= 0) {
+			throw new IllegalArgumentException("Invalid size: " + width + "x" + height);
+		}
+		if(format == Format.SVG) {
+			writeSvg(chart, out, width, height);
+			return;
+		}
+		BufferedImage image = render(chart, width, height, format != Format.JPEG);
+		encode(image, format == Format.PNG ? "png" : "jpeg", out);
+	}
+
+	/**
+	 * Paints a chart in the image buffer of the current thread.
+	 */
+	private static BufferedImage render(Grafica chart, int width, int height, boolean alpha) {
+		BufferedImage[] buffers = BUFFERS.get();
+		int slot = alpha ? 0 : 1;
+		BufferedImage image = buffers[slot];
+		if(image == null || image.getWidth() != width || image.getHeight() != height) {
+			image = new BufferedImage(width, height, alpha ? BufferedImage.TYPE_INT_ARGB : BufferedImage.TYPE_INT_RGB);
+			buffers[slot] = image;
+		}
+		Graphics2D g2 = image.createGraphics();
+		try {
+			if(alpha) {
+				g2.setComposite(AlphaComposite.Clear);
+				g2.fillRect(0, 0, width, height);
+				g2.setComposite(AlphaComposite.SrcOver);
+			}
+			else {
+				g2.setColor(Color.WHITE);
+				g2.fillRect(0, 0, width, height);
+			}
+			chart.pintar(g2, new Rectangle(0, 0, width, height));
+		} finally {
+			g2.dispose();
+		}
+		return image;
+	}
+
+	/**
+	 * Encodes an image into a stream, buffering in memory instead of in the
+	 * temporary files ImageIO would use by default.
+	 */
+	private static void encode(BufferedImage image, String format, OutputStream out) throws IOException {
+		ImageOutputStream stream = new MemoryCacheImageOutputStream(out);
+		try {
+			if(!ImageIO.write(image, format, stream)) {
+				throw new IOException("No image writer for " + format);
+			}
+		} finally {
+			stream.close();
+		}
+	}
+
+	/**
+	 * Paints a chart on an SVG document written straight into the stream.
+	 */
+	private static void writeSvg(Grafica chart, OutputStream out, int width, int height) throws IOException {
+		Writer writer = new BufferedWriter(new OutputStreamWriter(out, "UTF-8"), 1 << 16);
+		SvgGraphics2D g2 = new SvgGraphics2D(writer, width, height);
+		chart.pintar(g2, new Rectangle(0, 0, width, height));
+		g2.finish();
+	}
+}
@@ -0,0 +1,382 @@
+package com.raccoon.easyjchart;
+
+import java.lang.management.ManagementFactory;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.atomic.LongAdder;
+
+import javax.management.JMException;
+import javax.management.MBeanServer;
+import javax.management.ObjectName;
+
+/**
+ * Measurements of the paints and updates of a chart: paint latency histogram,
+ * points stored and rendered, panel repaints, plot updates, annotation changes
+ * and time spent notifying changes. The metrics of each chart are created when
+ * they are enabled (see Grafica.setMetricsEnabled) and registered as an MBean
+ * named com.raccoon.easyjchart:type=Chart,name=...; the metrics of all the
+ * charts are added up in getTotal(), registered as
+ * com.raccoon.easyjchart:type=Charts,name=total. The points stored, rendered
+ * and of the last update of the total are the sum of those of the charts whose
+ * metrics are enabled. The metrics of a chart stay registered until they are
+ * disabled, so they must be disabled before the chart is discarded.
+ * <p>
+ * The counters can be updated from any thread.
+ */
+public class ChartMetrics implements ChartMetricsMBean {
+
+	/**
+	 * JMX domain of the MBeans.
+	 */
+	public static final String DOMAIN = "com.raccoon.easyjchart";
+
+	/**
+	 * Buckets of the histogram, of powers of two microseconds (up to 2^24 us, 16 s).
+	 */
+	private static final int BUCKETS = 25;
+
+	private static final AtomicLong IDS = new AtomicLong();
+
+	private static volatile ChartMetrics total;
+
+	/**
+	 * Metrics where these ones are added up (null for the total).
+	 */
+	private final ChartMetrics parent;
+
+	private final String name;
+	private ObjectName objectName;
+
+	private final AtomicLongArray paintHistogram = new AtomicLongArray(BUCKETS);
+	private final LongAdder paints = new LongAdder();
+	private final LongAdder paintNanos = new LongAdder();
+	private final AtomicLong paintMaxNanos = new AtomicLong();
+	private volatile long pointsStored;
+	private volatile long pointsRendered;
+
+	private final LongAdder repaints = new LongAdder();
+	private final LongAdder redraws = new LongAdder();
+
+	private final LongAdder updates = new LongAdder();
+	private final LongAdder updateNanos = new LongAdder();
+	private volatile long lastUpdatePoints;
+
+	private final LongAdder annotationChanges = new LongAdder();
+	private final LongAdder annotationNanos = new LongAdder();
+	private final LongAdder notificationNanos = new LongAdder();
+
+	/**
+	 * Metrics of the charts added up in these ones (empty except in the total).
+	 */
+	private final CopyOnWriteArrayList<ChartMetrics> charts = new CopyOnWriteArrayList<ChartMetrics>();
+
+	private final CopyOnWriteArrayList<ChartMetricsListener> listeners = new CopyOnWriteArrayList<ChartMetricsListener>();
+
+	private ChartMetrics(ChartMetrics parent, String name) {
+		this.parent = parent;
+		this.name = name;
+		if(parent != null) {
+			parent.charts.add(this);
+		}
+	}
+
+	/**
+	 * Creates the metrics of a chart.
+	 * @param title Title of the chart (it may be null)
+	 */
+	ChartMetrics(String title) {
+		this(getTotal(), (title == null ? "chart" : title) + "#" + IDS.incrementAndGet());
+	}
+
+	/**
+	 * Returns the metrics of all the charts, registering its MBean the first time.
+	 * @return The aggregated metrics
+	 */
+	public static ChartMetrics getTotal() {
+		ChartMetrics metrics = total;
+		if(metrics == null) {
+			synchronized(ChartMetrics.class) {
+				metrics = total;
+				if(metrics == null) {
+					metrics = new ChartMetrics(null, "total");
+					metrics.register("Charts");
+					total = metrics;
+				}
+			}
+		}
+		return metrics;
+	}
+
+	/**
+	 * Returns the name of these metrics (the title of the chart and a number).
+	 * @return The name
+	 */
+	public String getName() {
+		return name;
+	}
+
+	/**
+	 * Registers a listener of the measurements.
+	 * @param listener The listener
+	 */
+	public void addListener(ChartMetricsListener listener) {
+		listeners.add(listener);
+	}
+
+	/**
+	 * Deregisters a listener of the measurements.
+	 * @param listener The listener
+	 */
+	public void removeListener(ChartMetricsListener listener) {
+		listeners.remove(listener);
+	}
+
+	void recordPaint(Grafica chart, long nanos, long stored, long rendered) {
+		paints.increment();
+		paintNanos.add(nanos);
+		long max;
+		while(nanos > (max = paintMaxNanos.get()) && !paintMaxNanos.compareAndSet(max, nanos)) {
+			// Retry with the new maximum
+		}
+		paintHistogram.incrementAndGet(bucket(nanos));
+		if(parent != null) {
+			pointsStored = stored;
+			pointsRendered = rendered;
+		}
+		for(ChartMetricsListener listener : listeners) {
+			listener.chartPainted(chart, nanos, stored, rendered);
+		}
+		if(parent != null) {
+			parent.recordPaint(chart, nanos, stored, rendered);
+		}
+	}
+
+	void recordRepaint(Grafica chart, boolean redrawn) {
+		repaints.increment();
+		if(redrawn) {
+			redraws.increment();
+		}
+		for(ChartMetricsListener listener : listeners) {
+			listener.panelRepainted(chart, redrawn);
+		}
+		if(parent != null) {
+			parent.recordRepaint(chart, redrawn);
+		}
+	}
+
+	void recordUpdate(Grafica chart, int nPlot, int points, long nanos, long notifyNanos) {
+		updates.increment();
+		updateNanos.add(nanos);
+		notificationNanos.add(notifyNanos);
+		if(parent != null) {
+			lastUpdatePoints = points;
+		}
+		for(ChartMetricsListener listener : listeners) {
+			listener.plotUpdated(chart, nPlot, points, nanos, notifyNanos);
+		}
+		if(parent != null) {
+			parent.recordUpdate(chart, nPlot, points, nanos, notifyNanos);
+		}
+	}
+
+	void recordAnnotationChange(Grafica chart, int annotations, long nanos) {
+		annotationChanges.increment();
+		annotationNanos.add(nanos);
+		for(ChartMetricsListener listener : listeners) {
+			listener.annotationsChanged(chart, annotations, nanos);
+		}
+		if(parent != null) {
+			parent.recordAnnotationChange(chart, annotations, nanos);
+		}
+	}
+
+	private static int bucket(long nanos) {
+		long micros = nanos / 1000;
+		int bucket = micros < 2 ? 0 : 63 - Long.numberOfLeadingZeros(micros);
+		return Math.min(bucket, BUCKETS - 1);
+	}
+
+	public long getPaintCount() {
+		return paints.sum();
+	}
+
+	public double getPaintTimeMeanMillis() {
+		long count = paints.sum();
+		return count == 0 ? 0 : paintNanos.sum() / 1e6 / count;
+	}
+
+	public double getPaintTimeMaxMillis() {
+		return paintMaxNanos.get() / 1e6;
+	}
+
+	public double getPaintTime50thPercentileMillis() {
+		return percentile(0.5);
+	}
+
+	public double getPaintTime90thPercentileMillis() {
+		return percentile(0.9);
+	}
+
+	public double getPaintTime99thPercentileMillis() {
+		return percentile(0.99);
+	}
+
+	/**
+	 * Estimates a percentile as the upper limit of the bucket where it falls.
+	 */
+	private double percentile(double fraction) {
+		long[] histogram = getPaintTimeHistogram();
+		long count = 0;
+		for(long c : histogram) {
+			count += c;
+		}
+		if(count == 0) {
+			return 0;
+		}
+		long rank = (long) Math.ceil(fraction * count);
+		long accumulated = 0;
+		for(int i = 0; i < histogram.length; i++) {
+			accumulated += histogram[i];
+			if(accumulated >= rank) {
+				return Math.min((1L << (i + 1)) / 1000.0, getPaintTimeMaxMillis());
+			}
+		}
+		return getPaintTimeMaxMillis();
+	}
+
+	public long[] getPaintTimeHistogram() {
+		long[] histogram = new long[BUCKETS];
+		for(int i = 0; i < BUCKETS; i++) {
+			histogram[i] = paintHistogram.get(i);
+		}
+		return histogram;
+	}
+
+	public long getPointsStored() {
+		if(parent != null) {
+			return pointsStored;
+		}
+		long sum = 0;
+		for(ChartMetrics chart : charts) {
+			sum += chart.pointsStored;
+		}
+		return sum;
+	}
+
+	public long getPointsRendered() {
+		if(parent != null) {
+			return pointsRendered;
+		}
+		long sum = 0;
+		for(ChartMetrics chart : charts) {
+			sum += chart.pointsRendered;
+		}
+		return sum;
+	}
+
+	public long getRepaintCount() {
+		return repaints.sum();
+	}
+
+	public long getRedrawCount() {
+		return redraws.sum();
+	}
+
+	public long getUpdateCount() {
+		return updates.sum();
+	}
+
+	public double getUpdateTimeMillis() {
+		return updateNanos.sum() / 1e6;
+	}
+
+	public long getLastUpdatePoints() {
+		if(parent != null) {
+			return lastUpdatePoints;
+		}
+		long sum = 0;
+		for(ChartMetrics chart : charts) {
+			sum += chart.lastUpdatePoints;
+		}
+		return sum;
+	}
+
+	public long getAnnotationChangeCount() {
+		return annotationChanges.sum();
+	}
+
+	public double getAnnotationTimeMillis() {
+		return annotationNanos.sum() / 1e6;
+	}
+
+	public double getNotificationTimeMillis() {
+		return notificationNanos.sum() / 1e6;
+	}
+
+	public void reset() {
+		for(int i = 0; i < BUCKETS; i++) {
+			paintHistogram.set(i, 0);
+		}
+		paints.reset();
+		paintNanos.reset();
+		paintMaxNanos.set(0);
+		pointsStored = 0;
+		pointsRendered = 0;
+		repaints.reset();
+		redraws.reset();
+		updates.reset();
+		updateNanos.reset();
+		lastUpdatePoints = 0;
+		annotationChanges.reset();
+		annotationNanos.reset();
+		notificationNanos.reset();
+	}
+
+	/**
+	 * Registers these metrics in the platform MBean server. The charts work the
+	 * same if they can't be registered.
+	 */
+	synchronized void register(String type) {
+		if(objectName != null) {
+			return;
+		}
+		try {
+			ObjectName on = new ObjectName(DOMAIN + ":type=" + type + ",name=" + ObjectName.quote(name));
+			MBeanServer server = ManagementFactory.getPlatformMBeanServer();
+			server.registerMBean(this, on);
+			objectName = on;
+		} catch (JMException e) {
+			// Not exposed through JMX
+		} catch (SecurityException e) {
+			// Not exposed through JMX
+		}
+	}
+
+	/**
+	 * Removes these metrics from the platform MBean server and from the total.
+	 */
+	synchronized void unregister() {
+		if(parent != null) {
+			parent.charts.remove(this);
+		}
+		if(objectName == null) {
+			return;
+		}
+		try {
+			ManagementFactory.getPlatformMBeanServer().unregisterMBean(objectName);
+		} catch (JMException e) {
+			// Already removed
+		}
+		objectName = null;
+	}
+
+	@Override
+	public String toString() {
+		return String.format("%s: %d paints (mean %.2f ms, p99 %.2f ms, max %.2f ms), %d/%d points rendered, "
+				+ "%d repaints (%d redrawn), %d updates (%.2f ms, %.2f ms notifying), %d annotation changes (%.2f ms)",
+				name, getPaintCount(), getPaintTimeMeanMillis(), getPaintTime99thPercentileMillis(), getPaintTimeMaxMillis(),
+				getPointsRendered(), getPointsStored(), getRepaintCount(), getRedrawCount(), getUpdateCount(),
+				getUpdateTimeMillis(), getNotificationTimeMillis(), getAnnotationChangeCount(), getAnnotationTimeMillis());
+	}
+}
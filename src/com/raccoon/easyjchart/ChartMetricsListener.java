@@ -0,0 +1,46 @@
+package com.raccoon.easyjchart;
+
+import java.util.EventListener;
+
+/**
+ * Receives the measurements of a chart while its metrics are enabled (see
+ * Grafica.setMetricsEnabled). A listener registered in ChartMetrics.getTotal()
+ * receives the measurements of all the charts. The methods are called from the
+ * thread that does the work, so they must return quickly.
+ */
+public interface ChartMetricsListener extends EventListener {
+
+	/**
+	 * The functions of a chart have been painted.
+	 * @param chart The chart
+	 * @param nanos Time taken by the paint
+	 * @param pointsStored Points of the datasets of the chart
+	 * @param pointsRendered Points given to the renderers (after decimation)
+	 */
+	void chartPainted(Grafica chart, long nanos, long pointsStored, long pointsRendered);
+
+	/**
+	 * A panel showing the chart has been repainted.
+	 * @param chart The chart
+	 * @param redrawn True if the chart was painted again, false if the image of the last paint was reused
+	 */
+	void panelRepainted(Grafica chart, boolean redrawn);
+
+	/**
+	 * The points of a plot have been set or added.
+	 * @param chart The chart
+	 * @param nPlot Index of the plot
+	 * @param points Points of the plot after the update
+	 * @param nanos Time taken by the update
+	 * @param notificationNanos Part of that time spent notifying the change
+	 */
+	void plotUpdated(Grafica chart, int nPlot, int points, long nanos, long notificationNanos);
+
+	/**
+	 * An annotation has been added or removed.
+	 * @param chart The chart
+	 * @param annotations Annotations of the chart after the change
+	 * @param nanos Time taken by the change, including its notification
+	 */
+	void annotationsChanged(Grafica chart, int annotations, long nanos);
+}
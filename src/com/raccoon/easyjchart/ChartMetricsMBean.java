@@ -0,0 +1,102 @@
+package com.raccoon.easyjchart;
+
+/**
+ * Management interface of the metrics of a chart, or of all the charts, as
+ * exposed through JMX under the domain com.raccoon.easyjchart.
+ */
+public interface ChartMetricsMBean {
+
+	/**
+	 * @return Number of times the functions have been painted
+	 */
+	long getPaintCount();
+
+	/**
+	 * @return Mean time of a paint in milliseconds
+	 */
+	double getPaintTimeMeanMillis();
+
+	/**
+	 * @return Longest paint in milliseconds
+	 */
+	double getPaintTimeMaxMillis();
+
+	/**
+	 * @return Estimated median paint time in milliseconds
+	 */
+	double getPaintTime50thPercentileMillis();
+
+	/**
+	 * @return Estimated 90th percentile of the paint time in milliseconds
+	 */
+	double getPaintTime90thPercentileMillis();
+
+	/**
+	 * @return Estimated 99th percentile of the paint time in milliseconds
+	 */
+	double getPaintTime99thPercentileMillis();
+
+	/**
+	 * @return Number of paints per bucket of time; bucket i counts the paints
+	 * that took from 2^i to 2^(i+1) microseconds (the first one, less than 2)
+	 */
+	long[] getPaintTimeHistogram();
+
+	/**
+	 * @return Points of the datasets in the last paint (for the total, the
+	 * sum over the charts)
+	 */
+	long getPointsStored();
+
+	/**
+	 * @return Points given to the renderers in the last paint (for the total,
+	 * the sum over the charts)
+	 */
+	long getPointsRendered();
+
+	/**
+	 * @return Number of times a panel has been repainted
+	 */
+	long getRepaintCount();
+
+	/**
+	 * @return Number of panel repaints that painted the chart again
+	 */
+	long getRedrawCount();
+
+	/**
+	 * @return Number of updates of the points of the plots
+	 */
+	long getUpdateCount();
+
+	/**
+	 * @return Total time of the updates of the points in milliseconds
+	 */
+	double getUpdateTimeMillis();
+
+	/**
+	 * @return Points of the last updated plot after its update (for the
+	 * total, the sum over the charts)
+	 */
+	long getLastUpdatePoints();
+
+	/**
+	 * @return Number of annotations added or removed
+	 */
+	long getAnnotationChangeCount();
+
+	/**
+	 * @return Total time of the annotation changes in milliseconds
+	 */
+	double getAnnotationTimeMillis();
+
+	/**
+	 * @return Part of the update time spent notifying the changes of the plots in milliseconds
+	 */
+	double getNotificationTimeMillis();
+
+	/**
+	 * Sets all the counters to zero.
+	 */
+	void reset();
+}
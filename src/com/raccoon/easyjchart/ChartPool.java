@@ -0,0 +1,93 @@
+package com.raccoon.easyjchart;
+
+import java.awt.geom.Point2D;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+
+import org.jfree.data.xy.XYDataset;
+
+/**
+ * Pool of charts of a template, for services that create many charts that only
+ * differ in their data. A released chart is emptied (its functions, annotations
+ * and the ranges set on its axes are removed) and kept, and acquire gives it
+ * the new data instead of creating another chart.
+ * <p>
+ * Style changes made to an acquired chart (colors, axes, background...) are
+ * kept when it is released, so they should be made to the model of the
+ * template instead, and the listeners added to it must be removed before
+ * releasing it. Charts may be acquired and released from several threads.
+ */
+public class ChartPool {
+
+	private final ChartTemplate template;
+
+	/**
+	 * Released charts waiting to be acquired again.
+	 */
+	private final BlockingQueue<Grafica> idle;
+
+	/**
+	 * Creates an empty pool.
+	 * @param template Template of the charts
+	 * @param maxIdle Maximum number of released charts kept; the rest are discarded
+	 */
+	public ChartPool(ChartTemplate template, int maxIdle) {
+		if(maxIdle <= 0) {
+			throw new IllegalArgumentException("The number of charts must be positive: " + maxIdle);
+		}
+		this.template = template;
+		this.idle = new ArrayBlockingQueue<Grafica>(maxIdle);
+	}
+
+	/**
+	 * Returns a chart with a function, released before or new.
+	 * @param x X coordinates
+	 * @param y Y coordinates
+	 * @param functionName Name of the function
+	 * @return The chart
+	 */
+	public Grafica acquire(double[] x, double[] y, String functionName) {
+		return acquire(template.dataset(x, y, functionName));
+	}
+
+	/**
+	 * Returns a chart with a function, released before or new.
+	 * @param function Points of the function
+	 * @param functionName Name of the function
+	 * @return The chart
+	 */
+	public Grafica acquire(Point2D[] function, String functionName) {
+		return acquire(template.dataset(function, functionName));
+	}
+
+	private Grafica acquire(XYDataset dataset) {
+		Grafica chart = idle.poll();
+		if(chart == null) {
+			return template.create(dataset);
+		}
+		chart.reinicia(dataset);
+		return chart;
+	}
+
+	/**
+	 * Returns a chart to the pool. It must not be used after releasing it.
+	 * @param chart A chart acquired from this pool
+	 * @throws IllegalArgumentException If the chart was not created with the template of the pool
+	 */
+	public void release(Grafica chart) {
+		if(chart.getPlantilla() != template) {
+			throw new IllegalArgumentException("The chart was not created with the template of the pool");
+		}
+		chart.setMetricsEnabled(false);
+		chart.reinicia(null);
+		idle.offer(chart);
+	}
+
+	/**
+	 * Returns the number of released charts waiting in the pool.
+	 * @return The number of charts
+	 */
+	public int getIdleCount() {
+		return idle.size();
+	}
+}
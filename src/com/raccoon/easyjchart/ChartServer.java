@@ -0,0 +1,500 @@
+package com.raccoon.easyjchart;
+
+import java.awt.Color;
+import java.awt.geom.Point2D;
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.io.UnsupportedEncodingException;
+import java.net.InetSocketAddress;
+import java.net.URLDecoder;
+import java.nio.charset.StandardCharsets;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpHandler;
+import com.sun.net.httpserver.HttpServer;
+
+/**
+ * Embedded HTTP server that renders charts to images, built on the HTTP server
+ * of the JDK. A chart is requested with a POST to /chart: the query string
+ * describes the chart and the body has its functions as CSV with a header, the
+ * X coordinates in the first column and a function in each of the others
+ * (named after the column).
+ * <pre>
+ * POST /chart?width=800&amp;height=600&amp;title=Signal&amp;xlabel=t&amp;ylabel=V
+ * t,in,out
+ * 0,0.1,0.2
+ * ...
+ * </pre>
+ * The parameters are width and height (800x600 by default, up to 4096), format
+ * (png, jpeg or svg), title, xlabel, ylabel, legend (true or false), continuous
+ * (true to draw lines, false to draw samples) and separator (a character or
+ * "tab").
+ * <p>
+ * The images are kept in a least recently used cache bounded by their size and
+ * keyed by the SHA-256 hash of the parameters and the data, so the same chart
+ * is only rendered once. The hash is also sent as the ETag of the image, and a
+ * request with it in If-None-Match gets a 304 without the image.
+ * <p>
+ * Charts are rendered on a fixed pool of worker threads. When all of them are
+ * busy and the queue of waiting requests is full, new requests get a 503
+ * response at once instead of waiting.
+ */
+public class ChartServer {
+
+	/**
+	 * Maximum width and height of the images.
+	 */
+	private static final int MAX_SIZE = 4096;
+
+	/**
+	 * Maximum size of the body of a request (the data of the chart).
+	 */
+	private static final int MAX_BODY = 64 << 20;
+
+	/**
+	 * Colors of the functions, in the order of their columns.
+	 */
+	private static final Color[] COLORS = {Color.RED, Color.BLUE, new Color(0, 128, 0), Color.MAGENTA,
+			Color.ORANGE, new Color(0, 128, 128), Color.BLACK, new Color(128, 0, 128)};
+
+	private final HttpServer server;
+	private final ExecutorService workers;
+
+	/**
+	 * Requests being rendered or waiting for a worker.
+	 */
+	private final Semaphore permits;
+
+	private final ResponseCache cache;
+
+	private final AtomicLong hits = new AtomicLong();
+	private final AtomicLong misses = new AtomicLong();
+	private final AtomicLong rejected = new AtomicLong();
+
+	/**
+	 * Creates a server. It doesn't accept requests until it is started.
+	 * @param address Address and port of the server (port 0 for any free port)
+	 * @param threads Number of worker threads
+	 * @param queue Maximum number of requests waiting for a worker
+	 * @param cacheBytes Maximum size of the images kept in the cache
+	 * @throws IOException If the address can't be bound
+	 */
+	public ChartServer(InetSocketAddress address, int threads, int queue, long cacheBytes) throws IOException {
+		if(threads <= 0 || queue < 0) {
+			throw new IllegalArgumentException("Invalid threads or queue: " + threads + ", " + queue);
+		}
+		this.permits = new Semaphore(threads + queue);
+		this.cache = new ResponseCache(cacheBytes);
+		this.workers = new ThreadPoolExecutor(threads, threads, 0, TimeUnit.MILLISECONDS,
+				new LinkedBlockingQueue<Runnable>(), new ThreadFactory() {
+					private final AtomicInteger count = new AtomicInteger();
+
+					public Thread newThread(Runnable task) {
+						Thread thread = new Thread(task, "chart-server-" + count.incrementAndGet());
+						thread.setDaemon(true);
+						return thread;
+					}
+				});
+		this.server = HttpServer.create(address, 0);
+		server.createContext("/chart", new HttpHandler() {
+			public void handle(HttpExchange exchange) throws IOException {
+				dispatch(exchange);
+			}
+		});
+	}
+
+	/**
+	 * Starts accepting requests.
+	 */
+	public void start() {
+		server.start();
+	}
+
+	/**
+	 * Stops accepting requests, waiting up to the indicated time for the
+	 * requests being handled, and stops the worker threads.
+	 * @param delay Maximum time to wait in seconds
+	 */
+	public void stop(int delay) {
+		server.stop(delay);
+		workers.shutdown();
+	}
+
+	/**
+	 * Returns the address the server is bound to.
+	 * @return The address, with the actual port
+	 */
+	public InetSocketAddress getAddress() {
+		return server.getAddress();
+	}
+
+	/**
+	 * @return Number of requests answered from the cache
+	 */
+	public long getCacheHits() {
+		return hits.get();
+	}
+
+	/**
+	 * @return Number of charts rendered
+	 */
+	public long getCacheMisses() {
+		return misses.get();
+	}
+
+	/**
+	 * @return Number of requests rejected because the server was busy
+	 */
+	public long getRejected() {
+		return rejected.get();
+	}
+
+	/**
+	 * Hands a request to the workers, or rejects it if there are too many. It
+	 * runs on the thread of the HTTP server, so it doesn't read the request.
+	 */
+	private void dispatch(final HttpExchange exchange) throws IOException {
+		if(!permits.tryAcquire()) {
+			rejected.incrementAndGet();
+			exchange.getResponseHeaders().set("Retry-After", "1");
+			sendText(exchange, 503, "The server is busy\n");
+			return;
+		}
+		try {
+			workers.execute(new Runnable() {
+				public void run() {
+					try {
+						handle(exchange);
+					} catch(IOException e) {
+						// The client is gone
+					} finally {
+						exchange.close();
+						permits.release();
+					}
+				}
+			});
+		} catch(RejectedExecutionException e) {
+			// The server is stopping
+			permits.release();
+			sendText(exchange, 503, "The server is stopping\n");
+		}
+	}
+
+	private void handle(HttpExchange exchange) throws IOException {
+		if(!"POST".equals(exchange.getRequestMethod())) {
+			exchange.getResponseHeaders().set("Allow", "POST");
+			sendText(exchange, 405, "Charts are requested with POST\n");
+			return;
+		}
+		Spec spec;
+		try {
+			spec = new Spec(exchange.getRequestURI().getRawQuery());
+		} catch(IllegalArgumentException e) {
+			sendText(exchange, 400, e.getMessage() + "\n");
+			return;
+		}
+		byte[] data = readBody(exchange.getRequestBody());
+		if(data == null) {
+			sendText(exchange, 413, "The data is too large\n");
+			return;
+		}
+		String key = hash(spec.toString(), data);
+		String etag = '"' + key + '"';
+		exchange.getResponseHeaders().set("ETag", etag);
+		if(etag.equals(exchange.getRequestHeaders().getFirst("If-None-Match"))) {
+			hits.incrementAndGet();
+			exchange.sendResponseHeaders(304, -1);
+			return;
+		}
+		byte[] image = cache.get(key);
+		if(image == null) {
+			try {
+				image = render(spec, data);
+			} catch(IllegalArgumentException e) {
+				sendText(exchange, 400, e.getMessage() + "\n");
+				return;
+			} catch(Exception e) {
+				sendText(exchange, 500, "The chart can't be rendered: " + e + "\n");
+				return;
+			}
+			misses.incrementAndGet();
+			cache.put(key, image);
+		}
+		else {
+			hits.incrementAndGet();
+		}
+		exchange.getResponseHeaders().set("Content-Type", spec.contentType());
+		exchange.sendResponseHeaders(200, image.length);
+		OutputStream out = exchange.getResponseBody();
+		out.write(image);
+		out.close();
+	}
+
+	/**
+	 * Draws the chart of a request.
+	 */
+	private static byte[] render(Spec spec, byte[] data) throws IOException {
+		int columns = countColumns(data, spec.separator);
+		if(columns < 2) {
+			throw new IllegalArgumentException("The data needs a column of X coordinates and a column per function");
+		}
+		CsvReader reader = new CsvReader(spec.separator, true);
+		for(int i = 1; i < columns; i++) {
+			reader.addSeries(0, i, i - 1);
+		}
+		Grafica chart = new Grafica(new Point2D[0], spec.title, "", spec.xLabel, spec.yLabel, spec.legend,
+				COLORS[0], 1f, spec.continuous);
+		chart.loadCsv(new ByteArrayInputStream(data), reader, spec.continuous);
+		for(int i = 1; i < columns - 1; i++) {
+			chart.fijaColor(i, COLORS[i % COLORS.length]);
+		}
+		ByteArrayOutputStream out = new ByteArrayOutputStream(64 << 10);
+		ChartExporter.write(chart, spec.format, out, spec.width, spec.height);
+		return out.toByteArray();
+	}
+
+	/**
+	 * Counts the columns of the header (the fields can't contain the separator).
+	 */
+	private static int countColumns(byte[] data, char separator) {
+		int columns = 1;
+		for(int i = 0; i < data.length && data[i] != '\n'; i++) {
+			if(data[i] == separator) {
+				columns++;
+			}
+		}
+		return columns;
+	}
+
+	/**
+	 * Reads the body of a request.
+	 * @return The body, or null if it is larger than MAX_BODY
+	 */
+	private static byte[] readBody(InputStream in) throws IOException {
+		ByteArrayOutputStream body = new ByteArrayOutputStream(64 << 10);
+		byte[] block = new byte[64 << 10];
+		int n;
+		while((n = in.read(block)) != -1) {
+			if(body.size() + n > MAX_BODY) {
+				return null;
+			}
+			body.write(block, 0, n);
+		}
+		return body.toByteArray();
+	}
+
+	private static String hash(String spec, byte[] data) {
+		MessageDigest digest;
+		try {
+			digest = MessageDigest.getInstance("SHA-256");
+		} catch(NoSuchAlgorithmException e) {
+			// Every JDK has SHA-256
+			throw new IllegalStateException(e);
+		}
+		digest.update(spec.getBytes(StandardCharsets.UTF_8));
+		digest.update((byte) 0);
+		digest.update(data);
+		StringBuilder hex = new StringBuilder(64);
+		for(byte b : digest.digest()) {
+			hex.append(Character.forDigit((b >> 4) & 0xf, 16)).append(Character.forDigit(b & 0xf, 16));
+		}
+		return hex.toString();
+	}
+
+	private static void sendText(HttpExchange exchange, int status, String text) throws IOException {
+		byte[] bytes = text.getBytes(StandardCharsets.UTF_8);
+		exchange.getResponseHeaders().set("Content-Type", "text/plain; charset=utf-8");
+		exchange.sendResponseHeaders(status, bytes.length);
+		OutputStream out = exchange.getResponseBody();
+		out.write(bytes);
+		out.close();
+	}
+
+	/**
+	 * Parameters of a requested chart, taken from the query string.
+	 */
+	private static class Spec {
+
+		final int width;
+		final int height;
+		final ChartExporter.Format format;
+		final String title;
+		final String xLabel;
+		final String yLabel;
+		final boolean legend;
+		final boolean continuous;
+		final char separator;
+
+		/**
+		 * All the parameters with their values, in a fixed order.
+		 */
+		private final String canonical;
+
+		Spec(String query) {
+			Map<String, String> parameters = parse(query);
+			width = size(parameters, "width", 800);
+			height = size(parameters, "height", 600);
+			format = format(parameters.get("format"));
+			title = text(parameters, "title");
+			xLabel = text(parameters, "xlabel");
+			yLabel = text(parameters, "ylabel");
+			legend = bool(parameters, "legend");
+			continuous = bool(parameters, "continuous");
+			separator = separator(parameters.get("separator"));
+			canonical = width + "x" + height + "|" + format + "|" + title.length() + ":" + title + "|" + xLabel.length()
+					+ ":" + xLabel + "|" + yLabel.length() + ":" + yLabel + "|" + legend + "|" + continuous + "|" + (int) separator;
+		}
+
+		String contentType() {
+			switch(format) {
+			case JPEG:
+				return "image/jpeg";
+			case SVG:
+				return "image/svg+xml";
+			default:
+				return "image/png";
+			}
+		}
+
+		@Override
+		public String toString() {
+			return canonical;
+		}
+
+		private static Map<String, String> parse(String query) {
+			Map<String, String> parameters = new TreeMap<String, String>();
+			if(query == null || query.isEmpty()) {
+				return parameters;
+			}
+			for(String parameter : query.split("&")) {
+				int equals = parameter.indexOf('=');
+				String name = equals < 0 ? parameter : parameter.substring(0, equals);
+				String value = equals < 0 ? "" : parameter.substring(equals + 1);
+				try {
+					parameters.put(URLDecoder.decode(name, "UTF-8"), URLDecoder.decode(value, "UTF-8"));
+				} catch(UnsupportedEncodingException e) {
+					// Every JDK has UTF-8
+					throw new IllegalStateException(e);
+				}
+			}
+			return parameters;
+		}
+
+		private static int size(Map<String, String> parameters, String name, int defaultValue) {
+			String value = parameters.get(name);
+			if(value == null) {
+				return defaultValue;
+			}
+			try {
+				int size = Integer.parseInt(value);
+				if(size > 0 && size <= MAX_SIZE) {
+					return size;
+				}
+			} catch(NumberFormatException e) {
+				// Reported below
+			}
+			throw new IllegalArgumentException("Invalid " + name + ": " + value);
+		}
+
+		private static ChartExporter.Format format(String value) {
+			if(value == null) {
+				return ChartExporter.Format.PNG;
+			}
+			for(ChartExporter.Format format : ChartExporter.Format.values()) {
+				if(format.name().equalsIgnoreCase(value)) {
+					return format;
+				}
+			}
+			throw new IllegalArgumentException("Invalid format: " + value);
+		}
+
+		private static String text(Map<String, String> parameters, String name) {
+			String value = parameters.get(name);
+			return value == null ? "" : value;
+		}
+
+		private static boolean bool(Map<String, String> parameters, String name) {
+			String value = parameters.get(name);
+			if(value == null || value.equals("true")) {
+				return true;
+			}
+			if(value.equals("false")) {
+				return false;
+			}
+			throw new IllegalArgumentException("Invalid " + name + ": " + value);
+		}
+
+		private static char separator(String value) {
+			if(value == null) {
+				return ',';
+			}
+			if(value.equals("tab")) {
+				return '\t';
+			}
+			if(value.length() != 1 || value.charAt(0) > 127 || value.charAt(0) == '\n' || value.charAt(0) == '\r'
+					|| value.charAt(0) == '"') {
+				throw new IllegalArgumentException("Invalid separator: " + value);
+			}
+			return value.charAt(0);
+		}
+	}
+
+	/**
+	 * Least recently used cache of rendered images, bounded by their size.
+	 */
+	private static class ResponseCache {
+
+		private final long maxBytes;
+		private long bytes = 0;
+		private final LinkedHashMap<String, byte[]> entries = new LinkedHashMap<String, byte[]>(16, 0.75f, true);
+
+		ResponseCache(long maxBytes) {
+			if(maxBytes < 0) {
+				throw new IllegalArgumentException("The size can't be negative: " + maxBytes);
+			}
+			this.maxBytes = maxBytes;
+		}
+
+		synchronized byte[] get(String key) {
+			return entries.get(key);
+		}
+
+		/**
+		 * Adds an image, evicting the least recently used ones until it fits.
+		 * Images larger than the whole cache are not kept.
+		 */
+		synchronized void put(String key, byte[] image) {
+			if(image.length > maxBytes) {
+				return;
+			}
+			byte[] previous = entries.put(key, image);
+			if(previous != null) {
+				bytes -= previous.length;
+			}
+			bytes += image.length;
+			Iterator<byte[]> eldest = entries.values().iterator();
+			while(bytes > maxBytes) {
+				bytes -= eldest.next().length;
+				eldest.remove();
+			}
+		}
+	}
+}
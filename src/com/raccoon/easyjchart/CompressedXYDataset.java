@@ -0,0 +1,714 @@
+package com.raccoon.easyjchart;
+
+import java.io.Serializable;
+import java.util.Arrays;
+import java.util.List;
+
+import org.jfree.data.DomainInfo;
+import org.jfree.data.DomainOrder;
+import org.jfree.data.Range;
+import org.jfree.data.RangeInfo;
+import org.jfree.data.xy.AbstractXYDataset;
+import org.jfree.data.xy.XYDomainInfo;
+import org.jfree.data.xy.XYRangeInfo;
+
+/**
+ * Dataset of a long function with ascending X coordinates (such as the history
+ * of a metric) that keeps its points compressed in chunks of 1024, as the
+ * Gorilla time series database does: the X coordinates are stored as the
+ * difference between consecutive deltas (a single bit per point when they are
+ * evenly spaced) and the Y coordinates as the XOR with the previous value
+ * (a single bit when it repeats, and only the bits that changed otherwise).
+ * The compression is lossless.
+ * <p>
+ * The X and Y coordinates of a chunk are stored apart and only decoded when
+ * they are read, into a small cache of decoded chunks. The renderers look for
+ * the visible points with a binary search over the X coordinates, so painting a
+ * zoomed part of the function decodes the X coordinates of a few chunks and
+ * both coordinates of the visible ones; the rest stay compressed. The bounds of
+ * the Y coordinates of every chunk are kept, so the auto range doesn't decode
+ * the chunks that are completely visible either. The last points are kept
+ * uncompressed until they fill a chunk.
+ * <p>
+ * Like ArrayXYDataset, it must be modified from the thread that paints the
+ * chart. Reads may be done from several threads at the same time while it is
+ * not modified (as LodPyramid does to build the pyramid in parallel).
+ */
+public class CompressedXYDataset extends AbstractXYDataset implements DomainInfo, RangeInfo, XYDomainInfo, XYRangeInfo {
+
+	private static final long serialVersionUID = 6207834155941703312L;
+
+	/**
+	 * Points per chunk (a power of two).
+	 */
+	private static final int CHUNK_SHIFT = 10;
+	private static final int CHUNK_SIZE = 1 << CHUNK_SHIFT;
+
+	/**
+	 * Number of decoded chunks kept.
+	 */
+	private static final int DECODED_CHUNKS = 8;
+
+	/**
+	 * Name of the function (key of the only series of the dataset).
+	 */
+	private final Comparable key;
+
+	/**
+	 * Compressed chunks, with the first points of the function.
+	 */
+	private Chunk[] chunks = new Chunk[16];
+	private int chunkCount;
+
+	/**
+	 * Points after the compressed chunks (up to a chunk).
+	 */
+	private final double[] tailX = new double[CHUNK_SIZE];
+	private final double[] tailY = new double[CHUNK_SIZE];
+	private int tailCount;
+
+	/**
+	 * Number of points.
+	 */
+	private int count;
+
+	/**
+	 * Bounds of the coordinates of the points, NaN excluded (+Infinity and
+	 * -Infinity when there are no values).
+	 */
+	private double minX, maxX, minY, maxY;
+
+	/**
+	 * Cache of decoded chunks. The entries are immutable and are replaced, not
+	 * modified, so several threads can read the dataset at the same time: at
+	 * worst two of them decode the same chunk.
+	 */
+	private final Decoded[] decoded = new Decoded[DECODED_CHUNKS];
+	private int lastSlot;
+	private int nextSlot;
+
+	/**
+	 * True if the listeners are notified of every change.
+	 */
+	private boolean notify = true;
+
+	/**
+	 * True if there are changes not notified yet to the listeners.
+	 */
+	private boolean pendingChange = false;
+
+	/**
+	 * Creates an empty dataset.
+	 * @param key Name of the function
+	 */
+	public CompressedXYDataset(Comparable key) {
+		this.key = key;
+		resetBounds();
+	}
+
+	/**
+	 * Appends a point to the function.
+	 * @param px X coordinate; it can't be lower than the last one
+	 * @param py Y coordinate
+	 * @throws IllegalArgumentException If the X coordinate is lower than the last one, or NaN
+	 */
+	public void add(double px, double py) {
+		append(px, py);
+		changed();
+	}
+
+	/**
+	 * Appends all the points of the arrays to the function sending a single
+	 * change event to the listeners.
+	 * @param px X coordinates; they must be in ascending order
+	 * @param py Y coordinates
+	 * @throws IllegalArgumentException If the X coordinates are not in ascending order, or NaN
+	 */
+	public void addAll(double[] px, double[] py) {
+		if(px.length != py.length) {
+			throw new IllegalArgumentException("X and Y must have the same number of points (" + px.length + " != " + py.length + ")");
+		}
+		addAll(px, py, 0, px.length);
+	}
+
+	/**
+	 * Appends a range of points of the arrays to the function sending a single
+	 * change event to the listeners. If an X coordinate is out of order, the
+	 * points before it are kept.
+	 * @param px X coordinates; they must be in ascending order
+	 * @param py Y coordinates
+	 * @param offset Index of the first point to append
+	 * @param length Number of points to append
+	 * @throws IllegalArgumentException If the X coordinates are not in ascending order, or NaN
+	 */
+	public void addAll(double[] px, double[] py, int offset, int length) {
+		if(offset < 0 || length < 0 || offset + length > px.length || offset + length > py.length) {
+			throw new IndexOutOfBoundsException("offset " + offset + ", length " + length);
+		}
+		if(length == 0) {
+			return;
+		}
+		try {
+			for(int i = offset; i < offset + length; i++) {
+				append(px[i], py[i]);
+			}
+		} finally {
+			changed();
+		}
+	}
+
+	/**
+	 * Removes all the points of the function.
+	 */
+	public void clear() {
+		if(count > 0) {
+			chunks = new Chunk[16];
+			chunkCount = 0;
+			tailCount = 0;
+			count = 0;
+			Arrays.fill(decoded, null);
+			resetBounds();
+			changed();
+		}
+	}
+
+	private void append(double px, double py) {
+		if(!(px >= maxX)) {
+			throw new IllegalArgumentException("X coordinate " + px + " is lower than the last one (" + maxX + ")");
+		}
+		if(tailCount == CHUNK_SIZE) {
+			seal();
+		}
+		tailX[tailCount] = px;
+		tailY[tailCount] = py;
+		tailCount++;
+		count++;
+		if(px < minX) {
+			minX = px;
+		}
+		maxX = px;
+		if(py < minY) {
+			minY = py;
+		}
+		if(py > maxY) {
+			maxY = py;
+		}
+	}
+
+	/**
+	 * Compresses the points of the tail into a new chunk.
+	 */
+	private void seal() {
+		if(chunkCount == chunks.length) {
+			chunks = Arrays.copyOf(chunks, chunkCount * 2);
+		}
+		chunks[chunkCount++] = new Chunk(tailX, tailY, tailCount);
+		tailCount = 0;
+	}
+
+	/**
+	 * Returns the memory used by the points, in bytes (an estimate, without
+	 * the cache of decoded chunks).
+	 * @return Bytes used
+	 */
+	public long getStoredBytes() {
+		long bytes = 16L * CHUNK_SIZE;
+		for(int i = 0; i < chunkCount; i++) {
+			bytes += chunks[i].bytes();
+		}
+		return bytes;
+	}
+
+	/**
+	 * Enables or disables the notification of changes to the listeners. When it is
+	 * enabled again a single change event is sent if something changed meanwhile.
+	 * @param notify True to notify every change
+	 */
+	public void setNotify(boolean notify) {
+		this.notify = notify;
+		if(notify && pendingChange) {
+			changed();
+		}
+	}
+
+	/**
+	 * Indicates if the listeners are notified of every change.
+	 * @return True if the changes are notified
+	 */
+	public boolean isNotify() {
+		return notify;
+	}
+
+	/**
+	 * Notifies a change to the listeners, or delays it if the notification is disabled.
+	 */
+	private void changed() {
+		if(notify) {
+			pendingChange = false;
+			fireDatasetChanged();
+		}
+		else {
+			pendingChange = true;
+		}
+	}
+
+	private void resetBounds() {
+		minX = minY = Double.POSITIVE_INFINITY;
+		maxX = maxY = Double.NEGATIVE_INFINITY;
+	}
+
+	@Override
+	public int getSeriesCount() {
+		return 1;
+	}
+
+	@Override
+	public Comparable getSeriesKey(int series) {
+		return key;
+	}
+
+	@Override
+	public int getItemCount(int series) {
+		return count;
+	}
+
+	@Override
+	public Number getX(int series, int item) {
+		return Double.valueOf(getXValue(series, item));
+	}
+
+	@Override
+	public Number getY(int series, int item) {
+		return Double.valueOf(getYValue(series, item));
+	}
+
+	@Override
+	public double getXValue(int series, int item) {
+		if(item < 0 || item >= count) {
+			throw new IndexOutOfBoundsException("item " + item);
+		}
+		int chunk = item >>> CHUNK_SHIFT;
+		int index = item & (CHUNK_SIZE - 1);
+		if(chunk == chunkCount) {
+			return tailX[index];
+		}
+		return decode(chunk, false).x[index];
+	}
+
+	@Override
+	public double getYValue(int series, int item) {
+		if(item < 0 || item >= count) {
+			throw new IndexOutOfBoundsException("item " + item);
+		}
+		int chunk = item >>> CHUNK_SHIFT;
+		int index = item & (CHUNK_SIZE - 1);
+		if(chunk == chunkCount) {
+			return tailY[index];
+		}
+		return decode(chunk, true).y[index];
+	}
+
+	/**
+	 * Returns a chunk from the cache, decoding it if it is not there (or its Y
+	 * coordinates, if they are needed and were not decoded yet).
+	 */
+	private Decoded decode(int chunk, boolean withY) {
+		int slot = lastSlot;
+		Decoded entry = decoded[slot];
+		if(entry == null || entry.chunk != chunk) {
+			entry = null;
+			for(int i = 0; i < DECODED_CHUNKS; i++) {
+				Decoded candidate = decoded[i];
+				if(candidate != null && candidate.chunk == chunk) {
+					entry = candidate;
+					slot = i;
+					break;
+				}
+			}
+		}
+		if(entry != null && (entry.y != null || !withY)) {
+			lastSlot = slot;
+			return entry;
+		}
+		if(entry == null) {
+			slot = nextSlot;
+			nextSlot = (slot + 1) % DECODED_CHUNKS;
+		}
+		Chunk compressed = chunks[chunk];
+		double[] x = entry != null ? entry.x : compressed.decodeX(new double[CHUNK_SIZE]);
+		double[] y = withY ? compressed.decodeY(new double[CHUNK_SIZE]) : null;
+		entry = new Decoded(chunk, x, y);
+		decoded[slot] = entry;
+		lastSlot = slot;
+		return entry;
+	}
+
+	@Override
+	public DomainOrder getDomainOrder() {
+		return DomainOrder.ASCENDING;
+	}
+
+	@Override
+	public Range getDomainBounds(boolean includeInterval) {
+		return minX <= maxX ? new Range(minX, maxX) : null;
+	}
+
+	@Override
+	public Range getDomainBounds(List visibleSeriesKeys, boolean includeInterval) {
+		return visibleSeriesKeys.contains(key) ? getDomainBounds(includeInterval) : null;
+	}
+
+	@Override
+	public double getDomainLowerBound(boolean includeInterval) {
+		return minX <= maxX ? minX : Double.NaN;
+	}
+
+	@Override
+	public double getDomainUpperBound(boolean includeInterval) {
+		return minX <= maxX ? maxX : Double.NaN;
+	}
+
+	@Override
+	public Range getRangeBounds(boolean includeInterval) {
+		return minY <= maxY ? new Range(minY, maxY) : null;
+	}
+
+	/**
+	 * Returns the bounds of the Y coordinates of the points whose X coordinate is
+	 * in the indicated range. The bounds of the chunks inside the range are
+	 * already known; only the chunks at its ends are decoded.
+	 * @param visibleSeriesKeys Keys of the visible series
+	 * @param xRange Range of the X coordinates
+	 * @param includeInterval Ignored (the points have no intervals)
+	 * @return The bounds, or null if there are no points in the range
+	 */
+	@Override
+	public Range getRangeBounds(List visibleSeriesKeys, Range xRange, boolean includeInterval) {
+		if(!visibleSeriesKeys.contains(key) || count == 0) {
+			return null;
+		}
+		double lower = xRange.getLowerBound();
+		double upper = xRange.getUpperBound();
+		if(lower <= minX && upper >= maxX) {
+			return getRangeBounds(includeInterval);
+		}
+		double min = Double.POSITIVE_INFINITY, max = Double.NEGATIVE_INFINITY;
+		for(int i = 0; i < chunkCount; i++) {
+			Chunk chunk = chunks[i];
+			if(chunk.lastX < lower || chunk.firstX > upper) {
+				continue;
+			}
+			if(chunk.firstX >= lower && chunk.lastX <= upper) {
+				min = Math.min(min, chunk.minY);
+				max = Math.max(max, chunk.maxY);
+				continue;
+			}
+			int first = i << CHUNK_SHIFT;
+			for(int item = first; item < first + CHUNK_SIZE; item++) {
+				double px = getXValue(0, item);
+				if(px >= lower && px <= upper) {
+					double py = getYValue(0, item);
+					if(py < min) {
+						min = py;
+					}
+					if(py > max) {
+						max = py;
+					}
+				}
+			}
+		}
+		for(int i = 0; i < tailCount; i++) {
+			if(tailX[i] >= lower && tailX[i] <= upper) {
+				if(tailY[i] < min) {
+					min = tailY[i];
+				}
+				if(tailY[i] > max) {
+					max = tailY[i];
+				}
+			}
+		}
+		return min <= max ? new Range(min, max) : null;
+	}
+
+	@Override
+	public double getRangeLowerBound(boolean includeInterval) {
+		return minY <= maxY ? minY : Double.NaN;
+	}
+
+	@Override
+	public double getRangeUpperBound(boolean includeInterval) {
+		return minY <= maxY ? maxY : Double.NaN;
+	}
+
+	/**
+	 * Maps the bits of a double to a long that keeps the order of the values, so
+	 * that the deltas of ascending coordinates are positive and small.
+	 */
+	private static long sortable(long bits) {
+		return bits ^ ((bits >> 63) & Long.MAX_VALUE);
+	}
+
+	/**
+	 * Decoded coordinates of a chunk. Its final fields make it safe to share
+	 * between threads without synchronization.
+	 */
+	private static final class Decoded implements Serializable {
+
+		private static final long serialVersionUID = 3301622981538476405L;
+
+		final int chunk;
+		final double[] x;
+
+		/**
+		 * Y coordinates, or null if they were not decoded.
+		 */
+		final double[] y;
+
+		Decoded(int chunk, double[] x, double[] y) {
+			this.chunk = chunk;
+			this.x = x;
+			this.y = y;
+		}
+	}
+
+	/**
+	 * Compressed points of a full chunk (CHUNK_SIZE points).
+	 */
+	private static final class Chunk implements Serializable {
+
+		private static final long serialVersionUID = -1849604766313418922L;
+
+		final double firstX, lastX;
+
+		/**
+		 * Bounds of the Y coordinates, NaN excluded.
+		 */
+		final double minY, maxY;
+
+		private final long[] xBits;
+		private final long[] yBits;
+
+		Chunk(double[] x, double[] y, int count) {
+			firstX = x[0];
+			lastX = x[count - 1];
+			double min = Double.POSITIVE_INFINITY, max = Double.NEGATIVE_INFINITY;
+			for(int i = 0; i < count; i++) {
+				if(y[i] < min) {
+					min = y[i];
+				}
+				if(y[i] > max) {
+					max = y[i];
+				}
+			}
+			minY = min;
+			maxY = max;
+			xBits = encodeX(x, count);
+			yBits = encodeY(y, count);
+		}
+
+		long bytes() {
+			return 64 + 8L * (xBits.length + yBits.length);
+		}
+
+		/**
+		 * Writes the X coordinates as delta of deltas: 0 if the delta repeats,
+		 * and 10, 110 or 1110 followed by 7, 9 or 12 bits, or 1111 followed by
+		 * the 64 bits of the difference otherwise.
+		 */
+		private static long[] encodeX(double[] x, int count) {
+			BitWriter out = new BitWriter(count / 32 + 4);
+			long previous = sortable(Double.doubleToRawLongBits(x[0]));
+			long delta = 0;
+			out.write(previous, 64);
+			for(int i = 1; i < count; i++) {
+				long value = sortable(Double.doubleToRawLongBits(x[i]));
+				long d = value - previous;
+				long dod = d - delta;
+				if(dod == 0) {
+					out.write(0, 1);
+				}
+				else if(dod >= -64 && dod < 64) {
+					out.write(0x2, 2);
+					out.write(dod, 7);
+				}
+				else if(dod >= -256 && dod < 256) {
+					out.write(0x6, 3);
+					out.write(dod, 9);
+				}
+				else if(dod >= -2048 && dod < 2048) {
+					out.write(0xE, 4);
+					out.write(dod, 12);
+				}
+				else {
+					out.write(0xF, 4);
+					out.write(dod, 64);
+				}
+				previous = value;
+				delta = d;
+			}
+			return out.toArray();
+		}
+
+		double[] decodeX(double[] x) {
+			BitReader in = new BitReader(xBits);
+			long previous = in.read(64);
+			long delta = 0;
+			x[0] = Double.longBitsToDouble(sortable(previous));
+			int count = x.length;
+			for(int i = 1; i < count; i++) {
+				long dod;
+				if(in.read(1) == 0) {
+					dod = 0;
+				}
+				else if(in.read(1) == 0) {
+					dod = in.readSigned(7);
+				}
+				else if(in.read(1) == 0) {
+					dod = in.readSigned(9);
+				}
+				else if(in.read(1) == 0) {
+					dod = in.readSigned(12);
+				}
+				else {
+					dod = in.read(64);
+				}
+				delta += dod;
+				previous += delta;
+				x[i] = Double.longBitsToDouble(sortable(previous));
+			}
+			return x;
+		}
+
+		/**
+		 * Writes the Y coordinates as the XOR with the previous value: 0 if it
+		 * repeats, 10 followed by the changed bits if they fit in the window of
+		 * the previous XOR, or 11 followed by the leading zeros (5 bits), the
+		 * length (6 bits) and the changed bits otherwise.
+		 */
+		private static long[] encodeY(double[] y, int count) {
+			BitWriter out = new BitWriter(count / 4 + 4);
+			long previous = Double.doubleToRawLongBits(y[0]);
+			int leading = -1, trailing = 0;
+			out.write(previous, 64);
+			for(int i = 1; i < count; i++) {
+				long value = Double.doubleToRawLongBits(y[i]);
+				long xor = value ^ previous;
+				if(xor == 0) {
+					out.write(0, 1);
+				}
+				else {
+					int l = Math.min(Long.numberOfLeadingZeros(xor), 31);
+					int t = Long.numberOfTrailingZeros(xor);
+					if(leading >= 0 && l >= leading && t >= trailing) {
+						out.write(0x2, 2);
+						out.write(xor >>> trailing, 64 - leading - trailing);
+					}
+					else {
+						int length = 64 - l - t;
+						out.write(0x3, 2);
+						out.write(l, 5);
+						out.write(length - 1, 6);
+						out.write(xor >>> t, length);
+						leading = l;
+						trailing = t;
+					}
+				}
+				previous = value;
+			}
+			return out.toArray();
+		}
+
+		double[] decodeY(double[] y) {
+			BitReader in = new BitReader(yBits);
+			long previous = in.read(64);
+			int leading = 0, trailing = 0;
+			y[0] = Double.longBitsToDouble(previous);
+			int count = y.length;
+			for(int i = 1; i < count; i++) {
+				if(in.read(1) != 0) {
+					if(in.read(1) != 0) {
+						leading = (int) in.read(5);
+						trailing = 64 - leading - ((int) in.read(6) + 1);
+					}
+					previous ^= in.read(64 - leading - trailing) << trailing;
+				}
+				y[i] = Double.longBitsToDouble(previous);
+			}
+			return y;
+		}
+	}
+
+	/**
+	 * Stream of bits written from the most significant bit of each word.
+	 */
+	private static final class BitWriter {
+
+		private long[] words;
+		private int bits;
+
+		BitWriter(int capacity) {
+			words = new long[capacity];
+		}
+
+		/**
+		 * Writes the lowest n bits (1 to 64) of the value.
+		 */
+		void write(long value, int n) {
+			int index = bits >>> 6;
+			if(index + 1 >= words.length) {
+				words = Arrays.copyOf(words, words.length * 2 + 2);
+			}
+			long v = n == 64 ? value : value & ((1L << n) - 1);
+			int free = 64 - (bits & 63);
+			if(n <= free) {
+				words[index] |= v << (free - n);
+			}
+			else {
+				words[index] |= v >>> (n - free);
+				words[index + 1] |= v << (64 - (n - free));
+			}
+			bits += n;
+		}
+
+		long[] toArray() {
+			return Arrays.copyOf(words, (bits + 63) >>> 6);
+		}
+	}
+
+	/**
+	 * Reads a stream written by a BitWriter.
+	 */
+	private static final class BitReader {
+
+		private final long[] words;
+		private int bits;
+
+		BitReader(long[] words) {
+			this.words = words;
+		}
+
+		/**
+		 * Reads n bits (1 to 64).
+		 */
+		long read(int n) {
+			int index = bits >>> 6;
+			int free = 64 - (bits & 63);
+			long v;
+			if(n <= free) {
+				v = words[index] >>> (free - n);
+			}
+			else {
+				v = (words[index] << (n - free)) | (words[index + 1] >>> (64 - (n - free)));
+			}
+			bits += n;
+			return n == 64 ? v : v & ((1L << n) - 1);
+		}
+
+		/**
+		 * Reads n bits as a signed number.
+		 */
+		long readSigned(int n) {
+			return (read(n) << (64 - n)) >> (64 - n);
+		}
+	}
+}
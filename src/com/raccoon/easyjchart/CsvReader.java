@@ -0,0 +1,684 @@
+package com.raccoon.easyjchart;
+
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.RandomAccessFile;
+import java.io.UnsupportedEncodingException;
+import java.math.BigInteger;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.Callable;
+
+/**
+ * Reads functions from CSV/TSV files. Each function takes its X and Y
+ * coordinates from two columns, chosen by index or by name (when the file has a
+ * header), and is assigned to a plot index of the chart (see Grafica.loadCsv).
+ * <p>
+ * Files are split in chunks of whole lines that are parsed in parallel on the
+ * common fork-join pool, and streams are parsed while they are read. Numbers are
+ * parsed from the bytes into primitive arrays without creating objects, except
+ * for unusual numbers (such as those with more than 19 significant digits).
+ * Empty or non-numeric fields are read as NaN. Quotes around a field are
+ * ignored, but a quoted field can't contain the separator. The header is read
+ * as UTF-8, and a byte order mark at the beginning of the file is skipped.
+ */
+public class CsvReader {
+
+	/**
+	 * Size of the chunks parsed in parallel.
+	 */
+	private static final int CHUNK_SIZE = 8 << 20;
+
+	/**
+	 * Byte order mark that some programs write at the beginning of UTF-8 files.
+	 */
+	private static final byte[] UTF8_BOM = {(byte) 0xEF, (byte) 0xBB, (byte) 0xBF};
+
+	/**
+	 * Exact powers of ten representable as doubles.
+	 */
+	private static final double[] POWERS_OF_TEN = new double[23];
+
+	/**
+	 * Range of the decimal exponents of the fast conversion.
+	 */
+	private static final int SMALLEST_POWER = -342;
+	private static final int LARGEST_POWER = 308;
+
+	/**
+	 * High and low 64 bits of the powers of five 5^q, normalized to 128 bits
+	 * (truncated for q >= 0, rounded up for q < 0), as used by the Eisel-Lemire
+	 * conversion.
+	 */
+	private static final long[] POWERS_OF_FIVE_HIGH = new long[LARGEST_POWER - SMALLEST_POWER + 1];
+	private static final long[] POWERS_OF_FIVE_LOW = new long[LARGEST_POWER - SMALLEST_POWER + 1];
+
+	static {
+		POWERS_OF_TEN[0] = 1;
+		for(int i = 1; i < POWERS_OF_TEN.length; i++) {
+			POWERS_OF_TEN[i] = POWERS_OF_TEN[i - 1] * 10;
+		}
+
+		BigInteger two128 = BigInteger.ONE.shiftLeft(128);
+		BigInteger mask = BigInteger.ONE.shiftLeft(64).subtract(BigInteger.ONE);
+		for(int q = SMALLEST_POWER; q <= LARGEST_POWER; q++) {
+			BigInteger power;
+			if(q < 0) {
+				BigInteger power5 = BigInteger.valueOf(5).pow(-q);
+				int z = power5.subtract(BigInteger.ONE).bitLength();
+				int b = q >= -27 ? z + 127 : 2 * z + 128;
+				power = BigInteger.ONE.shiftLeft(b).divide(power5).add(BigInteger.ONE);
+			}
+			else {
+				power = BigInteger.valueOf(5).pow(q);
+				if(power.bitLength() < 128) {
+					power = power.shiftLeft(128 - power.bitLength());
+				}
+			}
+			while(power.compareTo(two128) >= 0) {
+				power = power.shiftRight(1);
+			}
+			POWERS_OF_FIVE_HIGH[q - SMALLEST_POWER] = power.shiftRight(64).longValue();
+			POWERS_OF_FIVE_LOW[q - SMALLEST_POWER] = power.and(mask).longValue();
+		}
+	}
+
+	/**
+	 * Function read from two columns.
+	 */
+	private static class Series {
+
+		final int nPlot;
+		final String xName;
+		final String yName;
+		int xColumn;
+		int yColumn;
+
+		Series(int xColumn, int yColumn, String xName, String yName, int nPlot) {
+			this.xColumn = xColumn;
+			this.yColumn = yColumn;
+			this.xName = xName;
+			this.yName = yName;
+			this.nPlot = nPlot;
+		}
+	}
+
+	private final byte separator;
+	private final boolean header;
+	private final List<Series> series = new ArrayList<Series>();
+
+	/**
+	 * Names of the columns of the last header read.
+	 */
+	private String[] columnNames = new String[0];
+
+	/**
+	 * Creates a reader.
+	 * @param separator Separator of the fields (',' for CSV, '\t' for TSV, ';'...)
+	 * @param header True if the first line has the names of the columns
+	 */
+	public CsvReader(char separator, boolean header) {
+		if(separator > 127 || separator == '\n' || separator == '\r' || separator == '"') {
+			throw new IllegalArgumentException("Invalid separator: " + separator);
+		}
+		this.separator = (byte) separator;
+		this.header = header;
+	}
+
+	/**
+	 * Adds a function that takes its coordinates from two columns.
+	 * @param xColumn Index of the column of the X coordinates (the first is 0)
+	 * @param yColumn Index of the column of the Y coordinates (the first is 0)
+	 * @param nPlot Index of the plot of the chart where the function is drawn
+	 * @return This reader
+	 */
+	public CsvReader addSeries(int xColumn, int yColumn, int nPlot) {
+		if(xColumn < 0 || yColumn < 0) {
+			throw new IllegalArgumentException("Invalid columns: " + xColumn + ", " + yColumn);
+		}
+		series.add(new Series(xColumn, yColumn, null, null, nPlot));
+		return this;
+	}
+
+	/**
+	 * Adds a function that takes its coordinates from two columns of the header.
+	 * @param xName Name of the column of the X coordinates
+	 * @param yName Name of the column of the Y coordinates
+	 * @param nPlot Index of the plot of the chart where the function is drawn
+	 * @return This reader
+	 */
+	public CsvReader addSeries(String xName, String yName, int nPlot) {
+		if(!header) {
+			throw new IllegalStateException("Columns can only be chosen by name when the file has a header");
+		}
+		series.add(new Series(-1, -1, xName, yName, nPlot));
+		return this;
+	}
+
+	/**
+	 * Returns the plot index of each function, in the order they were added.
+	 * @return The plot indexes
+	 */
+	public int[] getPlotIndexes() {
+		int[] indexes = new int[series.size()];
+		for(int i = 0; i < indexes.length; i++) {
+			indexes[i] = series.get(i).nPlot;
+		}
+		return indexes;
+	}
+
+	/**
+	 * Reads the functions of a file, parsing it in parallel.
+	 * @param file The file
+	 * @param isContinuous True to sort the functions by the X coordinate
+	 * @return A dataset per function, in the order they were added
+	 * @throws IOException If the file can't be read
+	 */
+	public List<ArrayXYDataset> read(File file, boolean isContinuous) throws IOException {
+		checkSeries();
+		RandomAccessFile raf = new RandomAccessFile(file, "r");
+		try {
+			FileChannel channel = raf.getChannel();
+			long size = channel.size();
+			long start = skipBom(channel);
+			if(header) {
+				start = readHeader(channel, start);
+			}
+			resolveColumns();
+
+			List<long[]> chunks = split(channel, start, size);
+			List<Callable<Parser>> tasks = new ArrayList<Callable<Parser>>(chunks.size());
+			for(final long[] chunk : chunks) {
+				final MappedByteBuffer buffer = channel.map(FileChannel.MapMode.READ_ONLY, chunk[0], chunk[1] - chunk[0]);
+				tasks.add(new Callable<Parser>() {
+					public Parser call() {
+						Parser parser = new Parser();
+						byte[] block = new byte[64 << 10];
+						while(buffer.hasRemaining()) {
+							int n = Math.min(block.length, buffer.remaining());
+							buffer.get(block, 0, n);
+							parser.parse(block, 0, n);
+						}
+						parser.endOfInput();
+						return parser;
+					}
+				});
+			}
+			List<Parser> parsers;
+			try {
+				parsers = Parallel.invokeAll(tasks, "parsing " + file);
+			} catch (RuntimeException e) {
+				throw new IOException("Error parsing " + file, e);
+			}
+			return join(parsers, isContinuous);
+		} finally {
+			raf.close();
+		}
+	}
+
+	/**
+	 * Reads the functions of a stream while it is read. The stream is not closed.
+	 * @param in The stream
+	 * @param isContinuous True to sort the functions by the X coordinate
+	 * @return A dataset per function, in the order they were added
+	 * @throws IOException If the stream can't be read
+	 */
+	public List<ArrayXYDataset> read(InputStream in, boolean isContinuous) throws IOException {
+		checkSeries();
+		byte[] block = new byte[64 << 10];
+		// The parser is created once the columns are known (after the header)
+		Parser parser = null;
+		ByteArrayOutputStream headerLine = new ByteArrayOutputStream();
+		byte[] start = new byte[UTF8_BOM.length];
+		int bom = 0;
+		int n;
+		while((n = in.read(block)) != -1) {
+			int from = 0;
+			while(bom >= 0 && bom < UTF8_BOM.length && from < n) {
+				start[bom++] = block[from++];
+			}
+			if(bom == UTF8_BOM.length) {
+				if(!Arrays.equals(start, UTF8_BOM)) {
+					// Not a BOM: the bytes are the beginning of the first line
+					parser = consume(parser, headerLine, start, 0, start.length);
+				}
+				bom = -1;
+			}
+			if(bom >= 0) {
+				continue;
+			}
+			parser = consume(parser, headerLine, block, from, n);
+		}
+		if(bom > 0) {
+			parser = consume(parser, headerLine, start, 0, bom);
+		}
+		if(parser == null) {
+			if(header) {
+				parseHeader(decode(headerLine));
+			}
+			resolveColumns();
+			parser = new Parser();
+		}
+		parser.endOfInput();
+		return join(Arrays.asList(parser), isContinuous);
+	}
+
+	/**
+	 * Parses the bytes [from, to) of a stream, reading the header first if the
+	 * file has one.
+	 * @param parser The parser, or null while the header is being read
+	 * @return The parser, once it has been created
+	 */
+	private Parser consume(Parser parser, ByteArrayOutputStream headerLine, byte[] block, int from, int to) throws IOException {
+		if(parser == null) {
+			if(header) {
+				int end = from;
+				while(end < to && block[end] != '\n') {
+					end++;
+				}
+				headerLine.write(block, from, end - from);
+				if(end == to) {
+					return null;
+				}
+				parseHeader(decode(headerLine));
+				from = end + 1;
+			}
+			resolveColumns();
+			parser = new Parser();
+		}
+		parser.parse(block, from, to);
+		return parser;
+	}
+
+	private static String decode(ByteArrayOutputStream line) throws UnsupportedEncodingException {
+		return line.toString("UTF-8");
+	}
+
+	/**
+	 * Returns the position after the UTF-8 byte order mark of the file, if it has one.
+	 */
+	private static long skipBom(FileChannel channel) throws IOException {
+		ByteBuffer buffer = ByteBuffer.allocate(UTF8_BOM.length);
+		int n = 0;
+		while(buffer.hasRemaining() && n >= 0) {
+			n = channel.read(buffer, buffer.position());
+		}
+		return Arrays.equals(buffer.array(), UTF8_BOM) ? UTF8_BOM.length : 0;
+	}
+
+	private void checkSeries() {
+		if(series.isEmpty()) {
+			throw new IllegalStateException("No series to read");
+		}
+	}
+
+	/**
+	 * Reads the first line of the file (UTF-8).
+	 * @return Position of the second line
+	 */
+	private long readHeader(FileChannel channel, long start) throws IOException {
+		ByteArrayOutputStream line = new ByteArrayOutputStream();
+		ByteBuffer buffer = ByteBuffer.allocate(4096);
+		long position = start;
+		while(channel.read(buffer, position) > 0) {
+			buffer.flip();
+			while(buffer.hasRemaining()) {
+				byte b = buffer.get();
+				position++;
+				if(b == '\n') {
+					parseHeader(decode(line));
+					return position;
+				}
+				line.write(b);
+			}
+			buffer.clear();
+		}
+		parseHeader(decode(line));
+		return position;
+	}
+
+	private void parseHeader(String line) {
+		String sep = String.valueOf((char) separator);
+		List<String> names = new ArrayList<String>();
+		int from = 0;
+		while(true) {
+			int to = line.indexOf(sep, from);
+			String name = (to < 0 ? line.substring(from) : line.substring(from, to)).trim();
+			if(name.length() >= 2 && name.startsWith("\"") && name.endsWith("\"")) {
+				name = name.substring(1, name.length() - 1);
+			}
+			names.add(name);
+			if(to < 0) {
+				break;
+			}
+			from = to + 1;
+		}
+		columnNames = names.toArray(new String[names.size()]);
+	}
+
+	private void resolveColumns() throws IOException {
+		for(Series s : series) {
+			if(s.xName != null) {
+				s.xColumn = column(s.xName);
+				s.yColumn = column(s.yName);
+			}
+		}
+	}
+
+	private int column(String name) throws IOException {
+		for(int i = 0; i < columnNames.length; i++) {
+			if(columnNames[i].equals(name)) {
+				return i;
+			}
+		}
+		throw new IOException("Column not found: " + name);
+	}
+
+	/**
+	 * Splits [start, size) in chunks that begin and end at line boundaries.
+	 */
+	private static List<long[]> split(FileChannel channel, long start, long size) throws IOException {
+		List<long[]> chunks = new ArrayList<long[]>();
+		ByteBuffer buffer = ByteBuffer.allocate(4096);
+		while(start < size) {
+			long end = Math.min(size, start + CHUNK_SIZE);
+			// Moves the end after the next line break
+			while(end < size) {
+				buffer.clear();
+				int n = channel.read(buffer, end);
+				int i = 0;
+				while(i < n && buffer.get(i) != '\n') {
+					i++;
+				}
+				end += i;
+				if(i < n) {
+					end++;
+					break;
+				}
+			}
+			chunks.add(new long[] {start, Math.min(end, size)});
+			start = end;
+		}
+		return chunks;
+	}
+
+	/**
+	 * Joins the points parsed by each chunk, in order.
+	 */
+	private List<ArrayXYDataset> join(List<Parser> parsers, boolean isContinuous) {
+		List<ArrayXYDataset> datasets = new ArrayList<ArrayXYDataset>(series.size());
+		for(int s = 0; s < series.size(); s++) {
+			int total = 0;
+			for(Parser parser : parsers) {
+				total += parser.count;
+			}
+			double[] x = new double[total];
+			double[] y = new double[total];
+			int offset = 0;
+			for(Parser parser : parsers) {
+				System.arraycopy(parser.x[s], 0, x, offset, parser.count);
+				System.arraycopy(parser.y[s], 0, y, offset, parser.count);
+				offset += parser.count;
+			}
+			Series serie = series.get(s);
+			String name = serie.yColumn < columnNames.length ? columnNames[serie.yColumn] : "column " + serie.yColumn;
+			datasets.add(new ArrayXYDataset(name, x, y, total, isContinuous));
+		}
+		return datasets;
+	}
+
+	/**
+	 * Parses lines into primitive arrays. A line may be split between two calls
+	 * to parse; its beginning is kept in the current field state.
+	 */
+	private class Parser {
+
+		final double[][] x = new double[series.size()][1024];
+		final double[][] y = new double[series.size()][1024];
+		int count = 0;
+
+		/**
+		 * Values of the columns of the current line.
+		 */
+		final double[] values;
+
+		/**
+		 * State of the current line and field.
+		 */
+		int column = 0;
+		boolean lineEmpty = true;
+		byte[] field = new byte[64];
+		int fieldLength = 0;
+
+		Parser() {
+			int columns = 0;
+			for(Series s : series) {
+				columns = Math.max(columns, Math.max(s.xColumn, s.yColumn) + 1);
+			}
+			values = new double[columns];
+			Arrays.fill(values, Double.NaN);
+		}
+
+		void parse(byte[] block, int from, int to) {
+			for(int i = from; i < to; i++) {
+				byte b = block[i];
+				if(b == '\n') {
+					endField();
+					endLine();
+				}
+				else if(b == separator) {
+					endField();
+					column++;
+				}
+				else if(b != '\r' && b != '"') {
+					lineEmpty = false;
+					if(column < values.length) {
+						if(fieldLength == field.length) {
+							// Long numbers (many digits or padding) go to the slow path of parseDouble
+							field = Arrays.copyOf(field, 2 * fieldLength);
+						}
+						field[fieldLength++] = b;
+					}
+				}
+			}
+		}
+
+		void endOfInput() {
+			endField();
+			endLine();
+		}
+
+		private void endField() {
+			if(column < values.length) {
+				values[column] = parseDouble(field, fieldLength);
+			}
+			fieldLength = 0;
+		}
+
+		private void endLine() {
+			if(!lineEmpty) {
+				if(count == x[0].length) {
+					for(int s = 0; s < x.length; s++) {
+						x[s] = Arrays.copyOf(x[s], 2 * count);
+						y[s] = Arrays.copyOf(y[s], 2 * count);
+					}
+				}
+				for(int s = 0; s < x.length; s++) {
+					Series serie = series.get(s);
+					x[s][count] = values[serie.xColumn];
+					y[s][count] = values[serie.yColumn];
+				}
+				count++;
+			}
+			Arrays.fill(values, Double.NaN);
+			column = 0;
+			lineEmpty = true;
+		}
+	}
+
+	/**
+	 * Parses a decimal number without creating objects. Numbers with up to 19
+	 * significant digits are converted exactly from the digits (with the
+	 * Eisel-Lemire algorithm when the quick exact conversion can't be used); the
+	 * rest are parsed by Double.parseDouble. Invalid numbers are NaN.
+	 */
+	static double parseDouble(byte[] s, int length) {
+		int i = 0;
+		while(i < length && s[i] == ' ') {
+			i++;
+		}
+		while(length > i && s[length - 1] == ' ') {
+			length--;
+		}
+		if(i == length) {
+			return Double.NaN;
+		}
+		int start = i;
+		boolean negative = false;
+		if(s[i] == '-' || s[i] == '+') {
+			negative = s[i] == '-';
+			i++;
+		}
+		// Unsigned significand of up to 19 digits
+		long significand = 0;
+		int digits = 0;
+		int exponent = 0;
+		boolean any = false;
+		for(; i < length && s[i] >= '0' && s[i] <= '9'; i++) {
+			any = true;
+			if(digits == 19) {
+				return slowParse(s, start, length);
+			}
+			significand = significand * 10 + (s[i] - '0');
+			if(significand != 0) {
+				digits++;
+			}
+		}
+		if(i < length && s[i] == '.') {
+			for(i++; i < length && s[i] >= '0' && s[i] <= '9'; i++) {
+				any = true;
+				if(digits == 19) {
+					return slowParse(s, start, length);
+				}
+				significand = significand * 10 + (s[i] - '0');
+				exponent--;
+				if(significand != 0) {
+					digits++;
+				}
+			}
+		}
+		if(!any) {
+			return slowParse(s, start, length);
+		}
+		if(i < length && (s[i] == 'e' || s[i] == 'E')) {
+			i++;
+			boolean negativeExponent = false;
+			if(i < length && (s[i] == '-' || s[i] == '+')) {
+				negativeExponent = s[i] == '-';
+				i++;
+			}
+			int e = 0;
+			boolean anyExponent = false;
+			for(; i < length && s[i] >= '0' && s[i] <= '9'; i++) {
+				anyExponent = true;
+				if(e < 10000) {
+					e = e * 10 + (s[i] - '0');
+				}
+			}
+			if(!anyExponent) {
+				return Double.NaN;
+			}
+			exponent += negativeExponent ? -e : e;
+		}
+		if(i != length) {
+			return slowParse(s, start, length);
+		}
+		if(significand == 0) {
+			return negative ? -0.0 : 0.0;
+		}
+		if(significand >= 0 && significand <= (1L << 53) && exponent >= -22 && exponent <= 22) {
+			double value = exponent < 0 ? significand / POWERS_OF_TEN[-exponent] : significand * POWERS_OF_TEN[exponent];
+			return negative ? -value : value;
+		}
+		double value = eiselLemire(significand, exponent);
+		if(Double.isNaN(value)) {
+			return slowParse(s, start, length);
+		}
+		return negative ? -value : value;
+	}
+
+	/**
+	 * Converts w * 10^q (w unsigned and not zero) to the nearest double.
+	 * @return The double, or NaN if the result can't be decided this way
+	 */
+	private static double eiselLemire(long w, int q) {
+		if(q < SMALLEST_POWER || q > LARGEST_POWER) {
+			return Double.NaN;
+		}
+		long factorHigh = POWERS_OF_FIVE_HIGH[q - SMALLEST_POWER];
+		long exponent = ((217706L * q) >> 16) + 1024 + 63;
+		int lz = Long.numberOfLeadingZeros(w);
+		w <<= lz;
+		long lower = w * factorHigh;
+		long upper = multiplyHigh(w, factorHigh);
+		if((upper & 0x1FF) == 0x1FF && Long.compareUnsigned(lower + w, lower) < 0) {
+			long factorLow = POWERS_OF_FIVE_LOW[q - SMALLEST_POWER];
+			long productLow = w * factorLow;
+			long productMiddle = lower + multiplyHigh(w, factorLow);
+			if(Long.compareUnsigned(productMiddle, lower) < 0) {
+				upper++;
+			}
+			if(productMiddle + 1 == 0 && (upper & 0x1FF) == 0x1FF && Long.compareUnsigned(productLow + w, productLow) < 0) {
+				return Double.NaN;
+			}
+			lower = productMiddle;
+		}
+		long upperBit = upper >>> 63;
+		long mantissa = upper >>> (upperBit + 9);
+		lz += (int) (1 ^ upperBit);
+		if(lower == 0 && (upper & 0x1FF) == 0 && (mantissa & 3) == 1) {
+			return Double.NaN;
+		}
+		mantissa += mantissa & 1;
+		mantissa >>>= 1;
+		if(mantissa >= (1L << 53)) {
+			mantissa = 1L << 52;
+			lz--;
+		}
+		mantissa &= ~(1L << 52);
+		long realExponent = exponent - lz;
+		if(realExponent < 1 || realExponent > 2046) {
+			return Double.NaN;
+		}
+		return Double.longBitsToDouble(mantissa | realExponent << 52);
+	}
+
+	/**
+	 * High 64 bits of the unsigned product of two longs.
+	 */
+	private static long multiplyHigh(long a, long b) {
+		long aLow = a & 0xFFFFFFFFL, aHigh = a >>> 32;
+		long bLow = b & 0xFFFFFFFFL, bHigh = b >>> 32;
+		long lowLow = aLow * bLow;
+		long lowHigh = aLow * bHigh;
+		long highLow = aHigh * bLow;
+		long middle = (lowLow >>> 32) + (lowHigh & 0xFFFFFFFFL) + (highLow & 0xFFFFFFFFL);
+		return aHigh * bHigh + (lowHigh >>> 32) + (highLow >>> 32) + (middle >>> 32);
+	}
+
+	private static double slowParse(byte[] s, int start, int end) {
+		try {
+			return Double.parseDouble(new String(s, start, end - start, "ISO-8859-1"));
+		} catch (NumberFormatException e) {
+			return Double.NaN;
+		} catch (UnsupportedEncodingException e) {
+			return Double.NaN;
+		}
+	}
+}
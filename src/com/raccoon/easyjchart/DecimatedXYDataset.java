@@ -0,0 +1,437 @@
+package com.raccoon.easyjchart;
+
+import java.util.Arrays;
+import java.util.List;
+
+import org.jfree.chart.renderer.RendererUtilities;
+import org.jfree.data.DomainInfo;
+import org.jfree.data.DomainOrder;
+import org.jfree.data.Range;
+import org.jfree.data.RangeInfo;
+import org.jfree.data.general.DatasetChangeEvent;
+import org.jfree.data.general.DatasetChangeListener;
+import org.jfree.data.general.DatasetUtilities;
+import org.jfree.data.xy.AbstractXYDataset;
+import org.jfree.data.xy.XYDataset;
+import org.jfree.data.xy.XYDomainInfo;
+import org.jfree.data.xy.XYRangeInfo;
+
+/**
+ * View of a function that only keeps the points needed to draw it in a given
+ * number of pixel columns. The points are chosen again (see update) when the
+ * visible range of the X axis or the width of the chart change, so the chart
+ * looks the same while a few points per pixel are drawn.
+ * <p>
+ * Only continuous functions sorted by the X coordinate are decimated: the
+ * points of a discrete function are drawn on their own, so all of them are
+ * kept even if they are sorted. The bounds of the
+ * view are the bounds of the whole function, so the auto range of the axes is
+ * not affected.
+ */
+public class DecimatedXYDataset extends AbstractXYDataset implements DomainInfo, RangeInfo, XYDomainInfo, XYRangeInfo, DatasetChangeListener {
+
+	private static final long serialVersionUID = 6870513658346129102L;
+
+	/**
+	 * Function that is decimated.
+	 */
+	private final XYDataset source;
+
+	/**
+	 * Algorithm used to choose the points.
+	 */
+	private DecimationMode mode;
+
+	/**
+	 * False if the function is drawn as separate points, which are never decimated.
+	 */
+	private final boolean continuous;
+
+	/**
+	 * Visible range and width of the last decimation.
+	 */
+	private double lower = Double.NaN;
+	private double upper = Double.NaN;
+	private int width = -1;
+
+	/**
+	 * True if the function or the mode changed since the last decimation.
+	 */
+	private boolean stale = true;
+
+	/**
+	 * True if the points of the function are returned without decimation.
+	 */
+	private boolean passThrough = true;
+
+	/**
+	 * Chosen points.
+	 */
+	private double[] x = new double[0];
+	private double[] y = new double[0];
+	private int count;
+
+	/**
+	 * Min/max pyramid of the function for the PYRAMID mode, built on the first
+	 * decimation after the function changes.
+	 */
+	private transient LodPyramid pyramid;
+
+	/**
+	 * Adds the points chosen from the pyramid.
+	 */
+	private final transient LodPyramid.Sink sink = new LodPyramid.Sink() {
+		public void item(int item) {
+			add(item);
+		}
+
+		public void gap() {
+			addPoint(Double.NaN, Double.NaN);
+		}
+	};
+
+	/**
+	 * Creates a view of the first series of a continuous function.
+	 * @param source Function to decimate
+	 * @param mode Algorithm used to choose the points
+	 */
+	public DecimatedXYDataset(XYDataset source, DecimationMode mode) {
+		this(source, mode, true);
+	}
+
+	/**
+	 * Creates a view of the first series of a dataset.
+	 * @param source Function to decimate
+	 * @param mode Algorithm used to choose the points
+	 * @param continuous True if the function is drawn as a line; false if its
+	 * points are drawn on their own, so all of them are kept
+	 */
+	public DecimatedXYDataset(XYDataset source, DecimationMode mode, boolean continuous) {
+		this.source = source;
+		this.mode = mode;
+		this.continuous = continuous;
+		source.addChangeListener(this);
+	}
+
+	/**
+	 * Returns the function that is decimated.
+	 * @return The source dataset
+	 */
+	public XYDataset getSource() {
+		return source;
+	}
+
+	/**
+	 * Indicates if the function is drawn as a line, so its points can be decimated.
+	 * @return False if every point is kept
+	 */
+	public boolean isContinuous() {
+		return continuous;
+	}
+
+	/**
+	 * Returns the algorithm used to choose the points.
+	 * @return The decimation mode
+	 */
+	public DecimationMode getMode() {
+		return mode;
+	}
+
+	/**
+	 * Changes the algorithm used to choose the points.
+	 * @param mode The decimation mode
+	 */
+	public void setMode(DecimationMode mode) {
+		if(this.mode != mode) {
+			this.mode = mode;
+			stale = true;
+			pyramid = null;
+			fireDatasetChanged();
+		}
+	}
+
+	/**
+	 * Stops listening to the changes of the source dataset.
+	 */
+	public void detach() {
+		source.removeChangeListener(this);
+	}
+
+	/**
+	 * Chooses the points to draw for the given visible range and width. Nothing
+	 * is done if neither the range, the width nor the function changed. No
+	 * change event is sent: the view is meant to be updated just before drawing.
+	 * @param lower Lower bound of the visible range of the X axis
+	 * @param upper Upper bound of the visible range of the X axis
+	 * @param width Number of pixel columns
+	 */
+	public void update(double lower, double upper, int width) {
+		if(!stale && lower == this.lower && upper == this.upper && width == this.width) {
+			return;
+		}
+		this.lower = lower;
+		this.upper = upper;
+		this.width = width;
+		stale = false;
+
+		int n = source.getItemCount(0);
+		passThrough = !continuous || mode == DecimationMode.NONE || width <= 0 || !(upper > lower)
+				|| n <= 2 * width || source.getDomainOrder() != DomainOrder.ASCENDING;
+		if(passThrough) {
+			return;
+		}
+		int[] live = RendererUtilities.findLiveItems(source, 0, lower, upper);
+		int first = Math.max(live[0] - 1, 0);
+		int last = Math.min(live[1] + 1, n - 1);
+
+		count = 0;
+		if(x.length < 4 * width + 4) {
+			x = new double[4 * width + 4];
+			y = new double[4 * width + 4];
+		}
+		if(last - first + 1 <= 2 * width) {
+			for(int i = first; i <= last; i++) {
+				add(i);
+			}
+		}
+		else if(mode == DecimationMode.LTTB) {
+			largestTriangleThreeBuckets(first, last, 2 * width);
+		}
+		else if(mode == DecimationMode.PYRAMID) {
+			fromPyramid(first, last, n);
+		}
+		else {
+			minMax(first, last);
+		}
+	}
+
+	/**
+	 * Takes the points from the pyramid, with blocks of the largest size that
+	 * still gives at least one block per pixel column. Ranges of less than 64
+	 * points per column are decimated from the points themselves.
+	 */
+	private void fromPyramid(int first, int last, int n) {
+		long perColumn = (last - first + 1L) / width;
+		if(perColumn < (1 << LodPyramid.BASE_LEVEL)) {
+			minMax(first, last);
+			return;
+		}
+		if(pyramid == null || pyramid.getItemCount() != n) {
+			pyramid = new LodPyramid(source);
+		}
+		int level = 63 - Long.numberOfLeadingZeros(perColumn);
+		pyramid.decimate(first, last, level, sink);
+	}
+
+	/**
+	 * Keeps the first and last points and, for each pixel column, the points
+	 * with the minimum and maximum Y coordinate in their original order. A gap
+	 * (NaN) inside a column is kept as a NaN point.
+	 */
+	private void minMax(int first, int last) {
+		double scale = width / (upper - lower);
+		int bucket = Integer.MIN_VALUE;
+		int minItem = -1, maxItem = -1;
+		double min = 0, max = 0;
+		boolean gap = false;
+
+		add(first);
+		for(int i = first + 1; i < last; i++) {
+			int b = (int) Math.floor((source.getXValue(0, i) - lower) * scale);
+			if(b != bucket) {
+				flush(minItem, maxItem, gap);
+				bucket = b;
+				minItem = maxItem = -1;
+				gap = false;
+			}
+			double v = source.getYValue(0, i);
+			if(Double.isNaN(v)) {
+				gap = true;
+			}
+			else if(minItem < 0) {
+				minItem = maxItem = i;
+				min = max = v;
+			}
+			else if(v < min) {
+				minItem = i;
+				min = v;
+			}
+			else if(v > max) {
+				maxItem = i;
+				max = v;
+			}
+		}
+		flush(minItem, maxItem, gap);
+		add(last);
+	}
+
+	private void flush(int minItem, int maxItem, boolean gap) {
+		if(minItem >= 0) {
+			add(Math.min(minItem, maxItem));
+			if(minItem != maxItem) {
+				add(Math.max(minItem, maxItem));
+			}
+		}
+		if(gap) {
+			addPoint(Double.NaN, Double.NaN);
+		}
+	}
+
+	/**
+	 * Largest-Triangle-Three-Buckets: splits the points in buckets and keeps, in
+	 * each one, the point that forms the largest triangle with the point kept in
+	 * the previous bucket and the average of the next bucket.
+	 */
+	private void largestTriangleThreeBuckets(int first, int last, int threshold) {
+		int n = last - first + 1;
+		double every = (double) (n - 2) / (threshold - 2);
+		int a = first;
+
+		add(first);
+		for(int i = 0; i < threshold - 2; i++) {
+			int nextStart = first + (int) Math.floor((i + 1) * every) + 1;
+			int nextEnd = Math.min(first + (int) Math.floor((i + 2) * every) + 1, last + 1);
+			double avgX = 0, avgY = 0;
+			int avgCount = 0;
+			for(int j = nextStart; j < nextEnd; j++) {
+				double v = source.getYValue(0, j);
+				if(!Double.isNaN(v)) {
+					avgX += source.getXValue(0, j);
+					avgY += v;
+					avgCount++;
+				}
+			}
+			if(avgCount > 0) {
+				avgX /= avgCount;
+				avgY /= avgCount;
+			}
+			else {
+				avgX = source.getXValue(0, last);
+				avgY = source.getYValue(0, last);
+			}
+
+			int start = first + (int) Math.floor(i * every) + 1;
+			int end = first + (int) Math.floor((i + 1) * every) + 1;
+			double ax = source.getXValue(0, a);
+			double ay = source.getYValue(0, a);
+			double maxArea = -1;
+			int chosen = start;
+			for(int j = start; j < end; j++) {
+				double area = Math.abs((ax - avgX) * (source.getYValue(0, j) - ay)
+						- (ax - source.getXValue(0, j)) * (avgY - ay));
+				if(area > maxArea) {
+					maxArea = area;
+					chosen = j;
+				}
+			}
+			add(chosen);
+			a = chosen;
+		}
+		add(last);
+	}
+
+	private void add(int item) {
+		addPoint(source.getXValue(0, item), source.getYValue(0, item));
+	}
+
+	private void addPoint(double px, double py) {
+		if(count == x.length) {
+			x = Arrays.copyOf(x, 2 * count);
+			y = Arrays.copyOf(y, 2 * count);
+		}
+		x[count] = px;
+		y[count++] = py;
+	}
+
+	@Override
+	public void datasetChanged(DatasetChangeEvent event) {
+		stale = true;
+		pyramid = null;
+		passThrough = true;
+		fireDatasetChanged();
+	}
+
+	@Override
+	public int getSeriesCount() {
+		return 1;
+	}
+
+	@Override
+	public Comparable getSeriesKey(int series) {
+		return source.getSeriesKey(0);
+	}
+
+	@Override
+	public int getItemCount(int series) {
+		return passThrough ? source.getItemCount(0) : count;
+	}
+
+	@Override
+	public Number getX(int series, int item) {
+		return Double.valueOf(getXValue(series, item));
+	}
+
+	@Override
+	public Number getY(int series, int item) {
+		return Double.valueOf(getYValue(series, item));
+	}
+
+	@Override
+	public double getXValue(int series, int item) {
+		return passThrough ? source.getXValue(0, item) : x[item];
+	}
+
+	@Override
+	public double getYValue(int series, int item) {
+		return passThrough ? source.getYValue(0, item) : y[item];
+	}
+
+	@Override
+	public DomainOrder getDomainOrder() {
+		return source.getDomainOrder();
+	}
+
+	@Override
+	public double getDomainLowerBound(boolean includeInterval) {
+		Range bounds = getDomainBounds(includeInterval);
+		return bounds == null ? Double.NaN : bounds.getLowerBound();
+	}
+
+	@Override
+	public double getDomainUpperBound(boolean includeInterval) {
+		Range bounds = getDomainBounds(includeInterval);
+		return bounds == null ? Double.NaN : bounds.getUpperBound();
+	}
+
+	@Override
+	public Range getDomainBounds(boolean includeInterval) {
+		return DatasetUtilities.findDomainBounds(source, includeInterval);
+	}
+
+	@Override
+	public Range getDomainBounds(List visibleSeriesKeys, boolean includeInterval) {
+		return DatasetUtilities.findDomainBounds(source, visibleSeriesKeys, includeInterval);
+	}
+
+	@Override
+	public double getRangeLowerBound(boolean includeInterval) {
+		Range bounds = getRangeBounds(includeInterval);
+		return bounds == null ? Double.NaN : bounds.getLowerBound();
+	}
+
+	@Override
+	public double getRangeUpperBound(boolean includeInterval) {
+		Range bounds = getRangeBounds(includeInterval);
+		return bounds == null ? Double.NaN : bounds.getUpperBound();
+	}
+
+	@Override
+	public Range getRangeBounds(boolean includeInterval) {
+		return DatasetUtilities.findRangeBounds(source, includeInterval);
+	}
+
+	@Override
+	public Range getRangeBounds(List visibleSeriesKeys, Range xRange, boolean includeInterval) {
+		return DatasetUtilities.findRangeBounds(source, visibleSeriesKeys, xRange, includeInterval);
+	}
+}
@@ -0,0 +1,34 @@
+package com.raccoon.easyjchart;
+
+/**
+ * Algorithms available to reduce the number of points drawn of a function
+ * (see Grafica.setDecimation).
+ */
+public enum DecimationMode {
+
+	/**
+	 * All the points are drawn.
+	 */
+	NONE,
+
+	/**
+	 * For each pixel column the points with the minimum and the maximum Y
+	 * coordinate are drawn. The chart looks the same as with all the points.
+	 */
+	MIN_MAX,
+
+	/**
+	 * Largest-Triangle-Three-Buckets: two points per pixel column are chosen
+	 * to keep the visual shape of the function.
+	 */
+	LTTB,
+
+	/**
+	 * The first, minimum, maximum and last points of blocks of about one pixel
+	 * column, taken from a min/max pyramid of the function that is built once
+	 * (again after each change of the points). Any zoom is drawn in a time that
+	 * doesn't depend on the number of points, at the cost of less than a third
+	 * of a byte per point. Meant for very long functions that are panned and zoomed.
+	 */
+	PYRAMID
+}
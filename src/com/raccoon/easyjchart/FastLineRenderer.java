@@ -0,0 +1,373 @@
+package com.raccoon.easyjchart;
+
+import java.awt.Graphics2D;
+import java.awt.RenderingHints;
+import java.awt.geom.Line2D;
+import java.awt.geom.Rectangle2D;
+import java.util.Arrays;
+
+import org.jfree.chart.axis.NumberAxis;
+import org.jfree.chart.axis.ValueAxis;
+import org.jfree.chart.entity.EntityCollection;
+import org.jfree.chart.plot.CrosshairState;
+import org.jfree.chart.plot.PlotOrientation;
+import org.jfree.chart.plot.PlotRenderingInfo;
+import org.jfree.chart.plot.XYPlot;
+import org.jfree.chart.renderer.xy.XYItemRendererState;
+import org.jfree.chart.renderer.xy.XYLineAndShapeRenderer;
+import org.jfree.data.xy.XYDataset;
+import org.jfree.ui.RectangleEdge;
+
+/**
+ * Renderer of plain lines that doesn't create objects per point, unlike
+ * XYLineAndShapeRenderer, which creates a Line2D per segment and an entity per
+ * point. The points of a series are converted to pixels into buffers that are
+ * kept between paints; consecutive points that fall in the same pixel column
+ * are reduced to the first, lowest, highest and last ones, which draw the same
+ * pixels; and no entity is created unless the series has tool tips or URLs.
+ * The buffers belong to the thread that paints, so the same renderer can draw
+ * copies of a chart in several threads at once (see RenderScheduler).
+ * Without antialiasing each run of points is drawn with a single drawPolyline;
+ * with antialiasing the segments are drawn one by one with a reused Line2D,
+ * which Java2D rasterizes faster than one long path.
+ * <p>
+ * Series with shapes or item labels visible, or without lines, and plots with
+ * crosshairs are drawn by XYLineAndShapeRenderer, so the renderer can be used
+ * for any plot (see Grafica.setFastRendering).
+ */
+public class FastLineRenderer extends XYLineAndShapeRenderer {
+
+	private static final long serialVersionUID = -2171430318860271453L;
+
+	/**
+	 * Buffers of the series being drawn by the current thread. They are only
+	 * used while painting.
+	 */
+	private static final ThreadLocal<Polyline> POLYLINES = new ThreadLocal<Polyline>() {
+		@Override
+		protected Polyline initialValue() {
+			return new Polyline();
+		}
+	};
+
+	/**
+	 * Creates a renderer of lines without shapes.
+	 */
+	public FastLineRenderer() {
+		super(true, false);
+	}
+
+	@Override
+	public void drawItem(Graphics2D g2, XYItemRendererState state, Rectangle2D dataArea, PlotRenderingInfo info,
+			XYPlot plot, ValueAxis domainAxis, ValueAxis rangeAxis, XYDataset dataset, int series, int item,
+			CrosshairState crosshairState, int pass) {
+		if(!isFast(plot, info, series)) {
+			super.drawItem(g2, state, dataArea, info, plot, domainAxis, rangeAxis, dataset, series, item, crosshairState, pass);
+		}
+		else if(isLinePass(pass) && item == state.getFirstItemIndex() && getItemVisible(series, item)) {
+			drawSeries(g2, dataArea, plot, domainAxis, rangeAxis, dataset, series, item, state.getLastItemIndex());
+		}
+	}
+
+	/**
+	 * Indicates if a series can be drawn without XYLineAndShapeRenderer.
+	 */
+	private boolean isFast(XYPlot plot, PlotRenderingInfo info, int series) {
+		if(!getItemLineVisible(series, 0) || getItemShapeVisible(series, 0) || isItemLabelVisible(series, 0)
+				|| plot.isDomainCrosshairVisible() || plot.isRangeCrosshairVisible()) {
+			return false;
+		}
+		EntityCollection entities = info == null || info.getOwner() == null ? null : info.getOwner().getEntityCollection();
+		return entities == null || (getToolTipGenerator(series, 0) == null && getURLGenerator() == null);
+	}
+
+	/**
+	 * Draws the points in [first, last] of a series. NaN coordinates split the
+	 * line, and segments that go far out of the data area are clipped, so the
+	 * pixel coordinates stay small.
+	 */
+	private void drawSeries(Graphics2D g2, Rectangle2D dataArea, XYPlot plot, ValueAxis domainAxis, ValueAxis rangeAxis,
+			XYDataset dataset, int series, int first, int last) {
+		boolean vertical = plot.getOrientation() == PlotOrientation.VERTICAL;
+		Transform tx = new Transform(domainAxis, dataArea, plot.getDomainAxisEdge());
+		Transform ty = new Transform(rangeAxis, dataArea, plot.getRangeAxisEdge());
+
+		// Segments are clipped to the data area extended by its size on every side
+		double minX = dataArea.getMinX() - dataArea.getWidth();
+		double maxX = dataArea.getMaxX() + dataArea.getWidth();
+		double minY = dataArea.getMinY() - dataArea.getHeight();
+		double maxY = dataArea.getMaxY() + dataArea.getHeight();
+
+		Polyline line = POLYLINES.get();
+		g2.setPaint(getItemPaint(series, first));
+		g2.setStroke(getItemStroke(series, first));
+		line.begin(g2, vertical);
+
+		boolean previous = false, previousInside = false;
+		double px = 0, py = 0;
+		double[] segment = new double[6];
+		for(int i = first; i <= last; i++) {
+			double sx = tx.toPixel(dataset.getXValue(series, i));
+			double sy = ty.toPixel(dataset.getYValue(series, i));
+			if(Double.isNaN(sx) || Double.isNaN(sy) || Double.isInfinite(sx) || Double.isInfinite(sy)) {
+				previous = false;
+				continue;
+			}
+			if(!vertical) {
+				double swap = sx;
+				sx = sy;
+				sy = swap;
+			}
+			boolean inside = sx >= minX && sx <= maxX && sy >= minY && sy <= maxY;
+			if(!previous) {
+				if(inside) {
+					line.moveTo(sx, sy);
+				}
+			}
+			else if(inside && previousInside) {
+				line.lineTo(sx, sy);
+			}
+			else {
+				segment[0] = px;
+				segment[1] = py;
+				segment[2] = sx;
+				segment[3] = sy;
+				if(clip(segment, minX, minY, maxX, maxY)) {
+					if(!previousInside) {
+						line.moveTo(segment[0], segment[1]);
+					}
+					line.lineTo(segment[2], segment[3]);
+				}
+			}
+			px = sx;
+			py = sy;
+			previous = true;
+			previousInside = inside;
+		}
+		line.end();
+	}
+
+	/**
+	 * Clips the segment (s[0], s[1]) - (s[2], s[3]) to a rectangle with the
+	 * Liang-Barsky algorithm; s[4] and s[5] hold the parameters of the ends.
+	 * @return False if the segment is out of the rectangle
+	 */
+	private static boolean clip(double[] s, double minX, double minY, double maxX, double maxY) {
+		double dx = s[2] - s[0];
+		double dy = s[3] - s[1];
+		s[4] = 0;
+		s[5] = 1;
+		if(!clipEdge(s, -dx, s[0] - minX) || !clipEdge(s, dx, maxX - s[0])
+				|| !clipEdge(s, -dy, s[1] - minY) || !clipEdge(s, dy, maxY - s[1])) {
+			return false;
+		}
+		double x0 = s[0], y0 = s[1];
+		s[0] = x0 + s[4] * dx;
+		s[1] = y0 + s[4] * dy;
+		s[2] = x0 + s[5] * dx;
+		s[3] = y0 + s[5] * dy;
+		return true;
+	}
+
+	private static boolean clipEdge(double[] s, double p, double q) {
+		if(p == 0) {
+			return q >= 0;
+		}
+		double t = q / p;
+		if(p < 0) {
+			s[4] = Math.max(s[4], t);
+		}
+		else {
+			s[5] = Math.min(s[5], t);
+		}
+		return s[4] <= s[5];
+	}
+
+	/**
+	 * Conversion of the values of an axis to pixels. Linear axes are converted
+	 * with a multiplication; other axes ask the axis for every value.
+	 */
+	private static final class Transform {
+
+		private final ValueAxis axis;
+		private final Rectangle2D area;
+		private final RectangleEdge edge;
+		private final boolean linear;
+		private final double scale;
+		private final double offset;
+
+		Transform(ValueAxis axis, Rectangle2D area, RectangleEdge edge) {
+			this.axis = axis;
+			this.area = area;
+			this.edge = edge;
+			double lower = axis.getLowerBound();
+			double upper = axis.getUpperBound();
+			this.linear = axis.getClass() == NumberAxis.class && upper > lower;
+			if(linear) {
+				double a = axis.valueToJava2D(lower, area, edge);
+				double b = axis.valueToJava2D(upper, area, edge);
+				scale = (b - a) / (upper - lower);
+				offset = a - lower * scale;
+			}
+			else {
+				scale = 0;
+				offset = 0;
+			}
+		}
+
+		double toPixel(double value) {
+			return linear ? offset + value * scale : axis.valueToJava2D(value, area, edge);
+		}
+	}
+
+	/**
+	 * Points of a series in pixels, reduced by pixel columns of the domain axis
+	 * and drawn in runs of connected points.
+	 */
+	private static final class Polyline {
+
+		private Graphics2D g2;
+		private boolean antialias;
+
+		/**
+		 * True if the domain axis is horizontal (the columns are along X).
+		 */
+		private boolean vertical;
+
+		/**
+		 * Points of the current run.
+		 */
+		private float[] xs = new float[1024];
+		private float[] ys = new float[1024];
+		private int count;
+
+		private int[] ix = new int[0];
+		private int[] iy = new int[0];
+		private final Line2D.Float segment = new Line2D.Float();
+
+		/**
+		 * Points of the current pixel column: first, lowest, highest and last,
+		 * with the order of the lowest and highest among the points of the column.
+		 */
+		private boolean inColumn;
+		private int column;
+		private int points;
+		private double firstX, firstY, lowX, lowY, highX, highY, lastX, lastY;
+		private int lowOrder, highOrder;
+
+		void begin(Graphics2D g2, boolean vertical) {
+			this.g2 = g2;
+			this.vertical = vertical;
+			this.antialias = RenderingHints.VALUE_ANTIALIAS_ON.equals(g2.getRenderingHint(RenderingHints.KEY_ANTIALIASING));
+			count = 0;
+			inColumn = false;
+		}
+
+		void moveTo(double x, double y) {
+			endRun();
+			lineTo(x, y);
+		}
+
+		void lineTo(double x, double y) {
+			int c = (int) Math.floor(vertical ? x : y);
+			double value = vertical ? y : x;
+			if(inColumn && c == column) {
+				if(value < (vertical ? lowY : lowX)) {
+					lowX = x;
+					lowY = y;
+					lowOrder = points;
+				}
+				if(value > (vertical ? highY : highX)) {
+					highX = x;
+					highY = y;
+					highOrder = points;
+				}
+				lastX = x;
+				lastY = y;
+				points++;
+				return;
+			}
+			endColumn();
+			inColumn = true;
+			column = c;
+			points = 1;
+			firstX = lowX = highX = lastX = x;
+			firstY = lowY = highY = lastY = y;
+			lowOrder = highOrder = 0;
+		}
+
+		void end() {
+			endRun();
+			g2 = null;
+		}
+
+		/**
+		 * Adds the points of the current column to the run.
+		 */
+		private void endColumn() {
+			if(!inColumn) {
+				return;
+			}
+			inColumn = false;
+			add(firstX, firstY);
+			int last = points - 1;
+			boolean low = lowOrder != 0 && lowOrder != last;
+			boolean high = highOrder != 0 && highOrder != last && highOrder != lowOrder;
+			if(low && (!high || lowOrder < highOrder)) {
+				add(lowX, lowY);
+				low = false;
+			}
+			if(high) {
+				add(highX, highY);
+			}
+			if(low) {
+				add(lowX, lowY);
+			}
+			if(last > 0) {
+				add(lastX, lastY);
+			}
+		}
+
+		private void add(double x, double y) {
+			float fx = (float) x;
+			float fy = (float) y;
+			if(count > 0 && xs[count - 1] == fx && ys[count - 1] == fy) {
+				return;
+			}
+			if(count == xs.length) {
+				xs = Arrays.copyOf(xs, count * 2);
+				ys = Arrays.copyOf(ys, count * 2);
+			}
+			xs[count] = fx;
+			ys[count] = fy;
+			count++;
+		}
+
+		/**
+		 * Draws the current run of points.
+		 */
+		private void endRun() {
+			endColumn();
+			if(count > 1) {
+				if(antialias) {
+					for(int i = 1; i < count; i++) {
+						segment.setLine(xs[i - 1], ys[i - 1], xs[i], ys[i]);
+						g2.draw(segment);
+					}
+				}
+				else {
+					if(ix.length < count) {
+						ix = new int[xs.length];
+						iy = new int[xs.length];
+					}
+					for(int i = 0; i < count; i++) {
+						ix[i] = Math.round(xs[i]);
+						iy[i] = Math.round(ys[i]);
+					}
+					g2.drawPolyline(ix, iy, count);
+				}
+			}
+			count = 0;
+		}
+	}
+}
@@ -0,0 +1,217 @@
+package com.raccoon.easyjchart;
+
+import java.util.Arrays;
+import java.util.List;
+import java.util.function.DoubleUnaryOperator;
+
+/**
+ * Samples analytic functions for a plot of a given size in pixels. The interval
+ * is first sampled every few pixels, and then every segment is split in two
+ * while the midpoint is further from the straight line between its ends than
+ * the tolerance (half a pixel by default), down to an eighth of a pixel. Flat
+ * and straight parts of the function get a few points and curved or steep parts
+ * get as many as their pixels need, instead of sampling the whole interval as
+ * densely as its steepest part.
+ * <p>
+ * The vertical tolerance is taken relative to the range of the function on the
+ * initial samples, as the auto range of the axis would show it. Features
+ * narrower than the initial spacing (4 pixels) whose midpoint lies on the
+ * line between the samples around them may be missed, and the points are only
+ * fine enough for the indicated size (zooming in shows the segments).
+ * <p>
+ * The segments are evaluated in parallel on the common fork-join pool, so the
+ * function must be safe to call from several threads at once.
+ */
+public class FunctionSampler {
+
+	/**
+	 * Spacing of the initial samples, in pixels.
+	 */
+	private static final int INITIAL_STEP = 4;
+
+	/**
+	 * Shortest segment, as the number of segments per pixel.
+	 */
+	private static final int MAX_SEGMENTS_PER_PIXEL = 8;
+
+	/**
+	 * Initial segments refined by each parallel task.
+	 */
+	private static final int SEGMENTS_PER_TASK = 16;
+
+	private final int width;
+	private final int height;
+
+	/**
+	 * Allowed vertical distance between the function and the drawn segments, in pixels.
+	 */
+	private double tolerance = 0.5;
+
+	/**
+	 * Creates a sampler for plots of the indicated size.
+	 * @param width Width of the plot in pixels
+	 * @param height Height of the plot in pixels
+	 */
+	public FunctionSampler(int width, int height) {
+		if(width <= 0 || height <= 0) {
+			throw new IllegalArgumentException("Invalid size " + width + "x" + height);
+		}
+		this.width = width;
+		this.height = height;
+	}
+
+	/**
+	 * Sets the allowed vertical distance between the function and the segments
+	 * that join the samples.
+	 * @param pixels Distance in pixels (0.5 by default)
+	 */
+	public void setTolerance(double pixels) {
+		if(!(pixels > 0)) {
+			throw new IllegalArgumentException("Invalid tolerance " + pixels);
+		}
+		this.tolerance = pixels;
+	}
+
+	/**
+	 * Returns the allowed vertical distance between the function and the segments
+	 * that join the samples.
+	 * @return Distance in pixels
+	 */
+	public double getTolerance() {
+		return tolerance;
+	}
+
+	/**
+	 * Samples a function. Points where it is NaN or infinite are kept, so the
+	 * chart leaves a gap there.
+	 * @param key Name of the function
+	 * @param f The function
+	 * @param from Lower bound of the interval
+	 * @param to Upper bound of the interval
+	 * @return A dataset with the samples, sorted by the X coordinate
+	 */
+	public ArrayXYDataset sample(Comparable key, final DoubleUnaryOperator f, double from, double to) {
+		if(!(from < to) || Double.isInfinite(from) || Double.isInfinite(to)) {
+			throw new IllegalArgumentException("Invalid interval [" + from + ", " + to + "]");
+		}
+		final int segments = Math.max(2, width / INITIAL_STEP);
+		final double[] gridX = new double[segments + 1];
+		final double[] gridY = new double[segments + 1];
+		for(int i = 0; i <= segments; i++) {
+			gridX[i] = i == segments ? to : from + (to - from) * i / segments;
+		}
+		Parallel.split(segments + 1, SEGMENTS_PER_TASK, new Parallel.Range<Void>() {
+			Void run(int start, int end) {
+				for(int i = start; i < end; i++) {
+					gridY[i] = f.applyAsDouble(gridX[i]);
+				}
+				return null;
+			}
+		}, "sampling the function");
+
+		double min = Double.POSITIVE_INFINITY, max = Double.NEGATIVE_INFINITY;
+		for(double value : gridY) {
+			if(value < min) {
+				min = value;
+			}
+			if(value > max) {
+				max = value;
+			}
+		}
+		double extent = max - min;
+		if(!(extent > 0) || Double.isInfinite(extent)) {
+			extent = Math.max(1, Math.max(Math.abs(min), Math.abs(max)));
+			if(Double.isInfinite(extent)) {
+				extent = 1;
+			}
+		}
+		final double maxError = tolerance * extent / height;
+		final double minStep = (to - from) / ((double) width * MAX_SEGMENTS_PER_PIXEL);
+
+		List<Points> parts = Parallel.split(segments, SEGMENTS_PER_TASK, new Parallel.Range<Points>() {
+			Points run(int start, int end) {
+				Points points = new Points((end - start) * 2 + 1);
+				points.add(gridX[start], gridY[start]);
+				for(int i = start; i < end; i++) {
+					refine(f, gridX[i], gridY[i], gridX[i + 1], gridY[i + 1], maxError, minStep, points);
+				}
+				return points;
+			}
+		}, "sampling the function");
+
+		int count = 1;
+		for(Points part : parts) {
+			count += part.count - 1;
+		}
+		double[] x = new double[count];
+		double[] y = new double[count];
+		int n = 0;
+		for(Points part : parts) {
+			int skip = n == 0 ? 0 : 1;
+			System.arraycopy(part.x, skip, x, n, part.count - skip);
+			System.arraycopy(part.y, skip, y, n, part.count - skip);
+			n += part.count - skip;
+		}
+		return new ArrayXYDataset(key, x, y, count, true);
+	}
+
+	/**
+	 * Adds the samples of the segment (a, b] to the points, splitting it while
+	 * the midpoint is too far from the line between the ends.
+	 */
+	private static void refine(DoubleUnaryOperator f, double a, double fa, double b, double fb, double maxError,
+			double minStep, Points points) {
+		double m = a + (b - a) * 0.5;
+		if(b - a > minStep && m > a && m < b) {
+			double fm = f.applyAsDouble(m);
+			if(needsSplit(fa, fm, fb, maxError)) {
+				refine(f, a, fa, m, fm, maxError, minStep, points);
+				refine(f, m, fm, b, fb, maxError, minStep, points);
+				return;
+			}
+		}
+		points.add(b, fb);
+	}
+
+	/**
+	 * Indicates if a segment must be split: when the midpoint is too far from the
+	 * line between the ends, or when the function is finite only in part of it
+	 * (to find where it ends).
+	 */
+	private static boolean needsSplit(double fa, double fm, double fb, double maxError) {
+		boolean finiteA = isFinite(fa), finiteM = isFinite(fm), finiteB = isFinite(fb);
+		if(finiteA && finiteM && finiteB) {
+			return Math.abs(fm - (fa + fb) * 0.5) > maxError;
+		}
+		return finiteA || finiteM || finiteB;
+	}
+
+	private static boolean isFinite(double value) {
+		return !Double.isNaN(value) && !Double.isInfinite(value);
+	}
+
+	/**
+	 * Points of part of the function.
+	 */
+	private static final class Points {
+
+		double[] x;
+		double[] y;
+		int count;
+
+		Points(int capacity) {
+			x = new double[capacity];
+			y = new double[capacity];
+		}
+
+		void add(double px, double py) {
+			if(count == x.length) {
+				x = Arrays.copyOf(x, count * 2);
+				y = Arrays.copyOf(y, count * 2);
+			}
+			x[count] = px;
+			y[count] = py;
+			count++;
+		}
+	}
+}
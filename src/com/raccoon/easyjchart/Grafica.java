@@ -26,13 +26,22 @@ import java.awt.Shape;
 import java.awt.Stroke;
 import java.awt.geom.Ellipse2D;
 import java.awt.geom.Point2D;
+import java.awt.geom.Rectangle2D;
 import java.awt.image.BufferedImage;
 import java.io.File;
 import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.DoubleBuffer;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.function.Consumer;
+import java.util.function.DoubleUnaryOperator;
 
-import javax.imageio.ImageIO;
 
 import org.jfree.chart.ChartFactory;
+import org.jfree.chart.ChartRenderingInfo;
 import org.jfree.chart.JFreeChart;
 import org.jfree.chart.annotations.XYAnnotation;
 import org.jfree.chart.annotations.XYBoxAnnotation;
@@ -40,13 +49,15 @@ import org.jfree.chart.annotations.XYImageAnnotation;
 import org.jfree.chart.annotations.XYLineAnnotation;
 import org.jfree.chart.axis.NumberAxis;
 import org.jfree.chart.axis.ValueAxis;
+import org.jfree.chart.event.ChartChangeListener;
 import org.jfree.chart.plot.Plot;
 import org.jfree.chart.plot.PlotOrientation;
 import org.jfree.chart.plot.XYPlot;
 import org.jfree.chart.renderer.xy.XYItemRenderer;
 import org.jfree.chart.renderer.xy.XYLineAndShapeRenderer;
-import org.jfree.data.xy.XYSeries;
-import org.jfree.data.xy.XYSeriesCollection;
+import org.jfree.data.Range;
+import org.jfree.data.xy.XYDataset;
+import org.jfree.ui.Align;
 
 
 /**
@@ -77,6 +88,43 @@ private Paint fondo_defecto = null;
  */
 private Image backGroundImage;
 
+/**
+ * Copy of the background image scaled to the data area (see actualizaFondo).
+ */
+private Image fondoEscalado;
+
+/**
+ * Information of the last time the chart was painted (without entities). It is
+ * used to know the width in pixels of the data area.
+ */
+private final ChartRenderingInfo renderInfo = new ChartRenderingInfo(null);
+
+/**
+ * Annotations drawn over the functions.
+ */
+private final AnnotationLayer anotaciones = new AnnotationLayer();
+
+/**
+ * Datasets of the streaming plots by index. Producer threads look them up here
+ * instead of in the plot.
+ */
+private final Map<Integer, RingBufferXYDataset> streams = new ConcurrentHashMap<Integer, RingBufferXYDataset>();
+
+/**
+ * Datasets of the plots updated from other threads by index (see addConcurrentPlot).
+ */
+private final Map<Integer, SnapshotXYDataset> snapshots = new ConcurrentHashMap<Integer, SnapshotXYDataset>();
+
+/**
+ * Metrics of the chart, or null while they are disabled (see setMetricsEnabled).
+ */
+private volatile ChartMetrics metrics = null;
+
+/**
+ * Template the chart was created from, or null.
+ */
+private ChartTemplate plantilla = null;
+
 /**
  * Construtor de la clase Grafica. Permite inicializar la gráfica con una determinada función.
  * @param funcion Conjunto de puntos que determina la función que se quiere representar.
@@ -121,6 +169,22 @@ public Grafica(Point2D[] funcion,String nombre_grafica, String nombre_funcion, S
     generaGrafica(funcion,nombre_grafica,nombre_funcion,etiqueta_X,etiqueta_Y,mostrar_leyenda,color_funcion,grosor, isContinuous);    
 }
 
+/**
+ * Creates a chart over a copy of the chart of a template (see ChartTemplate).
+ * @param template The template
+ * @param chart Copy of the chart of the template, without functions
+ * @param dataset Points of the first function
+ */
+Grafica(ChartTemplate template, JFreeChart chart, XYDataset dataset) {
+	plantilla = template;
+	grafica = chart;
+	fondo_defecto = template.getDefaultBackground();
+	backGroundImage = template.getBackgroundImage();
+	grafica.getXYPlot().setDataset(0,dataset);
+	grafica.getXYPlot().addAnnotation(anotaciones.getPlotAnnotation(),false);
+	n_series = 1;
+}
+
 /**
  * Fija el rango de valores que se visualiza de un determinado eje para una gráfica concreta.
  * @param rinferior Representa el límite inferior.
@@ -169,6 +233,13 @@ public void visualizaMuestras(int ngrafica, boolean visible, double tam) {
     
     ((XYLineAndShapeRenderer) grafica.getXYPlot().getRenderer(ngrafica)).setSeriesShapesVisible(0, visible);
     
+    // Los puntos que se dibujan por separado no se diezman
+    XYDataset datos = grafica.getXYPlot().getDataset(ngrafica);
+    if(datos instanceof DecimatedXYDataset && ((DecimatedXYDataset) datos).isContinuous() != esContinua(ngrafica)) {
+        DecimatedXYDataset vista = (DecimatedXYDataset) datos;
+        vista.detach();
+        grafica.getXYPlot().setDataset(ngrafica, new DecimatedXYDataset(vista.getSource(), vista.getMode(), esContinua(ngrafica)));
+    }
 }
 
 /**
@@ -213,32 +284,101 @@ public void agregarGrafica(Point2D[] funcion, String nombre_funcion) {
  */
 
 public void agregarGrafica(Point2D[] funcion, String nombre_funcion, Color color_funcion,float grosor, boolean isContinuous) {
-    
-    XYSeries dataset = new XYSeries(nombre_funcion,isContinuous);
-    XYSeriesCollection series_datos = null;
-    
-    XYPlot plot = grafica.getXYPlot();
+    configuraFuncion(n_series,creaDataset(funcion,nombre_funcion,isContinuous),color_funcion,grosor,isContinuous);
+    n_series++;
+}
 
-    for(int i = 0 ; i < funcion.length ; i++) {
-        dataset.add(funcion[i].getX(),funcion[i].getY());
-        if(!isContinuous){
-        	dataset.add(Double.NaN, Double.NaN);
-        }
-    }
+/**
+ * Adds a new function to the chart from the arrays of its coordinates.
+ * @param x X coordinates of the function
+ * @param y Y coordinates of the function
+ * @param functionName Name of the function
+ */
+public void agregarGrafica(double[] x, double[] y, String functionName) {
+	agregarGrafica(x,y,functionName,Color.RED,1f,true);
+}
 
-    
-    series_datos = new XYSeriesCollection(dataset);
-    
-    plot.setDataset(n_series,series_datos);
-    plot.mapDatasetToRangeAxis(n_series, 0);
-    plot.mapDatasetToDomainAxis(n_series, 0);
-    plot.setRenderer(n_series,new XYLineAndShapeRenderer());
-    
-    plot.getRenderer(n_series).setSeriesPaint(0,color_funcion);
-    plot.getRenderer(n_series).setSeriesStroke(0,new BasicStroke(grosor));  
-   ((XYLineAndShapeRenderer) plot.getRenderer(n_series)).setSeriesShapesVisible(0,false);
-    
-    n_series++;
+/**
+ * Adds a new function to the chart from the arrays of its coordinates.
+ * The arrays are copied, so they can be reused by the caller.
+ * @param x X coordinates of the function
+ * @param y Y coordinates of the function
+ * @param functionName Name of the function
+ * @param functionColor Color of the function
+ * @param stroke Stroke of the function
+ * @param isContinuous True for continous function. False for discrete function.
+ */
+public void agregarGrafica(double[] x, double[] y, String functionName, Color functionColor, float stroke, boolean isContinuous) {
+	configuraFuncion(n_series,new ArrayXYDataset(functionName,x,y,isContinuous),functionColor,stroke,isContinuous);
+	n_series++;
+}
+
+/**
+ * Adds a new function to the chart from the remaining coordinates of the buffers.
+ * The position of the buffers is not modified.
+ * @param x X coordinates of the function
+ * @param y Y coordinates of the function
+ * @param functionName Name of the function
+ * @param functionColor Color of the function
+ * @param stroke Stroke of the function
+ * @param isContinuous True for continous function. False for discrete function.
+ */
+public void agregarGrafica(DoubleBuffer x, DoubleBuffer y, String functionName, Color functionColor, float stroke, boolean isContinuous) {
+	configuraFuncion(n_series,new ArrayXYDataset(functionName,x,y,isContinuous),functionColor,stroke,isContinuous);
+	n_series++;
+}
+
+/**
+ * Adds a new function to the chart from a dataset (for example a
+ * MappedXYDataset). The dataset is not copied; only its first series is drawn.
+ * Continuous functions are drawn in the order of the dataset, so it should be
+ * sorted by the X coordinate.
+ * @param dataset Points of the function
+ * @param functionColor Color of the function
+ * @param stroke Stroke of the function
+ * @param isContinuous True for continous function. False for discrete function.
+ */
+public void agregarGrafica(XYDataset dataset, Color functionColor, float stroke, boolean isContinuous) {
+	configuraFuncion(n_series,dataset,functionColor,stroke,isContinuous);
+	n_series++;
+}
+
+/**
+ * Adds a function sampled adaptively for the size of the data area in the last
+ * paint of the chart (see FunctionSampler). If the chart hasn't been painted
+ * yet, it is sampled for a plot of 1920x1080 pixels. The function is not
+ * sampled again if the chart is painted bigger later.
+ * @param f The function; it may be called from several threads at once
+ * @param from Lower bound of the interval
+ * @param to Upper bound of the interval
+ * @param functionName Name of the function
+ */
+public void agregarFuncion(DoubleUnaryOperator f, double from, double to, String functionName) {
+	Rectangle2D dataArea = renderInfo.getPlotInfo().getDataArea();
+	int width = 1920;
+	int height = 1080;
+
+	if(dataArea.getWidth() >= 1 && dataArea.getHeight() >= 1) {
+		width = (int) Math.ceil(dataArea.getWidth());
+		height = (int) Math.ceil(dataArea.getHeight());
+	}
+	agregarFuncion(f,from,to,width,height,functionName,Color.RED,1f);
+}
+
+/**
+ * Adds a function sampled adaptively for a plot of the indicated size: curved
+ * and steep parts get more points than flat ones (see FunctionSampler).
+ * @param f The function; it may be called from several threads at once
+ * @param from Lower bound of the interval
+ * @param to Upper bound of the interval
+ * @param width Width of the plot in pixels
+ * @param height Height of the plot in pixels
+ * @param functionName Name of the function
+ * @param functionColor Color of the function
+ * @param stroke Stroke of the function
+ */
+public void agregarFuncion(DoubleUnaryOperator f, double from, double to, int width, int height, String functionName, Color functionColor, float stroke) {
+	agregarGrafica(new FunctionSampler(width,height).sample(functionName,f,from,to),functionColor,stroke,true);
 }
 
 /**
@@ -310,8 +450,7 @@ public void restableceFondo() {
  * @param n_grafica Index of the plot. (The first index is 0)
  */
 public void setYRange(double inferior, double superior,int n_grafica) {
-    grafica.getXYPlot().getRangeAxisForDataset(n_grafica).setAutoRange(false);
-    grafica.getXYPlot().getRangeAxisForDataset(n_grafica).setRange(inferior,superior);
+    grafica.getXYPlot().getRangeAxisForDataset(n_grafica).setRange(new Range(inferior,superior),true,true);
 }
 
 
@@ -322,31 +461,61 @@ public void setYRange(double inferior, double superior,int n_grafica) {
  * @param n_grafica Index of the plot. (The first index is 0)
  */
 public void setXRange(double inferior, double superior, int nPlot) {
-    grafica.getXYPlot().getDomainAxisForDataset(nPlot).setAutoRange(false);
-    grafica.getXYPlot().getDomainAxisForDataset(nPlot).setRange(inferior,superior);
+    grafica.getXYPlot().getDomainAxisForDataset(nPlot).setRange(new Range(inferior,superior),true,true);
 }
 
 /**
- * Set the X range of all plots in the chart
+ * Set the X range of all plots in the chart, with a single change event
  * @param inferior  New inferior limit of the X axis
  * @param superior New superior limit of the X axis 
  */
 public void setXRange(double inferior, double superior){
-	int domainsNum  = grafica.getXYPlot().getDomainAxisCount();
-	for(int i = 0; i < domainsNum; i++){
-		setXRange(inferior, superior, i);
-	}
+	batch(g -> {
+		int domainsNum  = grafica.getXYPlot().getDomainAxisCount();
+		for(int i = 0; i < domainsNum; i++){
+			setXRange(inferior, superior, i);
+		}
+	});
 }
 
 /**
- * Set the Y range of all plots in the chart
+ * Set the Y range of all plots in the chart, with a single change event
  * @param inferior  New inferior limit of the Y axis
  * @param superior New superior limit of the Y axis 
  */
 public void setYRange(double inferior, double superior){
-	int domainsNum  = grafica.getXYPlot().getDomainAxisCount();
-	for(int i = 0; i < domainsNum; i++){
-		setYRange(inferior, superior, i);
+	batch(g -> {
+		int domainsNum  = grafica.getXYPlot().getDomainAxisCount();
+		for(int i = 0; i < domainsNum; i++){
+			setYRange(inferior, superior, i);
+		}
+	});
+}
+
+/**
+ * Applies several changes to the chart (colors, strokes, ranges, axes,
+ * functions, annotations...) with a single change event at the end instead of
+ * one per change, so a JPanelGrafica lays out and paints the chart once. The
+ * changes are applied in the calling thread; batches may be nested, and only
+ * the outermost one sends the event. Changes made only to the annotations are
+ * notified with the event of the chart too.
+ * @param changes Changes to apply, called with this chart
+ */
+public void batch(Consumer<Grafica> changes){
+	boolean notify = grafica.isNotify();
+	boolean notifyAnnotations = anotaciones.isNotify();
+
+	grafica.setNotify(false);
+	anotaciones.setNotify(false);
+	try {
+		changes.accept(this);
+	} finally {
+		if(notify) {
+			// The event of the chart makes the listeners paint the annotations too
+			anotaciones.discardPendingChange();
+		}
+		anotaciones.setNotify(notifyAnnotations);
+		grafica.setNotify(notify);
 	}
 }
 
@@ -359,8 +528,10 @@ public void setYRange(double inferior, double superior){
  * @param supYLimit New superior Y limit
  */
 public void setRangeAxis(int infXLimit, int supXLimit, int infYLimit, int supYLimit){
-	setXRange(infXLimit, supXLimit);
-	setYRange(infYLimit, supYLimit);
+	batch(g -> {
+		setXRange(infXLimit, supXLimit);
+		setYRange(infYLimit, supYLimit);
+	});
 }
 
 /**
@@ -371,14 +542,18 @@ public void setRangeAxis(int infXLimit, int supXLimit, int infYLimit, int supYLi
  * @param supYLimit New superior Y limit
  */
 public void setRangeAxis(double infXLimit, double supXLimit, double infYLimit, double supYLimit){
-	setXRange(infXLimit, supXLimit);
-	setYRange(infYLimit, supYLimit);
+	batch(g -> {
+		setXRange(infXLimit, supXLimit);
+		setYRange(infYLimit, supYLimit);
+	});
 }
 
 
 public void setRangeAxis(Point2D xLimit, Point2D yLimit){
-	setXRange((int)xLimit.getX(),(int)xLimit.getY());
-	setYRange((int)yLimit.getX(),(int)yLimit.getY());
+	batch(g -> {
+		setXRange((int)xLimit.getX(),(int)xLimit.getY());
+		setYRange((int)yLimit.getX(),(int)yLimit.getY());
+	});
 }
 
 /**
@@ -427,20 +602,9 @@ public void removeAxis(int n_grafica){
 
 private void generaGrafica(Point2D[] funcion,String nombre_grafica, String nombre_funcion, String etiqueta_X, String etiqueta_Y, boolean mostrar_leyenda, Color color_funcion, float grosor_funcion, boolean isContinuous) {
 	
-    XYSeries dataset = new XYSeries(nombre_funcion, isContinuous);
-    XYSeriesCollection series_datos = null;
+    XYDataset series_datos = creaDataset(funcion,nombre_funcion,isContinuous);
 
     n_series = 0;
-    
-    for(int i = 0 ; i < funcion.length ; i++) {
-        dataset.add(funcion[i].getX(),funcion[i].getY());
-        if(!isContinuous){
-        	dataset.add(Double.NaN, Double.NaN);
-        }
-    }
-
-    series_datos = new XYSeriesCollection(dataset);
-    
     n_series++;
 
     grafica = ChartFactory.createXYLineChart(nombre_grafica,
@@ -458,6 +622,8 @@ private void generaGrafica(Point2D[] funcion,String nombre_grafica, String nombr
     fondo_defecto = ((XYPlot) grafica.getPlot()).getBackgroundPaint();
     grafica.getXYPlot().getRenderer(0).setSeriesStroke(0,new BasicStroke(grosor_funcion)); 
     grafica.getXYPlot().getRenderer(0).setSeriesPaint(0, color_funcion);
+    ((XYLineAndShapeRenderer) grafica.getXYPlot().getRenderer(0)).setSeriesLinesVisible(0, isContinuous);
+    grafica.getXYPlot().addAnnotation(anotaciones.getPlotAnnotation(),false);
     
 }
 
@@ -476,7 +642,166 @@ public int obtenerNumeroGraficas() {
  */
 
 public void pintar(Graphics g, Rectangle area) {
-    grafica.draw((Graphics2D) g,area);
+    pintarDatos(g,area);
+    pintarAnotaciones(g,area);
+}
+
+/**
+ * Paints the chart without the annotations (data layer).
+ * @param g Graphics where the chart is painted
+ * @param area Area where the chart is painted
+ */
+public void pintarDatos(Graphics g, Rectangle area) {
+	ChartMetrics medidas = metrics;
+	long inicio = medidas == null ? 0 : System.nanoTime();
+
+	actualizaDiezmado(area);
+	actualizaFondo(area);
+	AnnotationLayer.drawWithoutLayers(() -> grafica.draw((Graphics2D) g,area,renderInfo));
+
+	if(medidas != null) {
+		long fin = System.nanoTime();
+		XYPlot plot = grafica.getXYPlot();
+		long guardados = 0;
+		long pintados = 0;
+
+		for(int i = 0 ; i < plot.getDatasetCount() ; i++) {
+			XYDataset dataset = plot.getDataset(i);
+			pintados += puntos(dataset);
+			guardados += puntos(dataset instanceof DecimatedXYDataset ? ((DecimatedXYDataset) dataset).getSource() : dataset);
+		}
+		medidas.recordPaint(this,fin - inicio,guardados,pintados);
+	}
+}
+
+/**
+ * Paints the annotations (overlay layer) over a chart already painted with
+ * pintarDatos in the same area.
+ * @param g Graphics where the chart was painted
+ * @param area Area where the chart was painted
+ */
+public void pintarAnotaciones(Graphics g, Rectangle area) {
+	anotaciones.draw((Graphics2D) g,grafica.getXYPlot(),renderInfo.getPlotInfo().getDataArea());
+}
+
+/**
+ * Writes the chart as a PNG image. It doesn't need a screen.
+ * @param out Stream where the image is written (it is not closed)
+ * @param width Width of the image
+ * @param height Height of the image
+ * @throws IOException If the image can't be written
+ */
+public void exportPng(OutputStream out, int width, int height) throws IOException {
+	ChartExporter.write(this,ChartExporter.Format.PNG,out,width,height);
+}
+
+/**
+ * Writes the chart as a JPEG image. It doesn't need a screen.
+ * @param out Stream where the image is written (it is not closed)
+ * @param width Width of the image
+ * @param height Height of the image
+ * @throws IOException If the image can't be written
+ */
+public void exportJpeg(OutputStream out, int width, int height) throws IOException {
+	ChartExporter.write(this,ChartExporter.Format.JPEG,out,width,height);
+}
+
+/**
+ * Writes the chart as an SVG document, with its lines, shapes and text as
+ * vectors. It doesn't need a screen.
+ * @param out Stream where the document is written (it is not closed)
+ * @param width Width of the image
+ * @param height Height of the image
+ * @throws IOException If the document can't be written
+ */
+public void exportSvg(OutputStream out, int width, int height) throws IOException {
+	ChartExporter.write(this,ChartExporter.Format.SVG,out,width,height);
+}
+
+/**
+ * Returns the layer with the annotations drawn over the functions.
+ * @return The annotation layer
+ */
+public AnnotationLayer getAnnotationLayer() {
+	return anotaciones;
+}
+
+/**
+ * Chooses again the points of the decimated functions for the current range of
+ * their X axis and the width of the data area where they will be drawn.
+ * @param area Area where the chart will be drawn
+ */
+private void actualizaDiezmado(Rectangle area) {
+	XYPlot plot = grafica.getXYPlot();
+	Rectangle2D dataArea = renderInfo.getPlotInfo().getDataArea();
+	int width = area.width;
+
+	if(renderInfo.getChartArea().getBounds().getSize().equals(area.getSize()) && dataArea.getWidth() > 0) {
+		width = (int) Math.ceil(dataArea.getWidth());
+	}
+
+	for(int i = 0 ; i < plot.getDatasetCount() ; i++) {
+		XYDataset dataset = plot.getDataset(i);
+		if(dataset instanceof DecimatedXYDataset) {
+			ValueAxis axis = plot.getDomainAxisForDataset(i);
+			((DecimatedXYDataset) dataset).update(axis.getLowerBound(),axis.getUpperBound(),width);
+		}
+	}
+}
+
+/**
+ * Sets as background of the plot a copy of the background image scaled to the
+ * size it is drawn with, so it is copied instead of scaled on every paint. The
+ * size is taken from the last paint; if the area has changed, the original
+ * image is drawn this time. The chart is not notified of the change, since it
+ * is only a copy of the same image and the event would make it paint again.
+ * @param area Area where the chart will be drawn
+ */
+private void actualizaFondo(Rectangle area) {
+	Plot plot = grafica.getPlot();
+	Image actual = plot.getBackgroundImage();
+
+	if(backGroundImage == null || (actual != backGroundImage && actual != fondoEscalado)) {
+		return;
+	}
+	Image fondo = backGroundImage;
+	Rectangle2D dataArea = renderInfo.getPlotInfo().getDataArea();
+	if(plot.getBackgroundImageAlignment() == Align.FIT && backGroundImage.getWidth(null) > 0
+			&& dataArea.getWidth() > 0 && dataArea.getHeight() > 0
+			&& renderInfo.getChartArea().getBounds().getSize().equals(area.getSize())) {
+		// Plot.drawBackgroundImage draws the image one pixel larger than the truncated area
+		fondoEscalado = ImageCache.getDefault().getScaled(backGroundImage,
+				(int) dataArea.getWidth() + 1,(int) dataArea.getHeight() + 1);
+		fondo = fondoEscalado;
+	}
+	if(actual != fondo) {
+		plot.removeChangeListener(grafica);
+		try {
+			plot.setBackgroundImage(fondo);
+		} finally {
+			plot.addChangeListener(grafica);
+		}
+	}
+}
+
+/**
+ * Registers a listener that is notified every time the chart changes
+ * (functions, colors, ranges, annotations, etc). When only the annotations
+ * change, the source of the event is the AnnotationLayer of the chart.
+ * @param listener The listener
+ */
+public void addChangeListener(ChartChangeListener listener){
+	grafica.addChangeListener(listener);
+	anotaciones.addChangeListener(listener);
+}
+
+/**
+ * Deregisters a listener of the changes of the chart.
+ * @param listener The listener
+ */
+public void removeChangeListener(ChartChangeListener listener){
+	grafica.removeChangeListener(listener);
+	anotaciones.removeChangeListener(listener);
 }
 
 public XYItemRenderer getFunction(int i){
@@ -493,37 +818,554 @@ public XYItemRenderer getFunction(int i){
  * @param isContinuous True if function is continuous. False if is discrete.
  */
 public void replacePlot(int nPlot, Point2D[] function, String functionName, Color functionColor,float stroke, boolean isContinuous){
-	XYSeries dataset = new XYSeries(functionName,isContinuous);
-    XYSeriesCollection series_datos = null;
-    
-    XYPlot plot = grafica.getXYPlot();
+	configuraFuncion(nPlot,creaDataset(function,functionName,isContinuous),functionColor,stroke,isContinuous);
+}
 
-    for(int i = 0 ; i < function.length ; i++) {
-        dataset.add(function[i].getX(),function[i].getY());
-        if(!isContinuous){
-        	dataset.add(Double.NaN, Double.NaN);
-        }
-    }
+/**
+ * Replaces the plot of the indicated index with the coordinates of the arrays.
+ * The arrays are copied, so they can be reused by the caller.
+ * @param nPlot Index
+ * @param x X coordinates of the function
+ * @param y Y coordinates of the function
+ * @param functionName Name of the function
+ * @param functionColor Color of the function
+ * @param stroke Stroke of the function
+ * @param isContinuous True if function is continuous. False if is discrete.
+ */
+public void replacePlot(int nPlot, double[] x, double[] y, String functionName, Color functionColor, float stroke, boolean isContinuous){
+	configuraFuncion(nPlot,new ArrayXYDataset(functionName,x,y,isContinuous),functionColor,stroke,isContinuous);
+}
 
-    
-    series_datos = new XYSeriesCollection(dataset);
-    
-    plot.setDataset(nPlot,series_datos);
-    plot.mapDatasetToRangeAxis(nPlot, 0);
-    plot.mapDatasetToDomainAxis(nPlot, 0);
-    plot.setRenderer(nPlot,new XYLineAndShapeRenderer());
-    
-    plot.getRenderer(nPlot).setSeriesPaint(0,functionColor);
-    plot.getRenderer(nPlot).setSeriesStroke(0,new BasicStroke(stroke));  
-   ((XYLineAndShapeRenderer) plot.getRenderer(nPlot)).setSeriesShapesVisible(0,false);
+/**
+ * Replaces the plot of the indicated index with the remaining coordinates of the buffers.
+ * The position of the buffers is not modified.
+ * @param nPlot Index
+ * @param x X coordinates of the function
+ * @param y Y coordinates of the function
+ * @param functionName Name of the function
+ * @param functionColor Color of the function
+ * @param stroke Stroke of the function
+ * @param isContinuous True if function is continuous. False if is discrete.
+ */
+public void replacePlot(int nPlot, DoubleBuffer x, DoubleBuffer y, String functionName, Color functionColor, float stroke, boolean isContinuous){
+	configuraFuncion(nPlot,new ArrayXYDataset(functionName,x,y,isContinuous),functionColor,stroke,isContinuous);
+}
+
+/**
+ * Replaces the plot of the indicated index with a dataset (for example a
+ * MappedXYDataset). The dataset is not copied; only its first series is drawn.
+ * @param nPlot Index
+ * @param dataset Points of the function
+ * @param functionColor Color of the function
+ * @param stroke Stroke of the function
+ * @param isContinuous True if function is continuous. False if is discrete.
+ */
+public void replacePlot(int nPlot, XYDataset dataset, Color functionColor, float stroke, boolean isContinuous){
+	configuraFuncion(nPlot,dataset,functionColor,stroke,isContinuous);
+}
+
+/**
+ * Loads functions from a CSV/TSV file, which is parsed in parallel (see
+ * CsvReader). Each function replaces the plot of its index, keeping its color
+ * and stroke, or is added as a new red plot when its index is the next one.
+ * @param file The file
+ * @param reader Columns of each function and their plot indexes
+ * @param isContinuous True if the functions are continuous. False if they are discrete.
+ * @throws IOException If the file can't be read
+ */
+public void loadCsv(File file, CsvReader reader, boolean isContinuous) throws IOException{
+	compruebaIndices(reader);
+	colocaFunciones(reader,reader.read(file,isContinuous),isContinuous);
+}
+
+/**
+ * Loads functions from a CSV/TSV stream, which is parsed while it is read (see
+ * CsvReader). Each function replaces the plot of its index, keeping its color
+ * and stroke, or is added as a new red plot when its index is the next one.
+ * @param in The stream. It is not closed.
+ * @param reader Columns of each function and their plot indexes
+ * @param isContinuous True if the functions are continuous. False if they are discrete.
+ * @throws IOException If the stream can't be read
+ */
+public void loadCsv(InputStream in, CsvReader reader, boolean isContinuous) throws IOException{
+	compruebaIndices(reader);
+	colocaFunciones(reader,reader.read(in,isContinuous),isContinuous);
 }
 
+private void compruebaIndices(CsvReader reader){
+	int n = n_series;
+
+	for(int nPlot : reader.getPlotIndexes()) {
+		if(nPlot < 0 || nPlot > n) {
+			throw new IllegalArgumentException("Invalid plot index: " + nPlot);
+		}
+		if(nPlot == n) {
+			n++;
+		}
+	}
+}
+
+private void colocaFunciones(CsvReader reader, List<ArrayXYDataset> datasets, boolean isContinuous){
+	XYPlot plot = grafica.getXYPlot();
+	int[] indexes = reader.getPlotIndexes();
+
+	for(int i = 0 ; i < indexes.length ; i++) {
+		int nPlot = indexes[i];
+
+		if(nPlot < n_series) {
+			XYItemRenderer previous = plot.getRenderer(nPlot);
+			Paint paint = previous == null ? null : previous.getSeriesPaint(0);
+			Stroke stroke = previous == null ? null : previous.getSeriesStroke(0);
+
+			configuraFuncion(nPlot,datasets.get(i),paint instanceof Color ? (Color) paint : Color.RED,
+					stroke instanceof BasicStroke ? ((BasicStroke) stroke).getLineWidth() : 1f,isContinuous);
+		}
+		else {
+			configuraFuncion(nPlot,datasets.get(i),Color.RED,1f,isContinuous);
+			n_series++;
+		}
+	}
+}
+
+/**
+ * Adds a new streaming function to the chart. It keeps only its last points
+ * (up to the capacity) and new points are appended with append or appendBatch.
+ * @param functionName Name of the function
+ * @param capacity Maximum number of points kept
+ * @param functionColor Color of the function
+ * @param stroke Stroke of the function
+ * @return Index of the new plot
+ */
+public int addStreamingPlot(String functionName, int capacity, Color functionColor, float stroke){
+	RingBufferXYDataset dataset = new RingBufferXYDataset(functionName,capacity);
+	int nPlot = n_series;
+
+	configuraFuncion(nPlot,dataset,functionColor,stroke,true);
+	n_series++;
+	return nPlot;
+}
+
+/**
+ * Adds a new function whose points are kept compressed (see
+ * CompressedXYDataset), for long histories with ascending X coordinates. Only
+ * the parts of the function that are painted are decoded. More points are
+ * appended with addAll.
+ * @param x X coordinates of the function, in ascending order
+ * @param y Y coordinates of the function
+ * @param functionName Name of the function
+ * @param functionColor Color of the function
+ * @param stroke Stroke of the function
+ * @return Index of the new plot
+ */
+public int addCompressedPlot(double[] x, double[] y, String functionName, Color functionColor, float stroke){
+	CompressedXYDataset dataset = new CompressedXYDataset(functionName);
+	int nPlot = n_series;
+
+	dataset.addAll(x,y);
+	configuraFuncion(nPlot,dataset,functionColor,stroke,true);
+	n_series++;
+	return nPlot;
+}
+
+/**
+ * Adds a new function whose points may be replaced (setData) or appended
+ * (append, appendBatch) from any thread, without waiting for the painting of
+ * the chart. The changes are shown after the next call to publishPendingData
+ * and a paint always uses the points as they were at that call.
+ * @param functionName Name of the function
+ * @param functionColor Color of the function
+ * @param stroke Stroke of the function
+ * @param isContinuous True if function is continuous. False if is discrete.
+ * @return Index of the new plot
+ */
+public int addConcurrentPlot(String functionName, Color functionColor, float stroke, boolean isContinuous){
+	SnapshotXYDataset dataset = new SnapshotXYDataset(functionName,isContinuous);
+	int nPlot = n_series;
+
+	configuraFuncion(nPlot,dataset,functionColor,stroke,isContinuous);
+	n_series++;
+	return nPlot;
+}
+
+/**
+ * Replaces the points of a plot created with addConcurrentPlot. It can be
+ * called from any thread; the points are shown after the next call to
+ * publishPendingData (JPanelGrafica does it once per frame).
+ * @param nPlot Index of a plot created with addConcurrentPlot
+ * @param x X coordinates
+ * @param y Y coordinates
+ */
+public void setData(int nPlot, double[] x, double[] y){
+	if(x.length != y.length) {
+		throw new IllegalArgumentException("X and Y must have the same number of points");
+	}
+	getSnapshot(nPlot).setData(x,y,0,x.length);
+}
+
+/**
+ * Appends a point to a streaming plot or to a plot created with
+ * addConcurrentPlot. It can be called from any thread; the point is shown
+ * after the next call to publishPendingData (JPanelGrafica does it once per frame).
+ * @param nPlot Index of a plot created with addStreamingPlot or addConcurrentPlot
+ * @param x X coordinate
+ * @param y Y coordinate
+ */
+public void append(int nPlot, double x, double y){
+	SnapshotXYDataset snapshot = snapshots.get(nPlot);
+
+	if(snapshot != null) {
+		snapshot.append(x,y);
+	}
+	else {
+		getStream(nPlot).append(x,y);
+	}
+}
+
+/**
+ * Appends points to a streaming plot or to a plot created with
+ * addConcurrentPlot. It can be called from any thread; the points are shown
+ * after the next call to publishPendingData (JPanelGrafica does it once per frame).
+ * @param nPlot Index of a plot created with addStreamingPlot or addConcurrentPlot
+ * @param x X coordinates
+ * @param y Y coordinates
+ */
+public void appendBatch(int nPlot, double[] x, double[] y){
+	if(x.length != y.length) {
+		throw new IllegalArgumentException("X and Y must have the same number of points");
+	}
+	SnapshotXYDataset snapshot = snapshots.get(nPlot);
+
+	if(snapshot != null) {
+		snapshot.appendBatch(x,y,0,x.length);
+	}
+	else {
+		getStream(nPlot).appendBatch(x,y,0,x.length);
+	}
+}
+
+/**
+ * Shows the points appended to the streaming plots and the changes of the
+ * concurrent plots since the last call, with a single change event per plot.
+ * It must be called from the thread that paints the chart.
+ * @return True if some plot changed
+ */
+public boolean publishPendingData(){
+	boolean changed = false;
+
+	for(RingBufferXYDataset stream : streams.values()) {
+		changed |= stream.publish();
+	}
+	for(SnapshotXYDataset snapshot : snapshots.values()) {
+		changed |= snapshot.publish();
+	}
+	return changed;
+}
+
+/**
+ * Indicates if the chart has streaming or concurrent plots, whose data must be
+ * published periodically (see publishPendingData).
+ */
+boolean tieneDatosEnTiempoReal(){
+	return !streams.isEmpty() || !snapshots.isEmpty();
+}
+
+private RingBufferXYDataset getStream(int nPlot){
+	RingBufferXYDataset stream = streams.get(nPlot);
+
+	if(stream == null) {
+		throw new IllegalArgumentException("Plot " + nPlot + " is not a streaming plot");
+	}
+	return stream;
+}
+
+private SnapshotXYDataset getSnapshot(int nPlot){
+	SnapshotXYDataset snapshot = snapshots.get(nPlot);
+
+	if(snapshot == null) {
+		throw new IllegalArgumentException("Plot " + nPlot + " is not a concurrent plot");
+	}
+	return snapshot;
+}
+
+/**
+ * Reduces the points drawn of a plot to about two per pixel column of the chart.
+ * The points are chosen when the chart is painted (see pintar) for the visible
+ * range of the X axis, so they are chosen again after zooming with setXRange or
+ * fijaRango. Only continuous plots drawn without shapes are decimated; the
+ * points of the others are drawn on their own, so all of them are kept.
+ * @param nPlot Index
+ * @param mode Algorithm used to choose the points (NONE to draw all of them)
+ */
+public void setDecimation(int nPlot, DecimationMode mode){
+	XYPlot plot = grafica.getXYPlot();
+	XYDataset dataset = plot.getDataset(nPlot);
+
+	if(dataset instanceof DecimatedXYDataset) {
+		DecimatedXYDataset view = (DecimatedXYDataset) dataset;
+		if(mode == DecimationMode.NONE) {
+			view.detach();
+			plot.setDataset(nPlot,view.getSource());
+		}
+		else {
+			view.setMode(mode);
+		}
+	}
+	else if(dataset != null && mode != DecimationMode.NONE) {
+		plot.setDataset(nPlot,new DecimatedXYDataset(dataset,mode,esContinua(nPlot)));
+	}
+}
+
+/**
+ * Indicates if a plot is drawn as a line without shapes, so it can be decimated.
+ */
+private boolean esContinua(int nPlot){
+	XYItemRenderer renderer = grafica.getXYPlot().getRendererForDataset(grafica.getXYPlot().getDataset(nPlot));
+
+	if(!(renderer instanceof XYLineAndShapeRenderer)) {
+		return false;
+	}
+	XYLineAndShapeRenderer lines = (XYLineAndShapeRenderer) renderer;
+	return lines.getItemLineVisible(0,0) && !lines.getItemShapeVisible(0,0);
+}
+
+/**
+ * Draws a plot with a FastLineRenderer, which draws its line without creating
+ * objects per point (with a polyline per run of points, or segment by segment
+ * when antialiasing is on), or again with an XYLineAndShapeRenderer.
+ * The color, stroke and shapes of the plot are kept, and so is the renderer
+ * when the plot is replaced.
+ * @param nPlot Index
+ * @param fast True to use the fast renderer
+ */
+public void setFastRendering(int nPlot, boolean fast){
+	XYPlot plot = grafica.getXYPlot();
+	XYItemRenderer previous = plot.getRenderer(nPlot);
+
+	if(previous == null || (previous instanceof FastLineRenderer) == fast) {
+		return;
+	}
+	XYLineAndShapeRenderer renderer = fast ? new FastLineRenderer() : new XYLineAndShapeRenderer();
+	renderer.setSeriesPaint(0,previous.getSeriesPaint(0));
+	renderer.setSeriesStroke(0,previous.getSeriesStroke(0));
+	if(previous instanceof XYLineAndShapeRenderer) {
+		XYLineAndShapeRenderer lines = (XYLineAndShapeRenderer) previous;
+		renderer.setSeriesLinesVisible(0,lines.getItemLineVisible(0,0));
+		renderer.setSeriesShapesVisible(0,lines.getItemShapeVisible(0,0));
+		renderer.setSeriesShape(0,lines.getSeriesShape(0));
+	}
+	plot.setRenderer(nPlot,renderer);
+}
+
+/**
+ * Indicates if a plot is drawn with a FastLineRenderer.
+ * @param nPlot Index
+ * @return True if the plot uses the fast renderer
+ */
+public boolean isFastRendering(int nPlot){
+	return grafica.getXYPlot().getRenderer(nPlot) instanceof FastLineRenderer;
+}
+
+/**
+ * Returns the algorithm used to reduce the points drawn of a plot.
+ * @param nPlot Index
+ * @return The decimation mode of the plot
+ */
+public DecimationMode getDecimation(int nPlot){
+	XYDataset dataset = grafica.getXYPlot().getDataset(nPlot);
+
+	return dataset instanceof DecimatedXYDataset ? ((DecimatedXYDataset) dataset).getMode() : DecimationMode.NONE;
+}
+
+/**
+ * Appends points to the plot of the indicated index. The whole batch is
+ * stored at once and the chart is notified a single time.
+ * @param nPlot Index
+ * @param points Points to append
+ */
+public void addAll(int nPlot, Point2D[] points){
+	double[] x = new double[points.length];
+	double[] y = new double[points.length];
+
+	for(int i = 0 ; i < points.length ; i++) {
+		x[i] = points[i].getX();
+		y[i] = points[i].getY();
+	}
+	addAll(nPlot,x,y);
+}
+
+/**
+ * Appends points to the plot of the indicated index. The whole batch is
+ * stored at once and the chart is notified a single time.
+ * @param nPlot Index
+ * @param x X coordinates of the points
+ * @param y Y coordinates of the points
+ */
+public void addAll(int nPlot, double[] x, double[] y){
+	XYDataset dataset = grafica.getXYPlot().getDataset(nPlot);
+
+	if(dataset instanceof DecimatedXYDataset) {
+		dataset = ((DecimatedXYDataset) dataset).getSource();
+	}
+	if(!(dataset instanceof CompressedXYDataset)) {
+		dataset = getArrayDataset(nPlot);
+	}
+	ChartMetrics medidas = metrics;
+
+	if(medidas == null) {
+		agrega(dataset,x,y);
+		return;
+	}
+	// The change is notified apart to measure it
+	long inicio = System.nanoTime();
+	boolean notify = cambiaNotify(dataset,false);
+	agrega(dataset,x,y);
+	long notificacion = System.nanoTime();
+	cambiaNotify(dataset,notify);
+	long fin = System.nanoTime();
+	medidas.recordUpdate(this,nPlot,dataset.getItemCount(0),fin - inicio,fin - notificacion);
+}
+
+/**
+ * Appends points to an array or compressed dataset.
+ */
+private static void agrega(XYDataset dataset, double[] x, double[] y){
+	if(dataset instanceof CompressedXYDataset) {
+		((CompressedXYDataset) dataset).addAll(x,y);
+	}
+	else {
+		((ArrayXYDataset) dataset).addAll(x,y);
+	}
+}
+
+/**
+ * Changes the notification of an array or compressed dataset. When it is
+ * enabled again the dataset notifies the pending changes.
+ * @return The previous value
+ */
+private static boolean cambiaNotify(XYDataset dataset, boolean notify){
+	boolean previous;
+
+	if(dataset instanceof CompressedXYDataset) {
+		CompressedXYDataset compressed = (CompressedXYDataset) dataset;
+		previous = compressed.isNotify();
+		compressed.setNotify(notify);
+	}
+	else {
+		ArrayXYDataset array = (ArrayXYDataset) dataset;
+		previous = array.isNotify();
+		array.setNotify(notify);
+	}
+	return previous;
+}
+
+/**
+ * Returns the dataset of the plot of the indicated index.
+ * @param nPlot Index
+ * @return The dataset of the plot
+ * @throws IllegalStateException If the plot was not created by this class
+ */
+private ArrayXYDataset getArrayDataset(int nPlot){
+	XYDataset dataset = grafica.getXYPlot().getDataset(nPlot);
+
+	if(dataset instanceof DecimatedXYDataset) {
+		dataset = ((DecimatedXYDataset) dataset).getSource();
+	}
+	if(!(dataset instanceof ArrayXYDataset)) {
+		throw new IllegalStateException("Plot " + nPlot + " does not hold an array dataset");
+	}
+	return (ArrayXYDataset) dataset;
+}
+
+/**
+ * Sets the dataset of the indicated index with a new renderer. Discrete functions
+ * are drawn without lines, so only their samples are visible (see visualizaMuestras).
+ * The decimation and the fast rendering of the index, if any, are kept.
+ * @param nPlot Index
+ * @param dataset Points of the function
+ * @param functionColor Color of the function
+ * @param stroke Stroke of the function
+ * @param isContinuous True if function is continuous. False if is discrete.
+ */
+private void configuraFuncion(int nPlot, XYDataset dataset, Color functionColor, float stroke, boolean isContinuous){
+	ChartMetrics medidas = metrics;
+	long inicio = medidas == null ? 0 : System.nanoTime();
+	XYPlot plot = grafica.getXYPlot();
+	XYLineAndShapeRenderer renderer = isFastRendering(nPlot) ? new FastLineRenderer() : new XYLineAndShapeRenderer();
+	XYDataset previous = plot.getDataset(nPlot);
+
+	// Registered before the change event, so the panels see the plot
+	streams.remove(nPlot);
+	snapshots.remove(nPlot);
+	if(dataset instanceof RingBufferXYDataset) {
+		streams.put(nPlot,(RingBufferXYDataset) dataset);
+	}
+	else if(dataset instanceof SnapshotXYDataset) {
+		snapshots.put(nPlot,(SnapshotXYDataset) dataset);
+	}
+	if(previous instanceof DecimatedXYDataset) {
+		((DecimatedXYDataset) previous).detach();
+		dataset = new DecimatedXYDataset(dataset,((DecimatedXYDataset) previous).getMode(),isContinuous);
+	}
+
+	renderer.setSeriesPaint(0,functionColor);
+	renderer.setSeriesStroke(0,new BasicStroke(stroke));
+	renderer.setSeriesLinesVisible(0,isContinuous);
+	renderer.setSeriesShapesVisible(0,false);
+
+	long notificacion = medidas == null ? 0 : System.nanoTime();
+	plot.setDataset(nPlot,dataset);
+	plot.mapDatasetToRangeAxis(nPlot, 0);
+	plot.mapDatasetToDomainAxis(nPlot, 0);
+	plot.setRenderer(nPlot,renderer);
+
+	if(medidas != null) {
+		long fin = System.nanoTime();
+		medidas.recordUpdate(this,nPlot,puntos(dataset),fin - inicio,fin - notificacion);
+	}
+}
+
+/**
+ * Builds the dataset of a function. Continuous functions are sorted by the X
+ * coordinate, discrete functions keep the order of the samples.
+ * @param function Points of the function
+ * @param functionName Name of the function
+ * @param isContinuous True if function is continuous. False if is discrete.
+ * @return The dataset of the function
+ */
+static ArrayXYDataset creaDataset(Point2D[] function, String functionName, boolean isContinuous){
+	double[] x = new double[function.length];
+	double[] y = new double[function.length];
+
+	for(int i = 0 ; i < function.length ; i++) {
+		x[i] = function[i].getX();
+		y[i] = function[i].getY();
+	}
+	return new ArrayXYDataset(functionName,x,y,x.length,isContinuous);
+}
+
+/**
+ * Sets the background image of the chart from a file. The file is decoded only
+ * the first time (see ImageCache), and the image is drawn from a copy scaled to
+ * the data area. The image of the plot is the one kept in the cache, shared
+ * with the charts that use the same file, so it must not be modified.
+ * @param fileName Name of the image file
+ * @param alpha Transparency of the image (0 to 1)
+ * @throws IOException If the file can't be read
+ */
 public void setBackGroundImage(String fileName, float alpha) throws IOException{
-	this.backGroundImage = ImageIO.read(new File(fileName));	
+	this.backGroundImage = ImageCache.getDefault().read(new File(fileName));	
 	grafica.getPlot().setBackgroundImage(backGroundImage);
 	grafica.getPlot().setBackgroundImageAlpha(alpha);
 }
 
+/**
+ * Sets the background image of the chart. The image is drawn from a copy scaled
+ * to the data area (see ImageCache), so it must not be modified afterwards; set
+ * another image to change it.
+ * @param img The image
+ * @param alpha Transparency of the image (0 to 1)
+ * @throws IOException Never (kept for compatibility)
+ */
 public void setBackGroundImage(Image img, float alpha) throws IOException{
 	
 	this.backGroundImage = img;
@@ -533,7 +1375,10 @@ public void setBackGroundImage(Image img, float alpha) throws IOException{
 }
 
 /**
- * Set an image in a especific point of the chart.
+ * Set an image in a especific point of the chart. The image itself is drawn, so
+ * changes to it are shown the next time the chart is painted; for images that
+ * don't change, a copy in the format of the screen (see
+ * ImageCache.getCompatible) is drawn faster.
  * @param image Image to be loaded
  * @param xCoordinate X Coordinate
  * @param yCoordinate Y Coordinate
@@ -544,7 +1389,7 @@ public XYAnnotation setImageAtPoint(BufferedImage image, double xCoordinate,doub
    
     //Representation in the point
     XYAnnotation xyannotation = new XYImageAnnotation(xCoordinate, yCoordinate, image); 
-	grafica.getXYPlot().addAnnotation(xyannotation); 	
+	agregaAnotacion(xyannotation); 	
 	return xyannotation;
 }
 
@@ -560,7 +1405,7 @@ public XYAnnotation setImageAtPoint(BufferedImage image, Point2D point){
 }
 
 public void setAnnotation(XYAnnotation annotation){
-	grafica.getXYPlot().addAnnotation(annotation);
+	agregaAnotacion(annotation);
 }
 
 /**
@@ -573,7 +1418,7 @@ public void setAnnotation(XYAnnotation annotation){
  */
 public XYAnnotation drawBox(double x0, double y0, double x1, double y1){
 	XYAnnotation boxAnnotation = new XYBoxAnnotation(x0,y0,x1,y1);
-	grafica.getXYPlot().addAnnotation(boxAnnotation);
+	agregaAnotacion(boxAnnotation,x0,y0,x1,y1);
 	return boxAnnotation;
 }
 
@@ -589,7 +1434,7 @@ public XYAnnotation drawBox(double x0, double y0, double x1, double y1){
  */
 public XYAnnotation drawBox(double x0, double y0, double x1, double y1, Stroke stroke, Paint outlinePaint){
 	XYAnnotation boxAnnotation = new XYBoxAnnotation(x0,y0,x1,y1, stroke, outlinePaint);
-	grafica.getXYPlot().addAnnotation(boxAnnotation);
+	agregaAnotacion(boxAnnotation,x0,y0,x1,y1);
 	return boxAnnotation;
 }
 
@@ -606,7 +1451,7 @@ public XYAnnotation drawBox(double x0, double y0, double x1, double y1, Stroke s
  */
 public XYAnnotation drawBox(double x0, double y0, double x1, double y1, Stroke stroke, Paint outlinePaint, Paint fillPaint){
 	XYAnnotation boxAnnotation = new XYBoxAnnotation(x0,y0,x1,y1, stroke, outlinePaint, fillPaint);
-	grafica.getXYPlot().addAnnotation(boxAnnotation);
+	agregaAnotacion(boxAnnotation,x0,y0,x1,y1);
 	return boxAnnotation;
 }
 
@@ -622,7 +1467,7 @@ public XYAnnotation drawBox(double x0, double y0, double x1, double y1, Stroke s
  */
 public XYAnnotation drawLine(double x0, double y0, double x1, double y1, Stroke stroke, Paint outlinePaint){
 	XYAnnotation lineAnnotation = new XYLineAnnotation(x0, y0, x1, y1, stroke, outlinePaint);
-	grafica.getXYPlot().addAnnotation(lineAnnotation);
+	agregaAnotacion(lineAnnotation,x0,y0,x1,y1);
 	return lineAnnotation;
 }
 
@@ -636,14 +1481,79 @@ public XYAnnotation drawLine(double x0, double y0, double x1, double y1, Stroke
  */
 public XYAnnotation drawLine(double x0, double y0, double x1, double y1){
 	XYAnnotation lineAnnotation = new XYLineAnnotation(x0, y0, x1, y1);
-	grafica.getXYPlot().addAnnotation(lineAnnotation);
+	agregaAnotacion(lineAnnotation,x0,y0,x1,y1);
 	return lineAnnotation;
 }
 
 public void deleteAnnotation(XYAnnotation xyannotation){
-	if(xyannotation != null){
+	ChartMetrics medidas = metrics;
+	long inicio = medidas == null ? 0 : System.nanoTime();
+
+	if(xyannotation != null && !anotaciones.remove(xyannotation)){
 		grafica.getXYPlot().removeAnnotation(xyannotation);
 	}
+	if(medidas != null) {
+		medidas.recordAnnotationChange(this,anotaciones.size(),System.nanoTime() - inicio);
+	}
+}
+
+private void agregaAnotacion(XYAnnotation annotation){
+	ChartMetrics medidas = metrics;
+	long inicio = medidas == null ? 0 : System.nanoTime();
+
+	anotaciones.add(annotation);
+	if(medidas != null) {
+		medidas.recordAnnotationChange(this,anotaciones.size(),System.nanoTime() - inicio);
+	}
+}
+
+/**
+ * Adds an annotation that covers the rectangle with corners (x0, y0) and
+ * (x1, y1), so it is only drawn when that rectangle is visible.
+ */
+private void agregaAnotacion(XYAnnotation annotation, double x0, double y0, double x1, double y1){
+	ChartMetrics medidas = metrics;
+	long inicio = medidas == null ? 0 : System.nanoTime();
+
+	anotaciones.add(annotation,x0,y0,x1,y1);
+	if(medidas != null) {
+		medidas.recordAnnotationChange(this,anotaciones.size(),System.nanoTime() - inicio);
+	}
+}
+
+/**
+ * Enables or disables the metrics of the chart (paint latency, points rendered,
+ * updates, annotation changes...). While enabled they are registered as a JMX
+ * MBean and added up in ChartMetrics.getTotal(); while disabled the chart
+ * doesn't measure anything.
+ * <p>
+ * The MBean server and the total keep the metrics of the chart while they are
+ * enabled, even when the chart is no longer used, so call
+ * setMetricsEnabled(false) before discarding a chart with metrics.
+ * @param enabled True to enable the metrics
+ */
+public synchronized void setMetricsEnabled(boolean enabled){
+	if(enabled && metrics == null) {
+		ChartMetrics medidas = new ChartMetrics(grafica.getTitle() == null ? null : grafica.getTitle().getText());
+		medidas.register("Chart");
+		metrics = medidas;
+	}
+	else if(!enabled && metrics != null) {
+		metrics.unregister();
+		metrics = null;
+	}
+}
+
+/**
+ * Returns the metrics of the chart.
+ * @return The metrics, or null if they are disabled
+ */
+public ChartMetrics getMetrics(){
+	return metrics;
+}
+
+private static int puntos(XYDataset dataset){
+	return dataset == null || dataset.getSeriesCount() == 0 ? 0 : dataset.getItemCount(0);
 }
 
 public void setDomainAxis(ValueAxis axis, Font font){
@@ -652,11 +1562,17 @@ public void setDomainAxis(ValueAxis axis, Font font){
 }
 
 
+/**
+ * Loads an image of the classpath. It is decoded only the first time (see
+ * ImageCache); every call returns a new copy, which may be modified.
+ * @param fileName Name of the image
+ * @return The image, or null if it can't be loaded
+ */
 public BufferedImage loadImage(String fileName){
 
     BufferedImage buff = null;
     try {
-        buff = ImageIO.read(getClass().getResourceAsStream(fileName));
+        buff = ImageCache.copy(ImageCache.getDefault().readResource(getClass(), fileName));
     } catch (IOException e) {
         // TODO Auto-generated catch block
         e.printStackTrace();
@@ -667,11 +1583,89 @@ public BufferedImage loadImage(String fileName){
 }
 
 
-
+/**
+ * Returns the JFreeChart of the chart. Its plot draws the annotation layer
+ * through a single annotation, so a ChartPanel or ChartUtilities draw the
+ * annotations too; the changes of the layer are not notified to the chart, so
+ * listen to them with addChangeListener to draw it again.
+ * @return The JFreeChart
+ */
 public JFreeChart getGrafica() {
 	return grafica;
 }
 
+/**
+ * Returns the default background of the plot (see restableceFondo).
+ */
+Paint getFondoDefecto() {
+	return fondo_defecto;
+}
+
+/**
+ * Returns the background image set with setBackGroundImage, or null.
+ */
+Image getImagenFondo() {
+	return backGroundImage;
+}
+
+/**
+ * Returns the template the chart was created from.
+ * @return The template, or null if the chart was created with a constructor
+ */
+ChartTemplate getPlantilla() {
+	return plantilla;
+}
+
+/**
+ * Leaves the chart as its template creates it (see ChartPool): removes the
+ * functions, the annotations and the ranges set on the axes, and sets the
+ * points of the first function. The style of the chart is not changed.
+ * @param dataset Points of the first function, or null to leave the chart without functions
+ */
+void reinicia(XYDataset dataset) {
+	batch(g -> {
+		XYPlot plot = grafica.getXYPlot();
+		XYPlot modelo = plantilla.getPlot();
+
+		for(int i = 0 ; i < plot.getDatasetCount() ; i++) {
+			XYDataset previous = plot.getDataset(i);
+			if(previous instanceof DecimatedXYDataset) {
+				((DecimatedXYDataset) previous).detach();
+			}
+			if(previous != null) {
+				plot.setDataset(i,null);
+			}
+			if(i > 0) {
+				plot.setRenderer(i,null);
+			}
+		}
+		streams.clear();
+		snapshots.clear();
+		anotaciones.clear();
+		plot.setDataset(0,dataset);
+		n_series = dataset == null ? 0 : 1;
+
+		for(int i = 0 ; i < plot.getDomainAxisCount() && i < modelo.getDomainAxisCount() ; i++) {
+			restauraRango(plot.getDomainAxis(i),modelo.getDomainAxis(i));
+		}
+		for(int i = 0 ; i < plot.getRangeAxisCount() && i < modelo.getRangeAxisCount() ; i++) {
+			restauraRango(plot.getRangeAxis(i),modelo.getRangeAxis(i));
+		}
+	});
+}
+
+private static void restauraRango(ValueAxis eje, ValueAxis modelo) {
+	if(eje == null || modelo == null) {
+		return;
+	}
+	if(modelo.isAutoRange()) {
+		eje.setAutoRange(true);
+	}
+	else {
+		eje.setRange(modelo.getRange(),true,true);
+	}
+}
+
 public Plot getPlot(){
 	return grafica.getPlot();
 }
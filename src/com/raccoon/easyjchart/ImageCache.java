@@ -0,0 +1,368 @@
+package com.raccoon.easyjchart;
+
+import java.awt.AlphaComposite;
+import java.awt.Graphics2D;
+import java.awt.GraphicsConfiguration;
+import java.awt.GraphicsEnvironment;
+import java.awt.Image;
+import java.awt.RenderingHints;
+import java.awt.Transparency;
+import java.awt.image.BufferedImage;
+import java.io.File;
+import java.io.FileNotFoundException;
+import java.io.IOException;
+import java.io.InputStream;
+import java.lang.ref.Reference;
+import java.lang.ref.ReferenceQueue;
+import java.lang.ref.WeakReference;
+import java.net.URISyntaxException;
+import java.net.URL;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+import javax.imageio.ImageIO;
+
+/**
+ * Least recently used cache of images, bounded by the memory of their pixels.
+ * It keeps the images decoded from files and from the classpath, so loading the
+ * same image again doesn't decode it again (unless the file has been modified),
+ * and copies of the images in the format of the screen, scaled to the size
+ * where they are drawn, so drawing them is a plain copy of pixels.
+ * <p>
+ * A cache shared by all the charts is returned by getDefault. It can be used
+ * from any thread.
+ */
+public class ImageCache {
+
+	private static final ImageCache DEFAULT = new ImageCache(64L << 20);
+
+	/**
+	 * Entry of the cache.
+	 */
+	private static class Entry {
+
+		final BufferedImage image;
+		final long bytes;
+
+		/**
+		 * Modification time and length of the file of the image, or -1 if the
+		 * image can't change.
+		 */
+		final long modified;
+		final long length;
+
+		Entry(BufferedImage image, long modified, long length) {
+			this.image = image;
+			this.bytes = 4L * image.getWidth() * image.getHeight();
+			this.modified = modified;
+			this.length = length;
+		}
+	}
+
+	/**
+	 * Key of a copy of an image (in the format of the screen and, optionally,
+	 * scaled). It references the image weakly, since the cache only counts the
+	 * memory of the copies; the entry is removed once the image is collected.
+	 */
+	private static class CopyKey extends WeakReference<Image> {
+
+		final int hash;
+		final int width;
+		final int height;
+
+		CopyKey(Image source, int width, int height, ReferenceQueue<Image> queue) {
+			super(source, queue);
+			this.hash = (System.identityHashCode(source) * 31 + width) * 31 + height;
+			this.width = width;
+			this.height = height;
+		}
+
+		@Override
+		public boolean equals(Object o) {
+			if(o == this) {
+				return true;
+			}
+			if(!(o instanceof CopyKey)) {
+				return false;
+			}
+			CopyKey other = (CopyKey) o;
+			Image source = get();
+			return source != null && source == other.get() && width == other.width && height == other.height;
+		}
+
+		@Override
+		public int hashCode() {
+			return hash;
+		}
+	}
+
+	private final long maxBytes;
+	private long bytes = 0;
+
+	/**
+	 * Entries in access order (the least recently used first).
+	 */
+	private final LinkedHashMap<Object, Entry> entries = new LinkedHashMap<Object, Entry>(16, 0.75f, true);
+
+	/**
+	 * Keys of the copies whose images have been collected.
+	 */
+	private final ReferenceQueue<Image> collected = new ReferenceQueue<Image>();
+
+	/**
+	 * Creates an empty cache.
+	 * @param maxBytes Maximum memory of the images kept (4 bytes per pixel)
+	 */
+	public ImageCache(long maxBytes) {
+		if(maxBytes <= 0) {
+			throw new IllegalArgumentException("The size must be positive: " + maxBytes);
+		}
+		this.maxBytes = maxBytes;
+	}
+
+	/**
+	 * Returns the cache shared by all the charts (64 MB).
+	 * @return The shared cache
+	 */
+	public static ImageCache getDefault() {
+		return DEFAULT;
+	}
+
+	/**
+	 * Reads an image file. It is decoded again only if the file has changed
+	 * since it was read (or if it was evicted from the cache). The image is
+	 * shared by everyone who reads the same file, so it must not be modified.
+	 * @param file The file
+	 * @return The image, shared
+	 * @throws IOException If the file can't be read
+	 */
+	public BufferedImage read(File file) throws IOException {
+		File absolute = file.getAbsoluteFile();
+		String key = "file:" + absolute.getPath();
+		long modified = absolute.lastModified();
+		long length = absolute.length();
+
+		synchronized(this) {
+			Entry entry = entries.get(key);
+			if(entry != null && entry.modified == modified && entry.length == length) {
+				return entry.image;
+			}
+		}
+		BufferedImage image = ImageIO.read(absolute);
+		if(image == null) {
+			throw new IOException("Unknown image format: " + file);
+		}
+		put(key, new Entry(image, modified, length));
+		return image;
+	}
+
+	/**
+	 * Returns a copy of an image with the same format, which may be modified.
+	 * @param image The image
+	 * @return The copy
+	 */
+	static BufferedImage copy(BufferedImage image) {
+		return new BufferedImage(image.getColorModel(), image.copyData(null), image.isAlphaPremultiplied(), null);
+	}
+
+	/**
+	 * Reads an image of the classpath. Images in directories are checked for
+	 * changes like files; images in jars are decoded only once. The image is
+	 * shared by everyone who reads the same resource, so it must not be modified.
+	 * @param base Class whose class loader finds the image
+	 * @param name Name of the image, relative to the package of the class unless it starts with '/'
+	 * @return The image, shared
+	 * @throws IOException If the image can't be read
+	 */
+	public BufferedImage readResource(Class<?> base, String name) throws IOException {
+		URL url = base.getResource(name);
+		if(url == null) {
+			throw new FileNotFoundException("Resource not found: " + name);
+		}
+		if("file".equals(url.getProtocol())) {
+			try {
+				return read(new File(url.toURI()));
+			} catch (URISyntaxException e) {
+				// Read through the URL
+			}
+		}
+		String key = url.toExternalForm();
+		synchronized(this) {
+			Entry entry = entries.get(key);
+			if(entry != null) {
+				return entry.image;
+			}
+		}
+		InputStream in = url.openStream();
+		BufferedImage image;
+		try {
+			image = ImageIO.read(in);
+		} finally {
+			in.close();
+		}
+		if(image == null) {
+			throw new IOException("Unknown image format: " + name);
+		}
+		put(key, new Entry(image, -1, -1));
+		return image;
+	}
+
+	/**
+	 * Returns a copy of an image in the format of the screen (or in a format that
+	 * is fast to draw when there is no screen). The copy is kept while the same
+	 * image object is asked for and used elsewhere (the cache doesn't keep the
+	 * image itself). The image must not be modified afterwards.
+	 * @param image The image
+	 * @return The copy, or the same image if it already has that format
+	 */
+	public BufferedImage getCompatible(BufferedImage image) {
+		if(isCompatible(image)) {
+			return image;
+		}
+		return getCopy(image, image.getWidth(), image.getHeight());
+	}
+
+	/**
+	 * Returns a copy of an image in the format of the screen, scaled to the given
+	 * size. The copy is kept while the same image object is asked for at the same
+	 * size and used elsewhere (the cache doesn't keep the image itself). The image
+	 * must not be modified afterwards.
+	 * @param image The image
+	 * @param width Width of the copy
+	 * @param height Height of the copy
+	 * @return The scaled copy
+	 */
+	public BufferedImage getScaled(Image image, int width, int height) {
+		if(width <= 0 || height <= 0) {
+			throw new IllegalArgumentException("Invalid size: " + width + "x" + height);
+		}
+		if(image instanceof BufferedImage && image.getWidth(null) == width && image.getHeight(null) == height) {
+			return getCompatible((BufferedImage) image);
+		}
+		return getCopy(image, width, height);
+	}
+
+	private BufferedImage getCopy(Image image, int width, int height) {
+		CopyKey key = new CopyKey(image, width, height, collected);
+		synchronized(this) {
+			Entry entry = entries.get(key);
+			if(entry != null) {
+				return entry.image;
+			}
+		}
+		BufferedImage copy = scale(image, width, height);
+		put(key, new Entry(copy, -1, -1));
+		return copy;
+	}
+
+	/**
+	 * Removes all the images.
+	 */
+	public synchronized void clear() {
+		entries.clear();
+		bytes = 0;
+	}
+
+	/**
+	 * Returns the memory of the images kept.
+	 * @return Bytes of the pixels of the images (4 bytes per pixel)
+	 */
+	public synchronized long getSize() {
+		return bytes;
+	}
+
+	/**
+	 * Returns the maximum memory of the images kept.
+	 * @return Maximum bytes of the pixels of the images
+	 */
+	public long getMaxSize() {
+		return maxBytes;
+	}
+
+	/**
+	 * Adds an entry, evicting the least recently used ones until it fits. Images
+	 * larger than the cache are not kept.
+	 */
+	private synchronized void put(Object key, Entry entry) {
+		for(Reference<? extends Image> stale = collected.poll(); stale != null; stale = collected.poll()) {
+			Entry removed = entries.remove(stale);
+			if(removed != null) {
+				bytes -= removed.bytes;
+			}
+		}
+		if(entry.bytes > maxBytes) {
+			return;
+		}
+		Entry previous = entries.put(key, entry);
+		if(previous != null) {
+			bytes -= previous.bytes;
+		}
+		bytes += entry.bytes;
+		Iterator<Map.Entry<Object, Entry>> eldest = entries.entrySet().iterator();
+		while(bytes > maxBytes && eldest.hasNext()) {
+			Entry evicted = eldest.next().getValue();
+			if(evicted != entry) {
+				bytes -= evicted.bytes;
+				eldest.remove();
+			}
+		}
+	}
+
+	private static boolean isCompatible(BufferedImage image) {
+		GraphicsConfiguration gc = getConfiguration();
+		if(gc == null) {
+			return image.getType() == BufferedImage.TYPE_INT_ARGB_PRE
+					|| image.getType() == BufferedImage.TYPE_INT_RGB;
+		}
+		return image.getColorModel().equals(gc.getColorModel(image.getTransparency()));
+	}
+
+	/**
+	 * Draws an image in a new image of the screen format with the given size.
+	 * Large reductions are done in steps of half the size, so the result is
+	 * smooth with bilinear interpolation.
+	 */
+	private static BufferedImage scale(Image image, int width, int height) {
+		int transparency = image instanceof BufferedImage ? ((BufferedImage) image).getTransparency() : Transparency.TRANSLUCENT;
+		Image current = image;
+		int w = image.getWidth(null);
+		int h = image.getHeight(null);
+		if(w <= 0 || h <= 0) {
+			throw new IllegalArgumentException("The image is not loaded yet");
+		}
+		BufferedImage result;
+		do {
+			w = w / 2 >= width ? w / 2 : width;
+			h = h / 2 >= height ? h / 2 : height;
+			result = createImage(w, h, transparency);
+			Graphics2D g2 = result.createGraphics();
+			try {
+				g2.setComposite(AlphaComposite.Src);
+				g2.setRenderingHint(RenderingHints.KEY_INTERPOLATION, RenderingHints.VALUE_INTERPOLATION_BILINEAR);
+				g2.setRenderingHint(RenderingHints.KEY_RENDERING, RenderingHints.VALUE_RENDER_QUALITY);
+				g2.drawImage(current, 0, 0, w, h, null);
+			} finally {
+				g2.dispose();
+			}
+			current = result;
+		} while(w != width || h != height);
+		return result;
+	}
+
+	private static BufferedImage createImage(int width, int height, int transparency) {
+		GraphicsConfiguration gc = getConfiguration();
+		if(gc != null) {
+			return gc.createCompatibleImage(width, height, transparency);
+		}
+		return new BufferedImage(width, height, transparency == Transparency.OPAQUE
+				? BufferedImage.TYPE_INT_RGB : BufferedImage.TYPE_INT_ARGB_PRE);
+	}
+
+	private static GraphicsConfiguration getConfiguration() {
+		if(GraphicsEnvironment.isHeadless()) {
+			return null;
+		}
+		return GraphicsEnvironment.getLocalGraphicsEnvironment().getDefaultScreenDevice().getDefaultConfiguration();
+	}
+}
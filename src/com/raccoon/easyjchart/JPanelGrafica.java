@@ -2,14 +2,26 @@ package com.raccoon.easyjchart;
 
 
 
+import java.awt.AlphaComposite;
 import java.awt.Graphics;
+import java.awt.Graphics2D;
+import java.awt.GraphicsConfiguration;
+import java.awt.Rectangle;
+import java.awt.Transparency;
+import java.awt.event.ActionEvent;
+import java.awt.event.ActionListener;
+import java.awt.image.BufferedImage;
 import javax.swing.JPanel;
+import javax.swing.Timer;
+
+import org.jfree.chart.event.ChartChangeEvent;
+import org.jfree.chart.event.ChartChangeListener;
 
 /**
  * Clase que implementa el panel donde se situarán las gráficas.
  * @author Miguel Jiménez López
  */
-public class JPanelGrafica extends JPanel {
+public class JPanelGrafica extends JPanel implements ChartChangeListener {
 	
 	private static final long serialVersionUID = 6225639831211204554L;
 	/**
@@ -17,6 +29,47 @@ public class JPanelGrafica extends JPanel {
      */
     private Grafica grafica = null;
 
+    /**
+     * Imagen con las funciones de la última gráfica pintada (sin anotaciones). Solo
+     * se vuelve a pintar cuando cambia la gráfica o cambia el tamaño del panel.
+     */
+    private transient BufferedImage capaDatos = null;
+
+    /**
+     * Imagen con las funciones y las anotaciones encima. Cuando solo cambian las
+     * anotaciones se compone a partir de capaDatos sin volver a pintar las funciones.
+     */
+    private transient BufferedImage cache = null;
+
+    /**
+     * Indica si la gráfica ha cambiado desde que se pintó en la imagen.
+     */
+    private boolean sucio = true;
+
+    /**
+     * Indica si las anotaciones han cambiado desde que se pintaron en la imagen.
+     */
+    private boolean anotacionesSucias = true;
+
+    /**
+     * Número máximo de veces por segundo que se publican los datos de las
+     * gráficas en tiempo real (y por tanto que se repinta el panel por ellas).
+     */
+    private int maxFps = 60;
+
+    /**
+     * Temporizador que publica una vez por fotograma los datos añadidos a las
+     * gráficas en tiempo real. Solo está activo mientras el panel es visualizable,
+     * no tiene planificador y la gráfica tiene funciones en tiempo real.
+     */
+    private transient Timer temporizador = null;
+
+    /**
+     * Planificador que pinta el panel junto con los demás paneles registrados en
+     * él, o null si el panel se repinta por su cuenta.
+     */
+    private transient RenderScheduler planificador = null;
+
     /**
      * Construtor por defecto. La grafica queda inicializada a NULL.
      */
@@ -34,8 +87,8 @@ public class JPanelGrafica extends JPanel {
 
     public JPanelGrafica(Grafica grafica1) {
         super();
-        grafica = grafica1;
         this.setDoubleBuffered(true);
+        actualizaGrafica(grafica1);
     }
     
     /**
@@ -44,18 +97,255 @@ public class JPanelGrafica extends JPanel {
      */
 
     public void actualizaGrafica(Grafica grafica1) {
+        if(grafica != null)
+            grafica.removeChangeListener(this);
         grafica = grafica1;
+        if(grafica != null)
+            grafica.addChangeListener(this);
+        actualizaTemporizador();
+        invalida();
     }
-    
+
+    /**
+     * Fija el número máximo de fotogramas por segundo. Los puntos añadidos desde
+     * otros hilos a las gráficas en tiempo real (ver Grafica.append) se muestran
+     * como mucho con esta frecuencia, con un único repintado por fotograma.
+     * @param fps Fotogramas por segundo (mayor que 0).
+     */
+
+    public void setMaxFps(int fps) {
+        if(fps <= 0)
+            throw new IllegalArgumentException("fps must be positive: " + fps);
+        maxFps = fps;
+        if(temporizador != null)
+            temporizador.setDelay(RenderScheduler.delay(fps));
+    }
+
+    /**
+     * Consulta el número máximo de fotogramas por segundo.
+     * @return Fotogramas por segundo.
+     */
+
+    public int getMaxFps() {
+        return maxFps;
+    }
+
+    /**
+     * Hace que el panel se pinte en los fotogramas de un planificador compartido
+     * con otros paneles (ver RenderScheduler) en lugar de repintarse cada vez que
+     * cambia la gráfica. El planificador también publica los datos de las
+     * gráficas en tiempo real, con su propio número de fotogramas por segundo.
+     * @param scheduler Planificador, o null para que el panel se repinte por su cuenta.
+     */
+
+    public void setScheduler(RenderScheduler scheduler) {
+        if(scheduler == planificador)
+            return;
+        boolean visualizable = isDisplayable();
+        if(visualizable)
+            desregistra();
+        planificador = scheduler;
+        if(visualizable)
+            registra();
+        invalida();
+    }
+
+    /**
+     * Consulta el planificador con el que se pinta el panel.
+     * @return Planificador, o null si el panel se repinta por su cuenta.
+     */
+
+    public RenderScheduler getScheduler() {
+        return planificador;
+    }
+
+    public void addNotify() {
+        super.addNotify();
+        registra();
+    }
+
+    public void removeNotify() {
+        desregistra();
+        super.removeNotify();
+    }
+
     /**
-     * Pinta en pantalla el panel.
+     * Empieza a publicar los datos de las gráficas en tiempo real, con el
+     * planificador o con el temporizador del panel.
+     */
+
+    private void registra() {
+        if(planificador != null)
+            planificador.register(this);
+        else
+            actualizaTemporizador();
+    }
+
+    private void desregistra() {
+        if(planificador != null)
+            planificador.unregister(this);
+        if(temporizador != null)
+            temporizador.stop();
+    }
+
+    /**
+     * Arranca el temporizador del panel si ha de publicar los datos de la
+     * gráfica (el panel es visualizable, no tiene planificador y la gráfica
+     * tiene funciones en tiempo real) y lo para si no.
+     */
+
+    private void actualizaTemporizador() {
+        boolean activo = planificador == null && grafica != null && isDisplayable()
+                && grafica.tieneDatosEnTiempoReal();
+        if(!activo) {
+            if(temporizador != null)
+                temporizador.stop();
+            return;
+        }
+        if(temporizador == null) {
+            temporizador = new Timer(RenderScheduler.delay(maxFps), new ActionListener() {
+                public void actionPerformed(ActionEvent e) {
+                    if(grafica != null)
+                        grafica.publishPendingData();
+                }
+            });
+            temporizador.setCoalesce(true);
+        }
+        if(!temporizador.isRunning())
+            temporizador.start();
+    }
+
+    /**
+     * Marca la gráfica como modificada para que se vuelva a pintar en el siguiente repintado.
+     */
+
+    public void invalida() {
+        sucio = true;
+        if(planificador == null)
+            repaint();
+    }
+
+    /**
+     * Se invoca cuando cambia la gráfica contenida en el panel.
+     * @param event Evento con el cambio.
+     */
+
+    public void chartChanged(ChartChangeEvent event) {
+        if(planificador == null && isDisplayable())
+            actualizaTemporizador();
+        if(event.getSource() instanceof AnnotationLayer) {
+            anotacionesSucias = true;
+            if(planificador == null)
+                repaint();
+        }
+        else
+            invalida();
+    }
+
+    /**
+     * Pinta en pantalla el panel. La gráfica se pinta en una imagen intermedia que
+     * se reutiliza mientras no cambien ni la gráfica ni el tamaño del panel.
      * @param g Lienzo sobre el que se pinta.
      */
 
     public void paint(Graphics g) {
         super.paint(g);
+        if(grafica != null) {
+            Rectangle area = this.getBounds();
+            if(area.width <= 0 || area.height <= 0)
+                return;
+            g.drawImage(actualizaCache(area.width,area.height),area.x,area.y,null);
+        }
+    }
+
+    /**
+     * Publica los datos pendientes de las gráficas en tiempo real (lo llama el planificador).
+     */
+
+    void publicaDatos() {
         if(grafica != null)
-            grafica.pintar(g,this.getBounds());
+            grafica.publishPendingData();
+    }
+
+    /**
+     * Indica si la imagen del panel ha de volver a pintarse porque ha cambiado la gráfica.
+     */
+
+    boolean necesitaPintarse() {
+        return grafica != null && (sucio || anotacionesSucias);
+    }
+
+    /**
+     * Pinta la imagen del panel sin mostrarla. El planificador lo llama desde
+     * otros hilos mientras el hilo de eventos espera.
+     */
+
+    void renderiza(int ancho, int alto) {
+        if(grafica != null && ancho > 0 && alto > 0)
+            actualizaCache(ancho,alto);
+    }
+
+    /**
+     * Vuelve a pintar las capas que han cambiado. Las funciones solo se pintan si ha
+     * cambiado la gráfica o el tamaño; si solo han cambiado las anotaciones se
+     * pintan éstas sobre la copia de la capa de datos.
+     * @return Imagen con la gráfica completa.
+     */
+
+    private BufferedImage actualizaCache(int ancho, int alto) {
+        Rectangle area = new Rectangle(0,0,ancho,alto);
+        if(capaDatos == null || capaDatos.getWidth() != ancho || capaDatos.getHeight() != alto) {
+            capaDatos = creaImagen(ancho,alto);
+            cache = null;
+            sucio = true;
+        }
+        if(sucio) {
+            Graphics2D g2 = capaDatos.createGraphics();
+            try {
+                g2.setComposite(AlphaComposite.Clear);
+                g2.fillRect(0,0,ancho,alto);
+                g2.setComposite(AlphaComposite.SrcOver);
+                grafica.pintarDatos(g2,area);
+            } finally {
+                g2.dispose();
+            }
+        }
+        ChartMetrics medidas = grafica.getMetrics();
+        if(medidas != null)
+            medidas.recordRepaint(grafica,sucio);
+        if(grafica.getAnnotationLayer().size() == 0) {
+            sucio = anotacionesSucias = false;
+            return capaDatos;
+        }
+        boolean componer = sucio || anotacionesSucias;
+        if(cache == null) {
+            cache = creaImagen(ancho,alto);
+            componer = true;
+        }
+        if(componer) {
+            Graphics2D g2 = cache.createGraphics();
+            try {
+                g2.setComposite(AlphaComposite.Src);
+                g2.drawImage(capaDatos,0,0,null);
+                g2.setComposite(AlphaComposite.SrcOver);
+                grafica.pintarAnotaciones(g2,area);
+            } finally {
+                g2.dispose();
+            }
+        }
+        sucio = anotacionesSucias = false;
+        return cache;
+    }
+
+    /**
+     * Crea una imagen compatible con la pantalla donde se muestra el panel.
+     */
+
+    private BufferedImage creaImagen(int ancho, int alto) {
+        GraphicsConfiguration gc = getGraphicsConfiguration();
+        if(gc != null)
+            return gc.createCompatibleImage(ancho,alto,Transparency.TRANSLUCENT);
+        return new BufferedImage(ancho,alto,BufferedImage.TYPE_INT_ARGB_PRE);
     }
 
 }
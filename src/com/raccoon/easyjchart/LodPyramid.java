@@ -0,0 +1,231 @@
+package com.raccoon.easyjchart;
+
+import org.jfree.data.xy.XYDataset;
+
+/**
+ * Level-of-detail pyramid of a function sorted by the X coordinate. For blocks
+ * of 2^k consecutive points, from 64 points up to the whole function, it keeps
+ * the points with the minimum and maximum Y coordinate and whether the block
+ * has gaps (NaN); the first and last points of a block are known from its
+ * position. It is built once, in parallel, and takes less than a third of a
+ * byte per point.
+ * <p>
+ * A range of points can then be summarized with the first, minimum, maximum
+ * and last points of a few blocks (see decimate), in a time that depends on the
+ * number of blocks and not on the number of points.
+ */
+class LodPyramid {
+
+	/**
+	 * Level of the smallest blocks (2^6 = 64 points).
+	 */
+	static final int BASE_LEVEL = 6;
+
+	/**
+	 * Blocks handled by each parallel task while building.
+	 */
+	private static final int BLOCKS_PER_TASK = 4096;
+
+	/**
+	 * Receives the points chosen by decimate in order.
+	 */
+	interface Sink {
+
+		/**
+		 * A point of the function.
+		 * @param item Index of the point in the function
+		 */
+		void item(int item);
+
+		/**
+		 * A gap (NaN) after the previous point.
+		 */
+		void gap();
+	}
+
+	private final XYDataset source;
+	private final int count;
+
+	/**
+	 * Items with the minimum and maximum Y of each block, by level (starting at
+	 * BASE_LEVEL). They are -1 if every Y of the block is NaN.
+	 */
+	private final int[][] minItems;
+	private final int[][] maxItems;
+
+	/**
+	 * True for the blocks that have some NaN Y coordinate.
+	 */
+	private final boolean[][] gaps;
+
+	/**
+	 * Builds the pyramid of the first series of a dataset. The dataset must not
+	 * change while it is built, and its values must be readable from several
+	 * threads at the same time.
+	 * @param source Function sorted by the X coordinate
+	 */
+	LodPyramid(XYDataset source) {
+		this.source = source;
+		this.count = source.getItemCount(0);
+		int levels = 0;
+		while(count > (1L << (BASE_LEVEL + levels))) {
+			levels++;
+		}
+		minItems = new int[levels][];
+		maxItems = new int[levels][];
+		gaps = new boolean[levels][];
+		for(int l = 0; l < levels; l++) {
+			int blocks = (int) ((count + (1L << (BASE_LEVEL + l)) - 1) >>> (BASE_LEVEL + l));
+			minItems[l] = new int[blocks];
+			maxItems[l] = new int[blocks];
+			gaps[l] = new boolean[blocks];
+		}
+		if(levels > 0) {
+			Parallel.split(minItems[0].length, BLOCKS_PER_TASK, new Parallel.Range<Void>() {
+				Void run(int from, int to) {
+					buildBase(from, to);
+					return null;
+				}
+			}, "building the pyramid");
+		}
+		for(int l = 1; l < levels; l++) {
+			final int level = l;
+			Parallel.split(minItems[l].length, BLOCKS_PER_TASK, new Parallel.Range<Void>() {
+				Void run(int from, int to) {
+					buildLevel(level, from, to);
+					return null;
+				}
+			}, "building the pyramid");
+		}
+	}
+
+	/**
+	 * Returns the number of points of the function when the pyramid was built.
+	 * @return The number of points
+	 */
+	int getItemCount() {
+		return count;
+	}
+
+	/**
+	 * Returns the level of the largest blocks (log2 of their size).
+	 * @return The top level, or BASE_LEVEL - 1 if the function is too short to have blocks
+	 */
+	int getTopLevel() {
+		return BASE_LEVEL + minItems.length - 1;
+	}
+
+	private void buildBase(int from, int to) {
+		int[] mins = minItems[0];
+		int[] maxs = maxItems[0];
+		boolean[] gap = gaps[0];
+		for(int b = from; b < to; b++) {
+			int start = b << BASE_LEVEL;
+			int end = Math.min(start + (1 << BASE_LEVEL), count);
+			int minItem = -1, maxItem = -1;
+			double min = 0, max = 0;
+			boolean hasGap = false;
+			for(int i = start; i < end; i++) {
+				double v = source.getYValue(0, i);
+				if(Double.isNaN(v)) {
+					hasGap = true;
+				}
+				else if(minItem < 0) {
+					minItem = maxItem = i;
+					min = max = v;
+				}
+				else if(v < min) {
+					minItem = i;
+					min = v;
+				}
+				else if(v > max) {
+					maxItem = i;
+					max = v;
+				}
+			}
+			mins[b] = minItem;
+			maxs[b] = maxItem;
+			gap[b] = hasGap;
+		}
+	}
+
+	private void buildLevel(int l, int from, int to) {
+		int[] childMins = minItems[l - 1];
+		int[] childMaxs = maxItems[l - 1];
+		boolean[] childGaps = gaps[l - 1];
+		for(int b = from; b < to; b++) {
+			int left = 2 * b;
+			int right = Math.min(left + 1, childMins.length - 1);
+			minItems[l][b] = pick(childMins[left], childMins[right], true);
+			maxItems[l][b] = pick(childMaxs[left], childMaxs[right], false);
+			gaps[l][b] = childGaps[left] || childGaps[right];
+		}
+	}
+
+	/**
+	 * Chooses the item with the lowest (or highest) Y of two, preferring the first one.
+	 */
+	private int pick(int a, int b, boolean lowest) {
+		if(a < 0 || a == b) {
+			return b;
+		}
+		if(b < 0) {
+			return a;
+		}
+		double va = source.getYValue(0, a);
+		double vb = source.getYValue(0, b);
+		return (lowest ? vb < va : vb > va) ? b : a;
+	}
+
+	/**
+	 * Summarizes the points in [first, last] with aligned blocks of at most 2^level
+	 * points, using smaller blocks (and finally single points) at the ends of the
+	 * range. Each block gives its first, minimum, maximum and last points, in
+	 * order, followed by a gap if it has NaN values.
+	 * @param first Index of the first point
+	 * @param last Index of the last point
+	 * @param level Level of the largest blocks used (at least BASE_LEVEL)
+	 * @param sink Receives the points
+	 */
+	void decimate(int first, int last, int level, Sink sink) {
+		int top = Math.min(level, getTopLevel());
+		int i = first;
+		while(i <= last) {
+			int l = top;
+			while(l >= BASE_LEVEL && ((i & ((1 << l) - 1)) != 0 || (long) i + (1 << l) - 1 > last)) {
+				l--;
+			}
+			if(l < BASE_LEVEL) {
+				sink.item(i);
+				i++;
+			}
+			else {
+				emitBlock(l, i >> l, sink);
+				i += 1 << l;
+			}
+		}
+	}
+
+	private void emitBlock(int l, int b, Sink sink) {
+		int start = b << l;
+		int end = start + (1 << l) - 1;
+		int minItem = minItems[l - BASE_LEVEL][b];
+		int maxItem = maxItems[l - BASE_LEVEL][b];
+
+		sink.item(start);
+		if(minItem >= 0) {
+			int lowItem = Math.min(minItem, maxItem);
+			int highItem = Math.max(minItem, maxItem);
+			if(lowItem != start && lowItem != end) {
+				sink.item(lowItem);
+			}
+			if(highItem != lowItem && highItem != start && highItem != end) {
+				sink.item(highItem);
+			}
+		}
+		sink.item(end);
+		if(gaps[l - BASE_LEVEL][b]) {
+			sink.gap();
+		}
+	}
+}
@@ -0,0 +1,323 @@
+package com.raccoon.easyjchart;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteOrder;
+import java.nio.DoubleBuffer;
+import java.nio.channels.FileChannel;
+import java.util.List;
+
+import org.jfree.data.DomainInfo;
+import org.jfree.data.DomainOrder;
+import org.jfree.data.Range;
+import org.jfree.data.RangeInfo;
+import org.jfree.data.general.DatasetUtilities;
+import org.jfree.data.xy.AbstractXYDataset;
+import org.jfree.data.xy.XYDomainInfo;
+import org.jfree.data.xy.XYRangeInfo;
+
+/**
+ * Read-only dataset of a function stored in a binary file of little-endian
+ * doubles. The file is memory-mapped, so the points are read by the operating
+ * system on demand and are not copied onto the Java heap. Files larger than
+ * 2 GB are mapped in several regions.
+ * <p>
+ * Two layouts are supported: interleaved (x0, y0, x1, y1, ...) and columnar
+ * (all the X coordinates followed by all the Y coordinates). In both cases a
+ * window of the file can be selected with the index of its first point and its
+ * number of points.
+ */
+public class MappedXYDataset extends AbstractXYDataset implements DomainInfo, RangeInfo, XYDomainInfo, XYRangeInfo {
+
+	private static final long serialVersionUID = -1950342887426367710L;
+
+	/**
+	 * Points per mapped region (2^26 points, 512 MB of a column).
+	 */
+	private static final int SHIFT = 26;
+	private static final int MASK = (1 << SHIFT) - 1;
+
+	private final Comparable key;
+	private final int count;
+
+	/**
+	 * Mapped regions of the X and Y coordinates (the same ones for interleaved files).
+	 */
+	private final transient DoubleBuffer[] xRegions;
+	private final transient DoubleBuffer[] yRegions;
+
+	/**
+	 * Distance in doubles between two consecutive points and position of the Y
+	 * coordinate inside a point.
+	 */
+	private final int stride;
+	private final int yOffset;
+
+	/**
+	 * Bounds and order of the points, computed once on the first query.
+	 */
+	private transient Range domainBounds;
+	private transient Range rangeBounds;
+	private transient DomainOrder order;
+
+	/**
+	 * Bounds of the Y coordinates by blocks of points, built the first time the
+	 * bounds of a part of a sorted window are needed.
+	 */
+	private transient MinMaxTree tree;
+
+	private MappedXYDataset(Comparable key, int count, DoubleBuffer[] xRegions, DoubleBuffer[] yRegions, int stride, int yOffset) {
+		this.key = key;
+		this.count = count;
+		this.xRegions = xRegions;
+		this.yRegions = yRegions;
+		this.stride = stride;
+		this.yOffset = yOffset;
+	}
+
+	/**
+	 * Maps a window of a file of interleaved points (x0, y0, x1, y1, ...).
+	 * @param file The file
+	 * @param firstPoint Index of the first point of the window
+	 * @param count Number of points of the window (-1 for all the remaining points)
+	 * @return The dataset
+	 * @throws IOException If the file can't be mapped
+	 */
+	public static MappedXYDataset interleaved(File file, long firstPoint, int count) throws IOException {
+		RandomAccessFile raf = new RandomAccessFile(file, "r");
+		try {
+			FileChannel channel = raf.getChannel();
+			long points = channel.size() / 16;
+			int n = window(points, firstPoint, count);
+			DoubleBuffer[] regions = map(channel, firstPoint * 16, n, 2);
+			return new MappedXYDataset(file.getName(), n, regions, regions, 2, 1);
+		} finally {
+			raf.close();
+		}
+	}
+
+	/**
+	 * Maps a window of a file of columnar points (x0, x1, ..., y0, y1, ...).
+	 * @param file The file
+	 * @param totalPoints Number of points of the whole file (length of each column)
+	 * @param firstPoint Index of the first point of the window
+	 * @param count Number of points of the window (-1 for all the remaining points)
+	 * @return The dataset
+	 * @throws IOException If the file can't be mapped
+	 */
+	public static MappedXYDataset columnar(File file, long totalPoints, long firstPoint, int count) throws IOException {
+		RandomAccessFile raf = new RandomAccessFile(file, "r");
+		try {
+			FileChannel channel = raf.getChannel();
+			if(channel.size() < totalPoints * 16) {
+				throw new IOException(file + " has less than " + totalPoints + " points");
+			}
+			int n = window(totalPoints, firstPoint, count);
+			DoubleBuffer[] xs = map(channel, firstPoint * 8, n, 1);
+			DoubleBuffer[] ys = map(channel, (totalPoints + firstPoint) * 8, n, 1);
+			return new MappedXYDataset(file.getName(), n, xs, ys, 1, 0);
+		} finally {
+			raf.close();
+		}
+	}
+
+	private static int window(long points, long firstPoint, int count) throws IOException {
+		if(firstPoint < 0 || firstPoint > points) {
+			throw new IOException("First point " + firstPoint + " out of the file (" + points + " points)");
+		}
+		long n = count < 0 ? points - firstPoint : count;
+		if(firstPoint + n > points) {
+			throw new IOException("Window [" + firstPoint + ", " + (firstPoint + n) + ") out of the file (" + points + " points)");
+		}
+		if(n > Integer.MAX_VALUE) {
+			throw new IOException("Too many points for a dataset: " + n);
+		}
+		return (int) n;
+	}
+
+	/**
+	 * Maps n points of 'doubles' doubles each starting at the given position,
+	 * in regions of 2^SHIFT points.
+	 */
+	private static DoubleBuffer[] map(FileChannel channel, long position, int n, int doubles) throws IOException {
+		DoubleBuffer[] regions = new DoubleBuffer[(int) (((long) n + MASK) >>> SHIFT)];
+		long bytesPerPoint = 8L * doubles;
+		for(int r = 0; r < regions.length; r++) {
+			long first = (long) r << SHIFT;
+			long points = Math.min(1L << SHIFT, n - first);
+			regions[r] = channel.map(FileChannel.MapMode.READ_ONLY, position + first * bytesPerPoint, points * bytesPerPoint)
+					.order(ByteOrder.LITTLE_ENDIAN).asDoubleBuffer();
+		}
+		return regions;
+	}
+
+	@Override
+	public int getSeriesCount() {
+		return 1;
+	}
+
+	@Override
+	public Comparable getSeriesKey(int series) {
+		return key;
+	}
+
+	@Override
+	public int getItemCount(int series) {
+		return count;
+	}
+
+	@Override
+	public Number getX(int series, int item) {
+		return Double.valueOf(getXValue(series, item));
+	}
+
+	@Override
+	public Number getY(int series, int item) {
+		return Double.valueOf(getYValue(series, item));
+	}
+
+	@Override
+	public double getXValue(int series, int item) {
+		return xRegions[item >>> SHIFT].get((item & MASK) * stride);
+	}
+
+	@Override
+	public double getYValue(int series, int item) {
+		return yRegions[item >>> SHIFT].get((item & MASK) * stride + yOffset);
+	}
+
+	@Override
+	public DomainOrder getDomainOrder() {
+		scan();
+		return order;
+	}
+
+	/**
+	 * Reads the whole window once to find its bounds and whether it is sorted by X.
+	 */
+	private synchronized void scan() {
+		if(order != null) {
+			return;
+		}
+		double minX = Double.POSITIVE_INFINITY, maxX = Double.NEGATIVE_INFINITY;
+		double minY = Double.POSITIVE_INFINITY, maxY = Double.NEGATIVE_INFINITY;
+		double previous = Double.NEGATIVE_INFINITY;
+		boolean ascending = true;
+		for(int i = 0; i < count; i++) {
+			double px = getXValue(0, i);
+			double py = getYValue(0, i);
+			if(px < previous) {
+				ascending = false;
+			}
+			if(!Double.isNaN(px)) {
+				previous = px;
+				minX = Math.min(minX, px);
+				maxX = Math.max(maxX, px);
+			}
+			if(!Double.isNaN(py)) {
+				minY = Math.min(minY, py);
+				maxY = Math.max(maxY, py);
+			}
+		}
+		domainBounds = minX <= maxX ? new Range(minX, maxX) : null;
+		rangeBounds = minY <= maxY ? new Range(minY, maxY) : null;
+		order = ascending ? DomainOrder.ASCENDING : DomainOrder.NONE;
+	}
+
+	@Override
+	public Range getDomainBounds(boolean includeInterval) {
+		scan();
+		return domainBounds;
+	}
+
+	@Override
+	public Range getDomainBounds(List visibleSeriesKeys, boolean includeInterval) {
+		return visibleSeriesKeys.contains(key) ? getDomainBounds(includeInterval) : null;
+	}
+
+	@Override
+	public double getDomainLowerBound(boolean includeInterval) {
+		Range bounds = getDomainBounds(includeInterval);
+		return bounds == null ? Double.NaN : bounds.getLowerBound();
+	}
+
+	@Override
+	public double getDomainUpperBound(boolean includeInterval) {
+		Range bounds = getDomainBounds(includeInterval);
+		return bounds == null ? Double.NaN : bounds.getUpperBound();
+	}
+
+	@Override
+	public Range getRangeBounds(boolean includeInterval) {
+		scan();
+		return rangeBounds;
+	}
+
+	/**
+	 * Returns the bounds of the Y coordinates of the points whose X coordinate is
+	 * in the indicated range. If the window is sorted they are found in a
+	 * MinMaxTree, built the first time; otherwise going through the points.
+	 * @param visibleSeriesKeys Keys of the visible series
+	 * @param xRange Range of the X coordinates
+	 * @param includeInterval Ignored (the points have no intervals)
+	 * @return The bounds, or null if there are no points in the range
+	 */
+	@Override
+	public Range getRangeBounds(List visibleSeriesKeys, Range xRange, boolean includeInterval) {
+		if(!visibleSeriesKeys.contains(key)) {
+			return null;
+		}
+		scan();
+		if(domainBounds == null) {
+			return null;
+		}
+		if(xRange.contains(domainBounds.getLowerBound()) && xRange.contains(domainBounds.getUpperBound())) {
+			return rangeBounds;
+		}
+		if(order != DomainOrder.ASCENDING) {
+			return DatasetUtilities.iterateToFindRangeBounds(this, visibleSeriesKeys, xRange, includeInterval);
+		}
+		int first = search(xRange.getLowerBound(), false);
+		int last = search(xRange.getUpperBound(), true) - 1;
+		return first > last ? null : getTree().getBounds(first, last);
+	}
+
+	private synchronized MinMaxTree getTree() {
+		if(tree == null) {
+			tree = new MinMaxTree(this);
+		}
+		return tree;
+	}
+
+	/**
+	 * Finds the first point with an X coordinate greater than or equal to the
+	 * value (only greater if after is true). The points must be sorted.
+	 */
+	private int search(double value, boolean after) {
+		int low = 0, high = count;
+		while(low < high) {
+			int mid = (low + high) >>> 1;
+			double px = getXValue(0, mid);
+			if(px < value || (after && px == value)) {
+				low = mid + 1;
+			}
+			else {
+				high = mid;
+			}
+		}
+		return low;
+	}
+
+	@Override
+	public double getRangeLowerBound(boolean includeInterval) {
+		Range bounds = getRangeBounds(includeInterval);
+		return bounds == null ? Double.NaN : bounds.getLowerBound();
+	}
+
+	@Override
+	public double getRangeUpperBound(boolean includeInterval) {
+		Range bounds = getRangeBounds(includeInterval);
+		return bounds == null ? Double.NaN : bounds.getUpperBound();
+	}
+}
@@ -0,0 +1,146 @@
+package com.raccoon.easyjchart;
+
+import java.util.Arrays;
+
+import org.jfree.data.Range;
+import org.jfree.data.xy.XYDataset;
+
+/**
+ * Minimum and maximum Y coordinates of aligned blocks of 2^k consecutive points
+ * of a function, from 64 points up to the whole function, like a segment tree.
+ * The bounds of the Y coordinates of any range of points are then found with a
+ * few blocks (see getBounds) in O(log n) plus the points at the ends of the
+ * range that don't fill a block. Points appended to the function are added in
+ * time proportional to their number. NaN coordinates are ignored.
+ * <p>
+ * It takes about half a byte per point.
+ */
+class MinMaxTree {
+
+	/**
+	 * Level of the smallest blocks (2^6 = 64 points).
+	 */
+	private static final int BASE_LEVEL = 6;
+
+	private final XYDataset source;
+	private int count = 0;
+
+	/**
+	 * Bounds of each block, by level (starting at BASE_LEVEL). A block without
+	 * values has +Infinity as minimum and -Infinity as maximum.
+	 */
+	private double[][] mins = new double[0][];
+	private double[][] maxs = new double[0][];
+
+	/**
+	 * Builds the tree of the first series of a dataset.
+	 * @param source The function
+	 */
+	MinMaxTree(XYDataset source) {
+		this.source = source;
+		append(source.getItemCount(0));
+	}
+
+	/**
+	 * Returns the number of points of the function included in the tree.
+	 * @return The number of points
+	 */
+	int getItemCount() {
+		return count;
+	}
+
+	/**
+	 * Includes the points appended to the function since the last call.
+	 * @param newCount Number of points of the function
+	 */
+	void append(int newCount) {
+		if(newCount <= count) {
+			return;
+		}
+		int from = count;
+		count = newCount;
+		int levels = 0;
+		while(count > (1L << (BASE_LEVEL + levels))) {
+			levels++;
+		}
+		int oldLevels = mins.length;
+		if(levels > oldLevels) {
+			mins = Arrays.copyOf(mins, levels);
+			maxs = Arrays.copyOf(maxs, levels);
+		}
+		for(int l = 0; l < levels; l++) {
+			int blocks = (int) ((count + (1L << (BASE_LEVEL + l)) - 1) >>> (BASE_LEVEL + l));
+			if(mins[l] == null || mins[l].length < blocks) {
+				int capacity = mins[l] == null ? blocks : Math.max(blocks, mins[l].length + (mins[l].length >> 1));
+				int old = mins[l] == null ? 0 : mins[l].length;
+				mins[l] = mins[l] == null ? new double[capacity] : Arrays.copyOf(mins[l], capacity);
+				maxs[l] = maxs[l] == null ? new double[capacity] : Arrays.copyOf(maxs[l], capacity);
+				Arrays.fill(mins[l], old, capacity, Double.POSITIVE_INFINITY);
+				Arrays.fill(maxs[l], old, capacity, Double.NEGATIVE_INFINITY);
+			}
+		}
+		if(levels == 0) {
+			return;
+		}
+		// New levels are computed from the start
+		double[] baseMins = mins[0];
+		double[] baseMaxs = maxs[0];
+		for(int i = oldLevels == 0 ? 0 : from; i < count; i++) {
+			double v = source.getYValue(0, i);
+			int b = i >>> BASE_LEVEL;
+			if(v < baseMins[b]) {
+				baseMins[b] = v;
+			}
+			if(v > baseMaxs[b]) {
+				baseMaxs[b] = v;
+			}
+		}
+		for(int l = 1; l < levels; l++) {
+			double[] childMins = mins[l - 1];
+			double[] childMaxs = maxs[l - 1];
+			int first = l < oldLevels ? from >>> (BASE_LEVEL + l) : 0;
+			int last = (count - 1) >>> (BASE_LEVEL + l);
+			for(int b = first; b <= last; b++) {
+				int right = Math.min(2 * b + 1, childMins.length - 1);
+				mins[l][b] = Math.min(childMins[2 * b], childMins[right]);
+				maxs[l][b] = Math.max(childMaxs[2 * b], childMaxs[right]);
+			}
+		}
+	}
+
+	/**
+	 * Finds the bounds of the Y coordinates of the points in [first, last].
+	 * @param first Index of the first point
+	 * @param last Index of the last point
+	 * @return The bounds, or null if there are no values in the range
+	 */
+	Range getBounds(int first, int last) {
+		double min = Double.POSITIVE_INFINITY;
+		double max = Double.NEGATIVE_INFINITY;
+		int top = BASE_LEVEL + mins.length - 1;
+		int i = first;
+		while(i <= last) {
+			int l = top;
+			while(l >= BASE_LEVEL && ((i & ((1 << l) - 1)) != 0 || (long) i + (1 << l) - 1 > last)) {
+				l--;
+			}
+			if(l < BASE_LEVEL) {
+				double v = source.getYValue(0, i);
+				if(v < min) {
+					min = v;
+				}
+				if(v > max) {
+					max = v;
+				}
+				i++;
+			}
+			else {
+				int b = i >>> l;
+				min = Math.min(min, mins[l - BASE_LEVEL][b]);
+				max = Math.max(max, maxs[l - BASE_LEVEL][b]);
+				i += 1 << l;
+			}
+		}
+		return min <= max ? new Range(min, max) : null;
+	}
+}
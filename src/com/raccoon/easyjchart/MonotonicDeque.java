@@ -0,0 +1,92 @@
+package com.raccoon.easyjchart;
+
+/**
+ * Minimum (or maximum) of a sliding window of values stored in a ring buffer.
+ * The deque keeps the slots of the buffer whose values may still become the
+ * minimum, in the order they were added and with increasing values, so the
+ * minimum is the first one. Adding a value and evicting the oldest one take
+ * O(1) amortized time. NaN values are ignored.
+ */
+class MonotonicDeque {
+
+	/**
+	 * Values of the window, indexed by slot.
+	 */
+	private final double[] values;
+
+	/**
+	 * True to keep the maximum instead of the minimum.
+	 */
+	private final boolean max;
+
+	/**
+	 * Slots of the candidates, in a ring of the size of the window.
+	 */
+	private final int[] slots;
+	private int head = 0;
+	private int size = 0;
+
+	/**
+	 * Creates an empty deque.
+	 * @param values Buffer of the values of the window
+	 * @param max True to keep the maximum instead of the minimum
+	 */
+	MonotonicDeque(double[] values, boolean max) {
+		this.values = values;
+		this.max = max;
+		this.slots = new int[values.length];
+	}
+
+	/**
+	 * Adds the value that has just been stored in a slot, as the newest of the window.
+	 * @param slot Slot of the value in the buffer
+	 */
+	void add(int slot) {
+		double v = values[slot];
+		if(Double.isNaN(v)) {
+			return;
+		}
+		while(size > 0) {
+			double last = values[slots[ring(size - 1)]];
+			if(max ? last > v : last < v) {
+				break;
+			}
+			size--;
+		}
+		slots[ring(size)] = slot;
+		size++;
+	}
+
+	/**
+	 * Removes the oldest value of the window. It must be called before its slot
+	 * is overwritten.
+	 * @param slot Slot of the oldest value in the buffer
+	 */
+	void evict(int slot) {
+		if(size > 0 && slots[head] == slot) {
+			head = ring(1);
+			size--;
+		}
+	}
+
+	/**
+	 * Returns the minimum (or maximum) of the window.
+	 * @return The value, or NaN if the window has no values
+	 */
+	double get() {
+		return size == 0 ? Double.NaN : values[slots[head]];
+	}
+
+	/**
+	 * Removes all the values.
+	 */
+	void clear() {
+		head = 0;
+		size = 0;
+	}
+
+	private int ring(int i) {
+		int r = head + i;
+		return r >= slots.length ? r - slots.length : r;
+	}
+}
@@ -0,0 +1,84 @@
+package com.raccoon.easyjchart;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.Future;
+
+/**
+ * Runs work split in tasks on the common fork-join pool and waits for it. The
+ * calling thread takes part in the work while it waits. An exception of a task
+ * is rethrown if it is unchecked, and wrapped in an IllegalStateException
+ * otherwise.
+ */
+final class Parallel {
+
+	private Parallel() {
+	}
+
+	/**
+	 * Work over a range of indexes.
+	 */
+	abstract static class Range<T> {
+
+		abstract T run(int from, int to);
+	}
+
+	/**
+	 * Runs the work over [0, n) in tasks of up to perTask indexes, or on the
+	 * calling thread if a single task is enough.
+	 * @param n Number of indexes
+	 * @param perTask Indexes per task
+	 * @param range The work
+	 * @param what What the work does, for the message of an interruption (for example "sampling the function")
+	 * @return The results of the tasks, in order
+	 */
+	static <T> List<T> split(int n, int perTask, final Range<T> range, String what) {
+		if(n <= perTask) {
+			List<T> results = new ArrayList<T>(1);
+			results.add(range.run(0, n));
+			return results;
+		}
+		List<Callable<T>> tasks = new ArrayList<Callable<T>>();
+		for(int from = 0; from < n; from += perTask) {
+			final int start = from;
+			final int end = Math.min(from + perTask, n);
+			tasks.add(new Callable<T>() {
+				public T call() {
+					return range.run(start, end);
+				}
+			});
+		}
+		return invokeAll(tasks, what);
+	}
+
+	/**
+	 * Runs the tasks.
+	 * @param tasks The tasks
+	 * @param what What the tasks do, for the message of an interruption (for example "parsing the file")
+	 * @return The results of the tasks, in order
+	 */
+	static <T> List<T> invokeAll(List<? extends Callable<T>> tasks, String what) {
+		List<T> results = new ArrayList<T>(tasks.size());
+		try {
+			for(Future<T> result : ForkJoinPool.commonPool().invokeAll(tasks)) {
+				results.add(result.get());
+			}
+		} catch (ExecutionException e) {
+			Throwable cause = e.getCause();
+			if(cause instanceof RuntimeException) {
+				throw (RuntimeException) cause;
+			}
+			if(cause instanceof Error) {
+				throw (Error) cause;
+			}
+			throw new IllegalStateException(cause);
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+			throw new IllegalStateException("Interrupted while " + what, e);
+		}
+		return results;
+	}
+}
@@ -0,0 +1,218 @@
+package com.raccoon.easyjchart;
+
+import java.awt.Rectangle;
+import java.awt.event.ActionEvent;
+import java.awt.event.ActionListener;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.Callable;
+
+import javax.swing.SwingUtilities;
+import javax.swing.Timer;
+
+/**
+ * Paints many JPanelGrafica panels (a dashboard) in frames at a global rate,
+ * instead of every panel repainting on its own whenever its chart changes. The
+ * panels register with setScheduler, and then a change only marks the panel
+ * as dirty. On every frame the scheduler, on the Swing event thread:
+ * <ol>
+ * <li>publishes the pending data of the streaming and concurrent plots of all
+ * the panels (they don't need their own timers),</li>
+ * <li>collects the dirty panels that are showing and have a visible part, so
+ * panels scrolled out of view or in hidden tabs are skipped until they are
+ * shown again,</li>
+ * <li>renders the images of those panels in parallel on the common fork-join
+ * pool, the ones that waited the longest and then the ones with the largest
+ * visible area first, up to the panels per frame (all of them by default),</li>
+ * <li>and requests their repaint, which Swing merges in a single paint of the
+ * window that just copies the images.</li>
+ * </ol>
+ * The event thread waits while the panels are rendered, since the charts must
+ * not be modified meanwhile, but a frame takes about as long as the slowest
+ * panel instead of the sum of all of them. Listeners of the chart metrics are
+ * notified from the rendering threads.
+ */
+public class RenderScheduler {
+
+	/**
+	 * Registered panels, with the frames they have been waiting while dirty.
+	 */
+	private final Map<JPanelGrafica, int[]> panels = new LinkedHashMap<JPanelGrafica, int[]>();
+
+	private final Timer timer;
+
+	private int maxFps;
+
+	private int maxPanelsPerFrame = Integer.MAX_VALUE;
+
+	/**
+	 * Creates a scheduler that paints at most the indicated frames per second.
+	 * @param maxFps Frames per second (greater than 0)
+	 */
+	public RenderScheduler(int maxFps) {
+		checkFps(maxFps);
+		this.maxFps = maxFps;
+		timer = new Timer(delay(maxFps), new ActionListener() {
+			public void actionPerformed(ActionEvent e) {
+				frame();
+			}
+		});
+		timer.setCoalesce(true);
+	}
+
+	/**
+	 * Sets the maximum frames per second.
+	 * @param fps Frames per second (greater than 0)
+	 */
+	public void setMaxFps(int fps) {
+		checkFps(fps);
+		maxFps = fps;
+		timer.setDelay(delay(fps));
+	}
+
+	/**
+	 * Returns the maximum frames per second.
+	 * @return Frames per second
+	 */
+	public int getMaxFps() {
+		return maxFps;
+	}
+
+	/**
+	 * Sets the maximum number of panels rendered in a frame. The rest stay dirty
+	 * and go first in the next frames.
+	 * @param max Panels per frame (greater than 0)
+	 */
+	public void setMaxPanelsPerFrame(int max) {
+		if(max <= 0) {
+			throw new IllegalArgumentException("The panels per frame must be positive: " + max);
+		}
+		maxPanelsPerFrame = max;
+	}
+
+	/**
+	 * Returns the maximum number of panels rendered in a frame.
+	 * @return Panels per frame
+	 */
+	public int getMaxPanelsPerFrame() {
+		return maxPanelsPerFrame;
+	}
+
+	/**
+	 * Returns the number of panels registered (those that are displayable).
+	 * @return Number of panels
+	 */
+	public int getPanelCount() {
+		return panels.size();
+	}
+
+	private static void checkFps(int fps) {
+		if(fps <= 0) {
+			throw new IllegalArgumentException("fps must be positive: " + fps);
+		}
+	}
+
+	/**
+	 * Returns the milliseconds between frames, at least one (a timer with no
+	 * delay would fire continuously).
+	 */
+	static int delay(int fps) {
+		return Math.max(1, 1000 / fps);
+	}
+
+	/**
+	 * Adds a panel to the frames. Called by the panel when it becomes displayable.
+	 */
+	void register(JPanelGrafica panel) {
+		panels.put(panel, new int[1]);
+		timer.start();
+	}
+
+	/**
+	 * Removes a panel from the frames. Called by the panel when it stops being displayable.
+	 */
+	void unregister(JPanelGrafica panel) {
+		panels.remove(panel);
+		if(panels.isEmpty()) {
+			timer.stop();
+		}
+	}
+
+	/**
+	 * Paints a frame. It must be called from the Swing event thread (the timer
+	 * of the scheduler does it).
+	 */
+	void frame() {
+		final List<JPanelGrafica> dirty = new ArrayList<JPanelGrafica>();
+		for(JPanelGrafica panel : panels.keySet()) {
+			panel.publicaDatos();
+		}
+		for(Map.Entry<JPanelGrafica, int[]> entry : panels.entrySet()) {
+			JPanelGrafica panel = entry.getKey();
+			if(panel.necesitaPintarse() && panel.isShowing() && !panel.getVisibleRect().isEmpty()) {
+				dirty.add(panel);
+				entry.getValue()[0]++;
+			}
+		}
+		if(dirty.isEmpty()) {
+			return;
+		}
+		if(dirty.size() > maxPanelsPerFrame) {
+			Collections.sort(dirty, new Comparator<JPanelGrafica>() {
+				public int compare(JPanelGrafica a, JPanelGrafica b) {
+					int waited = panels.get(b)[0] - panels.get(a)[0];
+					return waited != 0 ? waited : Long.compare(area(b), area(a));
+				}
+			});
+			dirty.subList(maxPanelsPerFrame, dirty.size()).clear();
+		}
+		render(dirty);
+		for(JPanelGrafica panel : dirty) {
+			panels.get(panel)[0] = 0;
+			panel.repaint();
+		}
+	}
+
+	private static long area(JPanelGrafica panel) {
+		Rectangle visible = panel.getVisibleRect();
+		return (long) visible.width * visible.height;
+	}
+
+	/**
+	 * Renders the images of the panels in parallel and waits for them.
+	 */
+	private static void render(List<JPanelGrafica> dirty) {
+		if(dirty.size() == 1) {
+			JPanelGrafica panel = dirty.get(0);
+			panel.renderiza(panel.getWidth(), panel.getHeight());
+			return;
+		}
+		List<Callable<Void>> tasks = new ArrayList<Callable<Void>>(dirty.size());
+		for(final JPanelGrafica panel : dirty) {
+			final int width = panel.getWidth();
+			final int height = panel.getHeight();
+			tasks.add(new Callable<Void>() {
+				public Void call() {
+					panel.renderiza(width, height);
+					return null;
+				}
+			});
+		}
+		Parallel.invokeAll(tasks, "rendering the panels");
+	}
+
+	/**
+	 * Paints a frame now instead of waiting for the timer. It must be called
+	 * from the Swing event thread.
+	 */
+	public void paintNow() {
+		if(!SwingUtilities.isEventDispatchThread()) {
+			throw new IllegalStateException("paintNow must be called from the event dispatch thread");
+		}
+		frame();
+	}
+}
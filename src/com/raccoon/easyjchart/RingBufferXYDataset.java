@@ -0,0 +1,383 @@
+package com.raccoon.easyjchart;
+
+import java.util.List;
+
+import org.jfree.data.DomainInfo;
+import org.jfree.data.DomainOrder;
+import org.jfree.data.Range;
+import org.jfree.data.RangeInfo;
+import org.jfree.data.xy.AbstractXYDataset;
+import org.jfree.data.xy.XYDomainInfo;
+import org.jfree.data.xy.XYRangeInfo;
+
+/**
+ * Dataset of a function that keeps only its last points (a sliding window) in a
+ * fixed capacity ring buffer. It is meant for live data: append and appendBatch
+ * may be called from any thread, and the new points are not visible to the chart
+ * until publish is called from the thread that paints it (the Swing event thread
+ * for JPanelGrafica). This way many appends are published with a single change
+ * event.
+ * <p>
+ * The bounds of the coordinates of the window are kept in monotonic deques, so
+ * they are known in O(1) after every publish, however many points are evicted.
+ */
+public class RingBufferXYDataset extends AbstractXYDataset implements DomainInfo, RangeInfo, XYDomainInfo, XYRangeInfo {
+
+	private static final long serialVersionUID = 4187563349221108756L;
+
+	/**
+	 * Name of the function.
+	 */
+	private final Comparable key;
+
+	/**
+	 * Maximum number of points of the window.
+	 */
+	private final int capacity;
+
+	/**
+	 * Points of the window. Only accessed by the thread that paints the chart.
+	 */
+	private final double[] x;
+	private final double[] y;
+	private int head = 0;
+	private int count = 0;
+
+	/**
+	 * True while the X coordinates of the points are in ascending order.
+	 */
+	private boolean ascending = true;
+
+	/**
+	 * Number of points put since the window was cleared, and number of the
+	 * point after the last pair out of order (a NaN X coordinate is out of order
+	 * with the points next to it). The window is sorted again once the first
+	 * point of that pair is evicted.
+	 */
+	private long sequence = 0;
+	private long sortedFrom = 0;
+
+	/**
+	 * Number of points of the window whose X coordinate is NaN.
+	 */
+	private int nanX = 0;
+
+	/**
+	 * Bounds of the coordinates of the window, updated as points are put and evicted.
+	 */
+	private final MonotonicDeque minX;
+	private final MonotonicDeque maxX;
+	private final MonotonicDeque minY;
+	private final MonotonicDeque maxY;
+
+	/**
+	 * Points appended but not published yet. They are guarded by the lock.
+	 */
+	private final Object lock = new Object();
+	private final double[] pendingX;
+	private final double[] pendingY;
+	private int pendingHead = 0;
+	private int pendingCount = 0;
+
+	/**
+	 * Creates an empty dataset.
+	 * @param key Name of the function
+	 * @param capacity Maximum number of points kept
+	 */
+	public RingBufferXYDataset(Comparable key, int capacity) {
+		if(capacity <= 0) {
+			throw new IllegalArgumentException("The capacity must be positive: " + capacity);
+		}
+		this.key = key;
+		this.capacity = capacity;
+		this.x = new double[capacity];
+		this.y = new double[capacity];
+		this.minX = new MonotonicDeque(x, false);
+		this.maxX = new MonotonicDeque(x, true);
+		this.minY = new MonotonicDeque(y, false);
+		this.maxY = new MonotonicDeque(y, true);
+		this.pendingX = new double[capacity];
+		this.pendingY = new double[capacity];
+	}
+
+	/**
+	 * Appends a point. It can be called from any thread.
+	 * @param px X coordinate
+	 * @param py Y coordinate
+	 */
+	public void append(double px, double py) {
+		synchronized(lock) {
+			stage(px, py);
+		}
+	}
+
+	/**
+	 * Appends a batch of points. It can be called from any thread.
+	 * @param px X coordinates
+	 * @param py Y coordinates
+	 * @param offset Index of the first point to append
+	 * @param length Number of points to append
+	 */
+	public void appendBatch(double[] px, double[] py, int offset, int length) {
+		if(offset < 0 || length < 0 || offset + length > px.length || offset + length > py.length) {
+			throw new IndexOutOfBoundsException("offset " + offset + ", length " + length);
+		}
+		// Only the last points of a batch larger than the window can be seen
+		int skip = Math.max(0, length - capacity);
+		synchronized(lock) {
+			for(int i = offset + skip; i < offset + length; i++) {
+				stage(px[i], py[i]);
+			}
+		}
+	}
+
+	private void stage(double px, double py) {
+		int tail = pendingHead + pendingCount;
+		if(tail >= capacity) {
+			tail -= capacity;
+		}
+		pendingX[tail] = px;
+		pendingY[tail] = py;
+		if(pendingCount < capacity) {
+			pendingCount++;
+		}
+		else if(++pendingHead == capacity) {
+			pendingHead = 0;
+		}
+	}
+
+	/**
+	 * Moves the appended points into the window, evicting the oldest ones, and
+	 * notifies the listeners once. It must be called from the thread that paints
+	 * the chart.
+	 * @return True if there were points to publish
+	 */
+	public boolean publish() {
+		synchronized(lock) {
+			if(pendingCount == 0) {
+				return false;
+			}
+			for(int i = 0; i < pendingCount; i++) {
+				int p = pendingHead + i;
+				if(p >= capacity) {
+					p -= capacity;
+				}
+				put(pendingX[p], pendingY[p]);
+			}
+			pendingHead = 0;
+			pendingCount = 0;
+		}
+		fireDatasetChanged();
+		return true;
+	}
+
+	private void put(double px, double py) {
+		if(count > 0 && !(px >= x[index(count - 1)])) {
+			sortedFrom = sequence;
+		}
+		sequence++;
+		int tail = head + count;
+		if(tail >= capacity) {
+			tail -= capacity;
+		}
+		if(count == capacity) {
+			if(Double.isNaN(x[head])) {
+				nanX--;
+			}
+			minX.evict(head);
+			maxX.evict(head);
+			minY.evict(head);
+			maxY.evict(head);
+		}
+		x[tail] = px;
+		y[tail] = py;
+		if(Double.isNaN(px)) {
+			nanX++;
+		}
+		minX.add(tail);
+		maxX.add(tail);
+		minY.add(tail);
+		maxY.add(tail);
+		if(count < capacity) {
+			count++;
+		}
+		else if(++head == capacity) {
+			head = 0;
+		}
+		ascending = sequence - count >= sortedFrom;
+	}
+
+	/**
+	 * Removes all the points, including the ones not published yet. It must be
+	 * called from the thread that paints the chart.
+	 */
+	public void clear() {
+		synchronized(lock) {
+			pendingCount = 0;
+			pendingHead = 0;
+		}
+		head = 0;
+		count = 0;
+		ascending = true;
+		sequence = 0;
+		sortedFrom = 0;
+		nanX = 0;
+		minX.clear();
+		maxX.clear();
+		minY.clear();
+		maxY.clear();
+		fireDatasetChanged();
+	}
+
+	/**
+	 * Returns the maximum number of points kept.
+	 * @return The capacity of the window
+	 */
+	public int getCapacity() {
+		return capacity;
+	}
+
+	private int index(int item) {
+		int i = head + item;
+		return i >= capacity ? i - capacity : i;
+	}
+
+	@Override
+	public int getSeriesCount() {
+		return 1;
+	}
+
+	@Override
+	public Comparable getSeriesKey(int series) {
+		return key;
+	}
+
+	@Override
+	public int getItemCount(int series) {
+		return count;
+	}
+
+	@Override
+	public Number getX(int series, int item) {
+		return Double.valueOf(getXValue(series, item));
+	}
+
+	@Override
+	public Number getY(int series, int item) {
+		return Double.valueOf(getYValue(series, item));
+	}
+
+	@Override
+	public double getXValue(int series, int item) {
+		return x[index(item)];
+	}
+
+	@Override
+	public double getYValue(int series, int item) {
+		return y[index(item)];
+	}
+
+	@Override
+	public DomainOrder getDomainOrder() {
+		return ascending ? DomainOrder.ASCENDING : DomainOrder.NONE;
+	}
+
+	@Override
+	public Range getDomainBounds(boolean includeInterval) {
+		return bounds(minX, maxX);
+	}
+
+	@Override
+	public Range getDomainBounds(List visibleSeriesKeys, boolean includeInterval) {
+		return visibleSeriesKeys.contains(key) ? getDomainBounds(includeInterval) : null;
+	}
+
+	@Override
+	public double getDomainLowerBound(boolean includeInterval) {
+		return minX.get();
+	}
+
+	@Override
+	public double getDomainUpperBound(boolean includeInterval) {
+		return maxX.get();
+	}
+
+	@Override
+	public Range getRangeBounds(boolean includeInterval) {
+		return bounds(minY, maxY);
+	}
+
+	/**
+	 * Returns the bounds of the Y coordinates of the points whose X coordinate is
+	 * in the indicated range. If the range includes the whole window (and no
+	 * point has a NaN X coordinate) they are already known; otherwise the points
+	 * in the range are searched.
+	 * @param visibleSeriesKeys Keys of the visible series
+	 * @param xRange Range of the X coordinates
+	 * @param includeInterval Ignored (the points have no intervals)
+	 * @return The bounds, or null if there are no points in the range
+	 */
+	@Override
+	public Range getRangeBounds(List visibleSeriesKeys, Range xRange, boolean includeInterval) {
+		if(!visibleSeriesKeys.contains(key) || count == 0) {
+			return null;
+		}
+		double lower = xRange.getLowerBound();
+		double upper = xRange.getUpperBound();
+		if(nanX == 0 && lower <= minX.get() && upper >= maxX.get()) {
+			return getRangeBounds(includeInterval);
+		}
+		int first = 0, last = count - 1;
+		if(ascending) {
+			first = search(lower, false);
+			last = search(upper, true) - 1;
+		}
+		double min = Double.POSITIVE_INFINITY, max = Double.NEGATIVE_INFINITY;
+		for(int i = first; i <= last; i++) {
+			int p = index(i);
+			if(x[p] >= lower && x[p] <= upper) {
+				if(y[p] < min) {
+					min = y[p];
+				}
+				if(y[p] > max) {
+					max = y[p];
+				}
+			}
+		}
+		return min <= max ? new Range(min, max) : null;
+	}
+
+	@Override
+	public double getRangeLowerBound(boolean includeInterval) {
+		return minY.get();
+	}
+
+	@Override
+	public double getRangeUpperBound(boolean includeInterval) {
+		return maxY.get();
+	}
+
+	private static Range bounds(MonotonicDeque min, MonotonicDeque max) {
+		double lower = min.get();
+		return Double.isNaN(lower) ? null : new Range(lower, max.get());
+	}
+
+	/**
+	 * Finds the first point with an X coordinate greater than or equal to the
+	 * value (only greater if after is true). The points must be sorted.
+	 */
+	private int search(double value, boolean after) {
+		int low = 0, high = count;
+		while(low < high) {
+			int mid = (low + high) >>> 1;
+			double px = x[index(mid)];
+			if(px < value || (after && px == value)) {
+				low = mid + 1;
+			}
+			else {
+				high = mid;
+			}
+		}
+		return low;
+	}
+}
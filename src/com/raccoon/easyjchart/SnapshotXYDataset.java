@@ -0,0 +1,393 @@
+package com.raccoon.easyjchart;
+
+import java.util.Arrays;
+import java.util.List;
+
+import org.jfree.data.DomainInfo;
+import org.jfree.data.DomainOrder;
+import org.jfree.data.Range;
+import org.jfree.data.RangeInfo;
+import org.jfree.data.xy.AbstractXYDataset;
+import org.jfree.data.xy.XYDomainInfo;
+import org.jfree.data.xy.XYRangeInfo;
+
+/**
+ * Dataset of a function whose points may be replaced or appended from any
+ * thread while the chart is painted. Every update creates an immutable snapshot
+ * of the points and sets it as the live one; the chart doesn't see it until
+ * publish is called from the thread that paints it (the Swing event thread for
+ * JPanelGrafica), so a paint always goes through the same snapshot from start
+ * to end.
+ * <p>
+ * The thread that paints never waits for the writers: it only reads the live
+ * snapshot. Writers wait for each other, since appends write after the points
+ * of the last snapshot in the same arrays (the older snapshots don't see them),
+ * which makes an append cost the same as in ArrayXYDataset instead of a copy of
+ * the whole function.
+ */
+public class SnapshotXYDataset extends AbstractXYDataset implements DomainInfo, RangeInfo, XYDomainInfo, XYRangeInfo {
+
+	private static final long serialVersionUID = 2739218563590847013L;
+
+	private static final Snapshot EMPTY = new Snapshot(new double[0], new double[0], 0, true,
+			Double.POSITIVE_INFINITY, Double.NEGATIVE_INFINITY, Double.POSITIVE_INFINITY, Double.NEGATIVE_INFINITY);
+
+	/**
+	 * Name of the function.
+	 */
+	private final Comparable key;
+
+	/**
+	 * True if the points are kept sorted by the X coordinate.
+	 */
+	private final boolean autoSort;
+
+	/**
+	 * Last snapshot created by the writers. They create the next one holding the lock.
+	 */
+	private volatile Snapshot live = EMPTY;
+	private final Object lock = new Object();
+
+	/**
+	 * Snapshot seen by the chart. Only accessed by the thread that paints it.
+	 */
+	private Snapshot view = EMPTY;
+
+	/**
+	 * Creates an empty dataset.
+	 * @param key Name of the function
+	 * @param autoSort True to sort the points by the X coordinate (continuous functions)
+	 */
+	public SnapshotXYDataset(Comparable key, boolean autoSort) {
+		this.key = key;
+		this.autoSort = autoSort;
+	}
+
+	/**
+	 * Replaces all the points of the function. It can be called from any thread;
+	 * the arrays are copied.
+	 * @param px X coordinates
+	 * @param py Y coordinates
+	 * @param offset Index of the first point
+	 * @param length Number of points
+	 */
+	public void setData(double[] px, double[] py, int offset, int length) {
+		checkRange(px, py, offset, length);
+		double[] x = Arrays.copyOfRange(px, offset, offset + length);
+		double[] y = Arrays.copyOfRange(py, offset, offset + length);
+		if(autoSort) {
+			ArrayXYDataset.sortByX(x, y, length);
+		}
+		Snapshot next = Snapshot.create(x, y, length);
+		synchronized(lock) {
+			live = next;
+		}
+	}
+
+	/**
+	 * Appends points to the function. It can be called from any thread; the
+	 * points are copied. If the points are sorted and the new ones don't go after
+	 * the last one, the function is copied and sorted again.
+	 * @param px X coordinates
+	 * @param py Y coordinates
+	 * @param offset Index of the first point to append
+	 * @param length Number of points to append
+	 */
+	public void appendBatch(double[] px, double[] py, int offset, int length) {
+		checkRange(px, py, offset, length);
+		if(length == 0) {
+			return;
+		}
+		synchronized(lock) {
+			live = live.append(px, py, offset, length, autoSort);
+		}
+	}
+
+	/**
+	 * Appends a point. It can be called from any thread.
+	 * @param px X coordinate
+	 * @param py Y coordinate
+	 */
+	public void append(double px, double py) {
+		appendBatch(new double[] {px}, new double[] {py}, 0, 1);
+	}
+
+	/**
+	 * Removes all the points. It can be called from any thread.
+	 */
+	public void clear() {
+		synchronized(lock) {
+			live = EMPTY;
+		}
+	}
+
+	/**
+	 * Makes the chart see the last snapshot and notifies the listeners once. It
+	 * must be called from the thread that paints the chart.
+	 * @return True if the points changed since the last call
+	 */
+	public boolean publish() {
+		Snapshot next = live;
+		if(next == view) {
+			return false;
+		}
+		view = next;
+		fireDatasetChanged();
+		return true;
+	}
+
+	/**
+	 * Indicates if the points are kept sorted by the X coordinate.
+	 * @return True if the points are sorted
+	 */
+	public boolean isAutoSort() {
+		return autoSort;
+	}
+
+	private static void checkRange(double[] px, double[] py, int offset, int length) {
+		if(offset < 0 || length < 0 || offset + length > px.length || offset + length > py.length) {
+			throw new IndexOutOfBoundsException("offset " + offset + ", length " + length);
+		}
+	}
+
+	@Override
+	public int getSeriesCount() {
+		return 1;
+	}
+
+	@Override
+	public Comparable getSeriesKey(int series) {
+		return key;
+	}
+
+	@Override
+	public int getItemCount(int series) {
+		return view.count;
+	}
+
+	@Override
+	public Number getX(int series, int item) {
+		return Double.valueOf(getXValue(series, item));
+	}
+
+	@Override
+	public Number getY(int series, int item) {
+		return Double.valueOf(getYValue(series, item));
+	}
+
+	@Override
+	public double getXValue(int series, int item) {
+		return view.x[item];
+	}
+
+	@Override
+	public double getYValue(int series, int item) {
+		return view.y[item];
+	}
+
+	@Override
+	public DomainOrder getDomainOrder() {
+		return view.ascending ? DomainOrder.ASCENDING : DomainOrder.NONE;
+	}
+
+	@Override
+	public Range getDomainBounds(boolean includeInterval) {
+		Snapshot s = view;
+		return s.minX <= s.maxX ? new Range(s.minX, s.maxX) : null;
+	}
+
+	@Override
+	public Range getDomainBounds(List visibleSeriesKeys, boolean includeInterval) {
+		return visibleSeriesKeys.contains(key) ? getDomainBounds(includeInterval) : null;
+	}
+
+	@Override
+	public double getDomainLowerBound(boolean includeInterval) {
+		Snapshot s = view;
+		return s.minX <= s.maxX ? s.minX : Double.NaN;
+	}
+
+	@Override
+	public double getDomainUpperBound(boolean includeInterval) {
+		Snapshot s = view;
+		return s.minX <= s.maxX ? s.maxX : Double.NaN;
+	}
+
+	@Override
+	public Range getRangeBounds(boolean includeInterval) {
+		Snapshot s = view;
+		return s.minY <= s.maxY ? new Range(s.minY, s.maxY) : null;
+	}
+
+	/**
+	 * Returns the bounds of the Y coordinates of the points whose X coordinate is
+	 * in the indicated range. If the range includes the whole function they are
+	 * already known; otherwise the points in the range are searched.
+	 * @param visibleSeriesKeys Keys of the visible series
+	 * @param xRange Range of the X coordinates
+	 * @param includeInterval Ignored (the points have no intervals)
+	 * @return The bounds, or null if there are no points in the range
+	 */
+	@Override
+	public Range getRangeBounds(List visibleSeriesKeys, Range xRange, boolean includeInterval) {
+		Snapshot s = view;
+		if(!visibleSeriesKeys.contains(key) || !(s.minX <= s.maxX)) {
+			return null;
+		}
+		double lower = xRange.getLowerBound();
+		double upper = xRange.getUpperBound();
+		if(lower <= s.minX && upper >= s.maxX) {
+			return getRangeBounds(includeInterval);
+		}
+		int first = 0, last = s.count - 1;
+		if(s.ascending) {
+			first = s.search(lower, false);
+			last = s.search(upper, true) - 1;
+		}
+		double min = Double.POSITIVE_INFINITY, max = Double.NEGATIVE_INFINITY;
+		for(int i = first; i <= last; i++) {
+			if(s.x[i] >= lower && s.x[i] <= upper) {
+				if(s.y[i] < min) {
+					min = s.y[i];
+				}
+				if(s.y[i] > max) {
+					max = s.y[i];
+				}
+			}
+		}
+		return min <= max ? new Range(min, max) : null;
+	}
+
+	@Override
+	public double getRangeLowerBound(boolean includeInterval) {
+		Snapshot s = view;
+		return s.minY <= s.maxY ? s.minY : Double.NaN;
+	}
+
+	@Override
+	public double getRangeUpperBound(boolean includeInterval) {
+		Snapshot s = view;
+		return s.minY <= s.maxY ? s.maxY : Double.NaN;
+	}
+
+	/**
+	 * Points of the function at some moment. The arrays may be longer than count
+	 * and shared with later snapshots, which only write after count.
+	 */
+	private static final class Snapshot {
+
+		final double[] x;
+		final double[] y;
+		final int count;
+		final boolean ascending;
+
+		/**
+		 * Bounds of the coordinates, NaN excluded (+Infinity and -Infinity when
+		 * there are no values).
+		 */
+		final double minX, maxX, minY, maxY;
+
+		Snapshot(double[] x, double[] y, int count, boolean ascending, double minX, double maxX, double minY, double maxY) {
+			this.x = x;
+			this.y = y;
+			this.count = count;
+			this.ascending = ascending;
+			this.minX = minX;
+			this.maxX = maxX;
+			this.minY = minY;
+			this.maxY = maxY;
+		}
+
+		/**
+		 * Creates the snapshot of the points in [0, count) of the arrays.
+		 */
+		static Snapshot create(double[] x, double[] y, int count) {
+			return EMPTY.extend(x, y, 0, count, isAscending(x, 0, count));
+		}
+
+		/**
+		 * Creates the snapshot of these points and the indicated ones.
+		 */
+		Snapshot append(double[] px, double[] py, int offset, int length, boolean autoSort) {
+			int total = count + length;
+			if(total > x.length) {
+				int capacity = Math.max(total, x.length + (x.length >> 1));
+				double[] nx = Arrays.copyOf(x, capacity);
+				double[] ny = Arrays.copyOf(y, capacity);
+				System.arraycopy(px, offset, nx, count, length);
+				System.arraycopy(py, offset, ny, count, length);
+				return sorted(nx, ny, total, autoSort);
+			}
+			System.arraycopy(px, offset, x, count, length);
+			System.arraycopy(py, offset, y, count, length);
+			return sorted(x, y, total, autoSort);
+		}
+
+		/**
+		 * Creates the snapshot of the arrays, which hold these points followed by
+		 * new ones up to total. If the new points break the order and the points
+		 * must be sorted, they are sorted in new arrays, since these may be shared.
+		 */
+		private Snapshot sorted(double[] nx, double[] ny, int total, boolean autoSort) {
+			boolean inOrder = isAscending(nx, count == 0 ? 0 : count - 1, total);
+			if(inOrder || !autoSort) {
+				return extend(nx, ny, count, total, ascending && inOrder);
+			}
+			// The bounds are extended before sorting, which moves the new points
+			Snapshot bounds = extend(nx, ny, count, total, true);
+			double[] sx = Arrays.copyOf(nx, total);
+			double[] sy = Arrays.copyOf(ny, total);
+			ArrayXYDataset.sortByX(sx, sy, total);
+			return new Snapshot(sx, sy, total, true, bounds.minX, bounds.maxX, bounds.minY, bounds.maxY);
+		}
+
+		/**
+		 * Creates a snapshot of the arrays with these bounds extended with the points in [from, to).
+		 */
+		private Snapshot extend(double[] nx, double[] ny, int from, int to, boolean inOrder) {
+			double x0 = minX, x1 = maxX, y0 = minY, y1 = maxY;
+			for(int i = from; i < to; i++) {
+				if(nx[i] < x0) {
+					x0 = nx[i];
+				}
+				if(nx[i] > x1) {
+					x1 = nx[i];
+				}
+				if(ny[i] < y0) {
+					y0 = ny[i];
+				}
+				if(ny[i] > y1) {
+					y1 = ny[i];
+				}
+			}
+			return new Snapshot(nx, ny, to, inOrder, x0, x1, y0, y1);
+		}
+
+		/**
+		 * Finds the first point with an X coordinate greater than or equal to the
+		 * value (only greater if after is true). The points must be sorted.
+		 */
+		int search(double value, boolean after) {
+			int low = 0, high = count;
+			while(low < high) {
+				int mid = (low + high) >>> 1;
+				if(x[mid] < value || (after && x[mid] == value)) {
+					low = mid + 1;
+				}
+				else {
+					high = mid;
+				}
+			}
+			return low;
+		}
+
+		private static boolean isAscending(double[] x, int from, int to) {
+			for(int i = from + 1; i < to; i++) {
+				if(!(x[i] >= x[i - 1])) {
+					return false;
+				}
+			}
+			return true;
+		}
+	}
+}
@@ -0,0 +1,1056 @@
+package com.raccoon.easyjchart;
+
+import java.awt.AlphaComposite;
+import java.awt.BasicStroke;
+import java.awt.Color;
+import java.awt.Composite;
+import java.awt.Font;
+import java.awt.FontMetrics;
+import java.awt.GradientPaint;
+import java.awt.Graphics;
+import java.awt.Graphics2D;
+import java.awt.GraphicsConfiguration;
+import java.awt.Image;
+import java.awt.Paint;
+import java.awt.Polygon;
+import java.awt.Rectangle;
+import java.awt.RenderingHints;
+import java.awt.Shape;
+import java.awt.Stroke;
+import java.awt.font.FontRenderContext;
+import java.awt.font.GlyphVector;
+import java.awt.geom.AffineTransform;
+import java.awt.geom.Arc2D;
+import java.awt.geom.Area;
+import java.awt.geom.Ellipse2D;
+import java.awt.geom.Line2D;
+import java.awt.geom.NoninvertibleTransformException;
+import java.awt.geom.Path2D;
+import java.awt.geom.PathIterator;
+import java.awt.geom.Point2D;
+import java.awt.geom.Rectangle2D;
+import java.awt.geom.RoundRectangle2D;
+import java.awt.image.BufferedImage;
+import java.awt.image.BufferedImageOp;
+import java.awt.image.ColorModel;
+import java.awt.image.ImageObserver;
+import java.awt.image.RenderedImage;
+import java.awt.image.renderable.RenderableImage;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.Writer;
+import java.text.AttributedCharacterIterator;
+import java.text.CharacterIterator;
+import java.util.Base64;
+import java.util.IdentityHashMap;
+import java.util.Map;
+
+import javax.imageio.ImageIO;
+
+/**
+ * Graphics that writes what is drawn as an SVG document, so a chart painted on
+ * it is exported as vectors: shapes become paths in the coordinates of the
+ * document, text becomes text elements and images are embedded as PNG (once per
+ * image). It supports what JFreeChart uses: colors and gradients, basic strokes,
+ * clips, transforms and the alpha of AlphaComposite.SrcOver; other composites
+ * and XOR mode are ignored, and other paints are drawn in gray.
+ * <p>
+ * The elements are written to the writer as they are drawn, and finish closes
+ * the document. A writer error is thrown by finish, since the drawing methods
+ * can't throw it.
+ */
+final class SvgGraphics2D extends Graphics2D {
+
+	private static final Color UNSUPPORTED_PAINT = Color.GRAY;
+
+	/**
+	 * Output and identifiers shared by the graphics created from the same document.
+	 */
+	private static final class Document {
+
+		final Writer out;
+		final Graphics2D metrics;
+		final Map<Image, String> images = new IdentityHashMap<Image, String>();
+		int ids;
+		IOException error;
+
+		Document(Writer out) {
+			this.out = out;
+			BufferedImage scratch = new BufferedImage(1, 1, BufferedImage.TYPE_INT_ARGB);
+			metrics = scratch.createGraphics();
+			metrics.setRenderingHint(RenderingHints.KEY_TEXT_ANTIALIASING, RenderingHints.VALUE_TEXT_ANTIALIAS_ON);
+			metrics.setRenderingHint(RenderingHints.KEY_FRACTIONALMETRICS, RenderingHints.VALUE_FRACTIONALMETRICS_ON);
+		}
+
+		void write(CharSequence text) {
+			if(error == null) {
+				try {
+					out.append(text);
+				} catch(IOException e) {
+					error = e;
+				}
+			}
+		}
+
+		String nextId(String prefix) {
+			return prefix + (ids++);
+		}
+	}
+
+	private final Document document;
+
+	private AffineTransform transform = new AffineTransform();
+
+	/**
+	 * Clip in the coordinates of the document, or null if there is none.
+	 */
+	private Shape clip;
+
+	/**
+	 * Identifier of the clip path of the current clip, or null if it isn't written yet.
+	 */
+	private String clipId;
+
+	private Paint paint = Color.BLACK;
+	private Color color = Color.BLACK;
+	private Color background = Color.WHITE;
+	private Stroke stroke = new BasicStroke();
+	private Font font = new Font(Font.SANS_SERIF, Font.PLAIN, 12);
+	private Composite composite = AlphaComposite.SrcOver;
+	private final RenderingHints hints = new RenderingHints(null);
+
+	/**
+	 * Starts a document of the indicated size.
+	 * @param out Writer where the document is written
+	 * @param width Width of the document
+	 * @param height Height of the document
+	 */
+	SvgGraphics2D(Writer out, int width, int height) {
+		document = new Document(out);
+		document.write("<?xml version=\"1.0\" encoding=\"UTF-8\"?>\n<svg xmlns=\"http://www.w3.org/2000/svg\""
+				+ " xmlns:xlink=\"http://www.w3.org/1999/xlink\" width=\"" + width + "\" height=\"" + height
+				+ "\" viewBox=\"0 0 " + width + " " + height + "\">\n");
+	}
+
+	private SvgGraphics2D(SvgGraphics2D parent) {
+		document = parent.document;
+		transform = new AffineTransform(parent.transform);
+		clip = parent.clip;
+		clipId = parent.clipId;
+		paint = parent.paint;
+		color = parent.color;
+		background = parent.background;
+		stroke = parent.stroke;
+		font = parent.font;
+		composite = parent.composite;
+		hints.putAll(parent.hints);
+	}
+
+	/**
+	 * Closes the document and flushes the writer (it is not closed).
+	 * @throws IOException If the document couldn't be written
+	 */
+	void finish() throws IOException {
+		document.write("</svg>\n");
+		document.metrics.dispose();
+		if(document.error != null) {
+			throw document.error;
+		}
+		document.out.flush();
+	}
+
+	@Override
+	public Graphics create() {
+		return new SvgGraphics2D(this);
+	}
+
+	@Override
+	public void dispose() {
+		// Nothing to release, the document is closed by finish
+	}
+
+	// Shapes
+
+	@Override
+	public void draw(Shape s) {
+		if(stroke instanceof BasicStroke && isUniform(transform)) {
+			StringBuilder element = start("path");
+			element.append(" d=\"");
+			appendPath(element, s.getPathIterator(transform));
+			element.append("\" fill=\"none\"");
+			appendStroke(element, (BasicStroke) stroke);
+			appendPaint(element, "stroke", paint);
+			end(element);
+		}
+		else {
+			fill(stroke.createStrokedShape(s));
+		}
+	}
+
+	@Override
+	public void fill(Shape s) {
+		StringBuilder element = start("path");
+		element.append(" d=\"");
+		PathIterator path = s.getPathIterator(transform);
+		appendPath(element, path);
+		element.append('"');
+		if(path.getWindingRule() == PathIterator.WIND_EVEN_ODD) {
+			element.append(" fill-rule=\"evenodd\"");
+		}
+		appendPaint(element, "fill", paint);
+		end(element);
+	}
+
+	@Override
+	public void drawLine(int x1, int y1, int x2, int y2) {
+		draw(new Line2D.Double(x1, y1, x2, y2));
+	}
+
+	@Override
+	public void fillRect(int x, int y, int width, int height) {
+		fill(new Rectangle(x, y, width, height));
+	}
+
+	@Override
+	public void clearRect(int x, int y, int width, int height) {
+		Paint saved = paint;
+		Composite savedComposite = composite;
+		paint = background;
+		composite = AlphaComposite.SrcOver;
+		fill(new Rectangle(x, y, width, height));
+		paint = saved;
+		composite = savedComposite;
+	}
+
+	@Override
+	public void drawRoundRect(int x, int y, int width, int height, int arcWidth, int arcHeight) {
+		draw(new RoundRectangle2D.Double(x, y, width, height, arcWidth, arcHeight));
+	}
+
+	@Override
+	public void fillRoundRect(int x, int y, int width, int height, int arcWidth, int arcHeight) {
+		fill(new RoundRectangle2D.Double(x, y, width, height, arcWidth, arcHeight));
+	}
+
+	@Override
+	public void drawOval(int x, int y, int width, int height) {
+		draw(new Ellipse2D.Double(x, y, width, height));
+	}
+
+	@Override
+	public void fillOval(int x, int y, int width, int height) {
+		fill(new Ellipse2D.Double(x, y, width, height));
+	}
+
+	@Override
+	public void drawArc(int x, int y, int width, int height, int startAngle, int arcAngle) {
+		draw(new Arc2D.Double(x, y, width, height, startAngle, arcAngle, Arc2D.OPEN));
+	}
+
+	@Override
+	public void fillArc(int x, int y, int width, int height, int startAngle, int arcAngle) {
+		fill(new Arc2D.Double(x, y, width, height, startAngle, arcAngle, Arc2D.PIE));
+	}
+
+	@Override
+	public void drawPolyline(int[] xPoints, int[] yPoints, int nPoints) {
+		if(nPoints > 0) {
+			Path2D.Double path = new Path2D.Double();
+			path.moveTo(xPoints[0], yPoints[0]);
+			for(int i = 1; i < nPoints; i++) {
+				path.lineTo(xPoints[i], yPoints[i]);
+			}
+			draw(path);
+		}
+	}
+
+	@Override
+	public void drawPolygon(int[] xPoints, int[] yPoints, int nPoints) {
+		draw(new Polygon(xPoints, yPoints, nPoints));
+	}
+
+	@Override
+	public void fillPolygon(int[] xPoints, int[] yPoints, int nPoints) {
+		fill(new Polygon(xPoints, yPoints, nPoints));
+	}
+
+	@Override
+	public boolean hit(Rectangle rect, Shape s, boolean onStroke) {
+		Shape shape = onStroke ? stroke.createStrokedShape(s) : s;
+		return transform.createTransformedShape(shape).intersects(rect);
+	}
+
+	@Override
+	public void copyArea(int x, int y, int width, int height, int dx, int dy) {
+		// What was drawn can't be read back
+	}
+
+	// Text
+
+	@Override
+	public void drawString(String str, int x, int y) {
+		drawString(str, (float) x, (float) y);
+	}
+
+	@Override
+	public void drawString(String str, float x, float y) {
+		if(str.isEmpty()) {
+			return;
+		}
+		if(font.isTransformed()) {
+			fill(font.createGlyphVector(getFontRenderContext(), str).getOutline(x, y));
+			return;
+		}
+		StringBuilder element = start("text");
+		if(transform.getType() == AffineTransform.TYPE_IDENTITY || transform.getType() == AffineTransform.TYPE_TRANSLATION) {
+			element.append(" x=\"");
+			append(element, x + transform.getTranslateX());
+			element.append("\" y=\"");
+			append(element, y + transform.getTranslateY());
+		}
+		else {
+			element.append(" x=\"");
+			append(element, x);
+			element.append("\" y=\"");
+			append(element, y);
+			element.append("\" transform=\"matrix(");
+			double[] m = new double[6];
+			transform.getMatrix(m);
+			for(int i = 0; i < m.length; i++) {
+				if(i > 0) {
+					element.append(' ');
+				}
+				append(element, m[i]);
+			}
+			element.append(')');
+		}
+		element.append("\" font-family=\"");
+		escape(element, family(font));
+		element.append("\" font-size=\"");
+		append(element, font.getSize2D());
+		element.append('"');
+		if(font.isBold()) {
+			element.append(" font-weight=\"bold\"");
+		}
+		if(font.isItalic()) {
+			element.append(" font-style=\"italic\"");
+		}
+		appendPaint(element, "fill", paint);
+		element.append(" xml:space=\"preserve\"");
+		clipAttribute(element);
+		element.append('>');
+		escape(element, str);
+		element.append("</text>\n");
+		document.write(element);
+	}
+
+	@Override
+	public void drawString(AttributedCharacterIterator iterator, int x, int y) {
+		drawString(iterator, (float) x, (float) y);
+	}
+
+	@Override
+	public void drawString(AttributedCharacterIterator iterator, float x, float y) {
+		StringBuilder text = new StringBuilder();
+		for(char c = iterator.first(); c != CharacterIterator.DONE; c = iterator.next()) {
+			text.append(c);
+		}
+		drawString(text.toString(), x, y);
+	}
+
+	@Override
+	public void drawGlyphVector(GlyphVector g, float x, float y) {
+		fill(g.getOutline(x, y));
+	}
+
+	/**
+	 * Returns the font family with a generic family for the logical fonts of Java
+	 * and as a fallback.
+	 */
+	private static String family(Font font) {
+		String family = font.getFamily();
+		if(Font.SERIF.equalsIgnoreCase(family)) {
+			return "serif";
+		}
+		if(Font.MONOSPACED.equalsIgnoreCase(family) || Font.DIALOG_INPUT.equalsIgnoreCase(family)) {
+			return "monospace";
+		}
+		if(Font.SANS_SERIF.equalsIgnoreCase(family) || Font.DIALOG.equalsIgnoreCase(family)) {
+			return "sans-serif";
+		}
+		return family + ", sans-serif";
+	}
+
+	@Override
+	public Font getFont() {
+		return font;
+	}
+
+	@Override
+	public void setFont(Font font) {
+		if(font != null) {
+			this.font = font;
+		}
+	}
+
+	@Override
+	public FontMetrics getFontMetrics(Font f) {
+		return document.metrics.getFontMetrics(f);
+	}
+
+	@Override
+	public FontRenderContext getFontRenderContext() {
+		return document.metrics.getFontRenderContext();
+	}
+
+	// Images
+
+	@Override
+	public boolean drawImage(Image img, int x, int y, ImageObserver observer) {
+		return drawImage(img, x, y, -1, -1, null, observer);
+	}
+
+	@Override
+	public boolean drawImage(Image img, int x, int y, Color bgcolor, ImageObserver observer) {
+		return drawImage(img, x, y, -1, -1, bgcolor, observer);
+	}
+
+	@Override
+	public boolean drawImage(Image img, int x, int y, int width, int height, ImageObserver observer) {
+		return drawImage(img, x, y, width, height, null, observer);
+	}
+
+	@Override
+	public boolean drawImage(Image img, int x, int y, int width, int height, Color bgcolor, ImageObserver observer) {
+		if(img == null) {
+			return true;
+		}
+		int w = img.getWidth(observer);
+		int h = img.getHeight(observer);
+		if(w <= 0 || h <= 0) {
+			return false;
+		}
+		if(width < 0) {
+			width = w;
+			height = h;
+		}
+		if(bgcolor != null) {
+			Paint saved = paint;
+			paint = bgcolor;
+			fill(new Rectangle(x, y, width, height));
+			paint = saved;
+		}
+		AffineTransform at = new AffineTransform(transform);
+		at.translate(x, y);
+		at.scale((double) width / w, (double) height / h);
+		image(img, w, h, at);
+		return true;
+	}
+
+	@Override
+	public boolean drawImage(Image img, int dx1, int dy1, int dx2, int dy2, int sx1, int sy1, int sx2, int sy2,
+			ImageObserver observer) {
+		return drawImage(img, dx1, dy1, dx2, dy2, sx1, sy1, sx2, sy2, null, observer);
+	}
+
+	@Override
+	public boolean drawImage(Image img, int dx1, int dy1, int dx2, int dy2, int sx1, int sy1, int sx2, int sy2,
+			Color bgcolor, ImageObserver observer) {
+		BufferedImage source = toBufferedImage(img, observer);
+		if(source == null) {
+			return false;
+		}
+		int x = Math.max(0, Math.min(sx1, sx2));
+		int y = Math.max(0, Math.min(sy1, sy2));
+		int w = Math.min(source.getWidth(), Math.max(sx1, sx2)) - x;
+		int h = Math.min(source.getHeight(), Math.max(sy1, sy2)) - y;
+		if(w <= 0 || h <= 0) {
+			return true;
+		}
+		BufferedImage part = source.getSubimage(x, y, w, h);
+		return drawImage(part, Math.min(dx1, dx2), Math.min(dy1, dy2), Math.abs(dx2 - dx1), Math.abs(dy2 - dy1),
+				bgcolor, observer);
+	}
+
+	@Override
+	public boolean drawImage(Image img, AffineTransform xform, ImageObserver obs) {
+		int w = img.getWidth(obs);
+		int h = img.getHeight(obs);
+		if(w <= 0 || h <= 0) {
+			return false;
+		}
+		AffineTransform at = new AffineTransform(transform);
+		at.concatenate(xform);
+		image(img, w, h, at);
+		return true;
+	}
+
+	@Override
+	public void drawImage(BufferedImage img, BufferedImageOp op, int x, int y) {
+		drawImage(op == null ? img : op.filter(img, null), x, y, null);
+	}
+
+	@Override
+	public void drawRenderedImage(RenderedImage img, AffineTransform xform) {
+		BufferedImage image;
+		if(img instanceof BufferedImage) {
+			image = (BufferedImage) img;
+		}
+		else {
+			ColorModel model = img.getColorModel();
+			image = new BufferedImage(model, img.copyData(null), model.isAlphaPremultiplied(), null);
+		}
+		drawImage(image, xform, null);
+	}
+
+	@Override
+	public void drawRenderableImage(RenderableImage img, AffineTransform xform) {
+		drawRenderedImage(img.createDefaultRendering(), xform);
+	}
+
+	/**
+	 * Writes an image with the transform from its pixels to the document. Every
+	 * image is encoded once and used again by reference.
+	 */
+	private void image(Image img, int width, int height, AffineTransform at) {
+		String id = document.images.get(img);
+		if(id == null) {
+			BufferedImage image = toBufferedImage(img, null);
+			if(image == null) {
+				return;
+			}
+			ByteArrayOutputStream png = new ByteArrayOutputStream();
+			try {
+				ImageIO.write(image, "png", png);
+			} catch(IOException e) {
+				// Written to memory
+				throw new IllegalStateException(e);
+			}
+			id = document.nextId("i");
+			document.images.put(img, id);
+			document.write("<defs><image id=\"" + id + "\" width=\"" + width + "\" height=\"" + height
+					+ "\" preserveAspectRatio=\"none\" xlink:href=\"data:image/png;base64,"
+					+ Base64.getEncoder().encodeToString(png.toByteArray()) + "\"/></defs>\n");
+		}
+		StringBuilder element = start("use");
+		element.append(" xlink:href=\"#").append(id).append("\" transform=\"matrix(");
+		double[] m = new double[6];
+		at.getMatrix(m);
+		for(int i = 0; i < m.length; i++) {
+			if(i > 0) {
+				element.append(' ');
+			}
+			append(element, m[i]);
+		}
+		element.append(")\"");
+		float alpha = alpha();
+		if(alpha < 1) {
+			element.append(" opacity=\"");
+			append(element, alpha);
+			element.append('"');
+		}
+		end(element);
+	}
+
+	private static BufferedImage toBufferedImage(Image img, ImageObserver observer) {
+		if(img instanceof BufferedImage) {
+			return (BufferedImage) img;
+		}
+		int w = img.getWidth(observer);
+		int h = img.getHeight(observer);
+		if(w <= 0 || h <= 0) {
+			return null;
+		}
+		BufferedImage image = new BufferedImage(w, h, BufferedImage.TYPE_INT_ARGB);
+		Graphics2D g2 = image.createGraphics();
+		try {
+			g2.drawImage(img, 0, 0, null);
+		} finally {
+			g2.dispose();
+		}
+		return image;
+	}
+
+	// Attributes
+
+	@Override
+	public void setComposite(Composite comp) {
+		composite = comp;
+	}
+
+	@Override
+	public Composite getComposite() {
+		return composite;
+	}
+
+	@Override
+	public void setPaint(Paint paint) {
+		if(paint != null) {
+			this.paint = paint;
+			if(paint instanceof Color) {
+				color = (Color) paint;
+			}
+		}
+	}
+
+	@Override
+	public Paint getPaint() {
+		return paint;
+	}
+
+	@Override
+	public Color getColor() {
+		return color;
+	}
+
+	@Override
+	public void setColor(Color c) {
+		if(c != null) {
+			color = c;
+			paint = c;
+		}
+	}
+
+	@Override
+	public void setBackground(Color color) {
+		background = color;
+	}
+
+	@Override
+	public Color getBackground() {
+		return background;
+	}
+
+	@Override
+	public void setStroke(Stroke s) {
+		stroke = s;
+	}
+
+	@Override
+	public Stroke getStroke() {
+		return stroke;
+	}
+
+	@Override
+	public void setPaintMode() {
+		composite = AlphaComposite.SrcOver;
+	}
+
+	@Override
+	public void setXORMode(Color c1) {
+		// Not supported
+	}
+
+	@Override
+	public void setRenderingHint(RenderingHints.Key hintKey, Object hintValue) {
+		hints.put(hintKey, hintValue);
+	}
+
+	@Override
+	public Object getRenderingHint(RenderingHints.Key hintKey) {
+		return hints.get(hintKey);
+	}
+
+	@Override
+	public void setRenderingHints(Map<?, ?> hints) {
+		this.hints.clear();
+		this.hints.putAll(hints);
+	}
+
+	@Override
+	public void addRenderingHints(Map<?, ?> hints) {
+		this.hints.putAll(hints);
+	}
+
+	@Override
+	public RenderingHints getRenderingHints() {
+		return (RenderingHints) hints.clone();
+	}
+
+	@Override
+	public GraphicsConfiguration getDeviceConfiguration() {
+		return document.metrics.getDeviceConfiguration();
+	}
+
+	// Transform
+
+	@Override
+	public void translate(int x, int y) {
+		transform.translate(x, y);
+	}
+
+	@Override
+	public void translate(double tx, double ty) {
+		transform.translate(tx, ty);
+	}
+
+	@Override
+	public void rotate(double theta) {
+		transform.rotate(theta);
+	}
+
+	@Override
+	public void rotate(double theta, double x, double y) {
+		transform.rotate(theta, x, y);
+	}
+
+	@Override
+	public void scale(double sx, double sy) {
+		transform.scale(sx, sy);
+	}
+
+	@Override
+	public void shear(double shx, double shy) {
+		transform.shear(shx, shy);
+	}
+
+	@Override
+	public void transform(AffineTransform tx) {
+		transform.concatenate(tx);
+	}
+
+	@Override
+	public void setTransform(AffineTransform tx) {
+		transform = new AffineTransform(tx);
+	}
+
+	@Override
+	public AffineTransform getTransform() {
+		return new AffineTransform(transform);
+	}
+
+	// Clip
+
+	@Override
+	public void clip(Shape s) {
+		if(s == null) {
+			setClip(null);
+			return;
+		}
+		Shape device = toDevice(s);
+		if(clip == null) {
+			clip = device;
+		}
+		else if(clip instanceof Rectangle2D && device instanceof Rectangle2D) {
+			clip = ((Rectangle2D) clip).createIntersection((Rectangle2D) device);
+		}
+		else {
+			Area area = new Area(clip);
+			area.intersect(new Area(device));
+			clip = area;
+		}
+		clipId = null;
+	}
+
+	@Override
+	public void clipRect(int x, int y, int width, int height) {
+		clip(new Rectangle(x, y, width, height));
+	}
+
+	@Override
+	public void setClip(int x, int y, int width, int height) {
+		setClip(new Rectangle(x, y, width, height));
+	}
+
+	@Override
+	public void setClip(Shape s) {
+		clip = s == null ? null : toDevice(s);
+		clipId = null;
+	}
+
+	/**
+	 * Transforms a shape to the coordinates of the document. Rectangles stay
+	 * rectangles unless the transform rotates or shears them.
+	 */
+	private Shape toDevice(Shape s) {
+		if(s instanceof Rectangle2D && (transform.getType() & (AffineTransform.TYPE_GENERAL_ROTATION
+				| AffineTransform.TYPE_QUADRANT_ROTATION | AffineTransform.TYPE_GENERAL_TRANSFORM)) == 0) {
+			return transform.createTransformedShape(s).getBounds2D();
+		}
+		return transform.createTransformedShape(s);
+	}
+
+	@Override
+	public Shape getClip() {
+		if(clip == null) {
+			return null;
+		}
+		try {
+			return transform.createInverse().createTransformedShape(clip);
+		} catch(NoninvertibleTransformException e) {
+			return null;
+		}
+	}
+
+	@Override
+	public Rectangle getClipBounds() {
+		Shape c = getClip();
+		return c == null ? null : c.getBounds();
+	}
+
+	// Output
+
+	private StringBuilder start(String name) {
+		StringBuilder element = new StringBuilder(128);
+		element.append('<').append(name);
+		return element;
+	}
+
+	private void end(StringBuilder element) {
+		clipAttribute(element);
+		element.append("/>\n");
+		document.write(element);
+	}
+
+	/**
+	 * Adds the clip to an element, writing its clip path first if needed.
+	 */
+	private void clipAttribute(StringBuilder element) {
+		if(clip == null) {
+			return;
+		}
+		if(clipId == null) {
+			clipId = document.nextId("c");
+			StringBuilder path = new StringBuilder("<clipPath id=\"").append(clipId).append("\"><path d=\"");
+			PathIterator iterator = clip.getPathIterator(null);
+			appendPath(path, iterator);
+			path.append('"');
+			if(iterator.getWindingRule() == PathIterator.WIND_EVEN_ODD) {
+				path.append(" clip-rule=\"evenodd\"");
+			}
+			path.append("/></clipPath>\n");
+			document.write(path);
+		}
+		element.append(" clip-path=\"url(#").append(clipId).append(")\"");
+	}
+
+	/**
+	 * Adds a paint as the fill or the stroke of an element.
+	 */
+	private void appendPaint(StringBuilder element, String attribute, Paint p) {
+		float alpha = alpha();
+		if(p instanceof GradientPaint) {
+			GradientPaint gradient = (GradientPaint) p;
+			String id = document.nextId("g");
+			Point2D p1 = transform.transform(gradient.getPoint1(), null);
+			Point2D p2 = transform.transform(gradient.getPoint2(), null);
+			StringBuilder definition = new StringBuilder("<linearGradient id=\"").append(id)
+					.append("\" gradientUnits=\"userSpaceOnUse\" x1=\"");
+			append(definition, p1.getX());
+			definition.append("\" y1=\"");
+			append(definition, p1.getY());
+			definition.append("\" x2=\"");
+			append(definition, p2.getX());
+			definition.append("\" y2=\"");
+			append(definition, p2.getY());
+			definition.append('"');
+			if(gradient.isCyclic()) {
+				definition.append(" spreadMethod=\"reflect\"");
+			}
+			definition.append('>');
+			appendStop(definition, "0", gradient.getColor1());
+			appendStop(definition, "1", gradient.getColor2());
+			definition.append("</linearGradient>\n");
+			document.write(definition);
+			element.append(' ').append(attribute).append("=\"url(#").append(id).append(")\"");
+			if(alpha < 1) {
+				element.append(' ').append(attribute).append("-opacity=\"");
+				append(element, alpha);
+				element.append('"');
+			}
+			return;
+		}
+		Color c = p instanceof Color ? (Color) p : UNSUPPORTED_PAINT;
+		element.append(' ').append(attribute).append("=\"");
+		appendColor(element, c);
+		element.append('"');
+		float opacity = alpha * c.getAlpha() / 255f;
+		if(opacity < 1) {
+			element.append(' ').append(attribute).append("-opacity=\"");
+			append(element, opacity);
+			element.append('"');
+		}
+	}
+
+	private static void appendStop(StringBuilder definition, String offset, Color c) {
+		definition.append("<stop offset=\"").append(offset).append("\" stop-color=\"");
+		appendColor(definition, c);
+		definition.append('"');
+		if(c.getAlpha() < 255) {
+			definition.append(" stop-opacity=\"");
+			append(definition, c.getAlpha() / 255.0);
+			definition.append('"');
+		}
+		definition.append("/>");
+	}
+
+	private static void appendColor(StringBuilder element, Color c) {
+		element.append("rgb(").append(c.getRed()).append(',').append(c.getGreen()).append(',').append(c.getBlue()).append(')');
+	}
+
+	/**
+	 * Adds a basic stroke, scaled by the transform (which is uniform).
+	 */
+	private void appendStroke(StringBuilder element, BasicStroke s) {
+		double scale = Math.sqrt(Math.abs(transform.getDeterminant()));
+		element.append(" stroke-width=\"");
+		append(element, Math.max(s.getLineWidth(), 0) * scale);
+		element.append('"');
+		switch(s.getEndCap()) {
+		case BasicStroke.CAP_ROUND:
+			element.append(" stroke-linecap=\"round\"");
+			break;
+		case BasicStroke.CAP_SQUARE:
+			element.append(" stroke-linecap=\"square\"");
+			break;
+		default:
+			break;
+		}
+		switch(s.getLineJoin()) {
+		case BasicStroke.JOIN_ROUND:
+			element.append(" stroke-linejoin=\"round\"");
+			break;
+		case BasicStroke.JOIN_BEVEL:
+			element.append(" stroke-linejoin=\"bevel\"");
+			break;
+		default:
+			if(s.getMiterLimit() != 4) {
+				element.append(" stroke-miterlimit=\"");
+				append(element, s.getMiterLimit());
+				element.append('"');
+			}
+		}
+		float[] dash = s.getDashArray();
+		if(dash != null && dash.length > 0) {
+			element.append(" stroke-dasharray=\"");
+			for(int i = 0; i < dash.length; i++) {
+				if(i > 0) {
+					element.append(',');
+				}
+				append(element, dash[i] * scale);
+			}
+			element.append('"');
+			if(s.getDashPhase() != 0) {
+				element.append(" stroke-dashoffset=\"");
+				append(element, s.getDashPhase() * scale);
+				element.append('"');
+			}
+		}
+	}
+
+	/**
+	 * Returns the alpha of the composite (1 for composites other than SrcOver).
+	 */
+	private float alpha() {
+		if(composite instanceof AlphaComposite && ((AlphaComposite) composite).getRule() == AlphaComposite.SRC_OVER) {
+			return ((AlphaComposite) composite).getAlpha();
+		}
+		return 1;
+	}
+
+	/**
+	 * Indicates if a transform scales both axes the same, so strokes can be
+	 * scaled with their width instead of drawn as outlines.
+	 */
+	private static boolean isUniform(AffineTransform at) {
+		return (at.getType() & (AffineTransform.TYPE_GENERAL_SCALE | AffineTransform.TYPE_GENERAL_TRANSFORM)) == 0;
+	}
+
+	private static void appendPath(StringBuilder d, PathIterator path) {
+		double[] c = new double[6];
+		boolean first = true;
+		while(!path.isDone()) {
+			if(!first) {
+				d.append(' ');
+			}
+			first = false;
+			switch(path.currentSegment(c)) {
+			case PathIterator.SEG_MOVETO:
+				d.append('M');
+				appendPoints(d, c, 1);
+				break;
+			case PathIterator.SEG_LINETO:
+				d.append('L');
+				appendPoints(d, c, 1);
+				break;
+			case PathIterator.SEG_QUADTO:
+				d.append('Q');
+				appendPoints(d, c, 2);
+				break;
+			case PathIterator.SEG_CUBICTO:
+				d.append('C');
+				appendPoints(d, c, 3);
+				break;
+			default:
+				d.append('Z');
+			}
+			path.next();
+		}
+	}
+
+	private static void appendPoints(StringBuilder d, double[] c, int points) {
+		for(int i = 0; i < points * 2; i++) {
+			if(i > 0) {
+				d.append(i % 2 == 0 ? ' ' : ',');
+			}
+			append(d, c[i]);
+		}
+	}
+
+	/**
+	 * Appends a number with at most three decimals, without exponent.
+	 */
+	static void append(StringBuilder out, double value) {
+		if(Double.isNaN(value) || Double.isInfinite(value)) {
+			out.append('0');
+			return;
+		}
+		long thousandths = Math.round(value * 1000);
+		if(thousandths < 0) {
+			out.append('-');
+			thousandths = -thousandths;
+		}
+		out.append(thousandths / 1000);
+		int fraction = (int) (thousandths % 1000);
+		if(fraction != 0) {
+			out.append('.');
+			if(fraction < 100) {
+				out.append('0');
+			}
+			if(fraction < 10) {
+				out.append('0');
+			}
+			while(fraction % 10 == 0) {
+				fraction /= 10;
+			}
+			out.append(fraction);
+		}
+	}
+
+	/**
+	 * Appends text escaped for XML, leaving out the characters XML can't hold.
+	 */
+	private static void escape(StringBuilder out, String text) {
+		for(int i = 0; i < text.length(); i++) {
+			char c = text.charAt(i);
+			switch(c) {
+			case '&':
+				out.append("&amp;");
+				break;
+			case '<':
+				out.append("&lt;");
+				break;
+			case '>':
+				out.append("&gt;");
+				break;
+			case '"':
+				out.append("&quot;");
+				break;
+			default:
+				if(c >= 0x20 || c == '\t' || c == '\n' || c == '\r') {
+					out.append(c);
+				}
+			}
+		}
+	}
+}
@@ -0,0 +1,229 @@
+package com.raccoon.easyjchart;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.awt.BasicStroke;
+import java.awt.Color;
+import java.awt.Graphics2D;
+import java.awt.Rectangle;
+import java.awt.geom.Point2D;
+import java.awt.geom.Rectangle2D;
+import java.awt.image.BufferedImage;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+
+import org.jfree.chart.annotations.AbstractXYAnnotation;
+import org.jfree.chart.annotations.XYBoxAnnotation;
+import org.jfree.chart.axis.NumberAxis;
+import org.jfree.chart.axis.ValueAxis;
+import org.jfree.chart.plot.PlotRenderingInfo;
+import org.jfree.chart.plot.XYPlot;
+import org.jfree.chart.renderer.xy.XYLineAndShapeRenderer;
+import org.junit.Test;
+
+public class AnnotationLayerTest {
+
+	private static final Color BOX = new Color(0x12, 0x34, 0x56);
+
+	/**
+	 * Pixels around the visible area where the layer looks for annotations.
+	 */
+	private static final double MARGIN = 8;
+
+	private static Grafica chart() {
+		Point2D[] points = new Point2D[100];
+		for(int i = 0; i < points.length; i++) {
+			points[i] = new Point2D.Double(i, Math.sin(i / 10.0));
+		}
+		Grafica chart = new Grafica(points, "Annotations", "f", "x", "y");
+		chart.getAnnotationLayer().add(new XYBoxAnnotation(20, -0.5, 40, 0.5, new BasicStroke(1f), BOX, BOX));
+		return chart;
+	}
+
+	private static int boxPixels(BufferedImage image) {
+		int box = 0;
+		for(int y = 0; y < image.getHeight(); y++) {
+			for(int x = 0; x < image.getWidth(); x++) {
+				if(image.getRGB(x, y) == BOX.getRGB()) {
+					box++;
+				}
+			}
+		}
+		return box;
+	}
+
+	private static BufferedImage paint(Grafica chart, boolean annotations) {
+		BufferedImage image = new BufferedImage(600, 400, BufferedImage.TYPE_INT_RGB);
+		Rectangle area = new Rectangle(0, 0, 600, 400);
+		if(annotations) {
+			chart.pintar(image.createGraphics(), area);
+		}
+		else {
+			chart.pintarDatos(image.createGraphics(), area);
+		}
+		return image;
+	}
+
+	@Test
+	public void theJFreeChartDrawsTheLayer() {
+		Grafica chart = chart();
+		assertTrue(boxPixels(chart.getGrafica().createBufferedImage(600, 400)) > 1000);
+	}
+
+	@Test
+	public void theDataLayerDoesNotDrawTheAnnotations() {
+		Grafica chart = chart();
+		assertEquals(0, boxPixels(paint(chart, false)));
+		// Drawn once, by the overlay
+		BufferedImage image = paint(chart, true);
+		assertTrue(boxPixels(image) > 1000);
+		assertEquals(1, chart.getGrafica().getXYPlot().getAnnotations().size());
+	}
+
+	@Test
+	public void copiesOfATemplateDrawTheirOwnLayer() {
+		Grafica model = chart();
+		Grafica copy = new ChartTemplate(model).create(new double[] {0, 50, 99}, new double[] {-1, 0, 1}, "g");
+		assertEquals(0, boxPixels(copy.getGrafica().createBufferedImage(600, 400)));
+		copy.getAnnotationLayer().add(new XYBoxAnnotation(20, -0.5, 40, 0.5, new BasicStroke(1f), BOX, BOX));
+		assertTrue(boxPixels(copy.getGrafica().createBufferedImage(600, 400)) > 1000);
+		assertEquals(1, copy.getGrafica().getXYPlot().getAnnotations().size());
+	}
+
+	/**
+	 * Annotation that records that it was drawn.
+	 */
+	private static final class Recorder extends AbstractXYAnnotation {
+
+		private static final long serialVersionUID = 1L;
+
+		final List<Recorder> drawn;
+		final double minX, minY, maxX, maxY;
+
+		Recorder(List<Recorder> drawn, double minX, double minY, double maxX, double maxY) {
+			this.drawn = drawn;
+			this.minX = minX;
+			this.minY = minY;
+			this.maxX = maxX;
+			this.maxY = maxY;
+		}
+
+		@Override
+		public void draw(Graphics2D g2, XYPlot plot, Rectangle2D dataArea, ValueAxis domainAxis, ValueAxis rangeAxis,
+				int rendererIndex, PlotRenderingInfo info) {
+			drawn.add(this);
+		}
+
+		// Every annotation is different (AbstractXYAnnotation compares the tool tips)
+		@Override
+		public boolean equals(Object obj) {
+			return obj == this;
+		}
+
+		@Override
+		public int hashCode() {
+			return System.identityHashCode(this);
+		}
+
+		boolean intersects(double x0, double y0, double x1, double y1) {
+			return Double.isNaN(minX) || (minX <= x1 && maxX >= x0 && minY <= y1 && maxY >= y0);
+		}
+	}
+
+	private static Recorder random(Random random, List<Recorder> drawn) {
+		int kind = random.nextInt(20);
+		if(kind == 0) {
+			return new Recorder(drawn, Double.NaN, Double.NaN, Double.NaN, Double.NaN);
+		}
+		double x = random.nextDouble() * 1000;
+		double y = random.nextDouble() * 100;
+		double w = kind == 1 ? random.nextDouble() * 1000 : random.nextDouble() * 5;
+		double h = kind == 1 ? random.nextDouble() * 100 : random.nextDouble() * 0.5;
+		if(kind == 2) {
+			x += 5000;
+		}
+		return new Recorder(drawn, x, y, x + w, y + h);
+	}
+
+	/**
+	 * Compares the annotations drawn for random ranges of the axes with a scan of
+	 * all the annotations, while annotations are added, moved over the others and
+	 * removed. The layer draws all of them when they are few or the whole grid is
+	 * visible; otherwise it must draw the same ones as the scan, in order.
+	 */
+	@Test
+	public void drawsTheSameAnnotationsAsAScan() {
+		Random random = new Random(17);
+		List<Recorder> drawn = new ArrayList<Recorder>();
+		NumberAxis domain = new NumberAxis("x");
+		NumberAxis range = new NumberAxis("y");
+		XYPlot plot = new XYPlot(null, domain, range, new XYLineAndShapeRenderer());
+		Rectangle2D dataArea = new Rectangle2D.Double(50, 20, 900, 600);
+		Graphics2D g2 = new BufferedImage(1000, 700, BufferedImage.TYPE_INT_RGB).createGraphics();
+
+		AnnotationLayer layer = new AnnotationLayer();
+		// Annotations in drawing order
+		Map<Recorder, Boolean> annotations = new LinkedHashMap<Recorder, Boolean>();
+		List<Recorder> all = new ArrayList<Recorder>();
+		int culled = 0;
+		for(int step = 0; step < 300; step++) {
+			int changes = random.nextInt(step < 20 ? 500 : 50);
+			for(int i = 0; i < changes; i++) {
+				int operation = random.nextInt(10);
+				if(operation < 6 || all.isEmpty()) {
+					Recorder annotation = random(random, drawn);
+					all.add(annotation);
+					annotations.put(annotation, Boolean.TRUE);
+					layer.add(annotation, annotation.minX, annotation.minY, annotation.maxX, annotation.maxY);
+				}
+				else {
+					Recorder annotation = all.get(random.nextInt(all.size()));
+					if(operation < 8) {
+						annotations.remove(annotation);
+						layer.add(annotation, annotation.minX, annotation.minY, annotation.maxX, annotation.maxY);
+						annotations.put(annotation, Boolean.TRUE);
+					}
+					else {
+						assertEquals(annotations.remove(annotation) != null, layer.remove(annotation));
+					}
+				}
+			}
+			if(random.nextInt(100) == 0) {
+				layer.clear();
+				annotations.clear();
+				all.clear();
+			}
+			assertEquals(annotations.size(), layer.size());
+
+			double x0 = random.nextDouble() * 1100 - 50;
+			double y0 = random.nextDouble() * 110 - 5;
+			domain.setRange(x0, x0 + 1 + random.nextDouble() * (random.nextBoolean() ? 20 : 1200));
+			range.setRange(y0, y0 + 0.1 + random.nextDouble() * (random.nextBoolean() ? 2 : 120));
+			drawn.clear();
+			layer.draw(g2, plot, dataArea);
+
+			double minX = domain.java2DToValue(dataArea.getMinX() - MARGIN, dataArea, plot.getDomainAxisEdge());
+			double maxX = domain.java2DToValue(dataArea.getMaxX() + MARGIN, dataArea, plot.getDomainAxisEdge());
+			double minY = range.java2DToValue(dataArea.getMaxY() + MARGIN, dataArea, plot.getRangeAxisEdge());
+			double maxY = range.java2DToValue(dataArea.getMinY() - MARGIN, dataArea, plot.getRangeAxisEdge());
+			List<Recorder> expected = new ArrayList<Recorder>();
+			for(Recorder annotation : annotations.keySet()) {
+				if(annotation.intersects(minX, minY, maxX, maxY)) {
+					expected.add(annotation);
+				}
+			}
+			if(drawn.size() == annotations.size()) {
+				assertEquals("Step " + step, new ArrayList<Recorder>(annotations.keySet()), drawn);
+			}
+			else {
+				assertEquals("Step " + step, expected, drawn);
+				culled++;
+			}
+		}
+		assertTrue(culled > 200);
+	}
+}
@@ -0,0 +1,99 @@
+package com.raccoon.easyjchart;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import java.awt.geom.Point2D;
+import java.awt.image.BufferedImage;
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+
+import javax.imageio.ImageIO;
+import javax.xml.parsers.DocumentBuilderFactory;
+
+import org.junit.Test;
+import org.w3c.dom.Document;
+import org.w3c.dom.Element;
+import org.w3c.dom.NodeList;
+
+public class ChartExporterTest {
+
+	private static Grafica chart() {
+		Point2D[] points = new Point2D[200];
+		for(int i = 0; i < points.length; i++) {
+			points[i] = new Point2D.Double(i, Math.sin(i / 10.0));
+		}
+		return new Grafica(points, "Title <&>", "sin", "x", "y", true);
+	}
+
+	private static Document parse(byte[] svg) throws Exception {
+		DocumentBuilderFactory factory = DocumentBuilderFactory.newInstance();
+		factory.setNamespaceAware(true);
+		return factory.newDocumentBuilder().parse(new ByteArrayInputStream(svg));
+	}
+
+	@Test
+	public void writesPng() throws IOException {
+		ByteArrayOutputStream out = new ByteArrayOutputStream();
+		chart().exportPng(out, 320, 240);
+		BufferedImage image = ImageIO.read(new ByteArrayInputStream(out.toByteArray()));
+		assertEquals(320, image.getWidth());
+		assertEquals(240, image.getHeight());
+	}
+
+	@Test
+	public void writesSvgAsVectors() throws Exception {
+		ByteArrayOutputStream out = new ByteArrayOutputStream();
+		chart().exportSvg(out, 800, 600);
+		String text = new String(out.toByteArray(), StandardCharsets.UTF_8);
+		assertFalse("The chart is not a bitmap", text.contains("data:image/png"));
+
+		Element svg = parse(out.toByteArray()).getDocumentElement();
+		assertEquals("svg", svg.getLocalName());
+		assertEquals("800", svg.getAttribute("width"));
+		assertEquals("600", svg.getAttribute("height"));
+		boolean title = false;
+		NodeList texts = svg.getElementsByTagName("text");
+		for(int i = 0; i < texts.getLength(); i++) {
+			title |= "Title <&>".equals(texts.item(i).getTextContent());
+		}
+		assertTrue("Title as text", title);
+		// The renderer draws the 199 segments of the function as lines
+		int lines = 0;
+		NodeList paths = svg.getElementsByTagName("path");
+		for(int i = 0; i < paths.getLength(); i++) {
+			Element path = (Element) paths.item(i);
+			if(path.getAttribute("d").contains("L") && !path.getAttribute("stroke").isEmpty()) {
+				lines++;
+			}
+		}
+		assertTrue("Lines: " + lines, lines >= 199);
+	}
+
+	@Test
+	public void embedsEveryImageOnce() throws Exception {
+		Grafica chart = chart();
+		BufferedImage image = new BufferedImage(16, 16, BufferedImage.TYPE_INT_ARGB);
+		chart.setImageAtPoint(image, 50, 0.5);
+		chart.setImageAtPoint(image, 100, -0.5);
+		ByteArrayOutputStream out = new ByteArrayOutputStream();
+		chart.exportSvg(out, 640, 480);
+		Element svg = parse(out.toByteArray()).getDocumentElement();
+		assertEquals(1, svg.getElementsByTagName("image").getLength());
+		assertEquals(2, svg.getElementsByTagName("use").getLength());
+	}
+
+	@Test
+	public void formatsNumbersWithoutExponent() {
+		double[] values = {0, 1, -1, 0.5, 0.05, 0.005, 0.0004, 1e-7, 123456789.125, -2.0006, Double.NaN};
+		String[] expected = {"0", "1", "-1", "0.5", "0.05", "0.005", "0", "0", "123456789.125", "-2.001", "0"};
+		for(int i = 0; i < values.length; i++) {
+			StringBuilder out = new StringBuilder();
+			SvgGraphics2D.append(out, values[i]);
+			assertEquals(expected[i], out.toString());
+		}
+	}
+}
@@ -0,0 +1,116 @@
+package com.raccoon.easyjchart;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import java.awt.Graphics2D;
+import java.awt.Rectangle;
+import java.awt.geom.Point2D;
+import java.awt.image.BufferedImage;
+import java.lang.management.ManagementFactory;
+
+import javax.management.MBeanServer;
+import javax.management.ObjectName;
+
+import org.junit.Test;
+
+public class ChartMetricsTest {
+
+	private static Grafica chart(String title) {
+		Grafica chart = new Grafica(new Point2D[] {new Point2D.Double(0, 0), new Point2D.Double(1, 1)}, title, "f", "x", "y");
+		chart.setMetricsEnabled(true);
+		return chart;
+	}
+
+	@Test
+	public void totalAddsUpThePointsOfTheCharts() {
+		ChartMetrics total = ChartMetrics.getTotal();
+		long stored = total.getPointsStored();
+		long rendered = total.getPointsRendered();
+		long updated = total.getLastUpdatePoints();
+		Grafica a = chart("a");
+		Grafica b = chart("b");
+		try {
+			a.getMetrics().recordPaint(a, 1000, 100, 10);
+			b.getMetrics().recordPaint(b, 1000, 200, 20);
+			a.getMetrics().recordUpdate(a, 0, 100, 1000, 10);
+			b.getMetrics().recordUpdate(b, 0, 200, 1000, 10);
+			// A later paint of a chart replaces its own points only
+			a.getMetrics().recordPaint(a, 1000, 50, 5);
+			assertEquals(50, a.getMetrics().getPointsStored());
+			assertEquals(200, b.getMetrics().getPointsStored());
+			assertEquals(stored + 250, total.getPointsStored());
+			assertEquals(rendered + 25, total.getPointsRendered());
+			assertEquals(updated + 300, total.getLastUpdatePoints());
+		} finally {
+			b.setMetricsEnabled(false);
+		}
+		assertEquals(stored + 50, total.getPointsStored());
+		a.setMetricsEnabled(false);
+		assertEquals(stored, total.getPointsStored());
+	}
+
+	@Test
+	public void annotationTimeIsNotNotificationTime() {
+		Grafica chart = chart("annotations");
+		try {
+			ChartMetrics metrics = chart.getMetrics();
+			metrics.recordUpdate(chart, 0, 10, 3000000, 1000000);
+			metrics.recordAnnotationChange(chart, 1, 2000000);
+			assertEquals(1, metrics.getNotificationTimeMillis(), 0);
+			assertEquals(2, metrics.getAnnotationTimeMillis(), 0);
+			assertEquals(3, metrics.getUpdateTimeMillis(), 0);
+		} finally {
+			chart.setMetricsEnabled(false);
+		}
+	}
+
+	private static void paint(Grafica chart) {
+		BufferedImage image = new BufferedImage(400, 300, BufferedImage.TYPE_INT_ARGB);
+		Graphics2D g2 = image.createGraphics();
+		try {
+			chart.pintar(g2, new Rectangle(0, 0, 400, 300));
+		} finally {
+			g2.dispose();
+		}
+	}
+
+	/**
+	 * The paints and updates of the chart itself are measured, and disabling the
+	 * metrics removes them from the MBean server and from the total.
+	 */
+	@Test
+	public void measuresPaintsAndUpdatesUntilDisabled() throws Exception {
+		ChartMetrics total = ChartMetrics.getTotal();
+		long stored = total.getPointsStored();
+		long paints = total.getPaintCount();
+		long updates = total.getUpdateCount();
+		Grafica chart = chart("painted");
+		ChartMetrics metrics = chart.getMetrics();
+		ObjectName name = new ObjectName(ChartMetrics.DOMAIN + ":type=Chart,name=" + ObjectName.quote(metrics.getName()));
+		MBeanServer server = ManagementFactory.getPlatformMBeanServer();
+		assertTrue(server.isRegistered(name));
+		try {
+			paint(chart);
+			chart.addAll(0, new double[] {2, 3, 4}, new double[] {0, 1, 0});
+			paint(chart);
+			assertEquals(2, metrics.getPaintCount());
+			assertEquals(1, metrics.getUpdateCount());
+			assertEquals(5, metrics.getLastUpdatePoints());
+			assertEquals(5, metrics.getPointsStored());
+			assertEquals(5, metrics.getPointsRendered());
+			assertEquals(paints + 2, total.getPaintCount());
+			assertEquals(updates + 1, total.getUpdateCount());
+			assertEquals(stored + 5, total.getPointsStored());
+			assertEquals(2L, server.getAttribute(name, "PaintCount"));
+		} finally {
+			chart.setMetricsEnabled(false);
+		}
+		assertFalse(server.isRegistered(name));
+		assertEquals(stored, total.getPointsStored());
+		// Without metrics the chart measures nothing
+		paint(chart);
+		assertEquals(paints + 2, total.getPaintCount());
+	}
+}
@@ -0,0 +1,147 @@
+package com.raccoon.easyjchart;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.HttpURLConnection;
+import java.net.InetSocketAddress;
+import java.net.Socket;
+import java.net.URL;
+import java.nio.charset.StandardCharsets;
+
+import org.junit.After;
+import org.junit.Test;
+
+public class ChartServerTest {
+
+	private static final String DATA = "t,in,out\n0,0.1,0.2\n1,0.5,0.3\n2,0.2,0.9\n3,0.7,0.4\n";
+
+	private ChartServer server;
+
+	@After
+	public void stop() {
+		if(server != null) {
+			server.stop(0);
+		}
+	}
+
+	private ChartServer start(int threads, int queue) throws IOException {
+		server = new ChartServer(new InetSocketAddress("127.0.0.1", 0), threads, queue, 1 << 20);
+		server.start();
+		return server;
+	}
+
+	private HttpURLConnection post(String query, String data, String etag) throws IOException {
+		URL url = new URL("http://127.0.0.1:" + server.getAddress().getPort() + "/chart?" + query);
+		HttpURLConnection connection = (HttpURLConnection) url.openConnection();
+		connection.setRequestMethod("POST");
+		connection.setDoOutput(true);
+		if(etag != null) {
+			connection.setRequestProperty("If-None-Match", etag);
+		}
+		OutputStream out = connection.getOutputStream();
+		out.write(data.getBytes(StandardCharsets.UTF_8));
+		out.close();
+		return connection;
+	}
+
+	private static byte[] read(HttpURLConnection connection) throws IOException {
+		InputStream in = connection.getResponseCode() < 400 ? connection.getInputStream() : connection.getErrorStream();
+		ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+		if(in != null) {
+			byte[] block = new byte[8192];
+			int n;
+			while((n = in.read(block)) != -1) {
+				bytes.write(block, 0, n);
+			}
+			in.close();
+		}
+		return bytes.toByteArray();
+	}
+
+	@Test
+	public void rendersCachesAndValidatesCharts() throws IOException {
+		start(2, 4);
+		HttpURLConnection first = post("width=400&height=300&title=Signal", DATA, null);
+		assertEquals(200, first.getResponseCode());
+		assertEquals("image/png", first.getContentType());
+		String etag = first.getHeaderField("ETag");
+		byte[] image = read(first);
+		assertEquals((byte) 0x89, image[0]);
+		assertEquals('P', image[1]);
+		assertEquals(1, server.getCacheMisses());
+		assertEquals(0, server.getCacheHits());
+
+		HttpURLConnection second = post("width=400&height=300&title=Signal", DATA, null);
+		assertEquals(200, second.getResponseCode());
+		assertEquals(etag, second.getHeaderField("ETag"));
+		assertEquals(image.length, read(second).length);
+		assertEquals(1, server.getCacheMisses());
+		assertEquals(1, server.getCacheHits());
+
+		HttpURLConnection validated = post("width=400&height=300&title=Signal", DATA, etag);
+		assertEquals(304, validated.getResponseCode());
+		assertEquals(0, read(validated).length);
+		assertEquals(2, server.getCacheHits());
+
+		// Other parameters are another chart
+		HttpURLConnection other = post("width=400&height=300&title=Other", DATA, etag);
+		assertEquals(200, other.getResponseCode());
+		read(other);
+		assertEquals(2, server.getCacheMisses());
+	}
+
+	@Test
+	public void rejectsInvalidRequests() throws IOException {
+		start(1, 1);
+		HttpURLConnection size = post("width=-1", DATA, null);
+		assertEquals(400, size.getResponseCode());
+		read(size);
+		HttpURLConnection columns = post("", "t\n0\n1\n", null);
+		assertEquals(400, columns.getResponseCode());
+		read(columns);
+	}
+
+	@Test
+	public void rejectsRequestsWhenSaturated() throws Exception {
+		start(1, 0);
+		// A request that never sends its body keeps the only worker busy
+		Socket blocking = new Socket("127.0.0.1", server.getAddress().getPort());
+		try {
+			OutputStream out = blocking.getOutputStream();
+			out.write(("POST /chart HTTP/1.1\r\nHost: 127.0.0.1\r\nContent-Length: " + DATA.length() + "\r\n\r\nt,").getBytes(StandardCharsets.US_ASCII));
+			out.flush();
+			int status = 0;
+			for(int i = 0; i < 100 && status != 503; i++) {
+				HttpURLConnection connection = post("", DATA, null);
+				status = connection.getResponseCode();
+				if(status != 503) {
+					Thread.sleep(20);
+				}
+				else {
+					assertEquals("1", connection.getHeaderField("Retry-After"));
+				}
+				read(connection);
+			}
+			assertEquals(503, status);
+			assertTrue(server.getRejected() > 0);
+		} finally {
+			blocking.close();
+		}
+		// The worker is free again once the client is gone
+		HttpURLConnection connection = null;
+		for(int i = 0; i < 100 && (connection == null || connection.getResponseCode() == 503); i++) {
+			if(connection != null) {
+				read(connection);
+				Thread.sleep(20);
+			}
+			connection = post("", DATA, null);
+		}
+		assertEquals(200, connection.getResponseCode());
+		read(connection);
+	}
+}
@@ -0,0 +1,125 @@
+package com.raccoon.easyjchart;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotSame;
+import static org.junit.Assert.assertSame;
+
+import java.awt.geom.Point2D;
+import java.awt.image.BufferedImage;
+import java.text.DecimalFormat;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.Future;
+
+import org.jfree.chart.axis.NumberAxis;
+import org.jfree.chart.axis.NumberTickUnit;
+import org.jfree.chart.axis.TickUnit;
+import org.jfree.chart.axis.TickUnits;
+import org.junit.Test;
+
+public class ChartTemplateTest {
+
+	private static Grafica model() {
+		Point2D[] points = new Point2D[100];
+		for(int i = 0; i < points.length; i++) {
+			points[i] = new Point2D.Double(i, Math.sin(i / 10.0));
+		}
+		return new Grafica(points, "Model", "f", "x", "y");
+	}
+
+	private static NumberAxis rangeAxis(Grafica chart) {
+		return (NumberAxis) chart.getGrafica().getXYPlot().getRangeAxis();
+	}
+
+	@Test
+	public void copiesDoNotUseTheTickUnitsOfTheModel() {
+		Grafica model = model();
+		ChartTemplate template = new ChartTemplate(model);
+		Grafica copy = template.create(new double[] {0, 1}, new double[] {0, 1}, "copy");
+		TickUnits modelUnits = (TickUnits) rangeAxis(model).getStandardTickUnits();
+		TickUnits copyUnits = (TickUnits) rangeAxis(copy).getStandardTickUnits();
+		assertNotSame(modelUnits, copyUnits);
+		assertNotSame(rangeAxis(model).getTickUnit(), rangeAxis(copy).getTickUnit());
+		assertEquals(modelUnits.size(), copyUnits.size());
+		for(int i = 0; i < modelUnits.size(); i++) {
+			TickUnit expected = modelUnits.get(i);
+			TickUnit actual = copyUnits.get(i);
+			assertNotSame(expected, actual);
+			assertEquals(expected.getSize(), actual.getSize(), 0);
+			for(double value : new double[] {0, -1.5, 1234.5678, 1e-7, 3e9}) {
+				assertEquals(expected.valueToString(value), actual.valueToString(value));
+			}
+		}
+	}
+
+	@Test
+	public void copiesCustomTickUnits() {
+		Grafica model = model();
+		TickUnits custom = new TickUnits();
+		custom.add(new NumberTickUnit(0.5, new DecimalFormat("0.0#")));
+		custom.add(new NumberTickUnit(2, new DecimalFormat("0")));
+		rangeAxis(model).setStandardTickUnits(custom);
+		ChartTemplate template = new ChartTemplate(model);
+		Grafica a = template.create(new double[] {0, 1}, new double[] {0, 1}, "a");
+		Grafica b = template.create(new double[] {0, 1}, new double[] {0, 1}, "b");
+		TickUnits units = (TickUnits) rangeAxis(a).getStandardTickUnits();
+		assertNotSame(custom, units);
+		assertNotSame(units, rangeAxis(b).getStandardTickUnits());
+		assertNotSame(units.get(0), ((TickUnits) rangeAxis(b).getStandardTickUnits()).get(0));
+		assertEquals(custom, units);
+		assertEquals("1.25", units.get(0).valueToString(1.25));
+		assertEquals("4", units.get(1).valueToString(4));
+	}
+
+	@Test
+	public void copiesFixedTickUnitsAndFormats() {
+		Grafica model = model();
+		NumberTickUnit unit = new NumberTickUnit(0.25, new DecimalFormat("0.00"));
+		rangeAxis(model).setTickUnit(unit);
+		rangeAxis(model).setNumberFormatOverride(new DecimalFormat("#.#"));
+		ChartTemplate template = new ChartTemplate(model);
+		Grafica copy = template.create(new double[] {0, 1}, new double[] {0, 1}, "copy");
+		assertFalse(rangeAxis(copy).isAutoTickUnitSelection());
+		assertNotSame(unit, rangeAxis(copy).getTickUnit());
+		assertEquals(0.25, rangeAxis(copy).getTickUnit().getSize(), 0);
+		assertEquals("1.75", rangeAxis(copy).getTickUnit().valueToString(1.75));
+		assertEquals(rangeAxis(model).getNumberFormatOverride(), rangeAxis(copy).getNumberFormatOverride());
+		assertNotSame(rangeAxis(model).getNumberFormatOverride(), rangeAxis(copy).getNumberFormatOverride());
+		assertSame(unit, rangeAxis(model).getTickUnit());
+	}
+
+	@Test
+	public void rendersCopiesInParallel() throws Exception {
+		final ChartTemplate template = new ChartTemplate(model());
+		final double[] x = new double[1000];
+		final double[] y = new double[1000];
+		for(int i = 0; i < x.length; i++) {
+			x[i] = i * 0.001;
+			y[i] = Math.cos(i / 50.0) * 1e-3;
+		}
+		BufferedImage expected = template.create(x, y, "f").getGrafica().createBufferedImage(400, 300);
+		List<Callable<BufferedImage>> tasks = new ArrayList<Callable<BufferedImage>>();
+		for(int i = 0; i < 16; i++) {
+			tasks.add(new Callable<BufferedImage>() {
+				public BufferedImage call() {
+					BufferedImage image = null;
+					for(int r = 0; r < 10; r++) {
+						image = template.create(x, y, "f").getGrafica().createBufferedImage(400, 300);
+					}
+					return image;
+				}
+			});
+		}
+		for(Future<BufferedImage> result : ForkJoinPool.commonPool().invokeAll(tasks)) {
+			BufferedImage image = result.get();
+			for(int py = 0; py < image.getHeight(); py++) {
+				for(int px = 0; px < image.getWidth(); px++) {
+					assertEquals(expected.getRGB(px, py), image.getRGB(px, py));
+				}
+			}
+		}
+	}
+}
@@ -0,0 +1,140 @@
+package com.raccoon.easyjchart;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.fail;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+import org.jfree.data.Range;
+import org.jfree.data.xy.XYDataset;
+import org.junit.Test;
+
+public class CompressedXYDatasetTest {
+
+	private static final int POINTS = 1 << 20;
+
+	private static double[] x;
+	private static double[] y;
+
+	private static synchronized void createPoints() {
+		if(x == null) {
+			Random random = new Random(11);
+			x = new double[POINTS];
+			y = new double[POINTS];
+			for(int i = 0; i < POINTS; i++) {
+				x[i] = 1.7e9 + i;
+				y[i] = i % 5000 == 0 ? Double.NaN : Math.round(random.nextGaussian() * 10000) / 100.0;
+			}
+		}
+	}
+
+	private static CompressedXYDataset compressed() {
+		createPoints();
+		CompressedXYDataset dataset = new CompressedXYDataset("f");
+		dataset.addAll(x, y);
+		return dataset;
+	}
+
+	@Test
+	public void decodesThePointsWithoutLosses() {
+		CompressedXYDataset dataset = compressed();
+		assertEquals(POINTS, dataset.getItemCount(0));
+		for(int i = 0; i < POINTS; i++) {
+			assertEquals(Double.doubleToRawLongBits(x[i]), Double.doubleToRawLongBits(dataset.getXValue(0, i)));
+			assertEquals(Double.doubleToRawLongBits(y[i]), Double.doubleToRawLongBits(dataset.getYValue(0, i)));
+		}
+		Random random = new Random(3);
+		for(int n = 0; n < 20000; n++) {
+			int i = random.nextInt(POINTS);
+			assertEquals(Double.doubleToRawLongBits(y[i]), Double.doubleToRawLongBits(dataset.getYValue(0, i)));
+		}
+	}
+
+	@Test
+	public void findsTheBoundsOfARange() {
+		CompressedXYDataset dataset = compressed();
+		ArrayXYDataset array = new ArrayXYDataset("f", x, y, false);
+		List<String> keys = Collections.singletonList("f");
+		Random random = new Random(5);
+		for(int n = 0; n < 100; n++) {
+			double lower = x[0] + random.nextInt(POINTS) - 0.5;
+			Range range = new Range(lower, lower + random.nextInt(50000));
+			assertEquals(array.getRangeBounds(keys, range, false), dataset.getRangeBounds(keys, range, false));
+		}
+	}
+
+	@Test
+	public void rejectsPointsOutOfOrder() {
+		CompressedXYDataset dataset = new CompressedXYDataset("f");
+		dataset.add(1, 1);
+		dataset.add(1, 2);
+		try {
+			dataset.add(0.5, 3);
+			fail();
+		} catch (IllegalArgumentException e) {
+			assertEquals(2, dataset.getItemCount(0));
+		}
+	}
+
+	@Test
+	public void canBeReadFromSeveralThreads() throws Exception {
+		final CompressedXYDataset dataset = compressed();
+		ExecutorService executor = Executors.newFixedThreadPool(4);
+		try {
+			List<Callable<Void>> tasks = new ArrayList<Callable<Void>>();
+			for(int t = 0; t < 4; t++) {
+				final long seed = t;
+				tasks.add(new Callable<Void>() {
+					public Void call() {
+						Random random = new Random(seed);
+						for(int n = 0; n < 20000; n++) {
+							int i = random.nextInt(POINTS);
+							assertEquals(Double.doubleToRawLongBits(x[i]), Double.doubleToRawLongBits(dataset.getXValue(0, i)));
+							assertEquals(Double.doubleToRawLongBits(y[i]), Double.doubleToRawLongBits(dataset.getYValue(0, i)));
+						}
+						return null;
+					}
+				});
+			}
+			for(Future<Void> result : executor.invokeAll(tasks)) {
+				result.get();
+			}
+		} finally {
+			executor.shutdown();
+		}
+	}
+
+	/**
+	 * The pyramid reads the dataset from the tasks that build it in parallel.
+	 */
+	@Test
+	public void buildsTheSamePyramidAsAnArray() {
+		CompressedXYDataset dataset = compressed();
+		ArrayXYDataset array = new ArrayXYDataset("f", x, y, false);
+		for(int run = 0; run < 3; run++) {
+			assertEquals(decimate(array), decimate(dataset));
+		}
+	}
+
+	private static List<Integer> decimate(XYDataset dataset) {
+		final List<Integer> items = new ArrayList<Integer>();
+		LodPyramid pyramid = new LodPyramid(dataset);
+		pyramid.decimate(0, POINTS - 1, LodPyramid.BASE_LEVEL + 4, new LodPyramid.Sink() {
+			public void item(int item) {
+				items.add(item);
+			}
+
+			public void gap() {
+				items.add(-1);
+			}
+		});
+		return items;
+	}
+}
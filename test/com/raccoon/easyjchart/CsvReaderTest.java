@@ -0,0 +1,254 @@
+package com.raccoon.easyjchart;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.List;
+import java.util.Locale;
+import java.util.Random;
+
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+public class CsvReaderTest {
+
+	@Rule
+	public TemporaryFolder folder = new TemporaryFolder();
+
+	private static final String[] NUMBERS = {
+		"0", "-0", "+0", "0.0", "-0.0", "00000", "1", "-1", "+1", "1.", ".5", "-.5", "0.1", "0.3",
+		"3.14159", "123456789", "1e0", "1E5", "1e+5", "1e-5", "-2.5e-3", "9007199254740992",
+		"9007199254740993", "1e22", "1e23", "1e-22", "1e-23",
+		// Limits of the exponent
+		"1.7976931348623157e308", "1.7976931348623158e308", "1.7976931348623159e308", "1e308", "1e309",
+		"-1e309", "2.2250738585072014e-308", "2.2250738585072011e-308", "4.9e-324", "5e-324",
+		"2.4703282292062328e-324", "2.4703282292062327e-324", "1e-324", "1e-400", "1e400", "1e-342",
+		"1e-343", "0e999", "123e-345",
+		// Subnormals
+		"2.225073858507201e-308", "4.450147717014402e-308", "1.23456789e-315", "9.8813129168249309e-324",
+		// 19 digits and more
+		"1234567890123456789", "12345678901234567890", "9999999999999999999", "18446744073709551615",
+		"18446744073709551616", "0.12345678901234567890123", "1.00000000000000011102230246251565404",
+		"1.0000000000000001110223024625156540", "7.3177701707893310e+15", "9007199254740993.0000000000001",
+		"0.000000000000000000000000000000000000001234567890123456789",
+		// Halfway cases
+		"2.5e-324", "9007199254740991.5", "1.00000000000000005551115123125782702118",
+		// Special values and invalid numbers
+		"NaN", "-NaN", "Infinity", "-Infinity", "+Infinity", "inf", "", " ", "-", "+", ".", "e5", "1e",
+		"1e+", "1.2.3", "1-2", "abc", "0x1p3", "1,5", " 42 ", "  -7.25  ", "1d", "2.5f"
+	};
+
+	@Test
+	public void parsesLikeDoubleParseDouble() {
+		for(String number : NUMBERS) {
+			assertParsed(number);
+		}
+	}
+
+	@Test
+	public void parsesRandomNumbersLikeDoubleParseDouble() {
+		Random random = new Random(42);
+		for(int i = 0; i < 200000; i++) {
+			assertParsed(Double.toString(Double.longBitsToDouble(random.nextLong())));
+			assertParsed(String.format(Locale.ROOT, "%." + random.nextInt(20) + "f", random.nextDouble() * 1000));
+			StringBuilder digits = new StringBuilder();
+			if(random.nextBoolean()) {
+				digits.append('-');
+			}
+			int n = 1 + random.nextInt(24);
+			int point = random.nextInt(n + 1);
+			for(int d = 0; d < n; d++) {
+				if(d == point) {
+					digits.append('.');
+				}
+				digits.append((char) ('0' + random.nextInt(10)));
+			}
+			digits.append('e').append(random.nextInt(700) - 350);
+			assertParsed(digits.toString());
+		}
+	}
+
+	private static void assertParsed(String number) {
+		double expected;
+		try {
+			expected = Double.parseDouble(number);
+		} catch (NumberFormatException e) {
+			expected = Double.NaN;
+		}
+		byte[] bytes = number.getBytes(StandardCharsets.ISO_8859_1);
+		assertEquals(number, Double.doubleToLongBits(expected),
+				Double.doubleToLongBits(CsvReader.parseDouble(bytes, bytes.length)));
+	}
+
+	@Test
+	public void readsTheSameFromAFileAndAStream() throws IOException {
+		StringBuilder csv = new StringBuilder("time,\"value\",other\r\n");
+		for(String number : NUMBERS) {
+			csv.append("1,").append(number.replace(",", "")).append(",x\r\n");
+		}
+		csv.append("\n2,3.5");
+		CsvReader reader = new CsvReader(',', true).addSeries("time", "value", 0).addSeries(0, 2, 1);
+		List<ArrayXYDataset> fromFile = reader.read(write(csv.toString().getBytes(StandardCharsets.UTF_8)), false);
+		List<ArrayXYDataset> fromStream = reader.read(stream(csv.toString().getBytes(StandardCharsets.UTF_8), 7), false);
+		assertSame(fromFile, fromStream);
+		assertEquals(NUMBERS.length + 1, fromFile.get(0).getItemCount(0));
+		assertEquals("value", fromFile.get(0).getSeriesKey(0));
+		assertEquals(3.5, fromFile.get(0).getYValue(0, NUMBERS.length), 0);
+	}
+
+	@Test
+	public void readsColumnsByNameFromAStream() throws IOException {
+		byte[] csv = "x,y\n1,2\n3,4\n".getBytes(StandardCharsets.UTF_8);
+		CsvReader reader = new CsvReader(',', true).addSeries("x", "y", 0);
+		ArrayXYDataset dataset = reader.read(new ByteArrayInputStream(csv), true).get(0);
+		assertEquals(2, dataset.getItemCount(0));
+		assertEquals(3, dataset.getXValue(0, 1), 0);
+		assertEquals(4, dataset.getYValue(0, 1), 0);
+	}
+
+	@Test
+	public void readsUtf8HeaderWithByteOrderMark() throws IOException {
+		ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+		bytes.write(0xEF);
+		bytes.write(0xBB);
+		bytes.write(0xBF);
+		bytes.write("tiempo (s);presi\u00f3n (\u20ac)\n0;1,5\n1;2\n".replace(",", ".").getBytes(StandardCharsets.UTF_8));
+		CsvReader reader = new CsvReader(';', true).addSeries("tiempo (s)", "presi\u00f3n (\u20ac)", 0);
+		for(int block : new int[] {1, 2, 3, 4, 1 << 16}) {
+			List<ArrayXYDataset> fromStream = reader.read(stream(bytes.toByteArray(), block), false);
+			assertEquals("presi\u00f3n (\u20ac)", fromStream.get(0).getSeriesKey(0));
+			assertEquals(2, fromStream.get(0).getItemCount(0));
+			assertEquals(1.5, fromStream.get(0).getYValue(0, 0), 0);
+		}
+		List<ArrayXYDataset> fromFile = reader.read(write(bytes.toByteArray()), false);
+		assertEquals("presi\u00f3n (\u20ac)", fromFile.get(0).getSeriesKey(0));
+		assertEquals(2, fromFile.get(0).getItemCount(0));
+	}
+
+	@Test
+	public void skipsByteOrderMarkWithoutHeader() throws IOException {
+		byte[] csv = {(byte) 0xEF, (byte) 0xBB, (byte) 0xBF, '1', ',', '2', '\n', '3', ',', '4'};
+		CsvReader reader = new CsvReader(',', false).addSeries(0, 1, 0);
+		for(List<ArrayXYDataset> datasets : new List[] {reader.read(write(csv), false), reader.read(stream(csv, 1), false)}) {
+			assertEquals(2, datasets.get(0).getItemCount(0));
+			assertEquals(1, datasets.get(0).getXValue(0, 0), 0);
+			assertEquals(4, datasets.get(0).getYValue(0, 1), 0);
+		}
+	}
+
+	@Test
+	public void readsShortStreams() throws IOException {
+		CsvReader reader = new CsvReader(',', false).addSeries(0, 1, 0);
+		assertEquals(0, reader.read(new ByteArrayInputStream(new byte[0]), false).get(0).getItemCount(0));
+		assertEquals(1, reader.read(stream(new byte[] {'5', ',', '6'}, 1), false).get(0).getItemCount(0));
+		CsvReader names = new CsvReader(',', true).addSeries("a", "b", 0);
+		assertEquals(0, names.read(new ByteArrayInputStream("a,b".getBytes(StandardCharsets.UTF_8)), false).get(0).getItemCount(0));
+	}
+
+	/**
+	 * Fields longer than the field buffer of the parser are still parsed, also
+	 * when a read ends in the middle of them.
+	 */
+	@Test
+	public void readsLongFields() throws IOException {
+		String[] numbers = {
+			"3.14159265358979323846264338327950288419716939937510582097494459230781640628620899",
+			"0.000000000000000000000000000000000000000000000000000000000000000000000000000000001",
+			"                                                                              -2.5",
+			"1" + new String(new char[300]).replace('\0', '0'),
+			"123456789012345678901234567890123456789012345678901234567890123456789e-60"
+		};
+		StringBuilder csv = new StringBuilder();
+		for(int i = 0; i < numbers.length; i++) {
+			csv.append(i).append(',').append(numbers[i]).append('\n');
+		}
+		byte[] bytes = csv.toString().getBytes(StandardCharsets.UTF_8);
+		CsvReader reader = new CsvReader(',', false).addSeries(0, 1, 0);
+		for(List<ArrayXYDataset> datasets : new List[] {reader.read(write(bytes), false), reader.read(stream(bytes, 7), false)}) {
+			ArrayXYDataset dataset = datasets.get(0);
+			assertEquals(numbers.length, dataset.getItemCount(0));
+			for(int i = 0; i < numbers.length; i++) {
+				assertEquals(numbers[i], Double.parseDouble(numbers[i]), dataset.getYValue(0, i), 0);
+			}
+		}
+	}
+
+	/**
+	 * A file of several chunks, so it is parsed in parallel.
+	 */
+	@Test
+	public void readsLargeFilesInParallel() throws IOException {
+		Random random = new Random(7);
+		int lines = 1000000;
+		double[] x = new double[lines];
+		double[] y = new double[lines];
+		StringBuilder csv = new StringBuilder("x\ty\n");
+		for(int i = 0; i < lines; i++) {
+			x[i] = i;
+			y[i] = random.nextGaussian() * Math.pow(10, random.nextInt(20) - 10);
+			csv.append(i).append('\t').append(y[i]).append('\n');
+		}
+		byte[] bytes = csv.toString().getBytes(StandardCharsets.UTF_8);
+		CsvReader reader = new CsvReader('\t', true).addSeries("x", "y", 0);
+		List<ArrayXYDataset> fromFile = reader.read(write(bytes), false);
+		assertSame(fromFile, reader.read(new ByteArrayInputStream(bytes), false));
+		ArrayXYDataset dataset = fromFile.get(0);
+		assertEquals(lines, dataset.getItemCount(0));
+		for(int i = 0; i < lines; i++) {
+			assertEquals(x[i], dataset.getXValue(0, i), 0);
+			assertEquals(y[i], dataset.getYValue(0, i), 0);
+		}
+	}
+
+	private static void assertSame(List<ArrayXYDataset> expected, List<ArrayXYDataset> actual) {
+		assertEquals(expected.size(), actual.size());
+		for(int s = 0; s < expected.size(); s++) {
+			ArrayXYDataset e = expected.get(s);
+			ArrayXYDataset a = actual.get(s);
+			assertEquals(e.getSeriesKey(0), a.getSeriesKey(0));
+			int n = e.getItemCount(0);
+			assertEquals(n, a.getItemCount(0));
+			double[] ex = new double[n], ey = new double[n], ax = new double[n], ay = new double[n];
+			for(int i = 0; i < n; i++) {
+				ex[i] = e.getXValue(0, i);
+				ey[i] = e.getYValue(0, i);
+				ax[i] = a.getXValue(0, i);
+				ay[i] = a.getYValue(0, i);
+			}
+			assertArrayEquals(ex, ax, 0);
+			assertArrayEquals(ey, ay, 0);
+		}
+	}
+
+	private File write(byte[] bytes) throws IOException {
+		File file = folder.newFile();
+		OutputStream out = new FileOutputStream(file);
+		try {
+			out.write(bytes);
+		} finally {
+			out.close();
+		}
+		return file;
+	}
+
+	/**
+	 * A stream that returns at most the indicated bytes in every read.
+	 */
+	private static InputStream stream(byte[] bytes, final int block) {
+		return new ByteArrayInputStream(bytes) {
+			@Override
+			public synchronized int read(byte[] b, int off, int len) {
+				return super.read(b, off, Math.min(len, block));
+			}
+		};
+	}
+}
@@ -0,0 +1,86 @@
+package com.raccoon.easyjchart;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import java.awt.Color;
+import java.awt.Rectangle;
+import java.awt.geom.Point2D;
+import java.awt.image.BufferedImage;
+
+import org.jfree.data.DomainOrder;
+import org.jfree.data.xy.XYDataset;
+import org.junit.Test;
+
+public class DecimatedXYDatasetTest {
+
+	private static final int POINTS = 100000;
+
+	private static double[] x() {
+		double[] x = new double[POINTS];
+		for(int i = 0; i < POINTS; i++) {
+			x[i] = i;
+		}
+		return x;
+	}
+
+	private static double[] y() {
+		double[] y = new double[POINTS];
+		for(int i = 0; i < POINTS; i++) {
+			y[i] = Math.sin(i / 100.0) + (i % 13) * 0.1;
+		}
+		return y;
+	}
+
+	@Test
+	public void decimatesSortedContinuousFunctions() {
+		ArrayXYDataset source = new ArrayXYDataset("f", x(), y(), true);
+		for(DecimationMode mode : new DecimationMode[] {DecimationMode.MIN_MAX, DecimationMode.LTTB, DecimationMode.PYRAMID}) {
+			DecimatedXYDataset view = new DecimatedXYDataset(source, mode, true);
+			view.update(0, POINTS - 1, 500);
+			assertTrue(mode + ": " + view.getItemCount(0), view.getItemCount(0) < POINTS / 10);
+		}
+	}
+
+	@Test
+	public void keepsEveryPointOfSortedDiscreteFunctions() {
+		ArrayXYDataset source = new ArrayXYDataset("f", x(), y(), false);
+		assertEquals(DomainOrder.ASCENDING, source.getDomainOrder());
+		for(DecimationMode mode : new DecimationMode[] {DecimationMode.MIN_MAX, DecimationMode.LTTB, DecimationMode.PYRAMID}) {
+			DecimatedXYDataset view = new DecimatedXYDataset(source, mode, false);
+			view.update(0, POINTS - 1, 500);
+			assertEquals(POINTS, view.getItemCount(0));
+			for(int i = 0; i < POINTS; i += 997) {
+				assertEquals(source.getXValue(0, i), view.getXValue(0, i), 0);
+				assertEquals(source.getYValue(0, i), view.getYValue(0, i), 0);
+			}
+		}
+	}
+
+	@Test
+	public void chartKeepsEveryPointOfDiscretePlots() {
+		Grafica chart = new Grafica(new Point2D[] {new Point2D.Double(0, 0)}, "t", "f", "x", "y");
+		chart.agregarGrafica(x(), y(), "line", Color.RED, 1f, true);
+		chart.agregarGrafica(x(), y(), "points", Color.BLUE, 1f, false);
+		chart.agregarGrafica(x(), y(), "samples", Color.GREEN, 1f, true);
+		chart.visualizaMuestras(3, true, 2);
+		for(int plot = 1; plot <= 3; plot++) {
+			chart.setDecimation(plot, DecimationMode.MIN_MAX);
+		}
+		BufferedImage image = new BufferedImage(800, 600, BufferedImage.TYPE_INT_ARGB);
+		chart.pintar(image.createGraphics(), new Rectangle(0, 0, 800, 600));
+
+		XYDataset line = chart.getGrafica().getXYPlot().getDataset(1);
+		assertTrue(line.getItemCount(0) < POINTS);
+		assertEquals(POINTS, chart.getGrafica().getXYPlot().getDataset(2).getItemCount(0));
+		assertEquals(POINTS, chart.getGrafica().getXYPlot().getDataset(3).getItemCount(0));
+
+		// Hiding the samples again lets the line be decimated
+		chart.visualizaMuestras(3, false, 2);
+		assertTrue(((DecimatedXYDataset) chart.getGrafica().getXYPlot().getDataset(3)).isContinuous());
+		assertFalse(((DecimatedXYDataset) chart.getGrafica().getXYPlot().getDataset(2)).isContinuous());
+		chart.pintar(image.createGraphics(), new Rectangle(0, 0, 800, 600));
+		assertTrue(chart.getGrafica().getXYPlot().getDataset(3).getItemCount(0) < POINTS);
+	}
+}
@@ -0,0 +1,86 @@
+package com.raccoon.easyjchart;
+
+import static org.junit.Assert.assertEquals;
+
+import java.awt.BasicStroke;
+import java.awt.Color;
+import java.awt.RenderingHints;
+import java.awt.image.BufferedImage;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.Future;
+
+import org.jfree.chart.JFreeChart;
+import org.jfree.chart.axis.NumberAxis;
+import org.jfree.chart.plot.XYPlot;
+import org.junit.Test;
+
+public class FastLineRendererTest {
+
+	private static final int CHARTS = 8;
+	private static final int POINTS = 20000;
+
+	/**
+	 * Charts with different functions drawn by the same renderer.
+	 */
+	private static List<JFreeChart> charts(FastLineRenderer renderer, boolean antialias) {
+		List<JFreeChart> charts = new ArrayList<JFreeChart>();
+		for(int c = 0; c < CHARTS; c++) {
+			double[] x = new double[POINTS];
+			double[] y = new double[POINTS];
+			for(int i = 0; i < POINTS; i++) {
+				x[i] = i;
+				y[i] = Math.sin(i * (c + 1) / 500.0) + (i % 7) * 0.01 * c;
+			}
+			XYPlot plot = new XYPlot(new ArrayXYDataset("f", x, y, true), new NumberAxis("x"), new NumberAxis("y"), renderer);
+			JFreeChart chart = new JFreeChart(plot);
+			chart.setAntiAlias(antialias);
+			chart.setRenderingHints(new RenderingHints(RenderingHints.KEY_ANTIALIASING,
+					antialias ? RenderingHints.VALUE_ANTIALIAS_ON : RenderingHints.VALUE_ANTIALIAS_OFF));
+			charts.add(chart);
+		}
+		return charts;
+	}
+
+	private static void drawsChartsInParallel(boolean antialias) throws Exception {
+		FastLineRenderer renderer = new FastLineRenderer();
+		renderer.setSeriesPaint(0, Color.BLUE);
+		renderer.setSeriesStroke(0, new BasicStroke(1f));
+		final List<JFreeChart> charts = charts(renderer, antialias);
+		List<BufferedImage> expected = new ArrayList<BufferedImage>();
+		for(JFreeChart chart : charts) {
+			expected.add(chart.createBufferedImage(600, 400));
+		}
+		for(int round = 0; round < 5; round++) {
+			List<Callable<BufferedImage>> tasks = new ArrayList<Callable<BufferedImage>>();
+			for(final JFreeChart chart : charts) {
+				tasks.add(new Callable<BufferedImage>() {
+					public BufferedImage call() {
+						return chart.createBufferedImage(600, 400);
+					}
+				});
+			}
+			List<Future<BufferedImage>> results = ForkJoinPool.commonPool().invokeAll(tasks);
+			for(int c = 0; c < CHARTS; c++) {
+				BufferedImage image = results.get(c).get();
+				for(int py = 0; py < image.getHeight(); py++) {
+					for(int px = 0; px < image.getWidth(); px++) {
+						assertEquals("Chart " + c + " at " + px + ", " + py, expected.get(c).getRGB(px, py), image.getRGB(px, py));
+					}
+				}
+			}
+		}
+	}
+
+	@Test
+	public void drawsChartsInParallelWithTheSameRenderer() throws Exception {
+		drawsChartsInParallel(false);
+	}
+
+	@Test
+	public void drawsChartsInParallelWithTheSameRendererAntialiased() throws Exception {
+		drawsChartsInParallel(true);
+	}
+}
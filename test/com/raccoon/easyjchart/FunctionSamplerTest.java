@@ -0,0 +1,108 @@
+package com.raccoon.easyjchart;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.util.function.DoubleUnaryOperator;
+
+import org.junit.Test;
+
+public class FunctionSamplerTest {
+
+	/**
+	 * Evaluations of the dense grid per pixel.
+	 */
+	private static final int DENSE = 32;
+
+	/**
+	 * Largest vertical distance in pixels between the function, evaluated on a
+	 * dense grid, and the segments that join the samples. Points where the
+	 * function or the samples around them are not finite are skipped.
+	 */
+	private static double worstError(ArrayXYDataset samples, DoubleUnaryOperator f, double from, double to, int width, int height) {
+		int n = samples.getItemCount(0);
+		int points = width * DENSE;
+		double min = Double.POSITIVE_INFINITY, max = Double.NEGATIVE_INFINITY;
+		for(int i = 0; i <= points; i++) {
+			double value = f.applyAsDouble(from + (to - from) * i / points);
+			if(!Double.isNaN(value) && !Double.isInfinite(value)) {
+				min = Math.min(min, value);
+				max = Math.max(max, value);
+			}
+		}
+		double worst = 0;
+		int segment = 0;
+		for(int i = 0; i <= points; i++) {
+			double x = from + (to - from) * i / points;
+			while(segment < n - 2 && samples.getXValue(0, segment + 1) < x) {
+				segment++;
+			}
+			double x0 = samples.getXValue(0, segment), x1 = samples.getXValue(0, segment + 1);
+			double y0 = samples.getYValue(0, segment), y1 = samples.getYValue(0, segment + 1);
+			double value = f.applyAsDouble(x);
+			if(Double.isNaN(y0 + y1 + value) || Double.isInfinite(y0 + y1 + value)) {
+				continue;
+			}
+			double line = y0 + (y1 - y0) * (x - x0) / (x1 - x0);
+			worst = Math.max(worst, Math.abs(line - value) * height / (max - min));
+		}
+		return worst;
+	}
+
+	private static ArrayXYDataset check(FunctionSampler sampler, DoubleUnaryOperator f, double from, double to, int width, int height) {
+		ArrayXYDataset samples = sampler.sample("f", f, from, to);
+		int n = samples.getItemCount(0);
+		assertEquals(from, samples.getXValue(0, 0), 0);
+		assertEquals(to, samples.getXValue(0, n - 1), 0);
+		for(int i = 1; i < n; i++) {
+			assertTrue(samples.getXValue(0, i) > samples.getXValue(0, i - 1));
+			assertEquals(f.applyAsDouble(samples.getXValue(0, i)), samples.getYValue(0, i), 0);
+		}
+		double error = worstError(samples, f, from, to, width, height);
+		assertTrue(error + " pixels", error <= sampler.getTolerance() * 1.25);
+		return samples;
+	}
+
+	@Test
+	public void staysWithinTheToleranceOfADenseGrid() {
+		DoubleUnaryOperator[] functions = {Math::sin, x -> x * x * x - x, Math::exp, x -> Math.exp(-50 * x * x), Math::tan};
+		double[][] intervals = {{0, 50}, {-2, 2}, {0, 10}, {-3, 3}, {-1.5, 1.5}};
+		for(int[] size : new int[][] {{800, 600}, {300, 200}, {1920, 1080}}) {
+			FunctionSampler sampler = new FunctionSampler(size[0], size[1]);
+			for(int k = 0; k < functions.length; k++) {
+				ArrayXYDataset samples = check(sampler, functions[k], intervals[k][0], intervals[k][1], size[0], size[1]);
+				// Far fewer points than the dense grid
+				assertTrue(samples.getItemCount(0) < size[0]);
+			}
+		}
+	}
+
+	@Test
+	public void largerTolerancesTakeFewerPoints() {
+		FunctionSampler sampler = new FunctionSampler(800, 600);
+		int previous = Integer.MAX_VALUE;
+		for(double tolerance : new double[] {0.125, 0.5, 2}) {
+			sampler.setTolerance(tolerance);
+			int n = check(sampler, Math::sin, 0, 50, 800, 600).getItemCount(0);
+			assertTrue(n < previous);
+			previous = n;
+		}
+	}
+
+	@Test
+	public void keepsTheGapsOfTheFunction() {
+		FunctionSampler sampler = new FunctionSampler(800, 600);
+		// The slope at the end of the gap is infinite, so the error there is not bounded
+		ArrayXYDataset samples = sampler.sample("f", Math::sqrt, -1, 1);
+		assertEquals(1, samples.getXValue(0, samples.getItemCount(0) - 1), 0);
+		// The end of the gap is found to an eighth of a pixel
+		double firstFinite = Double.NaN;
+		for(int i = 0; i < samples.getItemCount(0) && Double.isNaN(firstFinite); i++) {
+			if(!Double.isNaN(samples.getYValue(0, i))) {
+				firstFinite = samples.getXValue(0, i);
+			}
+		}
+		assertTrue(Double.isNaN(samples.getYValue(0, 0)));
+		assertTrue(firstFinite >= 0 && firstFinite <= 2.0 / (800 * 8));
+	}
+}
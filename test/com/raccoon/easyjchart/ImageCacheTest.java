@@ -0,0 +1,39 @@
+package com.raccoon.easyjchart;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotSame;
+import static org.junit.Assert.assertSame;
+
+import java.awt.Color;
+import java.awt.image.BufferedImage;
+import java.io.File;
+import java.io.IOException;
+
+import javax.imageio.ImageIO;
+
+import org.junit.Test;
+
+public class ImageCacheTest {
+
+	@Test
+	public void sharesTheImagesReadAndCopiesThemApart() throws IOException {
+		BufferedImage original = new BufferedImage(16, 8, BufferedImage.TYPE_INT_ARGB);
+		original.setRGB(3, 4, Color.RED.getRGB());
+		File file = File.createTempFile("image", ".png");
+		try {
+			ImageIO.write(original, "png", file);
+			ImageCache cache = new ImageCache(1 << 20);
+			BufferedImage image = cache.read(file);
+			assertSame(image, cache.read(file));
+
+			BufferedImage copy = ImageCache.copy(image);
+			assertNotSame(image, copy);
+			assertEquals(image.getType(), copy.getType());
+			assertEquals(Color.RED.getRGB(), copy.getRGB(3, 4));
+			copy.setRGB(3, 4, Color.BLUE.getRGB());
+			assertEquals(Color.RED.getRGB(), cache.read(file).getRGB(3, 4));
+		} finally {
+			file.delete();
+		}
+	}
+}
@@ -0,0 +1,105 @@
+package com.raccoon.easyjchart;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+
+import org.junit.Test;
+
+public class LodPyramidTest {
+
+	private static ArrayXYDataset function(Random random, int n) {
+		double[] x = new double[n];
+		double[] y = new double[n];
+		for(int i = 0; i < n; i++) {
+			x[i] = i;
+			y[i] = random.nextInt(2000) == 0 ? Double.NaN : Math.sin(i / 300.0) * 10 + random.nextGaussian();
+		}
+		return new ArrayXYDataset("f", x, y, false);
+	}
+
+	/**
+	 * Points chosen by decimate, and the number of gaps.
+	 */
+	private static final class Collector implements LodPyramid.Sink {
+
+		final List<Integer> items = new ArrayList<Integer>();
+		int gaps = 0;
+
+		public void item(int item) {
+			items.add(item);
+		}
+
+		public void gap() {
+			gaps++;
+		}
+	}
+
+	/**
+	 * Compares the summary of random ranges with a scan of their points: it must
+	 * start and end with the ends of the range, go forward, keep the minimum and
+	 * the maximum and tell whether there are gaps.
+	 */
+	@Test
+	public void summariesKeepTheBoundsOfAScan() {
+		Random random = new Random(15);
+		// The last size is built by several parallel tasks
+		for(int n : new int[] {1, 63, 64, 65, 1000, 4097, 100000, 700000}) {
+			ArrayXYDataset dataset = function(random, n);
+			LodPyramid pyramid = new LodPyramid(dataset);
+			assertEquals(n, pyramid.getItemCount());
+			for(int query = 0; query < 200; query++) {
+				int first = random.nextInt(n);
+				int last = random.nextInt(4) == 0 ? n - 1 : first + random.nextInt(n - first);
+				int level = LodPyramid.BASE_LEVEL + random.nextInt(16);
+				Collector summary = new Collector();
+				pyramid.decimate(first, last, level, summary);
+				check(dataset, first, last, summary);
+			}
+		}
+	}
+
+	private static void check(ArrayXYDataset dataset, int first, int last, Collector summary) {
+		String range = first + ".." + last;
+		assertEquals(range, first, (int) summary.items.get(0));
+		assertEquals(range, last, (int) summary.items.get(summary.items.size() - 1));
+		double min = Double.POSITIVE_INFINITY, max = Double.NEGATIVE_INFINITY;
+		boolean nan = false;
+		for(int i = first; i <= last; i++) {
+			double v = dataset.getYValue(0, i);
+			nan |= Double.isNaN(v);
+			min = Math.min(min, Double.isNaN(v) ? min : v);
+			max = Math.max(max, Double.isNaN(v) ? max : v);
+		}
+		double summaryMin = Double.POSITIVE_INFINITY, summaryMax = Double.NEGATIVE_INFINITY;
+		boolean summaryNan = summary.gaps > 0;
+		for(int k = 0; k < summary.items.size(); k++) {
+			int item = summary.items.get(k);
+			assertTrue(range, k == 0 || item > summary.items.get(k - 1));
+			double v = dataset.getYValue(0, item);
+			summaryNan |= Double.isNaN(v);
+			summaryMin = Math.min(summaryMin, Double.isNaN(v) ? summaryMin : v);
+			summaryMax = Math.max(summaryMax, Double.isNaN(v) ? summaryMax : v);
+		}
+		assertEquals(range, min, summaryMin, 0);
+		assertEquals(range, max, summaryMax, 0);
+		assertEquals(range, nan, summaryNan);
+	}
+
+	@Test
+	public void largerLevelsGiveFewerPoints() {
+		ArrayXYDataset dataset = function(new Random(1), 1 << 16);
+		LodPyramid pyramid = new LodPyramid(dataset);
+		int previous = Integer.MAX_VALUE;
+		for(int level = LodPyramid.BASE_LEVEL; level <= pyramid.getTopLevel(); level++) {
+			Collector summary = new Collector();
+			pyramid.decimate(0, (1 << 16) - 1, level, summary);
+			assertTrue(summary.items.size() <= 4 << (16 - level));
+			assertTrue(summary.items.size() < previous);
+			previous = summary.items.size();
+		}
+	}
+}
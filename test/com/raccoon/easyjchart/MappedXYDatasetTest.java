@@ -0,0 +1,133 @@
+package com.raccoon.easyjchart;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.util.Collections;
+import java.util.Random;
+
+import org.jfree.data.DomainOrder;
+import org.jfree.data.Range;
+import org.junit.Test;
+
+public class MappedXYDatasetTest {
+
+	private static File write(double[] values) throws IOException {
+		File file = File.createTempFile("function", ".bin");
+		file.deleteOnExit();
+		ByteBuffer bytes = ByteBuffer.allocate(values.length * 8).order(ByteOrder.LITTLE_ENDIAN);
+		bytes.asDoubleBuffer().put(values);
+		OutputStream out = new FileOutputStream(file);
+		try {
+			out.write(bytes.array());
+		} finally {
+			out.close();
+		}
+		return file;
+	}
+
+	/**
+	 * Function with gaps, sorted by X or not.
+	 */
+	private static double[][] function(Random random, int n, boolean sorted) {
+		double[] x = new double[n];
+		double[] y = new double[n];
+		double next = random.nextGaussian();
+		for(int i = 0; i < n; i++) {
+			x[i] = sorted ? next : random.nextGaussian() * 100;
+			next += random.nextInt(3);
+			y[i] = random.nextInt(500) == 0 ? Double.NaN : random.nextGaussian() * 10;
+		}
+		return new double[][] {x, y};
+	}
+
+	/**
+	 * Compares the points, order and bounds of random windows of files with a
+	 * scan of the points written, in both layouts.
+	 */
+	@Test
+	public void readsWhatWasWritten() throws IOException {
+		Random random = new Random(9);
+		for(int round = 0; round < 12; round++) {
+			int total = 1 + random.nextInt(50000);
+			double[][] function = function(random, total, round % 3 != 0);
+			double[] interleaved = new double[2 * total];
+			double[] columnar = new double[2 * total];
+			for(int i = 0; i < total; i++) {
+				interleaved[2 * i] = function[0][i];
+				interleaved[2 * i + 1] = function[1][i];
+				columnar[i] = function[0][i];
+				columnar[total + i] = function[1][i];
+			}
+			File interleavedFile = write(interleaved);
+			File columnarFile = write(columnar);
+			try {
+				for(int window = 0; window < 4; window++) {
+					int first = window == 0 ? 0 : random.nextInt(total);
+					int count = window == 0 ? -1 : random.nextInt(total - first + 1);
+					int n = count < 0 ? total - first : count;
+					check(MappedXYDataset.interleaved(interleavedFile, first, count), function, first, n, random);
+					check(MappedXYDataset.columnar(columnarFile, total, first, count), function, first, n, random);
+				}
+			} finally {
+				interleavedFile.delete();
+				columnarFile.delete();
+			}
+		}
+	}
+
+	private static void check(MappedXYDataset dataset, double[][] function, int first, int n, Random random) {
+		assertEquals(n, dataset.getItemCount(0));
+		double minX = Double.POSITIVE_INFINITY, maxX = Double.NEGATIVE_INFINITY;
+		double minY = Double.POSITIVE_INFINITY, maxY = Double.NEGATIVE_INFINITY;
+		boolean ascending = true;
+		for(int i = 0; i < n; i++) {
+			double x = function[0][first + i];
+			double y = function[1][first + i];
+			assertEquals(x, dataset.getXValue(0, i), 0);
+			assertEquals(y, dataset.getYValue(0, i), 0);
+			if(i > 0 && x < function[0][first + i - 1]) {
+				ascending = false;
+			}
+			minX = Math.min(minX, x);
+			maxX = Math.max(maxX, x);
+			if(!Double.isNaN(y)) {
+				minY = Math.min(minY, y);
+				maxY = Math.max(maxY, y);
+			}
+		}
+		assertEquals(ascending ? DomainOrder.ASCENDING : DomainOrder.NONE, dataset.getDomainOrder());
+		if(n == 0) {
+			assertNull(dataset.getDomainBounds(false));
+			return;
+		}
+		assertEquals(new Range(minX, maxX), dataset.getDomainBounds(false));
+		assertEquals(minY <= maxY ? new Range(minY, maxY) : null, dataset.getRangeBounds(false));
+		for(int query = 0; query < 50; query++) {
+			double lower = minX + random.nextDouble() * (maxX - minX) * 1.1 - (maxX - minX) * 0.05;
+			double upper = lower + random.nextDouble() * (maxX - minX) * 0.6;
+			double min = Double.POSITIVE_INFINITY, max = Double.NEGATIVE_INFINITY;
+			for(int i = 0; i < n; i++) {
+				double x = function[0][first + i];
+				double y = function[1][first + i];
+				if(x >= lower && x <= upper && !Double.isNaN(y)) {
+					min = Math.min(min, y);
+					max = Math.max(max, y);
+				}
+			}
+			Range range = dataset.getRangeBounds(Collections.singletonList(dataset.getSeriesKey(0)), new Range(lower, upper), false);
+			if(min <= max) {
+				assertEquals(lower + ".." + upper, new Range(min, max), range);
+			}
+			else {
+				assertNull(range);
+			}
+		}
+	}
+}
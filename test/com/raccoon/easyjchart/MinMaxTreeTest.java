@@ -0,0 +1,74 @@
+package com.raccoon.easyjchart;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+
+import java.util.Random;
+
+import org.jfree.data.Range;
+import org.junit.Test;
+
+public class MinMaxTreeTest {
+
+	private static Range scan(ArrayXYDataset dataset, int first, int last) {
+		double min = Double.POSITIVE_INFINITY, max = Double.NEGATIVE_INFINITY;
+		for(int i = first; i <= last; i++) {
+			double v = dataset.getYValue(0, i);
+			if(v < min) {
+				min = v;
+			}
+			if(v > max) {
+				max = v;
+			}
+		}
+		return min <= max ? new Range(min, max) : null;
+	}
+
+	/**
+	 * Compares the bounds of random ranges with a scan of their points, while
+	 * random numbers of points are appended.
+	 */
+	@Test
+	public void boundsMatchAScanOfThePoints() {
+		Random random = new Random(16);
+		for(int round = 0; round < 20; round++) {
+			ArrayXYDataset dataset = new ArrayXYDataset("f", new double[0], new double[0], false);
+			MinMaxTree tree = new MinMaxTree(dataset);
+			int n = 0;
+			for(int step = 0; step < 60; step++) {
+				int appends = random.nextInt(4) == 0 ? random.nextInt(5000) : random.nextInt(70);
+				for(int i = 0; i < appends; i++) {
+					double y = random.nextInt(50) == 0 ? Double.NaN : random.nextGaussian() * 1000;
+					dataset.add(n++, y);
+				}
+				tree.append(n);
+				assertEquals(n, tree.getItemCount());
+				for(int query = 0; query < 50 && n > 0; query++) {
+					int first = random.nextInt(n);
+					int last = random.nextInt(4) == 0 ? n - 1 : first + random.nextInt(n - first);
+					Range expected = scan(dataset, first, last);
+					Range actual = tree.getBounds(first, last);
+					if(expected == null) {
+						assertNull(actual);
+					}
+					else {
+						assertEquals(first + ".." + last + " of " + n, expected, actual);
+					}
+				}
+			}
+		}
+	}
+
+	@Test
+	public void ignoresNaN() {
+		ArrayXYDataset dataset = new ArrayXYDataset("f", new double[] {0, 1, 2}, new double[] {Double.NaN, Double.NaN, Double.NaN}, false);
+		MinMaxTree tree = new MinMaxTree(dataset);
+		assertNull(tree.getBounds(0, 2));
+		for(int i = 3; i < 1000; i++) {
+			dataset.add(i, i == 500 ? -1 : Double.NaN);
+		}
+		tree.append(dataset.getItemCount(0));
+		assertEquals(new Range(-1, -1), tree.getBounds(0, 999));
+		assertNull(tree.getBounds(501, 999));
+	}
+}
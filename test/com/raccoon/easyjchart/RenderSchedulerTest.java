@@ -0,0 +1,163 @@
+package com.raccoon.easyjchart;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import java.awt.Rectangle;
+import java.awt.geom.Point2D;
+import java.lang.reflect.InvocationTargetException;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Random;
+import java.util.Set;
+
+import javax.swing.SwingUtilities;
+
+import org.junit.Test;
+
+public class RenderSchedulerTest {
+
+	/**
+	 * Panel that is showing or not as the test says (there is no screen), and
+	 * records when it is rendered.
+	 */
+	private static final class Panel extends JPanelGrafica {
+
+		private static final long serialVersionUID = 1L;
+
+		boolean showing;
+		Rectangle visible = new Rectangle();
+		final Set<Panel> rendered;
+
+		/**
+		 * State kept by the test: dirty and frames waited.
+		 */
+		boolean dirty = true;
+		int waited = 0;
+
+		Panel(Grafica chart, Set<Panel> rendered) {
+			super(chart);
+			this.rendered = rendered;
+			setSize(120, 80);
+		}
+
+		@Override
+		public boolean isShowing() {
+			return showing;
+		}
+
+		@Override
+		public Rectangle getVisibleRect() {
+			return new Rectangle(visible);
+		}
+
+		@Override
+		void renderiza(int ancho, int alto) {
+			synchronized(rendered) {
+				rendered.add(this);
+			}
+			super.renderiza(ancho, alto);
+		}
+
+		@Override
+		public String toString() {
+			return getName() + " waited " + waited + " area " + area();
+		}
+
+		long area() {
+			return (long) visible.width * visible.height;
+		}
+	}
+
+	/**
+	 * Compares the panels rendered in random frames with the ones the scheduler
+	 * must choose: the dirty panels that are showing with a visible part, the
+	 * ones that waited the longest and then the largest first, up to the panels
+	 * per frame. The frames are painted from the event thread, as the timer of
+	 * the scheduler does, so that the timer can't paint others in between.
+	 */
+	@Test
+	public void rendersOnlyDirtyShowingPanels() throws Throwable {
+		try {
+			SwingUtilities.invokeAndWait(new Runnable() {
+				public void run() {
+					paintRandomFrames();
+				}
+			});
+		} catch(InvocationTargetException e) {
+			throw e.getCause();
+		}
+	}
+
+	private static void paintRandomFrames() {
+		Random random = new Random(25);
+		Set<Panel> rendered = new HashSet<Panel>();
+		RenderScheduler scheduler = new RenderScheduler(60);
+		List<Panel> panels = new ArrayList<Panel>();
+		for(int i = 0; i < 12; i++) {
+			Panel panel = new Panel(new Grafica(new Point2D[] {new Point2D.Double(0, i), new Point2D.Double(1, 0)}, "p" + i, "f", "x", "y"), rendered);
+			panel.setName("p" + i);
+			panels.add(panel);
+			scheduler.register(panel);
+		}
+		assertEquals(12, scheduler.getPanelCount());
+		try {
+			int renders = 0;
+			for(int frame = 0; frame < 300; frame++) {
+				for(Panel panel : panels) {
+					if(random.nextInt(4) == 0) {
+						panel.invalida();
+						panel.dirty = true;
+					}
+					if(random.nextInt(5) == 0) {
+						panel.showing = random.nextInt(4) != 0;
+						int w = random.nextInt(3) == 0 ? 0 : 1 + random.nextInt(4) * 30;
+						panel.visible = new Rectangle(0, 0, w, 80);
+					}
+				}
+				int max = random.nextBoolean() ? Integer.MAX_VALUE : 1 + random.nextInt(5);
+				scheduler.setMaxPanelsPerFrame(max);
+
+				List<Panel> expected = new ArrayList<Panel>();
+				for(Panel panel : panels) {
+					if(panel.dirty && panel.showing && !panel.visible.isEmpty()) {
+						expected.add(panel);
+						panel.waited++;
+					}
+				}
+				if(expected.size() > max) {
+					Collections.sort(expected, new Comparator<Panel>() {
+						public int compare(Panel a, Panel b) {
+							int waited = b.waited - a.waited;
+							return waited != 0 ? waited : Long.compare(b.area(), a.area());
+						}
+					});
+					expected.subList(max, expected.size()).clear();
+				}
+
+				rendered.clear();
+				scheduler.frame();
+				assertEquals("Frame " + frame, new HashSet<Panel>(expected), rendered);
+				for(Panel panel : expected) {
+					assertFalse(panel.necesitaPintarse());
+					panel.dirty = false;
+					panel.waited = 0;
+				}
+				for(Panel panel : panels) {
+					assertEquals(panel.dirty, panel.necesitaPintarse());
+				}
+				renders += rendered.size();
+			}
+			assertTrue(renders > 300);
+		} finally {
+			for(Panel panel : panels) {
+				scheduler.unregister(panel);
+			}
+		}
+		assertEquals(0, scheduler.getPanelCount());
+	}
+}
@@ -0,0 +1,131 @@
+package com.raccoon.easyjchart;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+
+import java.util.Collections;
+import java.util.List;
+import java.util.Random;
+
+import org.jfree.data.DomainOrder;
+import org.jfree.data.Range;
+import org.junit.Test;
+
+public class RingBufferXYDatasetTest {
+
+	private static final List<String> KEYS = Collections.singletonList("f");
+
+	private static RingBufferXYDataset dataset(int capacity, double... x) {
+		RingBufferXYDataset dataset = new RingBufferXYDataset("f", capacity);
+		for(double px : x) {
+			dataset.append(px, px);
+		}
+		dataset.publish();
+		return dataset;
+	}
+
+	@Test
+	public void isSortedAgainWhenThePointsOutOfOrderAreEvicted() {
+		RingBufferXYDataset dataset = dataset(4, 1, 2, 0, 3);
+		assertEquals(DomainOrder.NONE, dataset.getDomainOrder());
+		dataset.append(4, 4);
+		dataset.publish();
+		// The window is 2, 0, 3, 4
+		assertEquals(DomainOrder.NONE, dataset.getDomainOrder());
+		dataset.append(5, 5);
+		dataset.publish();
+		assertEquals(DomainOrder.ASCENDING, dataset.getDomainOrder());
+		dataset.append(1, 1);
+		dataset.publish();
+		assertEquals(DomainOrder.NONE, dataset.getDomainOrder());
+	}
+
+	@Test
+	public void nanCoordinatesAreOutOfOrder() {
+		RingBufferXYDataset dataset = dataset(3, 1, Double.NaN, 2);
+		assertEquals(DomainOrder.NONE, dataset.getDomainOrder());
+		dataset.append(3, 3);
+		dataset.publish();
+		assertEquals(DomainOrder.NONE, dataset.getDomainOrder());
+		dataset.append(4, 4);
+		dataset.publish();
+		assertEquals(DomainOrder.ASCENDING, dataset.getDomainOrder());
+	}
+
+	/**
+	 * Compares the bounds and the order of the window with a scan of its points,
+	 * after random appends.
+	 */
+	@Test
+	public void boundsAndOrderMatchAScanOfTheWindow() {
+		Random random = new Random(6);
+		for(int round = 0; round < 50; round++) {
+			int capacity = 1 + random.nextInt(64);
+			RingBufferXYDataset dataset = new RingBufferXYDataset("f", capacity);
+			double nextX = 0;
+			for(int step = 0; step < 400; step++) {
+				int appends = random.nextInt(2 * capacity + 1);
+				for(int i = 0; i < appends; i++) {
+					int kind = random.nextInt(40);
+					double px = kind == 0 ? Double.NaN : (kind == 1 ? nextX - random.nextInt(20) : nextX);
+					double py = kind == 2 ? Double.NaN : random.nextGaussian() * 100;
+					nextX += random.nextInt(3);
+					dataset.append(px, py);
+				}
+				if(random.nextInt(100) == 0) {
+					dataset.clear();
+				}
+				dataset.publish();
+				check(dataset, random);
+			}
+		}
+	}
+
+	private static void check(RingBufferXYDataset dataset, Random random) {
+		int n = dataset.getItemCount(0);
+		double minX = Double.NaN, maxX = Double.NaN, minY = Double.NaN, maxY = Double.NaN;
+		boolean ascending = true;
+		for(int i = 0; i < n; i++) {
+			double px = dataset.getXValue(0, i);
+			double py = dataset.getYValue(0, i);
+			if(i > 0 && !(px >= dataset.getXValue(0, i - 1))) {
+				ascending = false;
+			}
+			if(!Double.isNaN(px)) {
+				minX = Double.isNaN(minX) ? px : Math.min(minX, px);
+				maxX = Double.isNaN(maxX) ? px : Math.max(maxX, px);
+			}
+			if(!Double.isNaN(py)) {
+				minY = Double.isNaN(minY) ? py : Math.min(minY, py);
+				maxY = Double.isNaN(maxY) ? py : Math.max(maxY, py);
+			}
+		}
+		assertEquals(ascending ? DomainOrder.ASCENDING : DomainOrder.NONE, dataset.getDomainOrder());
+		assertEquals(minX, dataset.getDomainLowerBound(false), 0);
+		assertEquals(maxX, dataset.getDomainUpperBound(false), 0);
+		assertEquals(minY, dataset.getRangeLowerBound(false), 0);
+		assertEquals(maxY, dataset.getRangeUpperBound(false), 0);
+		if(Double.isNaN(minX)) {
+			assertNull(dataset.getDomainBounds(false));
+			return;
+		}
+		double lower = minX + random.nextDouble() * (maxX - minX);
+		double upper = lower + random.nextDouble() * (maxX - lower);
+		double min = Double.POSITIVE_INFINITY, max = Double.NEGATIVE_INFINITY;
+		for(int i = 0; i < n; i++) {
+			double px = dataset.getXValue(0, i);
+			double py = dataset.getYValue(0, i);
+			if(px >= lower && px <= upper && !Double.isNaN(py)) {
+				min = Math.min(min, py);
+				max = Math.max(max, py);
+			}
+		}
+		Range range = dataset.getRangeBounds(KEYS, new Range(lower, upper), false);
+		if(min <= max) {
+			assertEquals(new Range(min, max), range);
+		}
+		else {
+			assertNull(range);
+		}
+	}
+}
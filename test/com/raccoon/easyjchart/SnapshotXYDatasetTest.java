@@ -0,0 +1,394 @@
+package com.raccoon.easyjchart;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+import java.awt.Color;
+import java.awt.Graphics2D;
+import java.awt.Rectangle;
+import java.awt.geom.Point2D;
+import java.awt.image.BufferedImage;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicReference;
+
+import org.jfree.data.DomainOrder;
+import org.jfree.data.xy.XYDataset;
+import org.junit.Test;
+
+public class SnapshotXYDatasetTest {
+
+	/**
+	 * Writers that append points. The Y coordinate of a point identifies it
+	 * (writer * WRITER + sequence number) and the X coordinate is its sequence
+	 * number, so the painter can check that the coordinates of a point stay
+	 * together.
+	 */
+	private static final int APPENDERS = 2;
+	private static final long WRITER = 1000000000L;
+
+	/**
+	 * Points of every setData call, identified as SET + call * WRITER + index.
+	 */
+	private static final long SET = APPENDERS * WRITER;
+	private static final int SET_POINTS = 500;
+
+	private static final long RESET_MILLIS = 1500;
+	private static final int FINAL_APPENDS = 200;
+
+	/**
+	 * Points appended by every writer to a plot of a chart. Every PAUSE_POINTS
+	 * points the writer waits for the next paint, so that the chart is painted
+	 * many times meanwhile.
+	 */
+	private static final int CHART_POINTS = 5000;
+	private static final int PAUSE_POINTS = 250;
+
+	@Test
+	public void publishesConsistentSnapshotsWhenSorted() throws Exception {
+		stress(true);
+	}
+
+	@Test
+	public void publishesConsistentSnapshotsWhenUnsorted() throws Exception {
+		stress(false);
+	}
+
+	/**
+	 * Writers append points (one by one and in batches), replace them and clear
+	 * them while the test thread publishes and reads the snapshots. Then the
+	 * writers that replace and clear stop, and the appenders go on for a while,
+	 * so the last snapshot must hold the last points of every appender.
+	 */
+	private static void stress(boolean autoSort) throws Exception {
+		final SnapshotXYDataset dataset = new SnapshotXYDataset("f", autoSort);
+		final AtomicBoolean resetting = new AtomicBoolean(true);
+		final AtomicBoolean finishing = new AtomicBoolean(false);
+		final AtomicReference<Throwable> failure = new AtomicReference<Throwable>();
+		final long[] last = new long[APPENDERS];
+		Arrays.fill(last, -1);
+		List<Thread> appenders = new ArrayList<Thread>();
+		for(int w = 0; w < APPENDERS; w++) {
+			final int writer = w;
+			appenders.add(new Thread(new Runnable() {
+				public void run() {
+					Random random = new Random(writer);
+					long seq = 0;
+					int remaining = FINAL_APPENDS;
+					while(remaining > 0) {
+						if(finishing.get()) {
+							remaining--;
+						}
+						int n = writer == 0 ? 1 : 1 + random.nextInt(50);
+						double[] x = new double[n];
+						double[] y = new double[n];
+						for(int i = 0; i < n; i++) {
+							x[i] = seq;
+							y[i] = writer * WRITER + seq;
+							seq++;
+						}
+						if(n == 1) {
+							dataset.append(x[0], y[0]);
+						}
+						else {
+							dataset.appendBatch(x, y, 0, n);
+						}
+						last[writer] = seq - 1;
+					}
+				}
+			}));
+		}
+		List<Thread> resetters = new ArrayList<Thread>();
+		resetters.add(new Thread(new Runnable() {
+			public void run() {
+				Random random = new Random(APPENDERS);
+				double[] x = new double[SET_POINTS + 2];
+				double[] y = new double[SET_POINTS + 2];
+				for(long call = 0; resetting.get(); call++) {
+					for(int i = 0; i < SET_POINTS; i++) {
+						x[i + 1] = random.nextInt(SET_POINTS);
+						y[i + 1] = SET + call * WRITER + i;
+					}
+					dataset.setData(x, y, 1, SET_POINTS);
+					Thread.yield();
+				}
+			}
+		}));
+		resetters.add(new Thread(new Runnable() {
+			public void run() {
+				while(resetting.get()) {
+					dataset.clear();
+					try {
+						Thread.sleep(1);
+					} catch(InterruptedException e) {
+						return;
+					}
+				}
+			}
+		}));
+		for(Thread thread : appenders) {
+			start(thread, failure);
+		}
+		for(Thread thread : resetters) {
+			start(thread, failure);
+		}
+
+		long end = System.currentTimeMillis() + RESET_MILLIS;
+		int snapshots = 0;
+		while(System.currentTimeMillis() < end) {
+			if(dataset.publish()) {
+				check(dataset, autoSort);
+				snapshots++;
+			}
+		}
+		resetting.set(false);
+		for(Thread thread : resetters) {
+			thread.join();
+		}
+		finishing.set(true);
+		boolean writing = true;
+		while(writing) {
+			writing = false;
+			for(Thread thread : appenders) {
+				writing |= thread.isAlive();
+			}
+			if(dataset.publish()) {
+				check(dataset, autoSort);
+				snapshots++;
+			}
+		}
+		for(Thread thread : appenders) {
+			thread.join();
+		}
+		if(failure.get() != null) {
+			throw new AssertionError(failure.get());
+		}
+		assertTrue("Too few snapshots: " + snapshots, snapshots > 10);
+
+		dataset.publish();
+		long[][] ranges = check(dataset, autoSort);
+		for(int w = 0; w < APPENDERS; w++) {
+			assertEquals("Last point of writer " + w, last[w], ranges[w][1]);
+			assertTrue(last[w] - ranges[w][0] + 1 >= FINAL_APPENDS);
+		}
+	}
+
+	@Test
+	public void paintsAChartWhileWritersAppendSorted() throws Exception {
+		paintWhileAppending(true);
+	}
+
+	@Test
+	public void paintsAChartWhileWritersAppendUnsorted() throws Exception {
+		paintWhileAppending(false);
+	}
+
+	/**
+	 * Writers append points to a concurrent plot of a chart through
+	 * Grafica.append and appendBatch while the test thread publishes the
+	 * pending data and paints the chart, as JPanelGrafica does every frame. The
+	 * plot must be consistent after every paint and hold every point at the end.
+	 */
+	private static void paintWhileAppending(boolean isContinuous) throws Exception {
+		final Grafica chart = new Grafica(new Point2D[] {new Point2D.Double(0, 0), new Point2D.Double(1, 1)}, "concurrent", "f", "x", "y");
+		final int nPlot = chart.addConcurrentPlot("g", Color.BLUE, 1f, isContinuous);
+		final AtomicReference<Throwable> failure = new AtomicReference<Throwable>();
+		final AtomicInteger paints = new AtomicInteger();
+		List<Thread> appenders = new ArrayList<Thread>();
+		for(int w = 0; w < APPENDERS; w++) {
+			final int writer = w;
+			appenders.add(new Thread(new Runnable() {
+				public void run() {
+					Random random = new Random(writer);
+					long seq = 0;
+					int painted = paints.get();
+					while(seq < CHART_POINTS) {
+						int n = writer == 0 ? 1 : (int) Math.min(1 + random.nextInt(50), CHART_POINTS - seq);
+						double[] x = new double[n];
+						double[] y = new double[n];
+						for(int i = 0; i < n; i++) {
+							x[i] = seq;
+							y[i] = writer * WRITER + seq;
+							seq++;
+						}
+						if(n == 1) {
+							chart.append(nPlot, x[0], y[0]);
+						}
+						else {
+							chart.appendBatch(nPlot, x, y);
+						}
+						if(seq / PAUSE_POINTS != (seq - n) / PAUSE_POINTS) {
+							while(paints.get() == painted) {
+								try {
+									Thread.sleep(1);
+								} catch(InterruptedException e) {
+									return;
+								}
+							}
+							painted = paints.get();
+						}
+					}
+				}
+			}));
+		}
+		for(Thread thread : appenders) {
+			start(thread, failure);
+		}
+
+		BufferedImage image = new BufferedImage(400, 300, BufferedImage.TYPE_INT_ARGB);
+		Rectangle area = new Rectangle(0, 0, 400, 300);
+		boolean writing = true;
+		while(writing) {
+			writing = false;
+			for(Thread thread : appenders) {
+				writing |= thread.isAlive();
+			}
+			chart.publishPendingData();
+			Graphics2D g2 = image.createGraphics();
+			try {
+				chart.pintar(g2, area);
+			} finally {
+				g2.dispose();
+			}
+			check(snapshot(chart, nPlot), isContinuous);
+			paints.incrementAndGet();
+		}
+		for(Thread thread : appenders) {
+			thread.join();
+		}
+		if(failure.get() != null) {
+			throw new AssertionError(failure.get());
+		}
+		assertTrue("Too few paints: " + paints, paints.get() > 10);
+
+		chart.publishPendingData();
+		long[][] ranges = check(snapshot(chart, nPlot), isContinuous);
+		for(int w = 0; w < APPENDERS; w++) {
+			assertEquals("First point of writer " + w, 0, ranges[w][0]);
+			assertEquals("Last point of writer " + w, CHART_POINTS - 1, ranges[w][1]);
+		}
+	}
+
+	/**
+	 * Dataset of a concurrent plot, without the decimation of the chart.
+	 */
+	private static SnapshotXYDataset snapshot(Grafica chart, int nPlot) {
+		XYDataset dataset = chart.getGrafica().getXYPlot().getDataset(nPlot);
+		if(dataset instanceof DecimatedXYDataset) {
+			dataset = ((DecimatedXYDataset) dataset).getSource();
+		}
+		return (SnapshotXYDataset) dataset;
+	}
+
+	private static void start(Thread thread, final AtomicReference<Throwable> failure) {
+		thread.setUncaughtExceptionHandler(new Thread.UncaughtExceptionHandler() {
+			public void uncaughtException(Thread t, Throwable e) {
+				failure.compareAndSet(null, e);
+			}
+		});
+		thread.setDaemon(true);
+		thread.start();
+	}
+
+	/**
+	 * Checks that the published points are consistent: the bounds and order of
+	 * the dataset match the points, the coordinates of every point belong
+	 * together, every appender has a run of consecutive points without gaps or
+	 * repetitions, and the points of setData are those of a single whole call.
+	 * @return The first and last sequence numbers of every appender, -1 if none
+	 */
+	private static long[][] check(SnapshotXYDataset dataset, boolean autoSort) {
+		int n = dataset.getItemCount(0);
+		double[] x = new double[n];
+		double[] y = new double[n];
+		double minX = Double.POSITIVE_INFINITY, maxX = Double.NEGATIVE_INFINITY;
+		double minY = Double.POSITIVE_INFINITY, maxY = Double.NEGATIVE_INFINITY;
+		boolean ascending = true;
+		for(int i = 0; i < n; i++) {
+			x[i] = dataset.getXValue(0, i);
+			y[i] = dataset.getYValue(0, i);
+			minX = Math.min(minX, x[i]);
+			maxX = Math.max(maxX, x[i]);
+			minY = Math.min(minY, y[i]);
+			maxY = Math.max(maxY, y[i]);
+			ascending &= i == 0 || x[i] >= x[i - 1];
+		}
+		if(n == 0) {
+			assertTrue(Double.isNaN(dataset.getDomainLowerBound(false)));
+			assertTrue(Double.isNaN(dataset.getRangeUpperBound(false)));
+		}
+		else {
+			assertEquals(minX, dataset.getDomainLowerBound(false), 0);
+			assertEquals(maxX, dataset.getDomainUpperBound(false), 0);
+			assertEquals(minY, dataset.getRangeLowerBound(false), 0);
+			assertEquals(maxY, dataset.getRangeUpperBound(false), 0);
+		}
+		if(autoSort) {
+			assertTrue("Not sorted", ascending);
+		}
+		if(dataset.getDomainOrder() == DomainOrder.ASCENDING) {
+			assertTrue("Not ascending", ascending);
+		}
+
+		List<List<Long>> appended = new ArrayList<List<Long>>();
+		for(int w = 0; w < APPENDERS; w++) {
+			appended.add(new ArrayList<Long>());
+		}
+		List<Long> set = new ArrayList<Long>();
+		for(int i = 0; i < n; i++) {
+			long id = (long) y[i];
+			assertEquals(id, y[i], 0);
+			if(id >= SET) {
+				set.add(id - SET);
+			}
+			else {
+				int writer = (int) (id / WRITER);
+				long seq = id % WRITER;
+				assertEquals("Coordinates of point " + id, seq, x[i], 0);
+				appended.get(writer).add(seq);
+			}
+		}
+
+		long[][] ranges = new long[APPENDERS][];
+		for(int w = 0; w < APPENDERS; w++) {
+			List<Long> seqs = appended.get(w);
+			if(!autoSort) {
+				// Appends keep their order
+				for(int i = 1; i < seqs.size(); i++) {
+					assertTrue(seqs.get(i) > seqs.get(i - 1));
+				}
+			}
+			long[] sorted = toSortedArray(seqs);
+			for(int i = 1; i < sorted.length; i++) {
+				if(sorted[i] != sorted[i - 1] + 1) {
+					fail("Writer " + w + " has " + sorted[i - 1] + " followed by " + sorted[i]);
+				}
+			}
+			ranges[w] = sorted.length == 0 ? new long[] {-1, -1} : new long[] {sorted[0], sorted[sorted.length - 1]};
+		}
+
+		if(!set.isEmpty()) {
+			long[] sorted = toSortedArray(set);
+			assertEquals("Points of setData", SET_POINTS, sorted.length);
+			long call = sorted[0] / WRITER;
+			for(int i = 0; i < sorted.length; i++) {
+				assertEquals(call * WRITER + i, sorted[i]);
+			}
+		}
+		return ranges;
+	}
+
+	private static long[] toSortedArray(List<Long> values) {
+		long[] array = new long[values.size()];
+		for(int i = 0; i < array.length; i++) {
+			array[i] = values.get(i);
+		}
+		Arrays.sort(array);
+		return array;
+	}
+}